@@ -20,21 +20,29 @@ import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.Priority;
 import com.msystem.walking.auth.LoginActivity;
+import com.msystem.walking.geo.BoundingBox;
+import com.msystem.walking.map.TerritoryOverlay;
+import com.msystem.walking.map.TerritoryTileLayer;
+import com.msystem.walking.map.UserLocationRenderer;
 import com.msystem.walking.repository.AuthRepository;
+import com.msystem.walking.repository.DataRepository;
+import com.msystem.walking.repository.TerritorySubscriptionManager;
+import com.msystem.walking.route.SamplingController;
+import com.msystem.walking.route.filter.Fix;
+import com.msystem.walking.service.LocationTrackingService;
 
 import org.osmdroid.api.IMapController;
 import org.osmdroid.config.Configuration;
+import org.osmdroid.events.MapListener;
+import org.osmdroid.events.ScrollEvent;
+import org.osmdroid.events.ZoomEvent;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
-import org.osmdroid.views.overlay.Marker;
 import org.osmdroid.views.overlay.mylocation.GpsMyLocationProvider;
 import org.osmdroid.views.overlay.mylocation.MyLocationNewOverlay;
 
-import java.util.Locale;
-
 public class MainActivity extends AppCompatActivity {
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
 
@@ -44,7 +52,12 @@ public class MainActivity extends AppCompatActivity {
     private MyLocationNewOverlay locationOverlay;
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
-    private Marker userMarker;
+    // Parado, o mapa também recebe menos pontos (mesmos intervalos do rastreamento)
+    private final SamplingController sampling = new SamplingController();
+    private final Fix samplingFix = new Fix();
+    private UserLocationRenderer userLocationRenderer;
+    private TerritoryTileLayer territoryTiles;
+    private TerritorySubscriptionManager territorySubscriptions;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -64,6 +77,9 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
+        // Reenviar escritas que ficaram pendentes de execuções anteriores
+        DataRepository.getInstance().startSync(this);
+
         initializeMap();
         initializeLocationServices();
         setupObservers();
@@ -88,6 +104,14 @@ public class MainActivity extends AppCompatActivity {
         mapController = mapView.getController();
         mapController.setZoom(18.0); // Zoom GPS - bem próximo para navegação
 
+        // Territórios: tiles pintados em segundo plano nos zooms intermediários,
+        // polígonos no zoom de detalhe e símbolos de grupo abaixo dos tiles
+        territoryTiles = new TerritoryTileLayer(this, mapView, DataRepository.getInstance().getTerritoryIndex());
+        mapView.getOverlays().add(territoryTiles.getOverlay());
+        TerritoryOverlay territoryOverlay = new TerritoryOverlay(DataRepository.getInstance().getTerritoryIndex());
+        territoryOverlay.setClusterMaxZoom(TerritoryTileLayer.MIN_ZOOM);
+        mapView.getOverlays().add(territoryOverlay);
+
         // Configurar overlay de localização
         locationOverlay = new MyLocationNewOverlay(new GpsMyLocationProvider(this), mapView);
         locationOverlay.enableMyLocation();
@@ -95,9 +119,35 @@ public class MainActivity extends AppCompatActivity {
         locationOverlay.setDrawAccuracyEnabled(true); // Mostrar círculo de precisão
         mapView.getOverlays().add(locationOverlay);
 
+        // Marcador do usuário: um só, redesenhado no máximo uma vez por quadro
+        userLocationRenderer = new UserLocationRenderer(mapView);
+
         // Localização inicial padrão (será substituída pelo GPS)
         GeoPoint startPoint = new GeoPoint(38.7223, -9.1393); // Lisboa
         mapController.setCenter(startPoint);
+
+        // Carregar só os territórios da área visível, acompanhando o mapa
+        territorySubscriptions = DataRepository.getInstance().getTerritorySubscriptions();
+        mapView.addMapListener(new MapListener() {
+            @Override
+            public boolean onScroll(ScrollEvent event) {
+                onViewportChanged();
+                return false;
+            }
+
+            @Override
+            public boolean onZoom(ZoomEvent event) {
+                onViewportChanged();
+                return false;
+            }
+        });
+        mapView.addOnFirstLayoutListener((view, left, top, right, bottom) -> onViewportChanged());
+    }
+
+    private void onViewportChanged() {
+        org.osmdroid.util.BoundingBox box = mapView.getBoundingBox();
+        territorySubscriptions.onViewportChanged(new BoundingBox(
+                box.getLatSouth(), box.getLonWest(), box.getLatNorth(), box.getLonEast()));
     }
 
     private void initializeLocationServices() {
@@ -107,6 +157,9 @@ public class MainActivity extends AppCompatActivity {
         locationCallback = new LocationCallback() {
             @Override
             public void onLocationResult(@NonNull LocationResult locationResult) {
+                if (updateSampling(locationResult)) {
+                    requestLocationUpdates();
+                }
                 Location location = locationResult.getLastLocation();
                 if (location != null && isLocationAccurate(location)) {
                     updateUserLocationOnMap(location);
@@ -116,45 +169,25 @@ public class MainActivity extends AppCompatActivity {
         };
     }
 
-    private void updateUserLocationOnMap(Location location) {
-        GeoPoint userLocation = new GeoPoint(location.getLatitude(), location.getLongitude());
-
-        // Atualizar marcador personalizado do usuário
-        updateUserMarker(userLocation, location);
+    // Passa os pontos ao controlador de amostragem; true se o intervalo mudou
+    private boolean updateSampling(LocationResult locationResult) {
+        boolean changed = false;
+        for (Location location : locationResult.getLocations()) {
+            samplingFix.set(location.getLatitude(), location.getLongitude(), location.getTime(),
+                    location.getAltitude(), location.getAccuracy(),
+                    location.hasSpeed() ? location.getSpeed() : Float.NaN);
+            changed |= sampling.onFix(samplingFix);
+        }
+        return changed;
+    }
 
-        // Centralizar mapa automaticamente (modo GPS)
-        mapController.animateTo(userLocation);
+    private void updateUserLocationOnMap(Location location) {
+        // Marcador e câmera (centralizar automaticamente no modo GPS) no próximo quadro
+        userLocationRenderer.update(location.getLatitude(), location.getLongitude(),
+                location.getAccuracy(), location.getSpeed());
 
         // Feedback de precisão para o usuário
         providePrecisionFeedback(location);
-
-        mapView.invalidate();
-    }
-
-    private void updateUserMarker(GeoPoint location, Location gpsLocation) {
-        // Remover marcador anterior
-        if (userMarker != null) {
-            mapView.getOverlays().remove(userMarker);
-        }
-
-        // Criar marcador atualizado
-        userMarker = new Marker(mapView);
-        userMarker.setPosition(location);
-        userMarker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
-        userMarker.setIcon(ContextCompat.getDrawable(this, R.drawable.ic_location_user));
-        userMarker.setTitle("📍 Minha Localização");
-
-        // Informações detalhadas do GPS - corrigir String.format para usar Locale
-        String snippet = String.format(Locale.getDefault(),
-                "📐 Lat: %.6f\n📐 Lon: %.6f\n🎯 Precisão: %.1fm\n⚡ Velocidade: %.1f km/h",
-                gpsLocation.getLatitude(),
-                gpsLocation.getLongitude(),
-                gpsLocation.getAccuracy(),
-                gpsLocation.getSpeed() * 3.6 // m/s para km/h
-        );
-        userMarker.setSnippet(snippet);
-
-        mapView.getOverlays().add(userMarker);
     }
 
     private void providePrecisionFeedback(Location location) {
@@ -225,6 +258,9 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupObservers() {
+        // Redesenhar os territórios quando o índice muda
+        DataRepository.getInstance().getTerritoriesLiveData().observe(this, territories -> mapView.invalidate());
+
         // Observar logout
         authRepository.getLoggedOutLiveData().observe(this, isLoggedOut -> {
             if (Boolean.TRUE.equals(isLoggedOut)) {
@@ -254,19 +290,12 @@ public class MainActivity extends AppCompatActivity {
             return;
         }
 
-        // Configuração otimizada para GPS preciso
-        LocationRequest locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 2000)
-                .setWaitForAccurateLocation(false)
-                .setMinUpdateIntervalMillis(1000)
-                .setMaxUpdateDelayMillis(5000)
-                .build();
-
         try {
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED && ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
                 requestLocationPermissions();
                 return;
             }
-            fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, getMainLooper());
+            requestLocationUpdates();
 
             // Obter última localização conhecida para inicialização rápida
             fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
@@ -281,6 +310,16 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    // Intervalo pelo estado de movimento; pedir de novo substitui o pedido anterior
+    private void requestLocationUpdates() {
+        LocationRequest locationRequest = LocationTrackingService.createLocationRequest(sampling.getMode());
+        try {
+            fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, getMainLooper());
+        } catch (SecurityException e) {
+            Toast.makeText(this, "❌ Erro ao ativar GPS: " + e.getMessage(), Toast.LENGTH_LONG).show();
+        }
+    }
+
     private void stopLocationTracking() {
         if (fusedLocationClient != null && locationCallback != null) {
             fusedLocationClient.removeLocationUpdates(locationCallback);
@@ -314,6 +353,12 @@ public class MainActivity extends AppCompatActivity {
         if (checkLocationPermissions()) {
             startLocationTracking();
         }
+        if (locationOverlay != null) {
+            locationOverlay.enableMyLocation();
+        }
+        if (territorySubscriptions != null) {
+            onViewportChanged();
+        }
     }
 
     @Override
@@ -321,6 +366,12 @@ public class MainActivity extends AppCompatActivity {
         super.onPause();
         // Remover atualizações de localização ao pausar a atividade
         fusedLocationClient.removeLocationUpdates(locationCallback);
+        // O overlay tem o próprio GPS (a cada segundo): desligar também
+        locationOverlay.disableMyLocation();
+        // Desligar os listeners de territórios enquanto o mapa não está visível
+        if (territorySubscriptions != null) {
+            territorySubscriptions.stop();
+        }
     }
 
     @Override
@@ -328,8 +379,11 @@ public class MainActivity extends AppCompatActivity {
         super.onDestroy();
         // Limpar recursos e referências
         mapView.getOverlays().remove(locationOverlay);
-        if (userMarker != null) {
-            mapView.getOverlays().remove(userMarker);
+        if (userLocationRenderer != null) {
+            userLocationRenderer.detach();
+        }
+        if (territoryTiles != null) {
+            territoryTiles.detach();
         }
     }
 
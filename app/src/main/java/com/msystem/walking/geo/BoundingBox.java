@@ -0,0 +1,85 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+
+import java.util.List;
+
+/**
+ * Retângulo de latitude/longitude (em graus) usado pelos índices espaciais.
+ * Não trata o antimeridiano: os mapas do app nunca o atravessam.
+ */
+public class BoundingBox {
+    private final double minLatitude;
+    private final double minLongitude;
+    private final double maxLatitude;
+    private final double maxLongitude;
+
+    public BoundingBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        this.minLatitude = minLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLatitude = maxLatitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /**
+     * Calcula o retângulo envolvente de um polígono ou rota
+     * @param points Pontos do polígono
+     * @return Retângulo envolvente, ou null se a lista estiver vazia
+     */
+    public static BoundingBox fromPoints(List<LocationPoint> points) {
+        if (points == null || points.isEmpty()) {
+            return null;
+        }
+
+        double minLat = Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE;
+        double maxLat = -Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < points.size(); i++) {
+            LocationPoint p = points.get(i);
+            minLat = Math.min(minLat, p.getLatitude());
+            minLon = Math.min(minLon, p.getLongitude());
+            maxLat = Math.max(maxLat, p.getLatitude());
+            maxLon = Math.max(maxLon, p.getLongitude());
+        }
+        return new BoundingBox(minLat, minLon, maxLat, maxLon);
+    }
+
+    /**
+     * Cria um retângulo ao redor de um ponto
+     * @param latitude Latitude do centro
+     * @param longitude Longitude do centro
+     * @param radiusMeters Meia largura do retângulo em metros
+     */
+    public static BoundingBox around(double latitude, double longitude, double radiusMeters) {
+        double dLat = radiusMeters / 111320.0;
+        double cos = Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+        double dLon = radiusMeters / (111320.0 * cos);
+        return new BoundingBox(
+                Math.max(-90.0, latitude - dLat), Math.max(-180.0, longitude - dLon),
+                Math.min(90.0, latitude + dLat), Math.min(180.0, longitude + dLon));
+    }
+
+    public double getMinLatitude() { return minLatitude; }
+    public double getMinLongitude() { return minLongitude; }
+    public double getMaxLatitude() { return maxLatitude; }
+    public double getMaxLongitude() { return maxLongitude; }
+
+    public double getCenterLatitude() { return (minLatitude + maxLatitude) / 2; }
+    public double getCenterLongitude() { return (minLongitude + maxLongitude) / 2; }
+
+    public boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+                && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+
+    public boolean intersects(BoundingBox other) {
+        return other.minLatitude <= maxLatitude && other.maxLatitude >= minLatitude
+                && other.minLongitude <= maxLongitude && other.maxLongitude >= minLongitude;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox[" + minLatitude + "," + minLongitude + " .. " + maxLatitude + "," + maxLongitude + "]";
+    }
+}
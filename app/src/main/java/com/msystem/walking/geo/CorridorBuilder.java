@@ -0,0 +1,315 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Constrói o corredor (buffer) ao redor de uma rota como polígonos unidos.
+ *
+ * O corredor é rasterizado numa grade local de células quadradas: cada trecho
+ * da rota marca as células cujo centro está a até {@code radius} metros dele.
+ * Os pontos chegam um a um ({@link #addPoint}) com custo constante por ponto,
+ * e no final as bordas das regiões marcadas são percorridas e simplificadas
+ * em polígonos. Sobreposições e idas e vindas pela mesma rua não duplicam
+ * área, e um laço fechado conquista também a área que ele cerca.
+ */
+public class CorridorBuilder {
+    private static final int COORDINATE_MASK = 0x3FFFFFFF;
+    private static final int[] DX = {1, 0, -1, 0};
+    private static final int[] DY = {0, 1, 0, -1};
+
+    private final double radius;
+    private final double cellSize;
+    private final LongHashSet cells = new LongHashSet(256);
+
+    private LocalProjection projection;
+    private boolean hasLastPoint;
+    private double lastX;
+    private double lastY;
+
+    /**
+     * Resultado: um polígono do corredor e a sua área
+     */
+    public static class CorridorPolygon {
+        private final List<LocationPoint> points;
+        private final double area;
+
+        CorridorPolygon(List<LocationPoint> points, double area) {
+            this.points = points;
+            this.area = area;
+        }
+
+        public List<LocationPoint> getPoints() { return points; }
+        // Área em metros quadrados
+        public double getArea() { return area; }
+    }
+
+    /**
+     * @param radius Meia largura do corredor em metros
+     * @param cellSize Lado da célula da grade em metros (resolução do contorno)
+     */
+    public CorridorBuilder(double radius, double cellSize) {
+        this.radius = radius;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Cria o corredor de uma rota completa
+     */
+    public static List<CorridorPolygon> build(List<LocationPoint> route, double radius, double cellSize) {
+        CorridorBuilder builder = new CorridorBuilder(radius, cellSize);
+        for (int i = 0; i < route.size(); i++) {
+            LocationPoint point = route.get(i);
+            builder.addPoint(point.getLatitude(), point.getLongitude());
+        }
+        return builder.buildPolygons();
+    }
+
+    /**
+     * Acrescenta um ponto da rota ao corredor (custo constante por ponto)
+     * @param latitude Latitude do ponto
+     * @param longitude Longitude do ponto
+     */
+    public void addPoint(double latitude, double longitude) {
+        if (projection == null) {
+            projection = new LocalProjection(latitude, longitude);
+        }
+        double x = projection.toX(longitude);
+        double y = projection.toY(latitude);
+
+        if (!hasLastPoint) {
+            markSegment(x, y, x, y);
+            hasLastPoint = true;
+            lastX = x;
+            lastY = y;
+            return;
+        }
+
+        // Pontos muito próximos do último já estão cobertos pelo corredor
+        double dx = x - lastX;
+        double dy = y - lastY;
+        if (dx * dx + dy * dy < cellSize * cellSize / 4) {
+            return;
+        }
+
+        markSegment(lastX, lastY, x, y);
+        lastX = x;
+        lastY = y;
+    }
+
+    /**
+     * Interrompe a rota: o próximo ponto começa um novo trecho sem ligar ao anterior
+     */
+    public void breakSegment() {
+        hasLastPoint = false;
+    }
+
+    public boolean isEmpty() {
+        return cells.isEmpty();
+    }
+
+    // Quantidade de células da grade conquistadas até agora
+    public int getCellCount() {
+        return cells.size();
+    }
+
+    // Área aproximada do corredor em metros quadrados
+    public double getCellArea() {
+        return cells.size() * cellSize * cellSize;
+    }
+
+    /**
+     * Percorre as bordas das regiões marcadas e gera os polígonos do corredor
+     * @return Polígonos externos, do maior para o menor
+     */
+    public List<CorridorPolygon> buildPolygons() {
+        List<CorridorPolygon> result = new ArrayList<>();
+        if (cells.isEmpty()) {
+            return result;
+        }
+
+        LongHashSet visited = new LongHashSet(cells.size());
+        List<double[]> rings = new ArrayList<>();
+        List<Double> areas = new ArrayList<>();
+
+        for (int slot = 0; slot < cells.capacity(); slot++) {
+            if (!cells.isSlotUsed(slot)) {
+                continue;
+            }
+            long key = cells.keyAt(slot);
+            int x = unpackX(key);
+            int y = unpackY(key);
+
+            // Lados da célula que ficam na borda, com a célula à esquerda
+            if (!isFilled(x, y - 1)) traceIfNew(x, y, 0, visited, rings, areas);
+            if (!isFilled(x + 1, y)) traceIfNew(x + 1, y, 1, visited, rings, areas);
+            if (!isFilled(x, y + 1)) traceIfNew(x + 1, y + 1, 2, visited, rings, areas);
+            if (!isFilled(x - 1, y)) traceIfNew(x, y + 1, 3, visited, rings, areas);
+        }
+
+        // Anéis anti-horários são bordas externas; os horários são buracos e ficam preenchidos
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < rings.size(); i++) {
+            if (areas.get(i) > 0) {
+                order.add(i);
+            }
+        }
+        Collections.sort(order, (a, b) -> Double.compare(areas.get(b), areas.get(a)));
+
+        List<double[]> kept = new ArrayList<>();
+        for (int index : order) {
+            double[] ring = rings.get(index);
+            // Ilhas dentro de um laço já fazem parte do polígono maior
+            boolean nested = false;
+            for (double[] outer : kept) {
+                if (containsPoint(outer, ring[0], ring[1])) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                kept.add(ring);
+                result.add(toPolygon(ring));
+            }
+        }
+        return result;
+    }
+
+    private void markSegment(double ax, double ay, double bx, double by) {
+        int minX = (int) Math.floor((Math.min(ax, bx) - radius) / cellSize);
+        int maxX = (int) Math.floor((Math.max(ax, bx) + radius) / cellSize);
+        int minY = (int) Math.floor((Math.min(ay, by) - radius) / cellSize);
+        int maxY = (int) Math.floor((Math.max(ay, by) + radius) / cellSize);
+        double radiusSquared = radius * radius;
+
+        for (int y = minY; y <= maxY; y++) {
+            double cy = (y + 0.5) * cellSize;
+            for (int x = minX; x <= maxX; x++) {
+                double cx = (x + 0.5) * cellSize;
+                if (DouglasPeucker.segmentDistanceSquared(cx, cy, ax, ay, bx, by) <= radiusSquared) {
+                    cells.add(pack(x, y));
+                }
+            }
+        }
+    }
+
+    private boolean isFilled(int x, int y) {
+        return cells.contains(pack(x, y));
+    }
+
+    /**
+     * Uma aresta de borda sai do canto (cx, cy) na direção d se a célula à sua
+     * esquerda estiver marcada e a da direita não
+     */
+    private boolean hasEdge(int cx, int cy, int direction) {
+        switch (direction) {
+            case 0: return isFilled(cx, cy) && !isFilled(cx, cy - 1);
+            case 1: return isFilled(cx - 1, cy) && !isFilled(cx, cy);
+            case 2: return isFilled(cx - 1, cy - 1) && !isFilled(cx - 1, cy);
+            default: return isFilled(cx, cy - 1) && !isFilled(cx - 1, cy - 1);
+        }
+    }
+
+    private void traceIfNew(int startX, int startY, int startDirection,
+                            LongHashSet visited, List<double[]> rings, List<Double> areas) {
+        if (visited.contains(pack(startX, startY) | startDirection)) {
+            return;
+        }
+
+        double[] ring = new double[32];
+        int count = 0;
+        int x = startX;
+        int y = startY;
+        int direction = startDirection;
+        int previousDirection = -1;
+
+        do {
+            visited.add(pack(x, y) | direction);
+            if (direction != previousDirection) {
+                if (count * 2 + 2 > ring.length) {
+                    ring = java.util.Arrays.copyOf(ring, ring.length * 2);
+                }
+                ring[count * 2] = x * cellSize;
+                ring[count * 2 + 1] = y * cellSize;
+                count++;
+            }
+            previousDirection = direction;
+            x += DX[direction];
+            y += DY[direction];
+
+            // Preferir virar à esquerda separa regiões que só se tocam na diagonal
+            int left = (direction + 1) & 3;
+            int right = (direction + 3) & 3;
+            if (hasEdge(x, y, left)) {
+                direction = left;
+            } else if (!hasEdge(x, y, direction)) {
+                direction = right;
+            }
+        } while (x != startX || y != startY || direction != startDirection);
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = ring[i * 2];
+            ys[i] = ring[i * 2 + 1];
+        }
+        int kept = DouglasPeucker.simplifyRing(xs, ys, count, cellSize / 2);
+
+        double[] simplified = new double[kept * 2];
+        for (int i = 0; i < kept; i++) {
+            simplified[i * 2] = xs[i];
+            simplified[i * 2 + 1] = ys[i];
+        }
+        rings.add(simplified);
+        areas.add(signedArea(simplified));
+    }
+
+    private CorridorPolygon toPolygon(double[] ring) {
+        int count = ring.length / 2;
+        List<LocationPoint> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(new LocationPoint(projection.toLatitude(ring[i * 2 + 1]), projection.toLongitude(ring[i * 2])));
+        }
+        return new CorridorPolygon(points, Math.abs(signedArea(ring)));
+    }
+
+    static double signedArea(double[] ring) {
+        int count = ring.length / 2;
+        double sum = 0;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            sum += ring[j * 2] * ring[i * 2 + 1] - ring[i * 2] * ring[j * 2 + 1];
+        }
+        return sum / 2;
+    }
+
+    private static boolean containsPoint(double[] ring, double px, double py) {
+        boolean inside = false;
+        int count = ring.length / 2;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            double xi = ring[i * 2];
+            double yi = ring[i * 2 + 1];
+            double xj = ring[j * 2];
+            double yj = ring[j * 2 + 1];
+            if ((yi > py) != (yj > py) && px < (xj - xi) * (py - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) (x & COORDINATE_MASK) << 32) | ((long) (y & COORDINATE_MASK) << 2);
+    }
+
+    private static int unpackX(long key) {
+        // Recupera o sinal dos 30 bits
+        return ((int) (key >>> 32)) << 2 >> 2;
+    }
+
+    private static int unpackY(long key) {
+        return ((int) ((key >>> 2) & COORDINATE_MASK)) << 2 >> 2;
+    }
+}
@@ -0,0 +1,160 @@
+package com.msystem.walking.geo;
+
+/**
+ * Distâncias entre pontos de latitude/longitude, em metros, em três níveis de
+ * custo e precisão. As variantes em lote trabalham direto sobre coordenadas em
+ * ponto fixo (graus × 10^7, como em {@code PackedRoute}) sem alocar nada.
+ *
+ * Erros máximos em escala de caminhada (trechos de até 1 km, |lat| ≤ 70°):
+ * <ul>
+ *   <li>{@link Mode#HAVERSINE}: exato na esfera média; difere do elipsoide WGS84
+ *       (usado por {@code Location.distanceBetween}) em até 0,6%.</li>
+ *   <li>{@link Mode#EQUIRECTANGULAR}: mesma esfera, sem trigonometria por par;
+ *       o cos(lat) é reaproveitado enquanto a latitude não se afasta mais de
+ *       {@link #COS_REFRESH_DEGREES}, o que limita o erro relativo ao haversine
+ *       a tan(lat) × 1,75e-4 (menos de 0,05% a 70°).</li>
+ *   <li>{@link Mode#TANGENT_PLANE}: plano tangente com os raios de curvatura do
+ *       elipsoide WGS84 na latitude de referência; mesmo custo do
+ *       equiretangular e dentro de 0,05% do {@code Location.distanceBetween}.</li>
+ * </ul>
+ */
+public final class DistanceKernel {
+    // Raio médio da Terra (IUGG) em metros
+    public static final double EARTH_RADIUS = 6371008.8;
+    // Quanto a latitude pode mudar antes de recalcular o cos(lat) guardado (~1,1 km)
+    public static final double COS_REFRESH_DEGREES = 0.01;
+
+    private static final double E7 = 1e7;
+    private static final double WGS84_A = 6378137.0;
+    private static final double WGS84_E2 = 6.69437999014e-3;
+
+    public enum Mode { HAVERSINE, EQUIRECTANGULAR, TANGENT_PLANE }
+
+    private DistanceKernel() {
+    }
+
+    /**
+     * Distância de círculo máximo na esfera média
+     */
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLon = Math.sin(dLon / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLon * sinLon;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Aproximação equiretangular com um cos(lat) já calculado
+     * @param cosLatitude Cosseno de uma latitude próxima dos dois pontos
+     */
+    public static double equirectangular(double lat1, double lon1, double lat2, double lon2, double cosLatitude) {
+        double x = Math.toRadians(lon2 - lon1) * cosLatitude;
+        double y = Math.toRadians(lat2 - lat1);
+        return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Distância num plano tangente ao elipsoide WGS84, com os raios da latitude média
+     */
+    public static double tangentPlane(double lat1, double lon1, double lat2, double lon2) {
+        double latitude = Math.toRadians((lat1 + lat2) / 2);
+        double sin = Math.sin(latitude);
+        double cos = Math.cos(latitude);
+        double w = 1 - WGS84_E2 * sin * sin;
+        double meridian = WGS84_A * (1 - WGS84_E2) / (w * Math.sqrt(w));
+        double normal = WGS84_A / Math.sqrt(w);
+        return planar(lat1, lon1, lat2, lon2, meridian, normal * cos);
+    }
+
+    public static double distance(Mode mode, double lat1, double lon1, double lat2, double lon2) {
+        switch (mode) {
+            case HAVERSINE: return haversine(lat1, lon1, lat2, lon2);
+            case EQUIRECTANGULAR: return equirectangular(lat1, lon1, lat2, lon2, Math.cos(Math.toRadians((lat1 + lat2) / 2)));
+            default: return tangentPlane(lat1, lon1, lat2, lon2);
+        }
+    }
+
+    /**
+     * Comprimento de um trecho de rota em uma só passada, sem alocação
+     * @param latitudesE7 Latitudes em graus × 10^7
+     * @param longitudesE7 Longitudes em graus × 10^7
+     * @param from Primeiro ponto (inclusive)
+     * @param to Último ponto (exclusive)
+     * @param mode Modo de cálculo
+     * @return Comprimento em metros
+     */
+    public static double routeLength(int[] latitudesE7, int[] longitudesE7, int from, int to, Mode mode) {
+        return scan(latitudesE7, longitudesE7, from, to, mode, null);
+    }
+
+    /**
+     * Distâncias de cada trecho consecutivo, gravadas num array do chamador
+     * @param out Recebe em out[i - 1] a distância entre os pontos i - 1 e i
+     * @return Comprimento total em metros
+     */
+    public static double segmentLengths(int[] latitudesE7, int[] longitudesE7, int count, Mode mode, double[] out) {
+        return scan(latitudesE7, longitudesE7, 0, count, mode, out);
+    }
+
+    private static double scan(int[] latitudesE7, int[] longitudesE7, int from, int to, Mode mode, double[] out) {
+        double total = 0;
+        if (to - from < 2) {
+            return total;
+        }
+
+        if (mode == Mode.HAVERSINE) {
+            for (int i = from + 1; i < to; i++) {
+                double d = haversine(latitudesE7[i - 1] / E7, longitudesE7[i - 1] / E7,
+                        latitudesE7[i] / E7, longitudesE7[i] / E7);
+                if (out != null) {
+                    out[i - from - 1] = d;
+                }
+                total += d;
+            }
+            return total;
+        }
+
+        // Escalas de metros por grau reaproveitadas enquanto a latitude não muda muito
+        int refreshE7 = (int) (COS_REFRESH_DEGREES * E7);
+        int referenceE7 = latitudesE7[from];
+        double metersPerDegreeLat = 0;
+        double metersPerDegreeLon = 0;
+        boolean stale = true;
+
+        for (int i = from + 1; i < to; i++) {
+            int latE7 = latitudesE7[i];
+            if (stale || Math.abs(latE7 - referenceE7) > refreshE7) {
+                referenceE7 = latE7;
+                double latitude = Math.toRadians(latE7 / E7);
+                if (mode == Mode.EQUIRECTANGULAR) {
+                    metersPerDegreeLat = Math.toRadians(EARTH_RADIUS);
+                    metersPerDegreeLon = metersPerDegreeLat * Math.cos(latitude);
+                } else {
+                    double sin = Math.sin(latitude);
+                    double w = 1 - WGS84_E2 * sin * sin;
+                    metersPerDegreeLat = Math.toRadians(WGS84_A * (1 - WGS84_E2) / (w * Math.sqrt(w)));
+                    metersPerDegreeLon = Math.toRadians(WGS84_A / Math.sqrt(w)) * Math.cos(latitude);
+                }
+                stale = false;
+            }
+            double dy = (latE7 - latitudesE7[i - 1]) / E7 * metersPerDegreeLat;
+            double dx = (longitudesE7[i] - longitudesE7[i - 1]) / E7 * metersPerDegreeLon;
+            double d = Math.sqrt(dx * dx + dy * dy);
+            if (out != null) {
+                out[i - from - 1] = d;
+            }
+            total += d;
+        }
+        return total;
+    }
+
+    private static double planar(double lat1, double lon1, double lat2, double lon2,
+                                 double meridianRadius, double parallelRadius) {
+        double x = Math.toRadians(lon2 - lon1) * parallelRadius;
+        double y = Math.toRadians(lat2 - lat1) * meridianRadius;
+        return Math.sqrt(x * x + y * y);
+    }
+}
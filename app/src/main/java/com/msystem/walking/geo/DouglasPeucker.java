@@ -0,0 +1,122 @@
+package com.msystem.walking.geo;
+
+/**
+ * Simplificação de linhas e anéis pelo algoritmo de Douglas-Peucker,
+ * sobre coordenadas planas (metros ou pixels).
+ */
+public final class DouglasPeucker {
+
+    private DouglasPeucker() {
+    }
+
+    /**
+     * Marca os vértices que devem ser mantidos numa linha aberta
+     * @param xs Coordenadas X
+     * @param ys Coordenadas Y
+     * @param from Primeiro índice (mantido)
+     * @param to Último índice (mantido)
+     * @param tolerance Distância máxima permitida entre a linha original e a simplificada
+     * @param keep Saída: keep[i] fica true para os vértices mantidos em [from, to]
+     */
+    public static void simplify(double[] xs, double[] ys, int from, int to, double tolerance, boolean[] keep) {
+        keep[from] = true;
+        keep[to] = true;
+        if (to - from < 2) {
+            return;
+        }
+
+        double toleranceSquared = tolerance * tolerance;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = from;
+        stack[top++] = to;
+
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+
+            double maxDistance = -1;
+            int index = -1;
+            for (int i = start + 1; i < end; i++) {
+                double d = segmentDistanceSquared(xs[i], ys[i], xs[start], ys[start], xs[end], ys[end]);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    index = i;
+                }
+            }
+
+            if (index >= 0 && maxDistance > toleranceSquared) {
+                keep[index] = true;
+                if (top + 4 > stack.length) {
+                    stack = java.util.Arrays.copyOf(stack, stack.length * 2);
+                }
+                if (index - start >= 2) {
+                    stack[top++] = start;
+                    stack[top++] = index;
+                }
+                if (end - index >= 2) {
+                    stack[top++] = index;
+                    stack[top++] = end;
+                }
+            }
+        }
+    }
+
+    /**
+     * Simplifica um anel fechado (sem repetir o primeiro vértice no final)
+     * @return Quantidade de vértices mantidos; xs e ys são compactados no início dos arrays
+     */
+    public static int simplifyRing(double[] xs, double[] ys, int count, double tolerance) {
+        if (count <= 4) {
+            return count;
+        }
+
+        // Dividir o anel no vértice mais distante do primeiro
+        int far = 0;
+        double farDistance = -1;
+        for (int i = 1; i < count; i++) {
+            double dx = xs[i] - xs[0];
+            double dy = ys[i] - ys[0];
+            double d = dx * dx + dy * dy;
+            if (d > farDistance) {
+                farDistance = d;
+                far = i;
+            }
+        }
+
+        boolean[] keep = new boolean[count + 1];
+        double[] closedXs = java.util.Arrays.copyOf(xs, count + 1);
+        double[] closedYs = java.util.Arrays.copyOf(ys, count + 1);
+        closedXs[count] = xs[0];
+        closedYs[count] = ys[0];
+        simplify(closedXs, closedYs, 0, far, tolerance, keep);
+        simplify(closedXs, closedYs, far, count, tolerance, keep);
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                xs[kept] = xs[i];
+                ys[kept] = ys[i];
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Quadrado da distância do ponto P ao segmento AB
+     */
+    public static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+        }
+        double ex = ax + t * dx - px;
+        double ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
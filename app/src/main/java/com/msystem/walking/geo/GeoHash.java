@@ -0,0 +1,194 @@
+package com.msystem.walking.geo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codificação geohash (base32) usada como chave de célula geográfica.
+ *
+ * Numa precisão p o geohash divide o mundo numa grade regular de
+ * 2^ceil(5p/2) colunas por 2^floor(5p/2) linhas, e toda célula é prefixo
+ * das células mais finas que contém. Os métodos trabalham com as
+ * coordenadas inteiras (x, y) da grade para que cobertura e vizinhança
+ * não dependam de manipulação de strings.
+ *
+ * Tamanho aproximado das células: 5 ≈ 4,9 x 4,9 km, 6 ≈ 1,2 x 0,6 km,
+ * 7 ≈ 153 x 153 m, 8 ≈ 38 x 19 m.
+ */
+public final class GeoHash {
+    public static final int MAX_PRECISION = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final int[] DECODE = new int[128];
+
+    static {
+        java.util.Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private GeoHash() {
+    }
+
+    /**
+     * Calcula o geohash de um ponto
+     * @param latitude Latitude em graus
+     * @param longitude Longitude em graus
+     * @param precision Número de caracteres (1 a 12)
+     * @return Geohash do ponto
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        return fromCell(cellX(longitude, precision), cellY(latitude, precision), precision);
+    }
+
+    /**
+     * Coluna da grade que contém a longitude na precisão dada
+     */
+    public static long cellX(double longitude, int precision) {
+        int bits = lonBits(precision);
+        long cells = 1L << bits;
+        long x = (long) Math.floor((longitude + 180.0) / 360.0 * cells);
+        return Math.max(0, Math.min(cells - 1, x));
+    }
+
+    /**
+     * Linha da grade que contém a latitude na precisão dada
+     */
+    public static long cellY(double latitude, int precision) {
+        int bits = latBits(precision);
+        long cells = 1L << bits;
+        long y = (long) Math.floor((latitude + 90.0) / 180.0 * cells);
+        return Math.max(0, Math.min(cells - 1, y));
+    }
+
+    /**
+     * Monta o geohash a partir das coordenadas inteiras da célula
+     */
+    public static String fromCell(long x, long y, int precision) {
+        int lonBits = lonBits(precision);
+        int latBits = latBits(precision);
+        char[] chars = new char[precision];
+        int lonIndex = lonBits - 1;
+        int latIndex = latBits - 1;
+        boolean lonTurn = true;
+
+        for (int c = 0; c < precision; c++) {
+            int value = 0;
+            for (int b = 0; b < 5; b++) {
+                int bit;
+                if (lonTurn) {
+                    bit = (int) ((x >> lonIndex--) & 1);
+                } else {
+                    bit = (int) ((y >> latIndex--) & 1);
+                }
+                value = (value << 1) | bit;
+                lonTurn = !lonTurn;
+            }
+            chars[c] = BASE32[value];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodifica os limites geográficos de uma célula
+     * @param hash Geohash válido
+     * @return Retângulo coberto pela célula
+     */
+    public static BoundingBox bounds(String hash) {
+        int precision = hash.length();
+        long x = 0;
+        long y = 0;
+        boolean lonTurn = true;
+
+        for (int c = 0; c < precision; c++) {
+            char ch = hash.charAt(c);
+            int value = ch < 128 ? DECODE[ch] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Geohash inválido: " + hash);
+            }
+            for (int b = 4; b >= 0; b--) {
+                int bit = (value >> b) & 1;
+                if (lonTurn) {
+                    x = (x << 1) | bit;
+                } else {
+                    y = (y << 1) | bit;
+                }
+                lonTurn = !lonTurn;
+            }
+        }
+
+        double cellWidth = 360.0 / (1L << lonBits(precision));
+        double cellHeight = 180.0 / (1L << latBits(precision));
+        double minLon = -180.0 + x * cellWidth;
+        double minLat = -90.0 + y * cellHeight;
+        return new BoundingBox(minLat, minLon, minLat + cellHeight, minLon + cellWidth);
+    }
+
+    /**
+     * Retorna a menor célula que contém todo o retângulo
+     * @param box Retângulo a ser coberto
+     * @param maxPrecision Precisão máxima da célula
+     * @return Geohash da célula (pode ser vazio se o retângulo cruzar uma divisão de primeiro nível)
+     */
+    public static String coveringCell(BoundingBox box, int maxPrecision) {
+        String min = encode(box.getMinLatitude(), box.getMinLongitude(), maxPrecision);
+        String max = encode(box.getMaxLatitude(), box.getMaxLongitude(), maxPrecision);
+        int length = 0;
+        while (length < maxPrecision && min.charAt(length) == max.charAt(length)) {
+            length++;
+        }
+        return min.substring(0, length);
+    }
+
+    /**
+     * Quantidade de células necessárias para cobrir o retângulo na precisão dada
+     */
+    public static long coverCount(BoundingBox box, int precision) {
+        long columns = cellX(box.getMaxLongitude(), precision) - cellX(box.getMinLongitude(), precision) + 1;
+        long rows = cellY(box.getMaxLatitude(), precision) - cellY(box.getMinLatitude(), precision) + 1;
+        return columns * rows;
+    }
+
+    /**
+     * Escolhe a precisão mais fina em que o retângulo é coberto por no máximo maxCells células
+     * @return Precisão entre 1 e maxPrecision
+     */
+    public static int precisionFor(BoundingBox box, int maxCells, int maxPrecision) {
+        int precision = 1;
+        while (precision < maxPrecision && coverCount(box, precision + 1) <= maxCells) {
+            precision++;
+        }
+        return precision;
+    }
+
+    /**
+     * Lista as células da precisão dada que cobrem o retângulo, em ordem de geohash
+     * @param box Retângulo a ser coberto
+     * @param precision Precisão das células
+     * @return Geohashes das células, ordenados
+     */
+    public static List<String> cover(BoundingBox box, int precision) {
+        long minX = cellX(box.getMinLongitude(), precision);
+        long maxX = cellX(box.getMaxLongitude(), precision);
+        long minY = cellY(box.getMinLatitude(), precision);
+        long maxY = cellY(box.getMaxLatitude(), precision);
+
+        List<String> cells = new ArrayList<>((int) ((maxX - minX + 1) * (maxY - minY + 1)));
+        for (long y = minY; y <= maxY; y++) {
+            for (long x = minX; x <= maxX; x++) {
+                cells.add(fromCell(x, y, precision));
+            }
+        }
+        java.util.Collections.sort(cells);
+        return cells;
+    }
+
+    private static int lonBits(int precision) {
+        return (5 * precision + 1) / 2;
+    }
+
+    private static int latBits(int precision) {
+        return (5 * precision) / 2;
+    }
+}
@@ -0,0 +1,132 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Traduz uma área do mapa em consultas por prefixo de geohash.
+ *
+ * Cada território é salvo com um único geohash: a menor célula que contém
+ * todo o seu polígono. Um território intersecta a célula C de uma consulta
+ * somente se o seu geohash começar com C (está dentro dela) ou for um
+ * prefixo de C (a contém). Por isso a consulta é feita com intervalos
+ * [C, C + U+F8FF] mais uma igualdade exata sobre os ancestrais de C.
+ */
+public final class GeoQueryPlanner {
+    // Precisão 9 ≈ 4,8 x 4,8 m
+    public static final int STORAGE_PRECISION = 9;
+    // Até 4 células por consulta, como no GeoFire
+    private static final int MAX_QUERY_CELLS = 4;
+    public static final String RANGE_END_SUFFIX = "\uf8ff";
+
+    private GeoQueryPlanner() {
+    }
+
+    /**
+     * Intervalo de geohashes [start, end] consultável com orderBy/startAt/endAt
+     */
+    public static class Range {
+        private final String start;
+        private final String end;
+
+        Range(String start, String end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getStart() { return start; }
+        public String getEnd() { return end; }
+    }
+
+    /**
+     * Conjunto de consultas que cobre uma área do mapa
+     */
+    public static class Plan {
+        private final List<String> cells;
+        private final List<Range> ranges;
+        private final List<String> ancestors;
+
+        Plan(List<String> cells, List<Range> ranges, List<String> ancestors) {
+            this.cells = cells;
+            this.ranges = ranges;
+            this.ancestors = ancestors;
+        }
+
+        // Células que cobrem a área
+        public List<String> getCells() { return cells; }
+        // Intervalos de prefixo (células consecutivas já unidas)
+        public List<Range> getRanges() { return ranges; }
+        // Geohashes exatos de células maiores que contêm a área
+        public List<String> getAncestors() { return ancestors; }
+    }
+
+    /**
+     * Calcula o geohash a ser salvo num território
+     * @param polygon Polígono do território
+     * @return Menor célula que contém o polígono, ou null se o polígono estiver vazio
+     */
+    public static String cellFor(List<LocationPoint> polygon) {
+        BoundingBox bounds = BoundingBox.fromPoints(polygon);
+        if (bounds == null) {
+            return null;
+        }
+        return GeoHash.coveringCell(bounds, STORAGE_PRECISION);
+    }
+
+    /**
+     * Monta o menor conjunto de consultas que cobre a área
+     * @param viewport Área visível do mapa
+     * @return Plano de consultas
+     */
+    public static Plan plan(BoundingBox viewport) {
+        int precision = GeoHash.precisionFor(viewport, MAX_QUERY_CELLS, STORAGE_PRECISION);
+        return plan(GeoHash.cover(viewport, precision));
+    }
+
+    /**
+     * Monta as consultas para um conjunto de células já escolhido
+     * @param cells Células ordenadas, todas da mesma precisão
+     * @return Plano de consultas
+     */
+    public static Plan plan(List<String> cells) {
+        List<Range> ranges = new ArrayList<>();
+        int i = 0;
+        while (i < cells.size()) {
+            // Células consecutivas na ordem do geohash formam um único intervalo
+            int j = i;
+            while (j + 1 < cells.size() && cells.get(j + 1).equals(increment(cells.get(j)))) {
+                j++;
+            }
+            ranges.add(new Range(cells.get(i), cells.get(j) + RANGE_END_SUFFIX));
+            i = j + 1;
+        }
+
+        TreeSet<String> ancestors = new TreeSet<>();
+        for (String cell : cells) {
+            for (int length = 0; length < cell.length(); length++) {
+                ancestors.add(cell.substring(0, length));
+            }
+        }
+        return new Plan(cells, ranges, new ArrayList<>(ancestors));
+    }
+
+    /**
+     * Próxima célula na ordem do geohash, ou null se for a última
+     */
+    static String increment(String cell) {
+        String digits = "0123456789bcdefghjkmnpqrstuvwxyz";
+        char[] chars = cell.toCharArray();
+        for (int i = chars.length - 1; i >= 0; i--) {
+            int value = digits.indexOf(chars[i]);
+            if (value < 31) {
+                chars[i] = digits.charAt(value + 1);
+                return new String(chars);
+            }
+            chars[i] = '0';
+        }
+        return null;
+    }
+}
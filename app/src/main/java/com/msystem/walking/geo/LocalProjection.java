@@ -0,0 +1,38 @@
+package com.msystem.walking.geo;
+
+/**
+ * Projeção equiretangular em torno de uma origem, em metros.
+ * Boa para áreas de alguns quilômetros, como rotas e territórios.
+ */
+public class LocalProjection {
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    private final double originLatitude;
+    private final double originLongitude;
+    private final double metersPerDegreeLon;
+
+    public LocalProjection(double originLatitude, double originLongitude) {
+        this.originLatitude = originLatitude;
+        this.originLongitude = originLongitude;
+        this.metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(originLatitude));
+    }
+
+    public double getOriginLatitude() { return originLatitude; }
+    public double getOriginLongitude() { return originLongitude; }
+
+    public double toX(double longitude) {
+        return (longitude - originLongitude) * metersPerDegreeLon;
+    }
+
+    public double toY(double latitude) {
+        return (latitude - originLatitude) * METERS_PER_DEGREE;
+    }
+
+    public double toLongitude(double x) {
+        return originLongitude + x / metersPerDegreeLon;
+    }
+
+    public double toLatitude(double y) {
+        return originLatitude + y / METERS_PER_DEGREE;
+    }
+}
@@ -0,0 +1,132 @@
+package com.msystem.walking.geo;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto de longs com endereçamento aberto, sem objetos por elemento.
+ * Usado para guardar células de grade sem o custo de boxing de HashSet<Long>.
+ */
+public class LongHashSet {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] slots;
+    private int size;
+    private boolean hasEmptyKey;
+
+    public LongHashSet() {
+        this(64);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        slots = new long[capacity];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return hasEmptyKey;
+        }
+        int mask = slots.length - 1;
+        int index = hash(key) & mask;
+        while (true) {
+            long slot = slots[index];
+            if (slot == EMPTY) {
+                return false;
+            }
+            if (slot == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Adiciona uma chave
+     * @return true se a chave ainda não existia
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (hasEmptyKey) {
+                return false;
+            }
+            hasEmptyKey = true;
+            size++;
+            return true;
+        }
+        if ((size + 1) * 2 > slots.length) {
+            grow();
+        }
+        int mask = slots.length - 1;
+        int index = hash(key) & mask;
+        while (true) {
+            long slot = slots[index];
+            if (slot == EMPTY) {
+                slots[index] = key;
+                size++;
+                return true;
+            }
+            if (slot == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Esvazia o conjunto mantendo a capacidade (sem alocação)
+     */
+    public void clear() {
+        Arrays.fill(slots, EMPTY);
+        size = 0;
+        hasEmptyKey = false;
+    }
+
+    /**
+     * Quantidade de posições para percorrer com {@link #isSlotUsed(int)} e {@link #keyAt(int)}.
+     * A chave Long.MIN_VALUE não é devolvida por essa iteração.
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    public boolean isSlotUsed(int slot) {
+        return slots[slot] != EMPTY;
+    }
+
+    public long keyAt(int slot) {
+        return slots[slot];
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int index = hash(key) & mask;
+                while (slots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = key;
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,571 @@
+package com.msystem.walking.geo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Operações booleanas (interseção, união e diferença) entre polígonos com
+ * buracos, pelo algoritmo de Greiner-Hormann estendido a vários anéis.
+ *
+ * Os anéis são arrays intercalados {x0, y0, x1, y1, ...} num plano local em
+ * metros (veja {@link LocalProjection}), sem repetir o primeiro vértice no
+ * final. Um ponto está no polígono quando está dentro de um número ímpar dos
+ * seus anéis (borda externa e buracos), e os cruzamentos são calculados entre
+ * todos os anéis dos dois polígonos. Casos degenerados (vértice sobre aresta,
+ * arestas colineares) são resolvidos deslocando o polígono de recorte alguns
+ * micrômetros e repetindo, o que não altera as áreas de forma perceptível.
+ *
+ * O resultado é uma lista de polígonos, cada um com a borda externa
+ * anti-horária e os buracos horários: um recorte que fica todo dentro do
+ * polígono vira um buraco explícito, e o resultado pode ser recortado de novo.
+ */
+public final class PolygonClipper {
+    private static final double PARAMETER_EPSILON = 1e-9;
+    private static final double PERTURBATION = 1e-5;
+    private static final int MAX_ATTEMPTS = 8;
+
+    private enum Operation { INTERSECTION, UNION, DIFFERENCE }
+
+    private PolygonClipper() {
+    }
+
+    /**
+     * Polígono com borda externa e buracos, em metros
+     */
+    public static final class Polygon {
+        private final double[] outer;
+        private final List<double[]> holes;
+
+        public Polygon(double[] outer) {
+            this(outer, new ArrayList<double[]>());
+        }
+
+        public Polygon(double[] outer, List<double[]> holes) {
+            this.outer = outer;
+            this.holes = holes;
+        }
+
+        public double[] getOuter() {
+            return outer;
+        }
+
+        public List<double[]> getHoles() {
+            return holes;
+        }
+
+        // Área da borda externa menos a dos buracos
+        public double area() {
+            double total = PolygonClipper.area(outer);
+            for (int i = 0; i < holes.size(); i++) {
+                total -= PolygonClipper.area(holes.get(i));
+            }
+            return total;
+        }
+    }
+
+    private static final class Vertex {
+        double x;
+        double y;
+        Vertex next;
+        Vertex prev;
+        Vertex neighbor;
+        boolean intersection;
+        boolean entry;
+        boolean visited;
+        double alpha;
+
+        Vertex(double x, double y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    // Sinaliza um caso degenerado que exige perturbação
+    private static final class DegenerateException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    public static List<Polygon> intersection(Polygon subject, Polygon clip) {
+        return clip(subject, clip, Operation.INTERSECTION);
+    }
+
+    public static List<Polygon> union(Polygon subject, Polygon clip) {
+        return clip(subject, clip, Operation.UNION);
+    }
+
+    /**
+     * Parte do subject que fica fora do clip
+     */
+    public static List<Polygon> difference(Polygon subject, Polygon clip) {
+        return clip(subject, clip, Operation.DIFFERENCE);
+    }
+
+    // Variantes para polígonos sem buracos
+
+    public static List<Polygon> intersection(double[] subject, double[] clip) {
+        return intersection(new Polygon(subject), new Polygon(clip));
+    }
+
+    public static List<Polygon> union(double[] subject, double[] clip) {
+        return union(new Polygon(subject), new Polygon(clip));
+    }
+
+    public static List<Polygon> difference(double[] subject, double[] clip) {
+        return difference(new Polygon(subject), new Polygon(clip));
+    }
+
+    /**
+     * Área de um anel (sempre positiva)
+     */
+    public static double area(double[] ring) {
+        return Math.abs(signedArea(ring));
+    }
+
+    /**
+     * Soma das áreas de vários polígonos (descontando os buracos)
+     */
+    public static double area(List<Polygon> polygons) {
+        double total = 0;
+        for (Polygon polygon : polygons) {
+            total += polygon.area();
+        }
+        return total;
+    }
+
+    /**
+     * @throws IllegalStateException se a geometria continuar degenerada depois de
+     *         todas as perturbações (ex: anéis que se cruzam)
+     */
+    private static List<Polygon> clip(Polygon subject, Polygon clip, Operation operation) {
+        List<double[]> subjectRings = rings(subject);
+        List<double[]> clipRings = rings(clip);
+        if (subjectRings.isEmpty() || clipRings.isEmpty()) {
+            return trivialResult(subjectRings, clipRings, operation);
+        }
+
+        List<double[]> shiftedClip = clipRings;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            try {
+                return clipOnce(subjectRings, shiftedClip, operation);
+            } catch (DegenerateException e) {
+                double angle = 0.7 + attempt * 1.3;
+                double distance = PERTURBATION * (attempt + 1);
+                shiftedClip = new ArrayList<>(clipRings.size());
+                for (double[] ring : clipRings) {
+                    shiftedClip.add(translate(ring, distance * Math.cos(angle), distance * Math.sin(angle)));
+                }
+            }
+        }
+        throw new IllegalStateException("Não foi possível resolver a geometria degenerada");
+    }
+
+    // Anéis válidos do polígono, borda externa primeiro; vazio se a borda externa não for válida
+    private static List<double[]> rings(Polygon polygon) {
+        List<double[]> rings = new ArrayList<>();
+        double[] outer = removeDuplicates(polygon.getOuter());
+        if (outer.length < 6) {
+            return rings;
+        }
+        rings.add(outer);
+        for (double[] hole : polygon.getHoles()) {
+            double[] clean = removeDuplicates(hole);
+            if (clean.length >= 6) {
+                rings.add(clean);
+            }
+        }
+        return rings;
+    }
+
+    private static List<Polygon> trivialResult(List<double[]> subject, List<double[]> clip, Operation operation) {
+        List<Polygon> result = new ArrayList<>();
+        if (operation != Operation.INTERSECTION) {
+            result.addAll(organize(subject));
+        }
+        if (operation == Operation.UNION) {
+            result.addAll(organize(clip));
+        }
+        return result;
+    }
+
+    private static List<Polygon> clipOnce(List<double[]> subject, List<double[]> clip, Operation operation)
+            throws DegenerateException {
+        Vertex[][] subjectVertices = new Vertex[subject.size()][];
+        Vertex[][] clipVertices = new Vertex[clip.size()][];
+        for (int i = 0; i < subject.size(); i++) {
+            subjectVertices[i] = toVertices(subject.get(i));
+        }
+        for (int j = 0; j < clip.size(); j++) {
+            clipVertices[j] = toVertices(clip.get(j));
+        }
+
+        boolean[] subjectCrossed = new boolean[subject.size()];
+        boolean[] clipCrossed = new boolean[clip.size()];
+        for (int i = 0; i < subject.size(); i++) {
+            for (int j = 0; j < clip.size(); j++) {
+                if (insertIntersections(subjectVertices[i], clipVertices[j])) {
+                    subjectCrossed[i] = true;
+                    clipCrossed[j] = true;
+                }
+            }
+        }
+
+        // Na união percorremos as partes de fora; na diferença, a parte do subject fora do clip
+        boolean invertSubject = operation != Operation.INTERSECTION;
+        boolean invertClip = operation == Operation.UNION;
+        List<double[]> rings = new ArrayList<>();
+        for (int i = 0; i < subject.size(); i++) {
+            double[] ring = subject.get(i);
+            boolean inside = contains(clip, ring[0], ring[1]);
+            if (subjectCrossed[i]) {
+                markEntries(subjectVertices[i][0], inside, invertSubject);
+            } else if (inside == (operation == Operation.INTERSECTION)) {
+                // Anel que não cruza o clip: fica inteiro ou some
+                rings.add(ring);
+            }
+        }
+        for (int j = 0; j < clip.size(); j++) {
+            double[] ring = clip.get(j);
+            boolean inside = contains(subject, ring[0], ring[1]);
+            if (clipCrossed[j]) {
+                markEntries(clipVertices[j][0], inside, invertClip);
+            } else if (inside == (operation != Operation.UNION)) {
+                rings.add(ring);
+            }
+        }
+
+        for (int i = 0; i < subject.size(); i++) {
+            if (subjectCrossed[i]) {
+                rings.addAll(traverse(subjectVertices[i][0]));
+            }
+        }
+        return organize(rings);
+    }
+
+    private static Vertex[] toVertices(double[] ring) {
+        int count = ring.length / 2;
+        Vertex[] vertices = new Vertex[count];
+        for (int i = 0; i < count; i++) {
+            vertices[i] = new Vertex(ring[i * 2], ring[i * 2 + 1]);
+        }
+        for (int i = 0; i < count; i++) {
+            vertices[i].next = vertices[(i + 1) % count];
+            vertices[i].prev = vertices[(i + count - 1) % count];
+        }
+        return vertices;
+    }
+
+    /**
+     * Fase 1: calcula todos os cruzamentos entre as arestas e os insere nas duas listas
+     */
+    private static boolean insertIntersections(Vertex[] subject, Vertex[] clip) throws DegenerateException {
+        boolean found = false;
+        for (int i = 0; i < subject.length; i++) {
+            Vertex s1 = subject[i];
+            Vertex s2 = subject[(i + 1) % subject.length];
+            double sMinX = Math.min(s1.x, s2.x);
+            double sMaxX = Math.max(s1.x, s2.x);
+            double sMinY = Math.min(s1.y, s2.y);
+            double sMaxY = Math.max(s1.y, s2.y);
+            for (int j = 0; j < clip.length; j++) {
+                Vertex c1 = clip[j];
+                Vertex c2 = clip[(j + 1) % clip.length];
+                // Descarte rápido pelo retângulo das arestas, antes de qualquer divisão
+                if (Math.max(c1.x, c2.x) < sMinX || Math.min(c1.x, c2.x) > sMaxX
+                        || Math.max(c1.y, c2.y) < sMinY || Math.min(c1.y, c2.y) > sMaxY) {
+                    continue;
+                }
+
+                double sdx = s2.x - s1.x;
+                double sdy = s2.y - s1.y;
+                double cdx = c2.x - c1.x;
+                double cdy = c2.y - c1.y;
+                double denominator = sdx * cdy - sdy * cdx;
+                double ox = c1.x - s1.x;
+                double oy = c1.y - s1.y;
+
+                if (Math.abs(denominator) < 1e-18) {
+                    // Arestas paralelas: só importam se forem colineares e se tocarem
+                    double cross = ox * sdy - oy * sdx;
+                    if (Math.abs(cross) < 1e-12 && rangesOverlap(s1, s2, c1, c2)) {
+                        throw new DegenerateException();
+                    }
+                    continue;
+                }
+
+                double alphaS = (ox * cdy - oy * cdx) / denominator;
+                double alphaC = (ox * sdy - oy * sdx) / denominator;
+                boolean inS = alphaS > PARAMETER_EPSILON && alphaS < 1 - PARAMETER_EPSILON;
+                boolean inC = alphaC > PARAMETER_EPSILON && alphaC < 1 - PARAMETER_EPSILON;
+                boolean touchesS = alphaS >= -PARAMETER_EPSILON && alphaS <= 1 + PARAMETER_EPSILON;
+                boolean touchesC = alphaC >= -PARAMETER_EPSILON && alphaC <= 1 + PARAMETER_EPSILON;
+
+                if (inS && inC) {
+                    Vertex a = new Vertex(s1.x + alphaS * sdx, s1.y + alphaS * sdy);
+                    Vertex b = new Vertex(a.x, a.y);
+                    a.intersection = true;
+                    b.intersection = true;
+                    a.alpha = alphaS;
+                    b.alpha = alphaC;
+                    a.neighbor = b;
+                    b.neighbor = a;
+                    insertBetween(a, s1, s2);
+                    insertBetween(b, c1, c2);
+                    found = true;
+                } else if (touchesS && touchesC) {
+                    // O cruzamento cai sobre um vértice
+                    throw new DegenerateException();
+                }
+            }
+        }
+        return found;
+    }
+
+    private static boolean rangesOverlap(Vertex s1, Vertex s2, Vertex c1, Vertex c2) {
+        boolean useX = Math.abs(s2.x - s1.x) >= Math.abs(s2.y - s1.y);
+        double a1 = useX ? s1.x : s1.y;
+        double a2 = useX ? s2.x : s2.y;
+        double b1 = useX ? c1.x : c1.y;
+        double b2 = useX ? c2.x : c2.y;
+        return Math.max(Math.min(a1, a2), Math.min(b1, b2)) <= Math.min(Math.max(a1, a2), Math.max(b1, b2));
+    }
+
+    /**
+     * Insere o cruzamento entre os vértices originais start e end, ordenado pelo parâmetro alpha
+     */
+    private static void insertBetween(Vertex vertex, Vertex start, Vertex end) {
+        Vertex current = start;
+        while (current.next != end && current.next.alpha < vertex.alpha) {
+            current = current.next;
+        }
+        vertex.next = current.next;
+        vertex.prev = current;
+        current.next.prev = vertex;
+        current.next = vertex;
+    }
+
+    /**
+     * Fase 2: marca cada cruzamento como entrada ou saída do outro polígono
+     */
+    private static void markEntries(Vertex first, boolean startsInside, boolean invert) {
+        boolean inside = startsInside;
+        Vertex current = first;
+        do {
+            if (current.intersection) {
+                current.entry = invert ? inside : !inside;
+                inside = !inside;
+            }
+            current = current.next;
+        } while (current != first);
+    }
+
+    /**
+     * Fase 3: percorre as listas trocando de polígono a cada cruzamento
+     */
+    private static List<double[]> traverse(Vertex subjectFirst) {
+        List<double[]> result = new ArrayList<>();
+        Vertex start = nextUnvisited(subjectFirst);
+        while (start != null) {
+            double[] ring = new double[16];
+            int count = 0;
+            Vertex current = start;
+            do {
+                current.visited = true;
+                current.neighbor.visited = true;
+                if (current.entry) {
+                    do {
+                        ring = add(ring, count++, current);
+                        current = current.next;
+                    } while (!current.intersection);
+                } else {
+                    do {
+                        ring = add(ring, count++, current);
+                        current = current.prev;
+                    } while (!current.intersection);
+                }
+                current = current.neighbor;
+            } while (!current.visited);
+
+            double[] trimmed = java.util.Arrays.copyOf(ring, count * 2);
+            if (count >= 3 && area(trimmed) > 1e-9) {
+                result.add(trimmed);
+            }
+            start = nextUnvisited(subjectFirst);
+        }
+        return result;
+    }
+
+    private static Vertex nextUnvisited(Vertex first) {
+        Vertex current = first;
+        do {
+            if (current.intersection && !current.visited) {
+                return current;
+            }
+            current = current.next;
+        } while (current != first);
+        return null;
+    }
+
+    private static double[] add(double[] ring, int index, Vertex vertex) {
+        if (index * 2 + 2 > ring.length) {
+            ring = java.util.Arrays.copyOf(ring, ring.length * 2);
+        }
+        ring[index * 2] = vertex.x;
+        ring[index * 2 + 1] = vertex.y;
+        return ring;
+    }
+
+    /**
+     * Separa os anéis do resultado em polígonos: um anel dentro de um número par
+     * de outros é borda externa, e um anel dentro de um número ímpar é buraco do
+     * menor anel que o contém
+     */
+    private static List<Polygon> organize(List<double[]> rings) {
+        List<Polygon> result = new ArrayList<>();
+        int count = rings.size();
+        if (count == 1) {
+            result.add(new Polygon(oriented(rings.get(0), true)));
+            return result;
+        }
+
+        double[] areas = new double[count];
+        for (int i = 0; i < count; i++) {
+            areas[i] = area(rings.get(i));
+        }
+        int[] depth = new int[count];
+        int[] parent = new int[count];
+        for (int i = 0; i < count; i++) {
+            parent[i] = -1;
+            for (int j = 0; j < count; j++) {
+                if (j != i && areas[j] > areas[i] && containsRing(rings.get(j), rings.get(i))) {
+                    depth[i]++;
+                    if (parent[i] < 0 || areas[j] < areas[parent[i]]) {
+                        parent[i] = j;
+                    }
+                }
+            }
+        }
+
+        Polygon[] polygons = new Polygon[count];
+        for (int i = 0; i < count; i++) {
+            if (depth[i] % 2 == 0) {
+                polygons[i] = new Polygon(oriented(rings.get(i), true));
+                result.add(polygons[i]);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (depth[i] % 2 == 1 && polygons[parent[i]] != null) {
+                polygons[parent[i]].getHoles().add(oriented(rings.get(i), false));
+            }
+        }
+        return result;
+    }
+
+    // O anel na orientação pedida (anti-horária para bordas externas)
+    private static double[] oriented(double[] ring, boolean counterClockwise) {
+        if ((signedArea(ring) > 0) == counterClockwise) {
+            return ring;
+        }
+        int count = ring.length / 2;
+        double[] reversed = new double[ring.length];
+        for (int i = 0; i < count; i++) {
+            reversed[i * 2] = ring[(count - 1 - i) * 2];
+            reversed[i * 2 + 1] = ring[(count - 1 - i) * 2 + 1];
+        }
+        return reversed;
+    }
+
+    // Os anéis do resultado não se cruzam; basta um vértice que não esteja sobre a borda
+    private static boolean containsRing(double[] outer, double[] inner) {
+        int inside = 0;
+        int count = inner.length / 2;
+        for (int i = 0; i < count; i++) {
+            if (contains(outer, inner[i * 2], inner[i * 2 + 1])) {
+                inside++;
+            }
+        }
+        return inside * 2 > count;
+    }
+
+    /**
+     * Teste par-ímpar de ponto dentro de anel
+     */
+    public static boolean contains(double[] ring, double px, double py) {
+        boolean inside = false;
+        int count = ring.length / 2;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            double xi = ring[i * 2];
+            double yi = ring[i * 2 + 1];
+            double xj = ring[j * 2];
+            double yj = ring[j * 2 + 1];
+            if ((yi > py) != (yj > py) && px < (xj - xi) * (py - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Teste par-ímpar de ponto dentro de um polígono com buracos
+     */
+    public static boolean contains(Polygon polygon, double px, double py) {
+        if (!contains(polygon.getOuter(), px, py)) {
+            return false;
+        }
+        for (double[] hole : polygon.getHoles()) {
+            if (contains(hole, px, py)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Dentro de um número ímpar dos anéis
+    private static boolean contains(List<double[]> rings, double px, double py) {
+        boolean inside = false;
+        for (int i = 0; i < rings.size(); i++) {
+            if (contains(rings.get(i), px, py)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    static double signedArea(double[] ring) {
+        int count = ring.length / 2;
+        double sum = 0;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            sum += ring[j * 2] * ring[i * 2 + 1] - ring[i * 2] * ring[j * 2 + 1];
+        }
+        return sum / 2;
+    }
+
+    private static double[] translate(double[] ring, double dx, double dy) {
+        double[] moved = new double[ring.length];
+        for (int i = 0; i < ring.length; i += 2) {
+            moved[i] = ring[i] + dx;
+            moved[i + 1] = ring[i + 1] + dy;
+        }
+        return moved;
+    }
+
+    private static double[] removeDuplicates(double[] ring) {
+        int count = ring.length / 2;
+        double[] clean = new double[ring.length];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            double x = ring[i * 2];
+            double y = ring[i * 2 + 1];
+            if (kept > 0 && x == clean[(kept - 1) * 2] && y == clean[(kept - 1) * 2 + 1]) {
+                continue;
+            }
+            clean[kept * 2] = x;
+            clean[kept * 2 + 1] = y;
+            kept++;
+        }
+        // Anel fechado repetindo o primeiro vértice no final
+        if (kept > 1 && clean[0] == clean[(kept - 1) * 2] && clean[1] == clean[(kept - 1) * 2 + 1]) {
+            kept--;
+        }
+        return java.util.Arrays.copyOf(clean, kept * 2);
+    }
+}
@@ -0,0 +1,416 @@
+package com.msystem.walking.geo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * R-tree em memória sobre retângulos de latitude/longitude.
+ *
+ * Pode ser montada de uma vez pelo método STR (Sort-Tile-Recursive), que gera
+ * nós cheios e pouco sobrepostos, e depois receber inserções dinâmicas com
+ * divisão quadrática. As buscas por retângulo visitam O(log n + k) nós.
+ *
+ * {@link #snapshot()} devolve uma cópia em O(1) que compartilha os nós com a
+ * árvore: depois dela, cada inserção ou remoção copia só os nós do caminho que
+ * altera (cópia na escrita), e a cópia nunca mais muda.
+ *
+ * Não é thread-safe; uma cópia de {@link #snapshot()} pode ser lida por outras
+ * threads enquanto a árvore original continua sendo alterada.
+ */
+public class RTree<T> {
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 6;
+
+    // Nós criados com o dono atual podem ser alterados no lugar; os outros são copiados antes
+    private Object owner = new Object();
+    private Node root = new Node(true, owner);
+    private int size;
+
+    private static final class Entry {
+        double minX;
+        double minY;
+        double maxX;
+        double maxY;
+        Node child;
+        Object item;
+
+        Entry(double minX, double minY, double maxX, double maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        Entry copy() {
+            Entry entry = new Entry(minX, minY, maxX, maxY);
+            entry.child = child;
+            entry.item = item;
+            return entry;
+        }
+
+        static Entry forNode(Node node) {
+            Entry entry = new Entry(0, 0, 0, 0);
+            entry.child = node;
+            entry.refresh();
+            return entry;
+        }
+
+        void refresh() {
+            List<Entry> entries = child.entries;
+            minX = Double.MAX_VALUE;
+            minY = Double.MAX_VALUE;
+            maxX = -Double.MAX_VALUE;
+            maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < entries.size(); i++) {
+                include(entries.get(i));
+            }
+        }
+
+        void include(Entry other) {
+            minX = Math.min(minX, other.minX);
+            minY = Math.min(minY, other.minY);
+            maxX = Math.max(maxX, other.maxX);
+            maxY = Math.max(maxY, other.maxY);
+        }
+
+        double area() {
+            return (maxX - minX) * (maxY - minY);
+        }
+
+        double enlargedArea(Entry other) {
+            return (Math.max(maxX, other.maxX) - Math.min(minX, other.minX))
+                    * (Math.max(maxY, other.maxY) - Math.min(minY, other.minY));
+        }
+
+        boolean intersects(double qMinX, double qMinY, double qMaxX, double qMaxY) {
+            return qMinX <= maxX && qMaxX >= minX && qMinY <= maxY && qMaxY >= minY;
+        }
+
+        double centerX() {
+            return (minX + maxX) / 2;
+        }
+
+        double centerY() {
+            return (minY + maxY) / 2;
+        }
+    }
+
+    private static final class Node {
+        final boolean leaf;
+        final Object owner;
+        final ArrayList<Entry> entries = new ArrayList<>(MAX_ENTRIES + 1);
+
+        Node(boolean leaf, Object owner) {
+            this.leaf = leaf;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Monta a árvore de uma vez pelo método STR
+     * @param items Itens a indexar
+     * @param bounds Retângulo de cada item, na mesma ordem
+     * @return Árvore com todos os itens
+     */
+    public static <T> RTree<T> bulkLoad(List<T> items, List<BoundingBox> bounds) {
+        RTree<T> tree = new RTree<>();
+        if (items.isEmpty()) {
+            return tree;
+        }
+
+        List<Entry> entries = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            BoundingBox box = bounds.get(i);
+            Entry entry = new Entry(box.getMinLongitude(), box.getMinLatitude(), box.getMaxLongitude(), box.getMaxLatitude());
+            entry.item = items.get(i);
+            entries.add(entry);
+        }
+        tree.size = entries.size();
+
+        boolean leaf = true;
+        while (true) {
+            List<Node> nodes = packLevel(entries, leaf, tree.owner);
+            if (nodes.size() == 1) {
+                tree.root = nodes.get(0);
+                return tree;
+            }
+            entries = new ArrayList<>(nodes.size());
+            for (Node node : nodes) {
+                entries.add(Entry.forNode(node));
+            }
+            leaf = false;
+        }
+    }
+
+    /**
+     * Agrupa as entradas de um nível em nós: ordena por X, corta em faixas
+     * verticais e, dentro de cada faixa, ordena por Y
+     */
+    private static List<Node> packLevel(List<Entry> entries, boolean leaf, Object owner) {
+        int nodeCount = (int) Math.ceil(entries.size() / (double) MAX_ENTRIES);
+        int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = sliceCount * MAX_ENTRIES;
+
+        Collections.sort(entries, (a, b) -> Double.compare(a.centerX(), b.centerX()));
+
+        List<Node> nodes = new ArrayList<>(nodeCount);
+        for (int sliceStart = 0; sliceStart < entries.size(); sliceStart += sliceSize) {
+            List<Entry> slice = new ArrayList<>(entries.subList(sliceStart, Math.min(entries.size(), sliceStart + sliceSize)));
+            Collections.sort(slice, (a, b) -> Double.compare(a.centerY(), b.centerY()));
+
+            for (int start = 0; start < slice.size(); start += MAX_ENTRIES) {
+                Node node = new Node(leaf, owner);
+                node.entries.addAll(slice.subList(start, Math.min(slice.size(), start + MAX_ENTRIES)));
+                nodes.add(node);
+            }
+        }
+        return nodes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Cópia imutável do conteúdo atual, em O(1). As alterações seguintes desta
+     * árvore não aparecem na cópia.
+     * @return Árvore somente leitura com os itens atuais
+     */
+    public RTree<T> snapshot() {
+        RTree<T> copy = new RTree<>();
+        copy.root = root;
+        copy.size = size;
+        // Os nós atuais passam a ser compartilhados: ninguém mais os altera no lugar
+        owner = new Object();
+        return copy;
+    }
+
+    // O nó, se pertence a esta árvore; senão, uma cópia dele que pertence
+    private Node own(Node node) {
+        if (node.owner == owner) {
+            return node;
+        }
+        Node copy = new Node(node.leaf, owner);
+        for (int i = 0; i < node.entries.size(); i++) {
+            copy.entries.add(node.entries.get(i).copy());
+        }
+        return copy;
+    }
+
+    /**
+     * Insere um item
+     * @param item Item a indexar
+     * @param box Retângulo envolvente do item
+     */
+    public void insert(T item, BoundingBox box) {
+        Entry entry = new Entry(box.getMinLongitude(), box.getMinLatitude(), box.getMaxLongitude(), box.getMaxLatitude());
+        entry.item = item;
+
+        root = own(root);
+        Node split = insert(root, entry);
+        if (split != null) {
+            Node newRoot = new Node(false, owner);
+            newRoot.entries.add(Entry.forNode(root));
+            newRoot.entries.add(Entry.forNode(split));
+            root = newRoot;
+        }
+        size++;
+    }
+
+    // O nó já pertence a esta árvore
+    private Node insert(Node node, Entry entry) {
+        if (node.leaf) {
+            node.entries.add(entry);
+        } else {
+            Entry best = chooseSubtree(node, entry);
+            best.child = own(best.child);
+            Node split = insert(best.child, entry);
+            best.refresh();
+            if (split != null) {
+                node.entries.add(Entry.forNode(split));
+            }
+        }
+        return node.entries.size() > MAX_ENTRIES ? split(node) : null;
+    }
+
+    private Entry chooseSubtree(Node node, Entry entry) {
+        Entry best = null;
+        double bestEnlargement = Double.MAX_VALUE;
+        double bestArea = Double.MAX_VALUE;
+        for (int i = 0; i < node.entries.size(); i++) {
+            Entry candidate = node.entries.get(i);
+            double area = candidate.area();
+            double enlargement = candidate.enlargedArea(entry) - area;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best = candidate;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Divisão quadrática: as sementes são o par que desperdiça mais área juntas,
+     * e cada entrada restante vai para o grupo que menos cresce
+     * @return Novo nó irmão com parte das entradas
+     */
+    private Node split(Node node) {
+        List<Entry> entries = new ArrayList<>(node.entries);
+        node.entries.clear();
+        Node sibling = new Node(node.leaf, owner);
+
+        int seedA = 0;
+        int seedB = 1;
+        double worstWaste = -Double.MAX_VALUE;
+        for (int i = 0; i < entries.size(); i++) {
+            for (int j = i + 1; j < entries.size(); j++) {
+                Entry a = entries.get(i);
+                Entry b = entries.get(j);
+                double waste = a.enlargedArea(b) - a.area() - b.area();
+                if (waste > worstWaste) {
+                    worstWaste = waste;
+                    seedA = i;
+                    seedB = j;
+                }
+            }
+        }
+
+        Entry boundsA = copyBounds(entries.get(seedA));
+        Entry boundsB = copyBounds(entries.get(seedB));
+        node.entries.add(entries.get(seedA));
+        sibling.entries.add(entries.get(seedB));
+        entries.remove(seedB);
+        entries.remove(seedA);
+
+        while (!entries.isEmpty()) {
+            // Garantir o preenchimento mínimo de cada grupo
+            if (node.entries.size() + entries.size() <= MIN_ENTRIES) {
+                node.entries.addAll(entries);
+                break;
+            }
+            if (sibling.entries.size() + entries.size() <= MIN_ENTRIES) {
+                sibling.entries.addAll(entries);
+                break;
+            }
+
+            int next = 0;
+            double maxDifference = -1;
+            for (int i = 0; i < entries.size(); i++) {
+                Entry e = entries.get(i);
+                double difference = Math.abs((boundsA.enlargedArea(e) - boundsA.area()) - (boundsB.enlargedArea(e) - boundsB.area()));
+                if (difference > maxDifference) {
+                    maxDifference = difference;
+                    next = i;
+                }
+            }
+
+            Entry e = entries.remove(next);
+            double growthA = boundsA.enlargedArea(e) - boundsA.area();
+            double growthB = boundsB.enlargedArea(e) - boundsB.area();
+            boolean toA = growthA < growthB
+                    || (growthA == growthB && node.entries.size() <= sibling.entries.size());
+            if (toA) {
+                node.entries.add(e);
+                boundsA.include(e);
+            } else {
+                sibling.entries.add(e);
+                boundsB.include(e);
+            }
+        }
+        return sibling;
+    }
+
+    private static Entry copyBounds(Entry entry) {
+        return new Entry(entry.minX, entry.minY, entry.maxX, entry.maxY);
+    }
+
+    /**
+     * Remove um item (comparado por identidade). Os nós não são rebalanceados;
+     * para muitas remoções prefira reconstruir com {@link #bulkLoad}.
+     * @return true se o item estava na árvore
+     */
+    public boolean remove(T item, BoundingBox box) {
+        Node changed = remove(root, item, box.getMinLongitude(), box.getMinLatitude(), box.getMaxLongitude(), box.getMaxLatitude());
+        if (changed != null) {
+            root = changed;
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Procura sem alterar nada; só o caminho até o item é copiado (se compartilhado)
+     * @return O nó já sem o item (talvez uma cópia), ou null se o item não está abaixo dele
+     */
+    private Node remove(Node node, Object item, double minX, double minY, double maxX, double maxY) {
+        for (int i = 0; i < node.entries.size(); i++) {
+            Entry entry = node.entries.get(i);
+            if (!entry.intersects(minX, minY, maxX, maxY)) {
+                continue;
+            }
+            if (node.leaf) {
+                if (entry.item == item) {
+                    Node owned = own(node);
+                    owned.entries.remove(i);
+                    return owned;
+                }
+                continue;
+            }
+            Node child = remove(entry.child, item, minX, minY, maxX, maxY);
+            if (child != null) {
+                Node owned = own(node);
+                if (child.entries.isEmpty()) {
+                    owned.entries.remove(i);
+                } else {
+                    Entry parent = owned.entries.get(i);
+                    parent.child = child;
+                    parent.refresh();
+                }
+                return owned;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Busca os itens cujo retângulo intersecta a região
+     * @param box Região consultada
+     * @return Itens encontrados
+     */
+    public List<T> search(BoundingBox box) {
+        List<T> result = new ArrayList<>();
+        search(box, result);
+        return result;
+    }
+
+    /**
+     * Variante que acrescenta os resultados numa coleção existente
+     */
+    @SuppressWarnings("unchecked")
+    public void search(BoundingBox box, Collection<T> out) {
+        double minX = box.getMinLongitude();
+        double minY = box.getMinLatitude();
+        double maxX = box.getMaxLongitude();
+        double maxY = box.getMaxLatitude();
+
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.remove(stack.size() - 1);
+            for (int i = 0; i < node.entries.size(); i++) {
+                Entry entry = node.entries.get(i);
+                if (entry.intersects(minX, minY, maxX, maxY)) {
+                    if (node.leaf) {
+                        out.add((T) entry.item);
+                    } else {
+                        stack.add(entry.child);
+                    }
+                }
+            }
+        }
+    }
+}
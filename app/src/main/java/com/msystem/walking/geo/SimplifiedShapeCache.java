@@ -0,0 +1,113 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Guarda o contorno simplificado de cada território para a escala atual do mapa.
+ *
+ * O contorno é simplificado uma vez por tolerância (Douglas-Peucker sobre uma
+ * projeção local) e reaproveitado em todos os quadros seguintes; só é refeito
+ * quando a tolerância muda. A chave é a instância do território: uma versão
+ * nova vinda do Firestore é outro objeto e ganha o seu próprio contorno.
+ */
+public class SimplifiedShapeCache {
+    // Acima disso o cache é esvaziado, para não guardar territórios que saíram do índice
+    private static final int MAX_ENTRIES = 20_000;
+
+    private final IdentityHashMap<Territory, Shape> shapes = new IdentityHashMap<>();
+
+    /**
+     * Contorno simplificado, em graus; os arrays podem ser maiores que {@link #count}
+     */
+    public static final class Shape {
+        public final double[] latitudes;
+        public final double[] longitudes;
+        public int count;
+        // Buracos do território, simplificados da mesma forma (null se não houver)
+        public Shape[] holes;
+        double tolerance = -1;
+
+        Shape(int capacity) {
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+        }
+    }
+
+    /**
+     * Contorno do território simplificado com a tolerância dada
+     * @param territory Território com polígono
+     * @param tolerance Desvio máximo em metros (ex: tamanho de um pixel no zoom atual)
+     * @return Contorno simplificado (o mesmo objeto enquanto a tolerância não mudar)
+     */
+    public Shape get(Territory territory, double tolerance) {
+        Shape shape = shapes.get(territory);
+        if (shape != null && shape.tolerance == tolerance) {
+            return shape;
+        }
+
+        List<LocationPoint> polygon = territory.getPolygon();
+        int size = polygon == null ? 0 : polygon.size();
+        if (shape == null) {
+            if (shapes.size() >= MAX_ENTRIES) {
+                shapes.clear();
+            }
+            shape = new Shape(size);
+            shapes.put(territory, shape);
+        }
+        shape.tolerance = tolerance;
+        if (size == 0) {
+            shape.count = 0;
+            return shape;
+        }
+
+        LocalProjection projection = new LocalProjection(polygon.get(0).getLatitude(), polygon.get(0).getLongitude());
+        simplify(shape, polygon, projection, tolerance);
+
+        List<Territory.Hole> holes = territory.getHoles();
+        if (holes != null && !holes.isEmpty()) {
+            if (shape.holes == null || shape.holes.length != holes.size()) {
+                shape.holes = new Shape[holes.size()];
+            }
+            for (int h = 0; h < holes.size(); h++) {
+                List<LocationPoint> ring = holes.get(h).getPoints();
+                int ringSize = ring == null ? 0 : ring.size();
+                if (shape.holes[h] == null || shape.holes[h].latitudes.length < ringSize) {
+                    shape.holes[h] = new Shape(ringSize);
+                }
+                shape.holes[h].count = 0;
+                if (ringSize > 0) {
+                    simplify(shape.holes[h], ring, projection, tolerance);
+                }
+            }
+        }
+        return shape;
+    }
+
+    private static void simplify(Shape shape, List<LocationPoint> polygon, LocalProjection projection, double tolerance) {
+        int size = polygon.size();
+        for (int i = 0; i < size; i++) {
+            LocationPoint point = polygon.get(i);
+            shape.longitudes[i] = projection.toX(point.getLongitude());
+            shape.latitudes[i] = projection.toY(point.getLatitude());
+        }
+        // Os arrays recebem o anel em metros e voltam para graus depois de compactados
+        int kept = DouglasPeucker.simplifyRing(shape.longitudes, shape.latitudes, size, tolerance);
+        for (int i = 0; i < kept; i++) {
+            shape.longitudes[i] = projection.toLongitude(shape.longitudes[i]);
+            shape.latitudes[i] = projection.toLatitude(shape.latitudes[i]);
+        }
+        shape.count = kept;
+    }
+
+    public int size() {
+        return shapes.size();
+    }
+
+    public void clear() {
+        shapes.clear();
+    }
+}
@@ -0,0 +1,150 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agrupa territórios do mesmo dono que caem na mesma célula de uma grade em
+ * pixels, para desenhar um símbolo por grupo em zooms baixos.
+ *
+ * A grade é fixa no mundo (coordenadas Web Mercator do nível de zoom), então
+ * os grupos não mudam ao arrastar o mapa. Os grupos e as tabelas internas são
+ * reaproveitados entre chamadas: depois de aquecido, agrupar não aloca.
+ * Não é thread-safe.
+ */
+public class TerritoryClusterer {
+    private static final long EMPTY = -1L;
+    // Bits da chave para cada coordenada de célula e para o dono
+    private static final int CELL_BITS = 24;
+    private static final int OWNER_BITS = 16;
+
+    public static final class Cluster {
+        public String ownerId;
+        public String color;
+        public double latitude;
+        public double longitude;
+        public int count;
+    }
+
+    private final List<Cluster> clusters = new ArrayList<>();
+    private int clusterCount;
+    private final Map<String, Integer> ownerIndices = new HashMap<>();
+
+    private long[] keys = new long[256];
+    private int[] values = new int[256];
+
+    /**
+     * Agrupa os territórios
+     * @param territories Territórios visíveis
+     * @param zoom Nível de zoom do mapa
+     * @param cellPixels Lado da célula da grade, em pixels de tela
+     * @return Quantidade de grupos, lidos com {@link #get(int)}
+     */
+    public int cluster(List<Territory> territories, double zoom, double cellPixels) {
+        clusterCount = 0;
+        ensureCapacity(territories.size());
+        Arrays.fill(keys, EMPTY);
+        double worldCells = WebMercator.TILE_SIZE * Math.pow(2, zoom) / cellPixels;
+        long cellMask = (1L << CELL_BITS) - 1;
+
+        for (int t = 0; t < territories.size(); t++) {
+            Territory territory = territories.get(t);
+            List<LocationPoint> polygon = territory.getPolygon();
+            if (polygon == null || polygon.isEmpty()) {
+                continue;
+            }
+
+            // Centro do território pela média dos vértices
+            double latitude = 0;
+            double longitude = 0;
+            for (int i = 0; i < polygon.size(); i++) {
+                latitude += polygon.get(i).getLatitude();
+                longitude += polygon.get(i).getLongitude();
+            }
+            latitude /= polygon.size();
+            longitude /= polygon.size();
+
+            long cellX = (long) Math.floor(WebMercator.worldX(longitude) * worldCells) & cellMask;
+            long cellY = (long) Math.floor(WebMercator.worldY(latitude) * worldCells) & cellMask;
+            long owner = ownerIndex(territory.getOwnerId()) & ((1L << OWNER_BITS) - 1);
+            long key = (cellX << (CELL_BITS + OWNER_BITS)) | (cellY << OWNER_BITS) | owner;
+
+            Cluster cluster = clusterFor(key, territory);
+            // Média incremental das posições do grupo
+            cluster.count++;
+            cluster.latitude += (latitude - cluster.latitude) / cluster.count;
+            cluster.longitude += (longitude - cluster.longitude) / cluster.count;
+        }
+        return clusterCount;
+    }
+
+    public Cluster get(int index) {
+        if (index < 0 || index >= clusterCount) {
+            throw new IndexOutOfBoundsException("Índice " + index + ", grupos: " + clusterCount);
+        }
+        return clusters.get(index);
+    }
+
+    public int size() {
+        return clusterCount;
+    }
+
+    private Cluster clusterFor(long key, Territory territory) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return clusters.get(values[index]);
+            }
+            index = (index + 1) & mask;
+        }
+
+        if (clusterCount == clusters.size()) {
+            clusters.add(new Cluster());
+        }
+        Cluster cluster = clusters.get(clusterCount);
+        cluster.ownerId = territory.getOwnerId();
+        cluster.color = territory.getColor();
+        cluster.latitude = 0;
+        cluster.longitude = 0;
+        cluster.count = 0;
+        keys[index] = key;
+        values[index] = clusterCount++;
+        return cluster;
+    }
+
+    private int ownerIndex(String ownerId) {
+        if (ownerId == null) {
+            return 0;
+        }
+        Integer index = ownerIndices.get(ownerId);
+        if (index == null) {
+            index = ownerIndices.size() + 1;
+            ownerIndices.put(ownerId, index);
+        }
+        return index;
+    }
+
+    // Cada território gera no máximo um grupo: tabela com o dobro de posições
+    private void ensureCapacity(int count) {
+        int capacity = keys.length;
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        if (capacity != keys.length) {
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
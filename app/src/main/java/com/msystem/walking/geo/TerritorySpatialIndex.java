@@ -0,0 +1,357 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Índice espacial de territórios em memória, chaveado por células geohash.
+ *
+ * Cada território é guardado nas (no máximo 4) células da precisão mais fina
+ * que cobrem o seu retângulo envolvente. Como uma célula é prefixo de todas as
+ * células mais finas que contém, uma consulta só precisa olhar os ancestrais
+ * exatos das células consultadas e o intervalo de chaves que começa com elas
+ * num mapa ordenado: O(log n + k) em vez de percorrer todos os territórios.
+ *
+ * Junto com as células é mantida uma {@link RTree} dos mesmos territórios,
+ * atualizada a cada inserção e remoção (sem remontar), para as buscas de
+ * sobreposição e, por {@link RTree#snapshot()}, para leitura em outras threads.
+ *
+ * Não é thread-safe; deve ser usado na thread principal, como os listeners do Firestore.
+ */
+public class TerritorySpatialIndex {
+    // Precisão 8 ≈ 38 x 19 m, menor que o raio de um território
+    public static final int MAX_PRECISION = 8;
+    private static final int MAX_CELLS_PER_TERRITORY = 4;
+    private static final int MAX_CELLS_PER_QUERY = 9;
+    private static final double NEAREST_INITIAL_RADIUS = 100.0;
+    private static final double NEAREST_MAX_RADIUS = 20_000_000.0;
+
+    private final TreeMap<String, List<Entry>> cells = new TreeMap<>();
+    private final Map<String, Entry> entriesById = new HashMap<>();
+    private RTree<Territory> tree = new RTree<>();
+    private int size;
+    private int queryStamp;
+    private int modificationCount;
+    private final List<ChangeListener> changeListeners = new ArrayList<>();
+
+    /**
+     * Avisado a cada inserção ou remoção, com a região afetada
+     */
+    public interface ChangeListener {
+        /**
+         * @param bounds Retângulo do território que entrou ou saiu, ou null quando o índice foi esvaziado
+         */
+        void onIndexChanged(BoundingBox bounds);
+    }
+
+    private static class Entry {
+        final Territory territory;
+        final BoundingBox bounds;
+        final String[] cells;
+        int stamp;
+
+        Entry(Territory territory, BoundingBox bounds, String[] cells) {
+            this.territory = territory;
+            this.bounds = bounds;
+            this.cells = cells;
+        }
+    }
+
+    /**
+     * Substitui todo o conteúdo do índice
+     * @param territories Territórios a indexar
+     */
+    public void rebuild(Collection<Territory> territories) {
+        clear();
+        for (Territory territory : territories) {
+            insert(territory);
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        entriesById.clear();
+        tree = new RTree<>();
+        size = 0;
+        modificationCount++;
+        notifyChanged(null);
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * R-tree dos territórios indexados, sempre em dia com o índice. Não deve ser
+     * alterada por quem chama.
+     */
+    public RTree<Territory> getTree() {
+        return tree;
+    }
+
+    /**
+     * Cópia imutável da R-tree, em O(1), que pode ser lida em outras threads
+     */
+    public RTree<Territory> snapshotTree() {
+        return tree.snapshot();
+    }
+
+    // Muda a cada inserção ou remoção; permite que estruturas derivadas saibam quando refazer
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Insere um território (substituindo a versão anterior com o mesmo ID)
+     * @param territory Território; sem polígono válido, só a versão anterior é removida
+     */
+    public void insert(Territory territory) {
+        // A versão anterior sai mesmo se a nova não puder ser indexada
+        if (territory.getTerritoryId() != null) {
+            remove(territory.getTerritoryId());
+        }
+        BoundingBox bounds = BoundingBox.fromPoints(territory.getPolygon());
+        if (bounds == null) {
+            return;
+        }
+
+        int precision = GeoHash.precisionFor(bounds, MAX_CELLS_PER_TERRITORY, MAX_PRECISION);
+        List<String> cover = GeoHash.cover(bounds, precision);
+        Entry entry = new Entry(territory, bounds, cover.toArray(new String[0]));
+
+        for (String cell : entry.cells) {
+            List<Entry> bucket = cells.get(cell);
+            if (bucket == null) {
+                bucket = new ArrayList<>(2);
+                cells.put(cell, bucket);
+            }
+            bucket.add(entry);
+        }
+        if (territory.getTerritoryId() != null) {
+            entriesById.put(territory.getTerritoryId(), entry);
+        }
+        tree.insert(territory, bounds);
+        size++;
+        modificationCount++;
+        notifyChanged(bounds);
+    }
+
+    /**
+     * Território indexado com o ID, ou null
+     */
+    public Territory get(String territoryId) {
+        Entry entry = entriesById.get(territoryId);
+        return entry == null ? null : entry.territory;
+    }
+
+    /**
+     * Remove um território pelo ID
+     * @return true se o território estava indexado
+     */
+    public boolean remove(String territoryId) {
+        Entry entry = entriesById.remove(territoryId);
+        if (entry == null) {
+            return false;
+        }
+
+        for (String cell : entry.cells) {
+            List<Entry> bucket = cells.get(cell);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    cells.remove(cell);
+                }
+            }
+        }
+        tree.remove(entry.territory, entry.bounds);
+        size--;
+        modificationCount++;
+        notifyChanged(entry.bounds);
+        return true;
+    }
+
+    /**
+     * Busca os territórios cujo polígono contém o ponto
+     * @param latitude Latitude do ponto
+     * @param longitude Longitude do ponto
+     * @return Territórios que contêm o ponto
+     */
+    public List<Territory> queryPoint(double latitude, double longitude) {
+        List<Territory> result = new ArrayList<>();
+        String hash = GeoHash.encode(latitude, longitude, MAX_PRECISION);
+        int stamp = nextStamp();
+
+        // Toda célula que contém o ponto é prefixo do seu geohash mais fino
+        for (int length = 1; length <= MAX_PRECISION; length++) {
+            List<Entry> bucket = cells.get(hash.substring(0, length));
+            if (bucket == null) {
+                continue;
+            }
+            for (int i = 0; i < bucket.size(); i++) {
+                Entry entry = bucket.get(i);
+                if (entry.stamp != stamp) {
+                    entry.stamp = stamp;
+                    if (entry.bounds.contains(latitude, longitude)
+                            && TerritoryUtils.containsPoint(entry.territory, latitude, longitude)) {
+                        result.add(entry.territory);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Busca os territórios cujo retângulo envolvente intersecta a região
+     * @param box Região consultada (ex: área visível do mapa)
+     * @return Territórios candidatos na região
+     */
+    public List<Territory> queryBoundingBox(BoundingBox box) {
+        List<Territory> result = new ArrayList<>();
+        queryBoundingBox(box, result);
+        return result;
+    }
+
+    /**
+     * Variante sem alocação da lista de resultado, para uso em laços de desenho
+     * @param box Região consultada
+     * @param out Coleção que recebe os territórios encontrados
+     */
+    public void queryBoundingBox(BoundingBox box, Collection<Territory> out) {
+        int precision = GeoHash.precisionFor(box, MAX_CELLS_PER_QUERY, MAX_PRECISION);
+        List<String> cover = GeoHash.cover(box, precision);
+        int stamp = nextStamp();
+
+        for (int c = 0; c < cover.size(); c++) {
+            String cell = cover.get(c);
+
+            // Territórios guardados em células maiores (ou iguais) que contêm esta
+            for (int length = 1; length <= cell.length(); length++) {
+                collect(cells.get(cell.substring(0, length)), box, stamp, out);
+            }
+
+            // Territórios guardados em células menores dentro desta
+            NavigableMap<String, List<Entry>> descendants =
+                    cells.subMap(cell, false, cell + Character.MAX_VALUE, false);
+            for (List<Entry> bucket : descendants.values()) {
+                collect(bucket, box, stamp, out);
+            }
+        }
+    }
+
+    /**
+     * Busca os N territórios mais próximos de um ponto, expandindo a região de busca
+     * @param latitude Latitude do ponto
+     * @param longitude Longitude do ponto
+     * @param count Quantidade máxima de territórios
+     * @return Territórios ordenados pela distância até a borda (0 se o ponto estiver dentro)
+     */
+    public List<Territory> nearest(double latitude, double longitude, int count) {
+        if (count <= 0 || size == 0) {
+            return new ArrayList<>();
+        }
+
+        double radius = NEAREST_INITIAL_RADIUS;
+        List<Territory> candidates = new ArrayList<>();
+        while (true) {
+            candidates.clear();
+            queryBoundingBox(BoundingBox.around(latitude, longitude, radius), candidates);
+
+            int withinRadius = 0;
+            for (Territory territory : candidates) {
+                if (TerritoryUtils.distanceToPolygon(territory.getPolygon(), latitude, longitude) <= radius) {
+                    withinRadius++;
+                }
+            }
+            // Só territórios dentro do raio têm a ordem garantida em relação aos de fora
+            if (withinRadius >= count || candidates.size() == size || radius >= NEAREST_MAX_RADIUS) {
+                break;
+            }
+            radius *= 2;
+        }
+
+        final double[] distances = new double[candidates.size()];
+        Integer[] order = new Integer[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            distances[i] = TerritoryUtils.distanceToPolygon(candidates.get(i).getPolygon(), latitude, longitude);
+            order[i] = i;
+        }
+        java.util.Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+
+        List<Territory> result = new ArrayList<>(Math.min(count, order.length));
+        for (int i = 0; i < order.length && result.size() < count; i++) {
+            result.add(candidates.get(order[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Retorna todos os territórios indexados
+     */
+    public List<Territory> getAll() {
+        List<Territory> result = new ArrayList<>(size);
+        int stamp = nextStamp();
+        for (List<Entry> bucket : cells.values()) {
+            for (int i = 0; i < bucket.size(); i++) {
+                Entry entry = bucket.get(i);
+                if (entry.stamp != stamp) {
+                    entry.stamp = stamp;
+                    result.add(entry.territory);
+                }
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private void collect(List<Entry> bucket, BoundingBox box, int stamp, Collection<Territory> out) {
+        if (bucket == null) {
+            return;
+        }
+        for (int i = 0; i < bucket.size(); i++) {
+            Entry entry = bucket.get(i);
+            if (entry.stamp != stamp) {
+                entry.stamp = stamp;
+                if (entry.bounds.intersects(box)) {
+                    out.add(entry.territory);
+                }
+            }
+        }
+    }
+
+    private void notifyChanged(BoundingBox bounds) {
+        for (int i = 0; i < changeListeners.size(); i++) {
+            changeListeners.get(i).onIndexChanged(bounds);
+        }
+    }
+
+    private int nextStamp() {
+        queryStamp++;
+        if (queryStamp == 0) {
+            // Após dar a volta no contador, zera as marcas para não confundir consultas
+            for (List<Entry> bucket : cells.values()) {
+                for (Entry entry : bucket) {
+                    entry.stamp = 0;
+                }
+            }
+            queryStamp = 1;
+        }
+        return queryStamp;
+    }
+}
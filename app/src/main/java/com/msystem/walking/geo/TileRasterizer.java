@@ -0,0 +1,206 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pinta territórios num tile de 256 × 256 pixels ARGB, sem depender do Android.
+ *
+ * Cada polígono é preenchido por varredura de linhas (regra par-ímpar, sobre a
+ * borda e os buracos) no centro dos pixels; territórios menores que um pixel
+ * marcam ao menos o pixel do seu centro, para continuarem visíveis em zoom
+ * distante. Onde territórios se
+ * sobrepõem vale o último da lista. A cor é a do território ou, sem ela, a
+ * gerada para o dono. Cada instância reaproveita os seus buffers: use uma por
+ * thread.
+ */
+public class TileRasterizer {
+    public static final int TILE_SIZE = WebMercator.TILE_SIZE;
+    // Transparência do preenchimento, para o mapa continuar legível por baixo
+    public static final int FILL_ALPHA = 0x99;
+
+    private double[] xs = new double[64];
+    private double[] ys = new double[64];
+    private double[] crossings = new double[64];
+    // Fim de cada anel (borda externa e buracos) em xs/ys
+    private int[] ringEnds = new int[4];
+    private int ringCount;
+
+    /**
+     * Pinta o tile
+     * @param territories Territórios que intersectam o tile
+     * @param zoom Nível de zoom
+     * @param tileX Coluna do tile
+     * @param tileY Linha do tile
+     * @param pixels Saída com TILE_SIZE × TILE_SIZE pixels ARGB, linha a linha; é zerada antes
+     */
+    public void rasterize(List<Territory> territories, int zoom, int tileX, int tileY, int[] pixels) {
+        Arrays.fill(pixels, 0, TILE_SIZE * TILE_SIZE, 0);
+        double worldPixels = (double) TILE_SIZE * WebMercator.tilesPerAxis(zoom);
+        double originX = (double) tileX * TILE_SIZE;
+        double originY = (double) tileY * TILE_SIZE;
+
+        for (int t = 0; t < territories.size(); t++) {
+            Territory territory = territories.get(t);
+            List<LocationPoint> polygon = territory.getPolygon();
+            if (polygon == null || polygon.size() < 3) {
+                continue;
+            }
+            int color = (colorOf(territory) & 0x00FFFFFF) | (FILL_ALPHA << 24);
+
+            int count = polygon.size();
+            List<Territory.Hole> holes = territory.getHoles();
+            if (holes != null) {
+                for (int h = 0; h < holes.size(); h++) {
+                    count += holes.get(h).getPoints() == null ? 0 : holes.get(h).getPoints().size();
+                }
+            }
+            ensureCapacity(count);
+            ringCount = 0;
+            int end = project(polygon, 0, worldPixels, originX, originY);
+            double minY = Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            double sumX = 0;
+            double sumY = 0;
+            for (int i = 0; i < end; i++) {
+                minY = Math.min(minY, ys[i]);
+                maxY = Math.max(maxY, ys[i]);
+                sumX += xs[i];
+                sumY += ys[i];
+            }
+            if (holes != null) {
+                for (int h = 0; h < holes.size(); h++) {
+                    List<LocationPoint> hole = holes.get(h).getPoints();
+                    if (hole != null && hole.size() >= 3) {
+                        end = project(hole, end, worldPixels, originX, originY);
+                    }
+                }
+            }
+
+            if (!fill(minY, maxY, color, pixels)) {
+                // Nenhum centro de pixel caiu dentro: pintar o pixel do centro do polígono
+                int px = (int) Math.floor(sumX / polygon.size());
+                int py = (int) Math.floor(sumY / polygon.size());
+                if (px >= 0 && px < TILE_SIZE && py >= 0 && py < TILE_SIZE) {
+                    pixels[py * TILE_SIZE + px] = color;
+                }
+            }
+        }
+    }
+
+    /**
+     * Assinatura do conteúdo de um tile: muda quando entra, sai ou muda um território
+     * @param territories Territórios que intersectam o tile
+     */
+    public static long signature(List<Territory> territories) {
+        // Soma de hashes por território, para não depender da ordem da consulta
+        long signature = territories.size();
+        for (int t = 0; t < territories.size(); t++) {
+            Territory territory = territories.get(t);
+            long h = 1125899906842597L;
+            h = 31 * h + hash(territory.getTerritoryId());
+            h = 31 * h + hash(territory.getOwnerId());
+            h = 31 * h + hash(territory.getColor());
+            h = 31 * h + Double.doubleToLongBits(territory.getArea());
+            h = hash(h, territory.getPolygon());
+            if (territory.getHoles() != null) {
+                for (int i = 0; i < territory.getHoles().size(); i++) {
+                    h = hash(h, territory.getHoles().get(i).getPoints());
+                }
+            }
+            signature += h * 0x9E3779B97F4A7C15L;
+        }
+        return signature;
+    }
+
+    private static long hash(long h, List<LocationPoint> ring) {
+        if (ring != null) {
+            h = 31 * h + ring.size();
+            for (int i = 0; i < ring.size(); i++) {
+                h = 31 * h + Double.doubleToLongBits(ring.get(i).getLatitude());
+                h = 31 * h + Double.doubleToLongBits(ring.get(i).getLongitude());
+            }
+        }
+        return h;
+    }
+
+    // Projeta um anel em pixels do tile a partir de xs/ys[start]; retorna o fim do anel
+    private int project(List<LocationPoint> ring, int start, double worldPixels, double originX, double originY) {
+        int end = start;
+        for (int i = 0; i < ring.size(); i++, end++) {
+            LocationPoint point = ring.get(i);
+            xs[end] = WebMercator.worldX(point.getLongitude()) * worldPixels - originX;
+            ys[end] = WebMercator.worldY(point.getLatitude()) * worldPixels - originY;
+        }
+        if (ringCount == ringEnds.length) {
+            ringEnds = Arrays.copyOf(ringEnds, ringCount * 2);
+        }
+        ringEnds[ringCount++] = end;
+        return end;
+    }
+
+    // Preenche as linhas dos anéis projetados; retorna false se nenhum pixel foi pintado
+    private boolean fill(double minY, double maxY, int color, int[] pixels) {
+        int firstRow = Math.max(0, (int) Math.ceil(minY - 0.5));
+        int lastRow = Math.min(TILE_SIZE - 1, (int) Math.floor(maxY - 0.5));
+        boolean painted = false;
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            double y = row + 0.5;
+            int found = 0;
+            for (int r = 0, start = 0; r < ringCount; start = ringEnds[r++]) {
+                int end = ringEnds[r];
+                for (int i = start, j = end - 1; i < end; j = i++) {
+                    double yi = ys[i];
+                    double yj = ys[j];
+                    if ((yi > y) != (yj > y)) {
+                        crossings[found++] = xs[i] + (y - yi) / (yj - yi) * (xs[j] - xs[i]);
+                    }
+                }
+            }
+            Arrays.sort(crossings, 0, found);
+
+            for (int k = 0; k + 1 < found; k += 2) {
+                int from = Math.max(0, (int) Math.ceil(crossings[k] - 0.5));
+                int to = Math.min(TILE_SIZE - 1, (int) Math.floor(crossings[k + 1] - 0.5));
+                if (from <= to) {
+                    Arrays.fill(pixels, row * TILE_SIZE + from, row * TILE_SIZE + to + 1, color);
+                    painted = true;
+                }
+            }
+        }
+        return painted;
+    }
+
+    private static int colorOf(Territory territory) {
+        String hex = territory.getColor();
+        if (hex == null && territory.getOwnerId() != null) {
+            hex = TerritoryUtils.generateColorForUser(territory.getOwnerId());
+        }
+        if (hex != null && hex.length() == 7 && hex.charAt(0) == '#') {
+            try {
+                return 0xFF000000 | Integer.parseInt(hex.substring(1), 16);
+            } catch (NumberFormatException e) {
+                // Cor inválida no documento: usar a cor padrão
+            }
+        }
+        return 0xFF4CAF50;
+    }
+
+    private static long hash(String value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    private void ensureCapacity(int count) {
+        if (xs.length < count) {
+            int capacity = Math.max(count, xs.length * 2);
+            xs = new double[capacity];
+            ys = new double[capacity];
+            crossings = new double[capacity];
+        }
+    }
+}
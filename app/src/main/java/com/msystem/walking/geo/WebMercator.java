@@ -0,0 +1,75 @@
+package com.msystem.walking.geo;
+
+/**
+ * Coordenadas Web Mercator usadas pelos mapas (tiles de 256 px), como no OSMDroid.
+ * As posições "de mundo" vão de 0 a 1 em cada eixo; em pixels, a 256 × 2^zoom.
+ */
+public final class WebMercator {
+    public static final int TILE_SIZE = 256;
+    public static final double MAX_LATITUDE = 85.05112878;
+    // Tamanho de um pixel no equador no zoom 0 (circunferência do elipsoide WGS 84 / 256)
+    private static final double EQUATOR_METERS_PER_PIXEL = 2 * Math.PI * 6378137.0 / TILE_SIZE;
+
+    private WebMercator() {
+    }
+
+    // Posição no mundo de 0 (oeste) a 1 (leste)
+    public static double worldX(double longitude) {
+        return (longitude + 180.0) / 360.0;
+    }
+
+    // Posição no mundo de 0 (norte) a 1 (sul)
+    public static double worldY(double latitude) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    public static double longitude(double worldX) {
+        return worldX * 360.0 - 180.0;
+    }
+
+    public static double latitude(double worldY) {
+        double n = Math.PI * (1 - 2 * worldY);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    /**
+     * Tamanho de um pixel no chão, no nível de zoom do mapa
+     * @param latitude Latitude onde a escala é medida
+     * @param zoom Nível de zoom (como em CameraPosition.zoom)
+     * @return Metros por pixel
+     */
+    public static double metersPerPixel(double latitude, double zoom) {
+        return EQUATOR_METERS_PER_PIXEL * Math.cos(Math.toRadians(latitude)) / Math.pow(2, zoom);
+    }
+
+    // Quantidade de tiles por eixo no nível de zoom
+    public static int tilesPerAxis(int zoom) {
+        return 1 << zoom;
+    }
+
+    public static int tileX(double longitude, int zoom) {
+        return clampTile((int) Math.floor(worldX(longitude) * tilesPerAxis(zoom)), zoom);
+    }
+
+    public static int tileY(double latitude, int zoom) {
+        return clampTile((int) Math.floor(worldY(latitude) * tilesPerAxis(zoom)), zoom);
+    }
+
+    /**
+     * Região coberta por um tile
+     * @param zoom Nível de zoom
+     * @param x Coluna do tile
+     * @param y Linha do tile (0 no norte)
+     */
+    public static BoundingBox tileBounds(int zoom, int x, int y) {
+        double tiles = tilesPerAxis(zoom);
+        return new BoundingBox(
+                latitude((y + 1) / tiles), longitude(x / tiles),
+                latitude(y / tiles), longitude((x + 1) / tiles));
+    }
+
+    private static int clampTile(int tile, int zoom) {
+        return Math.max(0, Math.min(tilesPerAxis(zoom) - 1, tile));
+    }
+}
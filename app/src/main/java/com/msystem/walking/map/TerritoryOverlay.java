@@ -0,0 +1,229 @@
+package com.msystem.walking.map;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Point;
+
+import com.msystem.walking.geo.BoundingBox;
+import com.msystem.walking.geo.SimplifiedShapeCache;
+import com.msystem.walking.geo.TerritoryClusterer;
+import com.msystem.walking.geo.TerritorySpatialIndex;
+import com.msystem.walking.geo.WebMercator;
+import com.msystem.walking.model.Territory;
+
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Desenha os territórios do índice espacial no mapa do OSMDroid numa única camada.
+ *
+ * Só os territórios da área visível são consultados, e a consulta só é refeita
+ * quando a área ou o índice mudam. Com zoom próximo cada território é desenhado
+ * com o contorno simplificado para o tamanho do pixel; com zoom distante os
+ * territórios de um mesmo dono viram um círculo com a quantidade. Os buracos
+ * entram no mesmo Path, preenchido pela regra par-ímpar. O Path, os Paints, os
+ * pontos de tela e os textos são reaproveitados entre quadros.
+ * Deve ser usado na thread principal, como o índice.
+ */
+public class TerritoryOverlay extends Overlay {
+    // Abaixo deste zoom os territórios (raio de 50 m) têm poucos pixels: desenhar símbolos
+    public static final double DETAIL_MIN_ZOOM = 14.0;
+    private static final double SIMPLIFY_PIXELS = 1.0;
+    private static final double CLUSTER_CELL_PIXELS = 64.0;
+    private static final float GLYPH_MIN_RADIUS = 14f;
+    private static final float GLYPH_MAX_RADIUS = 30f;
+    private static final int FILL_ALPHA = 0x55;
+    private static final int DEFAULT_COLOR = 0xFF4CAF50;
+    private static final int MAX_LABEL = 99;
+
+    private final TerritorySpatialIndex index;
+    private final SimplifiedShapeCache shapes = new SimplifiedShapeCache();
+    private final TerritoryClusterer clusterer = new TerritoryClusterer();
+    private final List<Territory> visible = new ArrayList<>();
+    private final Map<String, Integer> colors = new HashMap<>();
+    private final String[] labels = new String[MAX_LABEL + 2];
+
+    private final Path path = new Path();
+    private final Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Point pixel = new Point();
+    private final GeoPoint geoPoint = new GeoPoint(0.0, 0.0);
+
+    // Estado da última consulta ao índice
+    private double queriedSouth = Double.NaN;
+    private double queriedWest;
+    private double queriedNorth;
+    private double queriedEast;
+    private int queriedModification = -1;
+    private int clusteredZoom = -1;
+    private int shapesZoom = -1;
+    private double shapesTolerance;
+    private boolean clustersStale = true;
+    private double clusterMaxZoom = DETAIL_MIN_ZOOM;
+
+    public TerritoryOverlay(TerritorySpatialIndex index) {
+        this.index = index;
+        path.setFillType(Path.FillType.EVEN_ODD);
+        fillPaint.setStyle(Paint.Style.FILL);
+        strokePaint.setStyle(Paint.Style.STROKE);
+        strokePaint.setStrokeWidth(3f);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(28f);
+        textPaint.setFakeBoldText(true);
+    }
+
+    /**
+     * Limita os símbolos de grupo aos zooms abaixo do valor dado (ex: quando
+     * uma camada de tiles cobre os zooms intermediários)
+     */
+    public void setClusterMaxZoom(double zoom) {
+        this.clusterMaxZoom = Math.min(zoom, DETAIL_MIN_ZOOM);
+    }
+
+    @Override
+    public void draw(Canvas canvas, Projection projection) {
+        if (!isEnabled()) {
+            return;
+        }
+        double zoom = projection.getZoomLevel();
+        if (zoom < DETAIL_MIN_ZOOM && zoom >= clusterMaxZoom) {
+            return;
+        }
+        queryVisible(projection.getBoundingBox());
+        if (visible.isEmpty()) {
+            return;
+        }
+
+        if (zoom >= DETAIL_MIN_ZOOM) {
+            drawShapes(canvas, projection, zoom);
+        } else {
+            drawClusters(canvas, projection, zoom);
+        }
+    }
+
+    private void queryVisible(org.osmdroid.util.BoundingBox box) {
+        int modification = index.getModificationCount();
+        if (box.getLatSouth() == queriedSouth && box.getLonWest() == queriedWest
+                && box.getLatNorth() == queriedNorth && box.getLonEast() == queriedEast
+                && modification == queriedModification) {
+            return;
+        }
+        queriedSouth = box.getLatSouth();
+        queriedWest = box.getLonWest();
+        queriedNorth = box.getLatNorth();
+        queriedEast = box.getLonEast();
+        queriedModification = modification;
+
+        visible.clear();
+        index.queryBoundingBox(new BoundingBox(queriedSouth, queriedWest, queriedNorth, queriedEast), visible);
+        clustersStale = true;
+    }
+
+    private void drawShapes(Canvas canvas, Projection projection, double zoom) {
+        // Contornos simplificados por nível inteiro de zoom, para não refazer a cada passo de uma animação
+        int level = (int) zoom;
+        if (level != shapesZoom) {
+            shapesZoom = level;
+            // Pixel do fim do nível (o menor), medido no centro da tela ao trocar de nível
+            shapesTolerance = SIMPLIFY_PIXELS
+                    * WebMercator.metersPerPixel((queriedSouth + queriedNorth) / 2, level + 1);
+            shapes.clear();
+        }
+
+        for (int t = 0; t < visible.size(); t++) {
+            Territory territory = visible.get(t);
+            SimplifiedShapeCache.Shape shape = shapes.get(territory, shapesTolerance);
+            if (shape.count < 3) {
+                continue;
+            }
+
+            path.rewind();
+            addRing(shape, projection);
+            if (shape.holes != null) {
+                for (SimplifiedShapeCache.Shape hole : shape.holes) {
+                    if (hole.count >= 3) {
+                        addRing(hole, projection);
+                    }
+                }
+            }
+
+            int color = colorOf(territory.getColor());
+            fillPaint.setColor((color & 0x00FFFFFF) | (FILL_ALPHA << 24));
+            strokePaint.setColor(color);
+            canvas.drawPath(path, fillPaint);
+            canvas.drawPath(path, strokePaint);
+        }
+    }
+
+    private void addRing(SimplifiedShapeCache.Shape shape, Projection projection) {
+        for (int i = 0; i < shape.count; i++) {
+            geoPoint.setCoords(shape.latitudes[i], shape.longitudes[i]);
+            projection.toPixels(geoPoint, pixel);
+            if (i == 0) {
+                path.moveTo(pixel.x, pixel.y);
+            } else {
+                path.lineTo(pixel.x, pixel.y);
+            }
+        }
+        path.close();
+    }
+
+    private void drawClusters(Canvas canvas, Projection projection, double zoom) {
+        int level = (int) zoom;
+        if (clustersStale || level != clusteredZoom) {
+            clusterer.cluster(visible, level, CLUSTER_CELL_PIXELS);
+            clusteredZoom = level;
+            clustersStale = false;
+        }
+
+        float textOffset = (textPaint.descent() + textPaint.ascent()) / 2;
+        for (int c = 0; c < clusterer.size(); c++) {
+            TerritoryClusterer.Cluster cluster = clusterer.get(c);
+            geoPoint.setCoords(cluster.latitude, cluster.longitude);
+            projection.toPixels(geoPoint, pixel);
+
+            // Raio cresce com o logaritmo da quantidade
+            float radius = Math.min(GLYPH_MAX_RADIUS,
+                    GLYPH_MIN_RADIUS + 4f * (float) Math.log(cluster.count));
+            int color = colorOf(cluster.color);
+            fillPaint.setColor(color);
+            canvas.drawCircle(pixel.x, pixel.y, radius, fillPaint);
+            canvas.drawText(label(cluster.count), pixel.x, pixel.y - textOffset, textPaint);
+        }
+    }
+
+    // Cor do território; cada texto hexadecimal é convertido uma só vez
+    private int colorOf(String hex) {
+        if (hex == null) {
+            return DEFAULT_COLOR;
+        }
+        Integer color = colors.get(hex);
+        if (color == null) {
+            try {
+                color = Color.parseColor(hex);
+            } catch (IllegalArgumentException e) {
+                color = DEFAULT_COLOR;
+            }
+            colors.put(hex, color);
+        }
+        return color;
+    }
+
+    private String label(int count) {
+        int slot = Math.min(count, MAX_LABEL + 1);
+        if (labels[slot] == null) {
+            labels[slot] = count > MAX_LABEL ? MAX_LABEL + "+" : String.valueOf(count);
+        }
+        return labels[slot];
+    }
+}
@@ -0,0 +1,262 @@
+package com.msystem.walking.map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.msystem.walking.geo.BoundingBox;
+import com.msystem.walking.geo.LongHashSet;
+import com.msystem.walking.geo.RTree;
+import com.msystem.walking.geo.TerritorySpatialIndex;
+import com.msystem.walking.geo.TileRasterizer;
+import com.msystem.walking.geo.WebMercator;
+import com.msystem.walking.model.Territory;
+
+import org.osmdroid.tileprovider.MapTileProviderArray;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.tileprovider.util.SimpleRegisterReceiver;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.TilesOverlay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Camada de tiles com os territórios já pintados, para os zooms em que desenhar
+ * cada polígono a cada quadro não compensa.
+ *
+ * Os tiles de 256 px são pintados por {@link TileRasterizer} em threads de fundo
+ * do OSMDroid, a partir de uma cópia imutável da R-tree do índice de territórios
+ * ({@link TerritorySpatialIndex#snapshotTree()}, que compartilha os nós com a
+ * árvore do índice), trocada na thread principal quando o índice muda. Ficam no
+ * cache em memória (LRU) do próprio OSMDroid e num cache em disco limitado, validado pela
+ * assinatura dos territórios de cada tile. Uma mudança no índice descarta da
+ * memória só os tiles que cobrem o território alterado.
+ */
+public class TerritoryTileLayer implements TerritorySpatialIndex.ChangeListener {
+    public static final int MIN_ZOOM = 5;
+    // A partir do zoom de detalhe a TerritoryOverlay desenha os polígonos
+    public static final int MAX_ZOOM = (int) TerritoryOverlay.DETAIL_MIN_ZOOM - 1;
+    private static final int THREADS = 2;
+    private static final int PENDING_TILES = 40;
+    private static final long DISK_CACHE_BYTES = 32L * 1024 * 1024;
+
+    private final TerritorySpatialIndex index;
+    private final MapView mapView;
+    private final TileDiskCache diskCache;
+    private final MapTileProviderArray provider;
+    private final TilesOverlay overlay;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LongHashSet dirtyTiles = new LongHashSet();
+    private boolean dirtyAll;
+    private boolean flushScheduled;
+    private final Runnable flush = this::flush;
+
+    // Cópia do índice lida pelas threads de rasterização
+    private volatile Snapshot snapshot;
+
+    private static final class Snapshot {
+        final RTree<Territory> tree;
+        final int generation;
+
+        Snapshot(RTree<Territory> tree, int generation) {
+            this.tree = tree;
+            this.generation = generation;
+        }
+    }
+
+    public TerritoryTileLayer(Context context, MapView mapView, TerritorySpatialIndex index) {
+        this.index = index;
+        this.mapView = mapView;
+        this.diskCache = new TileDiskCache(new File(context.getCacheDir(), "territory-tiles"), DISK_CACHE_BYTES);
+        this.snapshot = buildSnapshot(0);
+
+        ITileSource source = new XYTileSource("Territories", MIN_ZOOM, MAX_ZOOM,
+                TileRasterizer.TILE_SIZE, ".png", new String[0]);
+        provider = new MapTileProviderArray(source, new SimpleRegisterReceiver(context),
+                new MapTileModuleProviderBase[]{new RasterModule()});
+
+        overlay = new TilesOverlay(provider, context) {
+            @Override
+            public void draw(Canvas canvas, Projection projection) {
+                // Fora da faixa de zoom dos tiles o OSMDroid esticaria os tiles vizinhos
+                double zoom = projection.getZoomLevel();
+                if (zoom >= MIN_ZOOM && zoom < MAX_ZOOM + 1) {
+                    super.draw(canvas, projection);
+                }
+            }
+        };
+        overlay.setLoadingBackgroundColor(Color.TRANSPARENT);
+        overlay.setLoadingLineColor(Color.TRANSPARENT);
+
+        index.addChangeListener(this);
+    }
+
+    public TilesOverlay getOverlay() {
+        return overlay;
+    }
+
+    // Para as threads e solta o índice; chamar ao destruir o mapa
+    public void detach() {
+        index.removeChangeListener(this);
+        handler.removeCallbacks(flush);
+        provider.detach();
+    }
+
+    @Override
+    public void onIndexChanged(BoundingBox bounds) {
+        if (bounds == null) {
+            dirtyAll = true;
+        } else if (!dirtyAll) {
+            for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+                int minX = WebMercator.tileX(bounds.getMinLongitude(), zoom);
+                int maxX = WebMercator.tileX(bounds.getMaxLongitude(), zoom);
+                int minY = WebMercator.tileY(bounds.getMaxLatitude(), zoom);
+                int maxY = WebMercator.tileY(bounds.getMinLatitude(), zoom);
+                for (int x = minX; x <= maxX; x++) {
+                    for (int y = minY; y <= maxY; y++) {
+                        dirtyTiles.add(MapTileIndex.getTileIndex(zoom, x, y));
+                    }
+                }
+            }
+        }
+        // Um lote de mudanças do Firestore vira uma só troca de cópia
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.post(flush);
+        }
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        snapshot = buildSnapshot(snapshot.generation + 1);
+
+        if (dirtyAll) {
+            provider.clearTileCache();
+        } else {
+            for (int slot = 0; slot < dirtyTiles.capacity(); slot++) {
+                if (dirtyTiles.isSlotUsed(slot)) {
+                    provider.getTileCache().remove(dirtyTiles.keyAt(slot));
+                }
+            }
+        }
+        dirtyTiles.clear();
+        dirtyAll = false;
+        mapView.invalidate();
+    }
+
+    private Snapshot buildSnapshot(int generation) {
+        return new Snapshot(index.snapshotTree(), generation);
+    }
+
+    /**
+     * Fonte de tiles do OSMDroid que pinta os territórios em vez de baixar imagens
+     */
+    private class RasterModule extends MapTileModuleProviderBase {
+        // Tile sem territórios: nada a desenhar, e não volta a ser pedido
+        private final Drawable emptyTile = new ColorDrawable(Color.TRANSPARENT);
+        private final ThreadLocal<TileRasterizer> rasterizers = new ThreadLocal<>();
+        private final ThreadLocal<int[]> buffers = new ThreadLocal<>();
+
+        RasterModule() {
+            super(THREADS, PENDING_TILES);
+        }
+
+        @Override
+        public boolean getUsesDataConnection() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return "Territory rasterizer";
+        }
+
+        @Override
+        public String getThreadGroupName() {
+            return "territory-tiles";
+        }
+
+        @Override
+        public int getMinimumZoomLevel() {
+            return MIN_ZOOM;
+        }
+
+        @Override
+        public int getMaximumZoomLevel() {
+            return MAX_ZOOM;
+        }
+
+        @Override
+        public void setTileSource(ITileSource tileSource) {
+            // Os tiles são gerados aqui; não há fonte externa
+        }
+
+        @Override
+        public TileLoader getTileLoader() {
+            return new TileLoader() {
+                @Override
+                public Drawable loadTile(long tileIndex) {
+                    return render(tileIndex);
+                }
+            };
+        }
+
+        private Drawable render(long tileIndex) {
+            Snapshot current = snapshot;
+            int zoom = MapTileIndex.getZoom(tileIndex);
+            int x = MapTileIndex.getX(tileIndex);
+            int y = MapTileIndex.getY(tileIndex);
+
+            List<Territory> territories = new ArrayList<>();
+            current.tree.search(WebMercator.tileBounds(zoom, x, y), territories);
+            if (territories.isEmpty()) {
+                return emptyTile;
+            }
+
+            long signature = TileRasterizer.signature(territories);
+            byte[] cached = diskCache.get(zoom, x, y, signature);
+            Bitmap bitmap = cached != null ? BitmapFactory.decodeByteArray(cached, 0, cached.length) : null;
+            if (bitmap == null) {
+                bitmap = rasterize(territories, zoom, x, y);
+                ByteArrayOutputStream png = new ByteArrayOutputStream(8 * 1024);
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+                diskCache.put(zoom, x, y, signature, png.toByteArray());
+            }
+
+            // O índice mudou durante a pintura: o tile será pedido de novo com a cópia nova
+            if (snapshot.generation != current.generation) {
+                return null;
+            }
+            return new BitmapDrawable(mapView.getResources(), bitmap);
+        }
+
+        private Bitmap rasterize(List<Territory> territories, int zoom, int x, int y) {
+            TileRasterizer rasterizer = rasterizers.get();
+            int[] pixels = buffers.get();
+            if (rasterizer == null) {
+                rasterizer = new TileRasterizer();
+                pixels = new int[TileRasterizer.TILE_SIZE * TileRasterizer.TILE_SIZE];
+                rasterizers.set(rasterizer);
+                buffers.set(pixels);
+            }
+            rasterizer.rasterize(territories, zoom, x, y, pixels);
+            return Bitmap.createBitmap(pixels, TileRasterizer.TILE_SIZE, TileRasterizer.TILE_SIZE,
+                    Bitmap.Config.ARGB_8888);
+        }
+    }
+}
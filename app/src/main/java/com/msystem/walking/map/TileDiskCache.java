@@ -0,0 +1,139 @@
+package com.msystem.walking.map;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Cache em disco de tiles já rasterizados, com tamanho total limitado.
+ *
+ * Cada tile é um arquivo com a assinatura do seu conteúdo seguida da imagem;
+ * uma leitura só vale se a assinatura bater com a dos territórios atuais, então
+ * um tile antigo nunca é mostrado depois que a área mudou. Ao passar do limite,
+ * os arquivos usados há mais tempo são apagados (a leitura atualiza a data do
+ * arquivo). Os métodos são sincronizados: é usado pelas threads de rasterização.
+ */
+public class TileDiskCache {
+    private static final String SUFFIX = ".tile";
+    // Ao passar do limite, apagar até ficar nesta fração dele
+    private static final double TRIM_TARGET = 0.9;
+
+    private final File directory;
+    private final long maxBytes;
+    private long totalBytes = -1;
+
+    /**
+     * @param directory Pasta do cache (criada se não existir)
+     * @param maxBytes Tamanho máximo somando todos os arquivos
+     */
+    public TileDiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Lê um tile
+     * @param signature Assinatura esperada do conteúdo
+     * @return Bytes da imagem, ou null se não existir ou estiver desatualizado
+     */
+    public synchronized byte[] get(int zoom, int x, int y, long signature) {
+        File file = fileFor(zoom, x, y);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readLong() != signature) {
+                return null;
+            }
+            byte[] data = new byte[(int) file.length() - 8];
+            in.readFully(data);
+            file.setLastModified(System.currentTimeMillis());
+            return data;
+        } catch (IOException e) {
+            remove(zoom, x, y);
+            return null;
+        }
+    }
+
+    /**
+     * Grava um tile, substituindo a versão anterior
+     * @param signature Assinatura do conteúdo
+     * @param data Bytes da imagem
+     */
+    public synchronized void put(int zoom, int x, int y, long signature, byte[] data) {
+        ensureSize();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File file = fileFor(zoom, x, y);
+        File temp = new File(directory, file.getName() + ".tmp");
+        long previous = file.isFile() ? file.length() : 0;
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeLong(signature);
+            out.write(data);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        // Renomear por último: uma leitura nunca vê um arquivo pela metade
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        totalBytes += file.length() - previous;
+        if (totalBytes > maxBytes) {
+            trim();
+        }
+    }
+
+    public synchronized void remove(int zoom, int x, int y) {
+        File file = fileFor(zoom, x, y);
+        if (file.isFile()) {
+            long length = file.length();
+            if (file.delete() && totalBytes >= 0) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        ensureSize();
+        return totalBytes;
+    }
+
+    private File fileFor(int zoom, int x, int y) {
+        return new File(directory, zoom + "_" + x + "_" + y + SUFFIX);
+    }
+
+    // O tamanho total é somado uma vez, na primeira escrita
+    private void ensureSize() {
+        if (totalBytes >= 0) {
+            return;
+        }
+        totalBytes = 0;
+        for (File file : listTiles()) {
+            totalBytes += file.length();
+        }
+    }
+
+    private void trim() {
+        File[] files = listTiles();
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        long target = (long) (maxBytes * TRIM_TARGET);
+        for (int i = 0; i < files.length && totalBytes > target; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private File[] listTiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+}
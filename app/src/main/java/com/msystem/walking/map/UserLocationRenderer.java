@@ -0,0 +1,180 @@
+package com.msystem.walking.map;
+
+import android.graphics.Point;
+import android.view.Choreographer;
+
+import androidx.core.content.ContextCompat;
+
+import com.msystem.walking.R;
+
+import org.osmdroid.api.IMapController;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Marker;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Mantém o marcador do usuário no mapa do OSMDroid.
+ *
+ * Usa um único {@link Marker}, criado uma vez. As localizações que chegam só
+ * guardam o estado pendente; no máximo uma vez por quadro (Choreographer) o
+ * marcador é movido, a câmera acompanha e o mapa é invalidado, e nada disso
+ * acontece se o ponto andou menos de um pixel na tela. O texto do balão só é
+ * montado quando o balão está aberto. Deve ser usado na thread principal.
+ */
+public class UserLocationRenderer implements Choreographer.FrameCallback {
+    // Deslocamento mínimo na tela, em pixels, para redesenhar
+    private static final int MIN_PIXEL_MOVE = 1;
+
+    private final MapView mapView;
+    private final IMapController mapController;
+    private final Marker marker;
+
+    // Última localização recebida, ainda não desenhada
+    private double pendingLatitude;
+    private double pendingLongitude;
+    private float pendingAccuracy;
+    private float pendingSpeed;
+    private boolean hasPending;
+    private boolean frameScheduled;
+
+    // Estado desenhado
+    private final GeoPoint position = new GeoPoint(0.0, 0.0);
+    private final GeoPoint target = new GeoPoint(0.0, 0.0);
+    private final Point drawnPixel = new Point();
+    private final Point pendingPixel = new Point();
+    private boolean hasPosition;
+    private float accuracy;
+    private float speed;
+    private boolean snippetStale = true;
+    // Formatos do balão no idioma do aparelho, criados uma vez
+    private final NumberFormat coordinateFormat = fixedFormat(6);
+    private final NumberFormat decimalFormat = fixedFormat(1);
+
+    private boolean followUser = true;
+
+    public UserLocationRenderer(MapView mapView) {
+        this.mapView = mapView;
+        this.mapController = mapView.getController();
+
+        marker = new Marker(mapView);
+        marker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
+        marker.setIcon(ContextCompat.getDrawable(mapView.getContext(), R.drawable.ic_location_user));
+        marker.setTitle("📍 Minha Localização");
+        marker.setOnMarkerClickListener((clicked, map) -> {
+            updateSnippet();
+            clicked.showInfoWindow();
+            return true;
+        });
+    }
+
+    /**
+     * Registra uma nova localização; o desenho fica para o próximo quadro
+     * @param latitude Latitude em graus
+     * @param longitude Longitude em graus
+     * @param accuracy Precisão em metros
+     * @param speed Velocidade em m/s
+     */
+    public void update(double latitude, double longitude, float accuracy, float speed) {
+        pendingLatitude = latitude;
+        pendingLongitude = longitude;
+        pendingAccuracy = accuracy;
+        pendingSpeed = speed;
+        hasPending = true;
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    // Se a câmera acompanha o usuário
+    public void setFollowUser(boolean followUser) {
+        this.followUser = followUser;
+    }
+
+    // Remove o marcador do mapa e cancela o quadro pendente
+    public void detach() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        frameScheduled = false;
+        hasPending = false;
+        marker.closeInfoWindow();
+        mapView.getOverlays().remove(marker);
+        hasPosition = false;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (!hasPending) {
+            return;
+        }
+        hasPending = false;
+
+        if (pendingAccuracy != accuracy || pendingSpeed != speed) {
+            accuracy = pendingAccuracy;
+            speed = pendingSpeed;
+            snippetStale = true;
+        }
+
+        boolean moved = !hasPosition || movedOnScreen();
+        if (moved) {
+            position.setCoords(pendingLatitude, pendingLongitude);
+            marker.setPosition(position);
+            snippetStale = true;
+            if (!hasPosition) {
+                mapView.getOverlays().add(marker);
+                hasPosition = true;
+            }
+        }
+
+        // Balão aberto: atualizar o texto já visível
+        if (snippetStale && marker.isInfoWindowShown()) {
+            updateSnippet();
+            marker.showInfoWindow();
+        }
+
+        if (moved) {
+            if (followUser) {
+                // animateTo já redesenha o mapa a cada passo da animação
+                mapController.animateTo(position);
+            } else {
+                mapView.invalidate();
+            }
+        }
+    }
+
+    private boolean movedOnScreen() {
+        Projection projection = mapView.getProjection();
+        projection.toPixels(position, drawnPixel);
+        target.setCoords(pendingLatitude, pendingLongitude);
+        projection.toPixels(target, pendingPixel);
+        return Math.abs(pendingPixel.x - drawnPixel.x) >= MIN_PIXEL_MOVE
+                || Math.abs(pendingPixel.y - drawnPixel.y) >= MIN_PIXEL_MOVE;
+    }
+
+    private void updateSnippet() {
+        if (!snippetStale) {
+            return;
+        }
+        // Sem String.format (que interpreta o padrão a cada chamada)
+        StringBuilder snippet = new StringBuilder(96)
+                .append("📐 Lat: ").append(coordinateFormat.format(position.getLatitude()))
+                .append("\n📐 Lon: ").append(coordinateFormat.format(position.getLongitude()))
+                .append("\n🎯 Precisão: ").append(decimalFormat.format(accuracy)).append('m')
+                .append("\n⚡ Velocidade: ").append(decimalFormat.format(speed * 3.6)).append(" km/h"); // m/s para km/h
+        marker.setSnippet(snippet.toString());
+        snippetStale = false;
+    }
+
+    // Como "%.Nf": sempre N casas, separador decimal do idioma e sem separador de milhar
+    private static NumberFormat fixedFormat(int fractionDigits) {
+        NumberFormat format = NumberFormat.getNumberInstance(Locale.getDefault());
+        format.setGroupingUsed(false);
+        format.setMinimumFractionDigits(fractionDigits);
+        format.setMaximumFractionDigits(fractionDigits);
+        return format;
+    }
+}
@@ -1,5 +1,10 @@
 package com.msystem.walking.model;
 
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.Exclude;
+import com.msystem.walking.route.PackedRoute;
+import com.msystem.walking.route.RouteCodec;
+
 import java.util.Date;
 import java.util.List;
 
@@ -7,9 +12,12 @@ public class Activity {
     private String activityId;
     private String userId;
     private String userName;
-    private List<LocationPoint> route;
+    private List<LocationPoint> route; // Formato antigo: um mapa por ponto
+    private Blob routeData; // Rota codificada por RouteCodec (documentos novos)
+    private PackedRoute decodedRoute; // Decodificada sob demanda, não vai para o Firestore
     private double distance; // em quilômetros
     private long duration; // em milissegundos
+    private long movingTime; // em milissegundos, sem as pausas
     private int pointsEarned;
     private Date startTime;
     private Date endTime;
@@ -40,7 +48,44 @@ public class Activity {
     public void setUserName(String userName) { this.userName = userName; }
 
     public List<LocationPoint> getRoute() { return route; }
-    public void setRoute(List<LocationPoint> route) { this.route = route; }
+    public void setRoute(List<LocationPoint> route) {
+        this.route = route;
+        this.decodedRoute = null;
+    }
+
+    public Blob getRouteData() { return routeData; }
+    public void setRouteData(Blob routeData) {
+        this.routeData = routeData;
+        this.decodedRoute = null;
+    }
+
+    /**
+     * Rota em qualquer um dos formatos, decodificada só na primeira chamada
+     * @return Pontos da rota, ou null se a atividade não tiver rota
+     */
+    @Exclude
+    public PackedRoute.View getDecodedRoute() {
+        if (decodedRoute == null) {
+            if (routeData != null) {
+                decodedRoute = RouteCodec.decode(routeData.toBytes());
+            } else if (route != null) {
+                decodedRoute = PackedRoute.fromLocationPoints(route);
+            } else {
+                return null;
+            }
+        }
+        return decodedRoute.snapshot();
+    }
+
+    /**
+     * Guarda a rota no formato codificado, no lugar da lista de pontos
+     */
+    @Exclude
+    public void setEncodedRoute(PackedRoute.View view) {
+        this.routeData = Blob.fromBytes(RouteCodec.encode(view, RouteCodec.ALL_CHANNELS));
+        this.route = null;
+        this.decodedRoute = null;
+    }
 
     public double getDistance() { return distance; }
     public void setDistance(double distance) { this.distance = distance; }
@@ -48,6 +93,9 @@ public class Activity {
     public long getDuration() { return duration; }
     public void setDuration(long duration) { this.duration = duration; }
 
+    public long getMovingTime() { return movingTime; }
+    public void setMovingTime(long movingTime) { this.movingTime = movingTime; }
+
     public int getPointsEarned() { return pointsEarned; }
     public void setPointsEarned(int pointsEarned) { this.pointsEarned = pointsEarned; }
 
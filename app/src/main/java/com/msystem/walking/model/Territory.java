@@ -8,11 +8,32 @@ public class Territory {
     private String ownerId;
     private String ownerName;
     private List<LocationPoint> polygon; // Pontos que formam o polígono do território
+    private List<Hole> holes; // Áreas dentro do polígono que não pertencem ao território (pode ser null)
     private double area; // Área em metros quadrados
     private int pointsValue;
     private Date conqueredAt;
     private String color; // Cor hexadecimal para exibir no mapa
     private String region; // Região geográfica (cidade, bairro, etc.)
+    private String geohash; // Menor célula geohash que contém o polígono (consultável por prefixo)
+
+    /**
+     * Buraco no polígono (ex: a parte do meio conquistada por outro usuário).
+     * Uma classe própria porque o Firestore não guarda listas de listas.
+     */
+    public static class Hole {
+        private List<LocationPoint> points;
+
+        public Hole() {
+            // Construtor vazio necessário para Firebase
+        }
+
+        public Hole(List<LocationPoint> points) {
+            this.points = points;
+        }
+
+        public List<LocationPoint> getPoints() { return points; }
+        public void setPoints(List<LocationPoint> points) { this.points = points; }
+    }
 
     public Territory() {
         // Construtor vazio necessário para Firebase
@@ -45,6 +66,9 @@ public class Territory {
     public List<LocationPoint> getPolygon() { return polygon; }
     public void setPolygon(List<LocationPoint> polygon) { this.polygon = polygon; }
 
+    public List<Hole> getHoles() { return holes; }
+    public void setHoles(List<Hole> holes) { this.holes = holes; }
+
     public double getArea() { return area; }
     public void setArea(double area) {
         this.area = area;
@@ -62,4 +86,7 @@ public class Territory {
 
     public String getRegion() { return region; }
     public void setRegion(String region) { this.region = region; }
+
+    public String getGeohash() { return geohash; }
+    public void setGeohash(String geohash) { this.geohash = geohash; }
 }
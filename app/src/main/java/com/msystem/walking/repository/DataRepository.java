@@ -1,17 +1,43 @@
 package com.msystem.walking.repository;
 
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.os.Looper;
+
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.msystem.walking.geo.BoundingBox;
+import com.msystem.walking.geo.GeoQueryPlanner;
+import com.msystem.walking.geo.TerritorySpatialIndex;
 import com.msystem.walking.model.Activity;
+import com.msystem.walking.model.LocationPoint;
 import com.msystem.walking.model.Territory;
 import com.msystem.walking.model.User;
+import com.msystem.walking.route.PackedRoute;
+import com.msystem.walking.sync.Outbox;
+import com.msystem.walking.sync.OutboxOperation;
+import com.msystem.walking.utils.TerritoryUtils;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class DataRepository {
     private static DataRepository instance;
@@ -19,6 +45,18 @@ public class DataRepository {
     private MutableLiveData<List<Activity>> activitiesLiveData;
     private MutableLiveData<List<Territory>> territoriesLiveData;
     private MutableLiveData<List<User>> leaderboardLiveData;
+    private final TerritorySpatialIndex territoryIndex = new TerritorySpatialIndex();
+    private TerritorySubscriptionManager territorySubscriptions;
+    private ListenerRegistration regionRegistration;
+
+    // Limite de valores aceitos por whereIn no Firestore
+    private static final int MAX_IN_VALUES = 10;
+    // Fila persistente das escritas ainda não confirmadas pelo servidor
+    private static final String OUTBOX_FILE = "outbox/pending.log";
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile Outbox outbox;
+    private boolean syncStarted;
 
     private DataRepository() {
         firestore = FirebaseFirestore.getInstance();
@@ -34,45 +72,305 @@ public class DataRepository {
         return instance;
     }
 
-    // Salvar atividade
-    public void saveActivity(Activity activity) {
-        firestore.collection("activities")
-                .add(activity)
-                .addOnSuccessListener(documentReference -> {
-                    activity.setActivityId(documentReference.getId());
-                    // Atualizar estatísticas do usuário
-                    updateUserStats(activity);
-                });
+    /**
+     * Chamado quando a atividade finalizada está guardada no aparelho
+     */
+    public interface CommitCallback {
+        void onComplete(boolean success);
     }
 
-    // Atualizar estatísticas do usuário
-    private void updateUserStats(Activity activity) {
-        firestore.collection("users").document(activity.getUserId())
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        User user = documentSnapshot.toObject(User.class);
-                        if (user != null) {
-                            user.setTotalDistance(user.getTotalDistance() + activity.getDistance());
-                            user.setTotalPoints(user.getTotalPoints() + activity.getPointsEarned());
-                            if (activity.getConqueredTerritoryIds() != null) {
-                                user.setConqueredTerritories(user.getConqueredTerritories() +
-                                    activity.getConqueredTerritoryIds().size());
-                            }
-
-                            firestore.collection("users").document(user.getUid()).set(user);
+    /**
+     * Abre a fila persistente de escritas e reenvia o que ficou pendente de execuções
+     * anteriores. Pode ser chamado mais de uma vez; só a primeira chamada tem efeito.
+     * @param context Qualquer contexto do app
+     */
+    public synchronized void startSync(Context context) {
+        if (syncStarted) {
+            return;
+        }
+        syncStarted = true;
+        File file = new File(context.getFilesDir(), OUTBOX_FILE);
+        syncExecutor.execute(() -> {
+            try {
+                outbox = new Outbox(file, new FirestoreOutboxBackend(firestore, syncExecutor));
+            } catch (IOException e) {
+                android.util.Log.e("DataRepository", "Erro ao abrir a fila de escritas: " + e.getMessage());
+                return;
+            }
+            outbox.setListener(delayMillis -> mainHandler.postDelayed(retrySync, delayMillis));
+            outbox.flush();
+        });
+
+        // Com a rede de volta, enviar sem esperar o fim da espera exponencial
+        ConnectivityManager connectivity =
+                (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity != null) {
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+            connectivity.registerNetworkCallback(request, new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    syncExecutor.execute(() -> {
+                        if (outbox != null) {
+                            outbox.retryNow();
                         }
+                    });
+                }
+            });
+        }
+    }
+
+    private final Runnable retrySync = () -> syncExecutor.execute(() -> {
+        if (outbox != null) {
+            outbox.flush();
+        }
+    });
+
+    /**
+     * Grava a atividade finalizada com tudo o que ela muda, como uma só entrada da fila
+     * persistente: os territórios conquistados, o recorte dos territórios rivais e as
+     * estatísticas do usuário. A entrada vai para o disco antes de qualquer envio e é
+     * aplicada no servidor de uma vez, quando houver rede; se o app for fechado antes,
+     * ela é enviada na próxima abertura. Os IDs dos documentos são gerados antes, então
+     * a atividade já leva os IDs dos seus territórios; os contadores do usuário são
+     * incrementos (somados na fila com os de outras atividades ainda não enviadas).
+     * O índice local só recebe os territórios novos e a prévia do recorte depois que
+     * a entrada está no disco; se ela não puder ser guardada, nada muda no mapa.
+     * Chame {@link #startSync} antes, e carregue a área com {@link #loadTerritoriesInArea},
+     * para recortar os rivais.
+     * @param activity Atividade finalizada
+     * @param conquered Territórios recém-conquistados (ainda não salvos)
+     * @param callback Chamado na thread principal; false se a atividade não pôde ser
+     *                 guardada (pode ser null)
+     * @return Quantidade de territórios rivais que perderam área
+     */
+    public int commitActivity(Activity activity, List<Territory> conquered, CommitCallback callback) {
+        List<OutboxOperation> operations = new ArrayList<>();
+        // Mudanças no índice local, aplicadas só se a entrada for guardada
+        List<Territory> inserted = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+
+        int captured = captureFromRivals(conquered, operations, inserted, removed);
+
+        List<String> territoryIds = new ArrayList<>(conquered.size());
+        for (Territory territory : conquered) {
+            String id = newTerritoryDocument(territory).getId();
+            inserted.add(territory);
+            operations.add(OutboxOperation.set("territories", id, territoryFields(territory)));
+            territoryIds.add(id);
+        }
+        activity.setConqueredTerritoryIds(territoryIds);
+
+        // Rotas em lista são gravadas no formato codificado (um único campo de bytes)
+        if (activity.getRoute() != null && activity.getRouteData() == null) {
+            activity.setEncodedRoute(PackedRoute.fromLocationPoints(activity.getRoute()).snapshot());
+        }
+        activity.setActivityId(firestore.collection("activities").document().getId());
+        operations.add(OutboxOperation.set("activities", activity.getActivityId(), activityFields(activity)));
+
+        // Estatísticas do usuário somadas no servidor (cria o documento se ainda não existir)
+        String userId = activity.getUserId();
+        operations.add(OutboxOperation.increment("users", userId, "totalDistance", activity.getDistance()));
+        operations.add(OutboxOperation.increment("users", userId, "totalPoints", activity.getPointsEarned()));
+        operations.add(OutboxOperation.increment("users", userId, "conqueredTerritories", territoryIds.size()));
+
+        syncExecutor.execute(() -> {
+            boolean saved = false;
+            if (outbox != null) {
+                try {
+                    outbox.enqueue(operations);
+                    saved = true;
+                    outbox.flush();
+                } catch (IOException e) {
+                    android.util.Log.e("DataRepository", "Erro ao guardar a atividade: " + e.getMessage());
+                }
+            }
+            boolean success = saved;
+            mainHandler.post(() -> {
+                if (success) {
+                    for (String id : removed) {
+                        territoryIndex.remove(id);
                     }
-                });
+                    for (Territory territory : inserted) {
+                        territoryIndex.insert(territory);
+                    }
+                }
+                if (callback != null) {
+                    callback.onComplete(success);
+                }
+            });
+        });
+        return captured;
     }
 
-    // Salvar território
+    /**
+     * Salva um território novo (o ID é gerado na hora, para já poder ser referenciado).
+     * Ele entra no índice local na hora e sai de novo se o servidor recusar a escrita.
+     */
     public void saveTerritory(Territory territory) {
-        firestore.collection("territories")
-                .add(territory)
-                .addOnSuccessListener(documentReference -> {
-                    territory.setTerritoryId(documentReference.getId());
-                });
+        DocumentReference document = newTerritoryDocument(territory);
+        territoryIndex.insert(territory);
+        document.set(territory).addOnFailureListener(e -> {
+            // Só desfazer se o índice ainda tiver esta versão (e não uma vinda do servidor)
+            if (territoryIndex.get(territory.getTerritoryId()) == territory) {
+                territoryIndex.remove(territory.getTerritoryId());
+            }
+        });
+    }
+
+    // Gera o ID do documento de um território novo
+    private DocumentReference newTerritoryDocument(Territory territory) {
+        if (territory.getGeohash() == null) {
+            territory.setGeohash(GeoQueryPlanner.cellFor(territory.getPolygon()));
+        }
+        DocumentReference document = firestore.collection("territories").document();
+        territory.setTerritoryId(document.getId());
+        return document;
+    }
+
+    /**
+     * Recorta dos territórios rivais carregados a parte coberta pelos novos
+     * territórios: o que sobra continua com o dono anterior, e o que foi todo
+     * coberto é apagado. A fila não guarda o resultado, e sim o recorte (uma
+     * operação CLIP por rival com as áreas que o cobrem): a entrada pode ser
+     * enviada muito depois, e o servidor refaz o recorte sobre a versão do rival
+     * que estiver lá, lida na mesma transação. O resultado local é só uma prévia;
+     * os IDs das partes novas são reservados aqui para a prévia e o servidor
+     * coincidirem quando o rival não mudou.
+     * @param conquered Territórios recém-conquistados (ainda não salvos)
+     * @param operations Recebe as escritas
+     * @param inserted Recebe as partes dos rivais que sobram, para o índice local
+     * @param removed Recebe os IDs dos rivais cobertos por inteiro
+     * @return Quantidade de territórios rivais que perderam área
+     */
+    private int captureFromRivals(List<Territory> conquered, List<OutboxOperation> operations,
+                                  List<Territory> inserted, List<String> removed) {
+        // Territórios novos que cobrem cada rival, na ordem da conquista
+        Map<String, Territory> rivals = new LinkedHashMap<>();
+        Map<String, List<Territory>> coveredBy = new HashMap<>();
+        for (Territory territory : conquered) {
+            for (Territory rival : findRivalOverlaps(territory)) {
+                String rivalId = rival.getTerritoryId();
+                if (rivalId == null) {
+                    continue;
+                }
+                List<Territory> areas = coveredBy.get(rivalId);
+                if (areas == null) {
+                    areas = new ArrayList<>();
+                    coveredBy.put(rivalId, areas);
+                    rivals.put(rivalId, rival);
+                }
+                areas.add(territory);
+            }
+        }
+
+        int affected = 0;
+        for (Territory rival : rivals.values()) {
+            List<Territory> areas = coveredBy.get(rival.getTerritoryId());
+            List<Territory> remaining = TerritoryUtils.subtractTerritories(rival, areas);
+            if (remaining == null) {
+                // Geometria que não pôde ser recortada: o rival fica como está
+                android.util.Log.w("DataRepository", "Território rival não recortado: " + rival.getTerritoryId());
+                continue;
+            }
+            List<Object> partIds = new ArrayList<>();
+            if (remaining.isEmpty()) {
+                removed.add(rival.getTerritoryId());
+            }
+            for (int i = 0; i < remaining.size(); i++) {
+                Territory part = remaining.get(i);
+                if (i > 0) {
+                    part.setTerritoryId(firestore.collection("territories").document().getId());
+                    partIds.add(part.getTerritoryId());
+                }
+                inserted.add(part);
+            }
+            operations.add(OutboxOperation.clip("territories", rival.getTerritoryId(), clipFields(areas, partIds)));
+            affected++;
+        }
+        return affected;
+    }
+
+    // Campos dos documentos, com os mesmos nomes que o Firestore gera a partir dos getters
+
+    private static Map<String, Object> territoryFields(Territory territory) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("territoryId", territory.getTerritoryId());
+        fields.put("ownerId", territory.getOwnerId());
+        fields.put("ownerName", territory.getOwnerName());
+        fields.put("polygon", pointFields(territory.getPolygon()));
+        fields.put("holes", holeFields(territory.getHoles()));
+        fields.put("area", territory.getArea());
+        fields.put("pointsValue", territory.getPointsValue());
+        fields.put("conqueredAt", territory.getConqueredAt());
+        fields.put("color", territory.getColor());
+        fields.put("region", territory.getRegion());
+        fields.put("geohash", territory.getGeohash());
+        return fields;
+    }
+
+    // Áreas de um recorte (só a geometria) e IDs reservados para as partes novas
+    private static Map<String, Object> clipFields(List<Territory> areas, List<Object> partIds) {
+        List<Object> shapes = new ArrayList<>(areas.size());
+        for (Territory area : areas) {
+            Map<String, Object> shape = new HashMap<>();
+            shape.put("polygon", pointFields(area.getPolygon()));
+            shape.put("holes", holeFields(area.getHoles()));
+            shapes.add(shape);
+        }
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("areas", shapes);
+        fields.put("partIds", partIds);
+        return fields;
+    }
+
+    private static Map<String, Object> activityFields(Activity activity) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("activityId", activity.getActivityId());
+        fields.put("userId", activity.getUserId());
+        fields.put("userName", activity.getUserName());
+        fields.put("route", pointFields(activity.getRoute()));
+        fields.put("routeData", activity.getRouteData() == null ? null : activity.getRouteData().toBytes());
+        fields.put("distance", activity.getDistance());
+        fields.put("duration", activity.getDuration());
+        fields.put("movingTime", activity.getMovingTime());
+        fields.put("pointsEarned", activity.getPointsEarned());
+        fields.put("startTime", activity.getStartTime());
+        fields.put("endTime", activity.getEndTime());
+        fields.put("type", activity.getType());
+        fields.put("conqueredTerritoryIds", activity.getConqueredTerritoryIds());
+        return fields;
+    }
+
+    private static List<Object> holeFields(List<Territory.Hole> holes) {
+        if (holes == null) {
+            return null;
+        }
+        List<Object> list = new ArrayList<>(holes.size());
+        for (Territory.Hole hole : holes) {
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("points", pointFields(hole.getPoints()));
+            list.add(fields);
+        }
+        return list;
+    }
+
+    private static List<Object> pointFields(List<LocationPoint> points) {
+        if (points == null) {
+            return null;
+        }
+        List<Object> list = new ArrayList<>(points.size());
+        for (LocationPoint point : points) {
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("latitude", point.getLatitude());
+            fields.put("longitude", point.getLongitude());
+            fields.put("timestamp", point.getTimestamp());
+            fields.put("altitude", point.getAltitude());
+            fields.put("accuracy", point.getAccuracy());
+            list.add(fields);
+        }
+        return list;
     }
 
     // Buscar atividades do usuário
@@ -97,30 +395,89 @@ public class DataRepository {
                 });
     }
 
-    // Buscar territórios na região
+    // Buscar territórios na região (sem região baixa a coleção inteira; prefira getTerritoriesInViewport)
     public void getTerritoriesInRegion(String region) {
         Query query = firestore.collection("territories");
         if (region != null && !region.isEmpty()) {
             query = query.whereEqualTo("region", region);
         }
 
-        query.addSnapshotListener((queryDocumentSnapshots, e) -> {
+        // Trocar o listener anterior em vez de acumular listeners a cada chamada
+        if (regionRegistration != null) {
+            regionRegistration.remove();
+        }
+        regionRegistration = query.addSnapshotListener((queryDocumentSnapshots, e) -> {
             if (e != null) {
                 return;
             }
 
-            List<Territory> territories = new ArrayList<>();
             if (queryDocumentSnapshots != null) {
-                for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                    Territory territory = doc.toObject(Territory.class);
-                    territory.setTerritoryId(doc.getId());
-                    territories.add(territory);
+                // Atualizar o índice só com os documentos que mudaram
+                for (DocumentChange change : queryDocumentSnapshots.getDocumentChanges()) {
+                    if (change.getType() == DocumentChange.Type.REMOVED) {
+                        territoryIndex.remove(change.getDocument().getId());
+                    } else {
+                        Territory territory = change.getDocument().toObject(Territory.class);
+                        territory.setTerritoryId(change.getDocument().getId());
+                        territoryIndex.insert(territory);
+                    }
                 }
             }
+            List<Territory> territories = territoryIndex.getAll();
             territoriesLiveData.postValue(territories);
         });
     }
 
+    // Buscar somente os territórios que aparecem na área visível do mapa
+    public void getTerritoriesInViewport(BoundingBox viewport) {
+        loadTerritoriesInArea(viewport, () ->
+                territoriesLiveData.postValue(territoryIndex.queryBoundingBox(viewport)));
+    }
+
+    /**
+     * Carrega no índice local os territórios de uma área, com uma leitura única
+     * @param area Área a carregar
+     * @param onLoaded Chamado na thread principal quando todas as consultas terminarem
+     */
+    public void loadTerritoriesInArea(BoundingBox area, Runnable onLoaded) {
+        GeoQueryPlanner.Plan plan = GeoQueryPlanner.plan(area);
+        List<Query> queries = new ArrayList<>();
+
+        for (GeoQueryPlanner.Range range : plan.getRanges()) {
+            queries.add(firestore.collection("territories")
+                    .orderBy("geohash")
+                    .startAt(range.getStart())
+                    .endAt(range.getEnd()));
+        }
+        // Territórios grandes guardados em células que contêm a área
+        List<String> ancestors = plan.getAncestors();
+        for (int i = 0; i < ancestors.size(); i += MAX_IN_VALUES) {
+            queries.add(firestore.collection("territories")
+                    .whereIn("geohash", new ArrayList<>(ancestors.subList(i, Math.min(ancestors.size(), i + MAX_IN_VALUES)))));
+        }
+
+        if (queries.isEmpty()) {
+            onLoaded.run();
+            return;
+        }
+        final int[] pending = {queries.size()};
+        for (Query query : queries) {
+            query.get().addOnCompleteListener(task -> {
+                if (task.isSuccessful() && task.getResult() != null) {
+                    for (QueryDocumentSnapshot doc : task.getResult()) {
+                        Territory territory = doc.toObject(Territory.class);
+                        territory.setTerritoryId(doc.getId());
+                        territoryIndex.insert(territory);
+                    }
+                }
+                pending[0]--;
+                if (pending[0] == 0) {
+                    onLoaded.run();
+                }
+            });
+        }
+    }
+
     // Buscar leaderboard
     public void getLeaderboard(int limit) {
         firestore.collection("users")
@@ -154,4 +511,23 @@ public class DataRepository {
     public LiveData<List<User>> getLeaderboardLiveData() {
         return leaderboardLiveData;
     }
+
+    // Listeners de territórios que acompanham a área visível do mapa
+    public TerritorySubscriptionManager getTerritorySubscriptions() {
+        if (territorySubscriptions == null) {
+            territorySubscriptions = new TerritorySubscriptionManager(firestore, territoryIndex, territoriesLiveData);
+        }
+        return territorySubscriptions;
+    }
+
+    // Territórios de outros usuários carregados que se sobrepõem ao território
+    public List<Territory> findRivalOverlaps(Territory territory) {
+        // A R-tree do índice acompanha cada inserção e remoção
+        return TerritoryUtils.findRivalOverlaps(territory, territoryIndex.getTree());
+    }
+
+    // Índice espacial dos territórios carregados
+    public TerritorySpatialIndex getTerritoryIndex() {
+        return territoryIndex;
+    }
 }
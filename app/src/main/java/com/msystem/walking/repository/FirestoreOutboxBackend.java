@@ -0,0 +1,258 @@
+package com.msystem.walking.repository;
+
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.sync.OutboxBackend;
+import com.msystem.walking.sync.OutboxOperation;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Grava os lotes da fila persistente no Firestore, numa transação.
+ *
+ * Cada entrada deixa um recibo em "outboxReceipts/{id}" na mesma transação; antes
+ * de gravar, a transação lê os recibos do lote e não grava nada se algum já
+ * existir, para uma entrada reenviada depois de um reinício não somar as
+ * estatísticas duas vezes. Transações não ficam pendentes sem rede: falham na
+ * hora, e a fila tenta de novo depois; um lote recusado pelas regras ou pela
+ * validação do Firestore é informado como falha permanente.
+ *
+ * Os recortes de territórios rivais (CLIP) são calculados aqui, sobre a versão
+ * do rival lida na própria transação: se outro jogador mudar o rival antes do
+ * fim, o Firestore repete a função e o recorte é refeito sobre a versão nova,
+ * em vez de uma geometria antiga sobrescrever a dele.
+ */
+class FirestoreOutboxBackend implements OutboxBackend {
+    private static final String RECEIPTS = "outboxReceipts";
+
+    private final FirebaseFirestore firestore;
+    private final Executor executor;
+
+    /**
+     * @param firestore Banco de destino
+     * @param executor Thread em que os resultados são entregues
+     */
+    FirestoreOutboxBackend(FirebaseFirestore firestore, Executor executor) {
+        this.firestore = firestore;
+        this.executor = executor;
+    }
+
+    @Override
+    public void write(List<String> entryIds, List<OutboxOperation> operations, Callback callback) {
+        firestore.runTransaction((Transaction.Function<Set<String>>) transaction -> {
+            // Todas as leituras antes das escritas, como a transação exige
+            Set<String> applied = new HashSet<>();
+            for (String id : entryIds) {
+                if (transaction.get(firestore.collection(RECEIPTS).document(id)).exists()) {
+                    applied.add(id);
+                }
+            }
+            if (!applied.isEmpty()) {
+                return applied;
+            }
+
+            // Versão atual dos territórios a recortar (null se não existem mais)
+            Map<String, Territory> territories = new HashMap<>();
+            for (OutboxOperation operation : operations) {
+                if (operation.getKind() == OutboxOperation.Kind.CLIP
+                        && !territories.containsKey(operation.getPath())) {
+                    DocumentSnapshot snapshot = transaction.get(document(operation));
+                    Territory territory = null;
+                    if (snapshot.exists()) {
+                        territory = snapshot.toObject(Territory.class);
+                        territory.setTerritoryId(snapshot.getId());
+                    }
+                    territories.put(operation.getPath(), territory);
+                }
+            }
+
+            for (OutboxOperation operation : operations) {
+                apply(transaction, operation, territories);
+            }
+            Map<String, Object> receipt = new HashMap<>();
+            receipt.put("appliedAt", FieldValue.serverTimestamp());
+            for (String id : entryIds) {
+                transaction.set(firestore.collection(RECEIPTS).document(id), receipt);
+            }
+            return applied;
+        }).addOnCompleteListener(executor, task -> {
+            if (!task.isSuccessful()) {
+                callback.onFailure(failureOf(task.getException()));
+            } else if (task.getResult().isEmpty()) {
+                callback.onSuccess();
+            } else {
+                callback.onAlreadyApplied(task.getResult());
+            }
+        });
+    }
+
+    // Erros em que reenviar o mesmo lote daria no mesmo resultado
+    private static Failure failureOf(Exception e) {
+        Throwable error = e;
+        if (!(error instanceof FirebaseFirestoreException) && error != null
+                && error.getCause() instanceof FirebaseFirestoreException) {
+            error = error.getCause();
+        }
+        if (error instanceof FirebaseFirestoreException) {
+            switch (((FirebaseFirestoreException) error).getCode()) {
+                case PERMISSION_DENIED:
+                case INVALID_ARGUMENT:
+                case NOT_FOUND:
+                case ALREADY_EXISTS:
+                case OUT_OF_RANGE:
+                case UNIMPLEMENTED:
+                    return Failure.PERMANENT;
+                default:
+                    return Failure.RETRYABLE;
+            }
+        }
+        // Exceção da própria transação (ex: valor que o Firestore não aceita)
+        return error instanceof IllegalArgumentException ? Failure.PERMANENT : Failure.RETRYABLE;
+    }
+
+    private DocumentReference document(OutboxOperation operation) {
+        return firestore.collection(operation.getCollection()).document(operation.getDocumentId());
+    }
+
+    private void apply(Transaction transaction, OutboxOperation operation, Map<String, Territory> territories) {
+        DocumentReference document = document(operation);
+        switch (operation.getKind()) {
+            case SET:
+                transaction.set(document, toFirestore(operation.getFields()));
+                break;
+            case MERGE:
+                transaction.set(document, toFirestore(operation.getFields()), SetOptions.merge());
+                break;
+            case DELETE:
+                transaction.delete(document);
+                break;
+            case INCREMENT:
+                Map<String, Object> increments = new HashMap<>();
+                for (Map.Entry<String, Object> field : operation.getFields().entrySet()) {
+                    Object delta = field.getValue();
+                    increments.put(field.getKey(), delta instanceof Long
+                            ? FieldValue.increment((Long) delta)
+                            : FieldValue.increment(((Number) delta).doubleValue()));
+                }
+                transaction.set(document, increments, SetOptions.merge());
+                break;
+            case CLIP:
+                clip(transaction, operation, territories);
+                break;
+        }
+    }
+
+    /**
+     * Recorta as áreas da operação do território lido na transação. As partes
+     * que sobram usam os IDs reservados no aparelho (e IDs novos, se o recorte
+     * sobre a versão atual der mais partes que a prévia local).
+     */
+    @SuppressWarnings("unchecked")
+    private void clip(Transaction transaction, OutboxOperation operation, Map<String, Territory> territories) {
+        Territory rival = territories.get(operation.getPath());
+        if (rival == null) {
+            // Já apagado (ex: conquistado por inteiro por outro jogador): nada a recortar
+            return;
+        }
+        List<Territory> areas = new ArrayList<>();
+        for (Object area : (List<Object>) operation.getFields().get("areas")) {
+            areas.add(shapeOf((Map<String, Object>) area));
+        }
+        List<Territory> remaining = TerritoryUtils.subtractTerritories(rival, areas);
+        if (remaining == null) {
+            // Geometria que não pôde ser recortada: o rival fica como está
+            return;
+        }
+
+        CollectionReference collection = firestore.collection(operation.getCollection());
+        if (remaining.isEmpty()) {
+            transaction.delete(collection.document(rival.getTerritoryId()));
+            territories.put(operation.getPath(), null);
+            return;
+        }
+        List<Object> partIds = (List<Object>) operation.getFields().get("partIds");
+        for (int i = 0; i < remaining.size(); i++) {
+            Territory part = remaining.get(i);
+            if (i > 0) {
+                part.setTerritoryId(partIds != null && i - 1 < partIds.size()
+                        ? (String) partIds.get(i - 1)
+                        : collection.document().getId());
+            }
+            transaction.set(collection.document(part.getTerritoryId()), part);
+            // Um recorte seguinte no mesmo lote parte desta versão
+            territories.put(operation.getCollection() + "/" + part.getTerritoryId(), part);
+        }
+    }
+
+    // Geometria de uma área de recorte, no formato em que o repositório grava os pontos
+    @SuppressWarnings("unchecked")
+    private static Territory shapeOf(Map<String, Object> fields) {
+        Territory territory = new Territory();
+        territory.setPolygon(pointsOf((List<Object>) fields.get("polygon")));
+        List<Object> holes = (List<Object>) fields.get("holes");
+        if (holes != null) {
+            List<Territory.Hole> list = new ArrayList<>(holes.size());
+            for (Object hole : holes) {
+                list.add(new Territory.Hole(pointsOf((List<Object>) ((Map<String, Object>) hole).get("points"))));
+            }
+            territory.setHoles(list);
+        }
+        return territory;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<LocationPoint> pointsOf(List<Object> points) {
+        List<LocationPoint> list = new ArrayList<>();
+        if (points != null) {
+            for (Object point : points) {
+                Map<String, Object> fields = (Map<String, Object>) point;
+                list.add(new LocationPoint(((Number) fields.get("latitude")).doubleValue(),
+                        ((Number) fields.get("longitude")).doubleValue()));
+            }
+        }
+        return list;
+    }
+
+    // A fila guarda bytes como byte[]; o Firestore espera Blob
+    private static Map<String, Object> toFirestore(Map<String, Object> fields) {
+        Map<String, Object> converted = new HashMap<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            converted.put(field.getKey(), toFirestoreValue(field.getValue()));
+        }
+        return converted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object toFirestoreValue(Object value) {
+        if (value instanceof byte[]) {
+            return Blob.fromBytes((byte[]) value);
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<Object>) value) {
+                list.add(toFirestoreValue(item));
+            }
+            return list;
+        }
+        if (value instanceof Map) {
+            return toFirestore((Map<String, Object>) value);
+        }
+        return value;
+    }
+}
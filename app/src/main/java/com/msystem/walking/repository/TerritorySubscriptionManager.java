@@ -0,0 +1,191 @@
+package com.msystem.walking.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.msystem.walking.geo.BoundingBox;
+import com.msystem.walking.geo.GeoQueryPlanner;
+import com.msystem.walking.geo.TerritorySpatialIndex;
+import com.msystem.walking.model.Territory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mantém os listeners de territórios acompanhando a área visível do mapa.
+ *
+ * Cada célula geohash da área visível tem o seu próprio listener; ao mover o
+ * mapa só as células que entraram ou saíram são ligadas ou desligadas, e os
+ * resultados de todas vão para o mesmo índice espacial. As mudanças de área
+ * são agrupadas com um atraso, para que um arrasto ou fling gere uma só troca.
+ * Um território pode vir de mais de um listener (ex: uma célula e um ancestral):
+ * ele só sai do índice quando nenhum listener ligado o tem mais.
+ */
+public class TerritorySubscriptionManager {
+    private static final long DEBOUNCE_MS = 300;
+    // Limite de valores aceitos por whereIn no Firestore
+    private static final int MAX_IN_VALUES = 10;
+
+    private final FirebaseFirestore firestore;
+    private final TerritorySpatialIndex territoryIndex;
+    private final MutableLiveData<List<Territory>> territoriesLiveData;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+    // Quantos listeners ligados têm cada território
+    private final Map<String, Integer> holders = new HashMap<>();
+
+    private BoundingBox pendingViewport;
+    private final Runnable applyPendingViewport = this::applyPendingViewport;
+
+    private static class Subscription {
+        final Map<String, Territory> territories = new HashMap<>();
+        ListenerRegistration registration;
+    }
+
+    TerritorySubscriptionManager(FirebaseFirestore firestore, TerritorySpatialIndex territoryIndex,
+                                 MutableLiveData<List<Territory>> territoriesLiveData) {
+        this.firestore = firestore;
+        this.territoryIndex = territoryIndex;
+        this.territoriesLiveData = territoriesLiveData;
+    }
+
+    /**
+     * Informa a nova área visível; a troca de listeners acontece após o debounce
+     * @param viewport Área visível do mapa
+     */
+    public void onViewportChanged(BoundingBox viewport) {
+        pendingViewport = viewport;
+        handler.removeCallbacks(applyPendingViewport);
+        handler.postDelayed(applyPendingViewport, DEBOUNCE_MS);
+    }
+
+    /**
+     * Desliga todos os listeners (ex: quando o mapa sai da tela)
+     */
+    public void stop() {
+        handler.removeCallbacks(applyPendingViewport);
+        pendingViewport = null;
+        for (Subscription subscription : subscriptions.values()) {
+            detach(subscription);
+        }
+        subscriptions.clear();
+        publish();
+    }
+
+    public int getActiveListenerCount() {
+        return subscriptions.size();
+    }
+
+    private void applyPendingViewport() {
+        if (pendingViewport == null) {
+            return;
+        }
+
+        Map<String, Query> wanted = buildQueries(GeoQueryPlanner.plan(pendingViewport));
+        pendingViewport = null;
+
+        // Desligar as células que saíram da tela
+        boolean removed = false;
+        Iterator<Map.Entry<String, Subscription>> iterator = subscriptions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Subscription> entry = iterator.next();
+            if (!wanted.containsKey(entry.getKey())) {
+                detach(entry.getValue());
+                iterator.remove();
+                removed = true;
+            }
+        }
+
+        // Ligar só as células novas
+        for (Map.Entry<String, Query> entry : wanted.entrySet()) {
+            if (!subscriptions.containsKey(entry.getKey())) {
+                attach(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (removed) {
+            publish();
+        }
+    }
+
+    private Map<String, Query> buildQueries(GeoQueryPlanner.Plan plan) {
+        Map<String, Query> queries = new LinkedHashMap<>();
+        for (String cell : plan.getCells()) {
+            queries.put("cell:" + cell, firestore.collection("territories")
+                    .orderBy("geohash")
+                    .startAt(cell)
+                    .endAt(cell + GeoQueryPlanner.RANGE_END_SUFFIX));
+        }
+
+        List<String> ancestors = plan.getAncestors();
+        for (int i = 0; i < ancestors.size(); i += MAX_IN_VALUES) {
+            List<String> chunk = new ArrayList<>(ancestors.subList(i, Math.min(ancestors.size(), i + MAX_IN_VALUES)));
+            queries.put("in:" + chunk, firestore.collection("territories").whereIn("geohash", chunk));
+        }
+        return queries;
+    }
+
+    private void attach(String key, Query query) {
+        Subscription subscription = new Subscription();
+        subscriptions.put(key, subscription);
+
+        subscription.registration = query.addSnapshotListener((snapshots, e) -> {
+            if (e != null || snapshots == null || subscriptions.get(key) != subscription) {
+                return;
+            }
+
+            for (DocumentChange change : snapshots.getDocumentChanges()) {
+                String id = change.getDocument().getId();
+                if (change.getType() == DocumentChange.Type.REMOVED) {
+                    if (subscription.territories.remove(id) != null) {
+                        release(id);
+                    }
+                } else {
+                    Territory territory = change.getDocument().toObject(Territory.class);
+                    territory.setTerritoryId(id);
+                    if (subscription.territories.put(id, territory) == null) {
+                        Integer count = holders.get(id);
+                        holders.put(id, count == null ? 1 : count + 1);
+                    }
+                    territoryIndex.insert(territory);
+                }
+            }
+            publish();
+        });
+    }
+
+    private void detach(Subscription subscription) {
+        if (subscription.registration != null) {
+            subscription.registration.remove();
+        }
+        for (String id : subscription.territories.keySet()) {
+            release(id);
+        }
+        subscription.territories.clear();
+    }
+
+    // Um listener deixou de ter o território: sai do índice se era o último
+    private void release(String id) {
+        Integer count = holders.get(id);
+        if (count == null || count <= 1) {
+            holders.remove(id);
+            territoryIndex.remove(id);
+        } else {
+            holders.put(id, count - 1);
+        }
+    }
+
+    private void publish() {
+        territoriesLiveData.postValue(territoryIndex.getAll());
+    }
+}
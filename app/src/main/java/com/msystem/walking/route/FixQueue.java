@@ -0,0 +1,100 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.route.filter.Fix;
+
+/**
+ * Fila circular de pontos entre exatamente uma thread produtora (a do
+ * processamento de localização) e uma consumidora (a thread principal).
+ *
+ * Os valores ficam em arrays primitivos pré-alocados e cada lado só escreve o
+ * seu próprio índice: o produtor publica o ponto escrevendo {@code tail} depois
+ * dos dados, e o consumidor libera a posição escrevendo {@code head} depois de
+ * ler. Os índices são volatile, o que dá a ordem necessária sem locks nem
+ * alocação. Cheia, a fila recusa o ponto novo ({@link #offer} retorna false).
+ */
+public final class FixQueue {
+
+    /**
+     * Um ponto retirado da fila, reaproveitado pelo consumidor
+     */
+    public static final class Update {
+        public final Fix fix = new Fix();
+        // Distância total da sessão depois deste ponto, em km
+        public double totalDistance;
+    }
+
+    private final int mask;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] times;
+    private final double[] altitudes;
+    private final float[] accuracies;
+    private final double[] distances;
+
+    // Próxima posição a ler (só o consumidor escreve)
+    private volatile long head;
+    // Próxima posição a escrever (só o produtor escreve)
+    private volatile long tail;
+
+    /**
+     * @param capacity Pontos guardados ao mesmo tempo (arredondado para potência de 2)
+     */
+    public FixQueue(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        latitudes = new double[size];
+        longitudes = new double[size];
+        times = new long[size];
+        altitudes = new double[size];
+        accuracies = new float[size];
+        distances = new double[size];
+    }
+
+    /**
+     * Acrescenta um ponto; só a thread produtora pode chamar
+     * @param fix Ponto aceito
+     * @param totalDistance Distância total depois do ponto, em km
+     * @return false se a fila estiver cheia (o ponto não entra)
+     */
+    public boolean offer(Fix fix, double totalDistance) {
+        long t = tail;
+        if (t - head > mask) {
+            return false;
+        }
+        int slot = (int) (t & mask);
+        latitudes[slot] = fix.latitude;
+        longitudes[slot] = fix.longitude;
+        times[slot] = fix.time;
+        altitudes[slot] = fix.altitude;
+        accuracies[slot] = fix.accuracy;
+        distances[slot] = totalDistance;
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Retira o ponto mais antigo; só a thread consumidora pode chamar
+     * @param out Recebe o ponto
+     * @return false se a fila estiver vazia
+     */
+    public boolean poll(Update out) {
+        long h = head;
+        if (h == tail) {
+            return false;
+        }
+        int slot = (int) (h & mask);
+        out.fix.set(latitudes[slot], longitudes[slot], times[slot], altitudes[slot], accuracies[slot], Float.NaN);
+        out.totalDistance = distances[slot];
+        head = h + 1;
+        return true;
+    }
+
+    // Aproximado quando lido fora das duas threads
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,284 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.geo.DistanceKernel;
+import com.msystem.walking.model.LocationPoint;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Rota guardada em arrays primitivos paralelos, sem um objeto por ponto.
+ *
+ * Latitude e longitude ficam em ponto fixo (graus × 10^7, ~1 cm de resolução),
+ * o horário como deslocamento em milissegundos a partir do primeiro ponto, e
+ * altitude e precisão como float: 20 bytes por ponto, contra ~70 de um
+ * {@link LocationPoint} com o seu {@link Date} dentro de um ArrayList.
+ *
+ * Uma pausa manual divide a rota em trechos: {@link #breakSegment()} marca o
+ * próximo ponto como início de um trecho sem ligação com o anterior (os
+ * inícios ficam num array à parte, porque são raros).
+ *
+ * Os pontos só são apendados. {@link #snapshot()} devolve uma visão de leitura
+ * que compartilha os arrays (sem cópia): o crescimento troca os arrays e
+ * {@link #clear()} começa arrays novos, então uma visão nunca vê dados mudarem.
+ * Converta para {@link LocationPoint} só nas bordas (Firestore, listeners).
+ *
+ * Não é thread-safe.
+ */
+public class PackedRoute {
+    public static final double E7 = 1e7;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] latitudes;
+    private int[] longitudes;
+    private int[] timeOffsets;
+    private float[] altitudes;
+    private float[] accuracies;
+    private long baseTime;
+    private int size;
+    // Índices dos pontos que começam um trecho, em ordem (sem o ponto 0)
+    private int[] segmentStarts = new int[0];
+    private int segmentStartCount;
+    private boolean breakPending;
+
+    public PackedRoute() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public PackedRoute(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    /**
+     * Cria uma rota compactada a partir de pontos
+     * @param points Pontos da rota (ex: lidos do Firestore)
+     * @return Rota com os mesmos pontos
+     */
+    public static PackedRoute fromLocationPoints(List<LocationPoint> points) {
+        PackedRoute route = new PackedRoute(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            route.add(points.get(i));
+        }
+        return route;
+    }
+
+    /**
+     * Acrescenta um ponto no fim da rota
+     * @param latitude Latitude em graus
+     * @param longitude Longitude em graus
+     * @param time Horário em milissegundos (epoch)
+     * @param altitude Altitude em metros
+     * @param accuracy Precisão em metros
+     */
+    public void add(double latitude, double longitude, long time, double altitude, float accuracy) {
+        if (size == latitudes.length) {
+            grow();
+        }
+        if (size == 0) {
+            baseTime = time;
+        } else if (breakPending) {
+            if (segmentStartCount == segmentStarts.length) {
+                segmentStarts = Arrays.copyOf(segmentStarts, segmentStartCount * 2 + 2);
+            }
+            segmentStarts[segmentStartCount++] = size;
+        }
+        breakPending = false;
+        latitudes[size] = toFixed(latitude);
+        longitudes[size] = toFixed(longitude);
+        // Deslocamentos em int cobrem ~24 dias de sessão
+        timeOffsets[size] = (int) (time - baseTime);
+        altitudes[size] = (float) altitude;
+        accuracies[size] = accuracy;
+        size++;
+    }
+
+    public void add(LocationPoint point) {
+        long time = point.getTimestamp() != null ? point.getTimestamp().getTime() : 0;
+        add(point.getLatitude(), point.getLongitude(), time, point.getAltitude(), point.getAccuracy());
+    }
+
+    /**
+     * O próximo ponto começa um trecho novo, sem ligação com o anterior (ex: ao
+     * retomar de uma pausa manual); sem efeito numa rota vazia
+     */
+    public void breakSegment() {
+        breakPending = size > 0;
+    }
+
+    // Inícios de trecho lidos de uma rota gravada: índices crescentes, entre 1 e size() - 1
+    void setSegmentStarts(int[] starts) {
+        segmentStarts = starts;
+        segmentStartCount = starts.length;
+        breakPending = false;
+    }
+
+    /**
+     * Esvazia a rota; visões já criadas continuam com os pontos antigos
+     */
+    public void clear() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+        baseTime = 0;
+        segmentStarts = new int[0];
+        segmentStartCount = 0;
+        breakPending = false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Visão de leitura dos pontos atuais, sem copiar os arrays
+     */
+    public View snapshot() {
+        return new View(latitudes, longitudes, timeOffsets, altitudes, accuracies, baseTime, size,
+                segmentStarts, segmentStartCount);
+    }
+
+    private void allocate(int capacity) {
+        latitudes = new int[capacity];
+        longitudes = new int[capacity];
+        timeOffsets = new int[capacity];
+        altitudes = new float[capacity];
+        accuracies = new float[capacity];
+    }
+
+    private void grow() {
+        int capacity = latitudes.length + (latitudes.length >> 1) + 1;
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        timeOffsets = Arrays.copyOf(timeOffsets, capacity);
+        altitudes = Arrays.copyOf(altitudes, capacity);
+        accuracies = Arrays.copyOf(accuracies, capacity);
+    }
+
+    static int toFixed(double degrees) {
+        return (int) Math.round(degrees * E7);
+    }
+
+    /**
+     * Visão imutável de um trecho da rota. Os arrays são compartilhados com a
+     * rota original e não devem ser modificados.
+     */
+    public static final class View {
+        private final int[] latitudes;
+        private final int[] longitudes;
+        private final int[] timeOffsets;
+        private final float[] altitudes;
+        private final float[] accuracies;
+        private final long baseTime;
+        private final int size;
+        private final int[] segmentStarts;
+        private final int segmentStartCount;
+
+        View(int[] latitudes, int[] longitudes, int[] timeOffsets, float[] altitudes, float[] accuracies,
+             long baseTime, int size, int[] segmentStarts, int segmentStartCount) {
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.timeOffsets = timeOffsets;
+            this.altitudes = altitudes;
+            this.accuracies = accuracies;
+            this.baseTime = baseTime;
+            this.size = size;
+            this.segmentStarts = segmentStarts;
+            this.segmentStartCount = segmentStartCount;
+        }
+
+        public int size() { return size; }
+        public boolean isEmpty() { return size == 0; }
+
+        public double getLatitude(int index) { return latitudes[check(index)] / E7; }
+        public double getLongitude(int index) { return longitudes[check(index)] / E7; }
+        public int getLatitudeE7(int index) { return latitudes[check(index)]; }
+        public int getLongitudeE7(int index) { return longitudes[check(index)]; }
+        public long getTime(int index) { return baseTime + timeOffsets[check(index)]; }
+        public float getAltitude(int index) { return altitudes[check(index)]; }
+        public float getAccuracy(int index) { return accuracies[check(index)]; }
+
+        /**
+         * Arrays de latitude/longitude (graus × 10^7) para laços numéricos;
+         * só os primeiros {@link #size()} valores são válidos
+         */
+        public int[] latitudesE7() { return latitudes; }
+        public int[] longitudesE7() { return longitudes; }
+
+        // Quantidade de pontos que começam um trecho novo (pausas manuais)
+        public int getSegmentStartCount() { return segmentStartCount; }
+
+        /**
+         * Índice do ponto que começa o k-ésimo trecho depois do primeiro
+         * @param k De 0 a {@link #getSegmentStartCount()} - 1
+         */
+        public int getSegmentStart(int k) {
+            if (k < 0 || k >= segmentStartCount) {
+                throw new IndexOutOfBoundsException("Index: " + k + ", Size: " + segmentStartCount);
+            }
+            return segmentStarts[k];
+        }
+
+        // O ponto começa um trecho novo, sem ligação com o anterior
+        public boolean isSegmentStart(int index) {
+            check(index);
+            return Arrays.binarySearch(segmentStarts, 0, segmentStartCount, index) >= 0;
+        }
+
+        /**
+         * Comprimento da rota em metros, numa só passada sobre os arrays; o
+         * intervalo entre trechos não conta
+         */
+        public double getLength(DistanceKernel.Mode mode) {
+            double length = 0;
+            int from = 0;
+            for (int k = 0; k < segmentStartCount; k++) {
+                length += DistanceKernel.routeLength(latitudes, longitudes, from, segmentStarts[k], mode);
+                from = segmentStarts[k];
+            }
+            return length + DistanceKernel.routeLength(latitudes, longitudes, from, size, mode);
+        }
+
+        /**
+         * Converte um ponto para o modelo usado pelo resto do app
+         */
+        public LocationPoint toLocationPoint(int index) {
+            LocationPoint point = new LocationPoint();
+            point.setLatitude(getLatitude(index));
+            point.setLongitude(getLongitude(index));
+            point.setAltitude(altitudes[index]);
+            point.setAccuracy(accuracies[index]);
+            point.setTimestamp(new Date(getTime(index)));
+            return point;
+        }
+
+        /**
+         * Lista que cria cada {@link LocationPoint} só quando é lida; para
+         * entregar a rota ao Firestore ou a APIs que esperam uma lista
+         */
+        public List<LocationPoint> asLocationPoints() {
+            return new AbstractList<LocationPoint>() {
+                @Override
+                public LocationPoint get(int index) {
+                    return toLocationPoint(index);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        private int check(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.model.LocationPoint;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Rota da sessão em andamento, escrita por uma thread e lida por outras sem locks.
+ *
+ * Os pontos ficam em segmentos de tamanho fixo que nunca são copiados nem
+ * reescritos: crescer é só alocar um segmento novo. O escritor preenche a posição
+ * e só então publica o novo tamanho (volatile); quem lê o tamanho primeiro vê
+ * todos os pontos abaixo dele. {@link #clear()} não mexe nos segmentos antigos:
+ * começa uma nova geração, então uma leitura em curso continua válida.
+ *
+ * {@link #snapshot()} devolve uma visão de tamanho fixo, sem cópia. Para acompanhar
+ * a rota aos poucos (ex: uma tela que volta a se vincular ao serviço), guarde até
+ * onde já leu e a geração, e continue do mesmo índice numa visão mais nova.
+ *
+ * Só uma thread pode chamar {@link #add} e {@link #clear}; as leituras podem vir
+ * de qualquer thread.
+ */
+public final class RouteBuffer {
+    static final int SEGMENT_SHIFT = 10;
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static final class Segment {
+        final int[] latitudes = new int[SEGMENT_SIZE];
+        final int[] longitudes = new int[SEGMENT_SIZE];
+        final long[] times = new long[SEGMENT_SIZE];
+        final float[] altitudes = new float[SEGMENT_SIZE];
+        final float[] accuracies = new float[SEGMENT_SIZE];
+    }
+
+    // Pontos de uma sessão, do clear() até o próximo
+    private static final class Generation {
+        final int id;
+        // Trocado (não alterado) ao crescer; publicado antes do tamanho
+        volatile Segment[] segments = new Segment[8];
+        volatile int size;
+
+        Generation(int id) {
+            this.id = id;
+        }
+    }
+
+    private volatile Generation current = new Generation(0);
+
+    /**
+     * Acrescenta um ponto; só a thread escritora pode chamar
+     * @param latitude Latitude em graus
+     * @param longitude Longitude em graus
+     * @param time Horário em milissegundos (epoch)
+     * @param altitude Altitude em metros
+     * @param accuracy Precisão em metros
+     */
+    public void add(double latitude, double longitude, long time, double altitude, float accuracy) {
+        Generation generation = current;
+        int index = generation.size;
+        int segmentIndex = index >>> SEGMENT_SHIFT;
+        Segment[] segments = generation.segments;
+        if (segmentIndex == segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        Segment segment = segments[segmentIndex];
+        if (segment == null) {
+            segment = new Segment();
+            segments[segmentIndex] = segment;
+            generation.segments = segments;
+        }
+
+        int slot = index & SEGMENT_MASK;
+        segment.latitudes[slot] = PackedRoute.toFixed(latitude);
+        segment.longitudes[slot] = PackedRoute.toFixed(longitude);
+        segment.times[slot] = time;
+        segment.altitudes[slot] = (float) altitude;
+        segment.accuracies[slot] = accuracy;
+        // Publicação: depois desta escrita o ponto é visível para os leitores
+        generation.size = index + 1;
+    }
+
+    // Começa uma rota vazia; visões já obtidas continuam com os pontos antigos
+    public void clear() {
+        current = new Generation(current.id + 1);
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    /**
+     * Visão consistente dos pontos publicados até agora, sem cópia
+     */
+    public Snapshot snapshot() {
+        Generation generation = current;
+        // Tamanho antes dos segmentos: a lista lida cobre todos os pontos publicados
+        int size = generation.size;
+        return new Snapshot(generation.segments, size, generation.id);
+    }
+
+    /**
+     * Pontos de [0, size()) de uma geração da rota. Não muda depois de criada.
+     */
+    public static final class Snapshot {
+        private final Segment[] segments;
+        private final int size;
+        private final int generation;
+
+        Snapshot(Segment[] segments, int size, int generation) {
+            this.segments = segments;
+            this.size = size;
+            this.generation = generation;
+        }
+
+        public int size() { return size; }
+        public boolean isEmpty() { return size == 0; }
+
+        // Muda a cada clear(): índices de outra geração não valem nesta
+        public int getGeneration() { return generation; }
+
+        public double getLatitude(int index) { return segment(index).latitudes[index & SEGMENT_MASK] / PackedRoute.E7; }
+        public double getLongitude(int index) { return segment(index).longitudes[index & SEGMENT_MASK] / PackedRoute.E7; }
+        public long getTime(int index) { return segment(index).times[index & SEGMENT_MASK]; }
+        public float getAltitude(int index) { return segment(index).altitudes[index & SEGMENT_MASK]; }
+        public float getAccuracy(int index) { return segment(index).accuracies[index & SEGMENT_MASK]; }
+
+        /**
+         * Índice a partir do qual continuar quem já leu até {@code read} pontos de
+         * uma visão anterior
+         * @param previousGeneration Geração da visão anterior
+         * @param read Pontos já lidos dela
+         * @return {@code read}, ou 0 se a rota foi recomeçada desde então
+         */
+        public int resumeFrom(int previousGeneration, int read) {
+            return previousGeneration == generation ? Math.min(read, size) : 0;
+        }
+
+        public LocationPoint toLocationPoint(int index) {
+            LocationPoint point = new LocationPoint();
+            point.setLatitude(getLatitude(index));
+            point.setLongitude(getLongitude(index));
+            point.setAltitude(getAltitude(index));
+            point.setAccuracy(getAccuracy(index));
+            point.setTimestamp(new Date(getTime(index)));
+            return point;
+        }
+
+        /**
+         * Lista que cria cada {@link LocationPoint} só quando é lida
+         */
+        public List<LocationPoint> asLocationPoints() {
+            return new AbstractList<LocationPoint>() {
+                @Override
+                public LocationPoint get(int index) {
+                    return toLocationPoint(index);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+        private Segment segment(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Índice " + index + ", tamanho " + size);
+            }
+            return segments[index >>> SEGMENT_SHIFT];
+        }
+    }
+}
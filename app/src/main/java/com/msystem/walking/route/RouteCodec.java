@@ -0,0 +1,245 @@
+package com.msystem.walking.route;
+
+import java.util.Arrays;
+
+/**
+ * Formato binário compacto para guardar uma rota num único campo de bytes.
+ *
+ * No estilo da "encoded polyline" do Google: cada valor é gravado como a
+ * diferença para o ponto anterior, em zigzag (sinal no bit menos significativo)
+ * e varint (7 bits por byte). Numa caminhada a 1 Hz as diferenças de
+ * latitude/longitude (graus × 10^7) cabem em 1-2 bytes cada.
+ *
+ * Layout: versão (1 byte), canais (1 byte), quantidade de pontos (varint),
+ * horário inicial em ms (varint, se houver o canal de horário) e, para cada
+ * ponto, Δlat, Δlon e os canais opcionais: Δhorário em ms, Δaltitude em
+ * decímetros e precisão em decímetros. Com o canal de trechos, depois dos
+ * pontos vêm a quantidade de inícios de trecho (varint) e a diferença de
+ * índice de cada um para o anterior (varint); ficam no fim para que quem não
+ * conhece o canal leia os pontos e ignore o resto.
+ */
+public final class RouteCodec {
+    public static final int CHANNEL_TIME = 1;
+    public static final int CHANNEL_ALTITUDE = 1 << 1;
+    public static final int CHANNEL_ACCURACY = 1 << 2;
+    public static final int CHANNEL_SEGMENTS = 1 << 3;
+    public static final int ALL_CHANNELS = CHANNEL_TIME | CHANNEL_ALTITUDE | CHANNEL_ACCURACY | CHANNEL_SEGMENTS;
+
+    private static final int VERSION = 1;
+    // Menor ponto possível: latitude e longitude com um byte cada
+    private static final int MIN_POINT_BYTES = 2;
+
+    private RouteCodec() {
+    }
+
+    /**
+     * Codifica uma rota
+     * @param route Pontos a gravar
+     * @param channels Canais opcionais (combinação de CHANNEL_*)
+     * @return Bytes codificados
+     */
+    public static byte[] encode(PackedRoute.View route, int channels) {
+        int count = route.size();
+        Writer out = new Writer(16 + count * 6);
+        out.writeByte(VERSION);
+        out.writeByte(channels & ALL_CHANNELS);
+        out.writeVarint(count);
+
+        boolean time = (channels & CHANNEL_TIME) != 0;
+        boolean altitude = (channels & CHANNEL_ALTITUDE) != 0;
+        boolean accuracy = (channels & CHANNEL_ACCURACY) != 0;
+        if (time && count > 0) {
+            out.writeVarint(zigzag(route.getTime(0)));
+        }
+
+        int lastLatitude = 0;
+        int lastLongitude = 0;
+        long lastTime = count > 0 ? route.getTime(0) : 0;
+        int lastAltitude = 0;
+        for (int i = 0; i < count; i++) {
+            int latitude = route.getLatitudeE7(i);
+            int longitude = route.getLongitudeE7(i);
+            out.writeVarint(zigzag((long) latitude - lastLatitude));
+            out.writeVarint(zigzag((long) longitude - lastLongitude));
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+
+            if (time) {
+                long value = route.getTime(i);
+                out.writeVarint(zigzag(value - lastTime));
+                lastTime = value;
+            }
+            if (altitude) {
+                int value = Math.round(route.getAltitude(i) * 10);
+                out.writeVarint(zigzag((long) value - lastAltitude));
+                lastAltitude = value;
+            }
+            if (accuracy) {
+                out.writeVarint(Math.max(0, Math.round(route.getAccuracy(i) * 10)));
+            }
+        }
+
+        if ((channels & CHANNEL_SEGMENTS) != 0) {
+            out.writeVarint(route.getSegmentStartCount());
+            int lastStart = 0;
+            for (int k = 0; k < route.getSegmentStartCount(); k++) {
+                out.writeVarint(route.getSegmentStart(k) - lastStart);
+                lastStart = route.getSegmentStart(k);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodifica uma rota gravada por {@link #encode}
+     * @throws IllegalArgumentException se os bytes estiverem corrompidos ou truncados
+     */
+    public static PackedRoute decode(byte[] data) {
+        Reader in = new Reader(data);
+        readVersion(in);
+        int channels = in.readByte();
+        int count = readCount(in);
+
+        boolean time = (channels & CHANNEL_TIME) != 0;
+        boolean altitude = (channels & CHANNEL_ALTITUDE) != 0;
+        boolean accuracy = (channels & CHANNEL_ACCURACY) != 0;
+
+        PackedRoute route = new PackedRoute(Math.max(1, count));
+        long lastTime = time && count > 0 ? unzigzag(in.readVarint()) : 0;
+        long lastLatitude = 0;
+        long lastLongitude = 0;
+        long lastAltitude = 0;
+        for (int i = 0; i < count; i++) {
+            lastLatitude += unzigzag(in.readVarint());
+            lastLongitude += unzigzag(in.readVarint());
+            if (time) {
+                lastTime += unzigzag(in.readVarint());
+            }
+            if (altitude) {
+                lastAltitude += unzigzag(in.readVarint());
+            }
+            float accuracyValue = accuracy ? in.readVarint() / 10f : 0f;
+            route.add(lastLatitude / PackedRoute.E7, lastLongitude / PackedRoute.E7, lastTime,
+                    lastAltitude / 10.0, accuracyValue);
+        }
+
+        if ((channels & CHANNEL_SEGMENTS) != 0) {
+            readSegments(in, route);
+        }
+        return route;
+    }
+
+    /**
+     * Quantidade de pontos, lendo só o cabeçalho
+     */
+    public static int pointCount(byte[] data) {
+        Reader in = new Reader(data);
+        readVersion(in);
+        in.readByte();
+        return readCount(in);
+    }
+
+    // Inícios de trecho gravados depois dos pontos
+    private static void readSegments(Reader in, PackedRoute route) {
+        int count = route.size();
+        long starts = in.readVarint();
+        if (starts < 0 || starts >= Math.max(1, count)) {
+            throw new IllegalArgumentException("Quantidade de trechos inválida: " + starts);
+        }
+        int[] indexes = new int[(int) starts];
+        long last = 0;
+        for (int k = 0; k < indexes.length; k++) {
+            long delta = in.readVarint();
+            last += delta;
+            if (delta <= 0 || last >= count) {
+                throw new IllegalArgumentException("Início de trecho inválido: " + last);
+            }
+            indexes[k] = (int) last;
+        }
+        route.setSegmentStarts(indexes);
+    }
+
+    private static void readVersion(Reader in) {
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Versão de rota desconhecida: " + version);
+        }
+    }
+
+    // Conferida contra o que resta dos bytes antes de qualquer alocação
+    private static int readCount(Reader in) {
+        long count = in.readVarint();
+        if (count < 0 || count > in.remaining() / MIN_POINT_BYTES) {
+            throw new IllegalArgumentException("Quantidade de pontos inválida: " + count);
+        }
+        return (int) count;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() {
+            if (position >= data.length) {
+                throw new IllegalArgumentException("Rota truncada");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        int remaining() {
+            return data.length - position;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint inválido");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.geo.DouglasPeucker;
+import com.msystem.walking.geo.LocalProjection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rota dividida em trechos de tamanho fixo, para desenhar uma linha por trecho.
+ *
+ * Só o último trecho (aberto) recebe pontos; quando enche, ele é fechado e o
+ * próximo começa repetindo o seu último ponto, para a linha não ter falhas.
+ * Trechos fechados nunca mudam, então podem ser desenhados simplificados para
+ * a escala atual do mapa: a versão simplificada fica guardada por tolerância e
+ * só é refeita quando a tolerância muda (ex: troca de nível de zoom).
+ *
+ * Assim o custo de desenhar um ponto novo depende do tamanho do trecho, não da
+ * duração da sessão. Não é thread-safe.
+ */
+public class RouteSegments {
+    public static final int DEFAULT_SEGMENT_SIZE = 256;
+
+    private final int segmentSize;
+    private final List<Segment> segments = new ArrayList<>();
+
+    private static final class Segment {
+        final double[] latitudes;
+        final double[] longitudes;
+        int count;
+        boolean closed;
+        double cachedTolerance = -1;
+        int[] cachedIndices;
+
+        Segment(int capacity) {
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+        }
+    }
+
+    public RouteSegments() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize Pontos por trecho (incluindo o ponto repetido do trecho anterior)
+     */
+    public RouteSegments(int segmentSize) {
+        this.segmentSize = Math.max(2, segmentSize);
+    }
+
+    /**
+     * Acrescenta um ponto no trecho aberto, fechando-o se estiver cheio
+     * @return Índice do trecho que recebeu o ponto
+     */
+    public int add(double latitude, double longitude) {
+        Segment open = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (open == null) {
+            open = new Segment(segmentSize);
+            segments.add(open);
+        } else if (open.count == segmentSize) {
+            open.closed = true;
+            Segment next = new Segment(segmentSize);
+            next.latitudes[0] = open.latitudes[open.count - 1];
+            next.longitudes[0] = open.longitudes[open.count - 1];
+            next.count = 1;
+            segments.add(next);
+            open = next;
+        }
+        open.latitudes[open.count] = latitude;
+        open.longitudes[open.count] = longitude;
+        open.count++;
+        return segments.size() - 1;
+    }
+
+    public void clear() {
+        segments.clear();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public int getPointCount(int segment) {
+        return segments.get(segment).count;
+    }
+
+    public boolean isClosed(int segment) {
+        return segments.get(segment).closed;
+    }
+
+    public double getLatitude(int segment, int index) {
+        return segments.get(segment).latitudes[index];
+    }
+
+    public double getLongitude(int segment, int index) {
+        return segments.get(segment).longitudes[index];
+    }
+
+    /**
+     * Pontos de um trecho fechado que bastam para desenhá-lo com a tolerância dada.
+     * O resultado é guardado e reaproveitado enquanto a tolerância for a mesma.
+     * @param segment Índice de um trecho fechado
+     * @param tolerance Desvio máximo em metros (ex: {@link #metersPerPixel} × pixels)
+     * @return Índices dos pontos mantidos, em ordem; o primeiro e o último sempre ficam
+     */
+    public int[] simplified(int segment, double tolerance) {
+        Segment s = segments.get(segment);
+        if (!s.closed) {
+            throw new IllegalStateException("Trecho aberto não é simplificado");
+        }
+        if (s.cachedIndices != null && s.cachedTolerance == tolerance) {
+            return s.cachedIndices;
+        }
+
+        LocalProjection projection = new LocalProjection(s.latitudes[0], s.longitudes[0]);
+        double[] xs = new double[s.count];
+        double[] ys = new double[s.count];
+        for (int i = 0; i < s.count; i++) {
+            xs[i] = projection.toX(s.longitudes[i]);
+            ys[i] = projection.toY(s.latitudes[i]);
+        }
+        boolean[] keep = new boolean[s.count];
+        DouglasPeucker.simplify(xs, ys, 0, s.count - 1, tolerance, keep);
+
+        int kept = 0;
+        for (boolean k : keep) {
+            if (k) {
+                kept++;
+            }
+        }
+        int[] indices = new int[kept];
+        for (int i = 0, j = 0; i < s.count; i++) {
+            if (keep[i]) {
+                indices[j++] = i;
+            }
+        }
+        s.cachedTolerance = tolerance;
+        s.cachedIndices = indices;
+        return indices;
+    }
+}
@@ -0,0 +1,190 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.geo.DistanceKernel;
+import com.msystem.walking.route.filter.Fix;
+
+/**
+ * Escolhe a frequência dos pontos pelo estado de movimento (parado, caminhando,
+ * correndo), estimado pelos pontos recentes.
+ *
+ * A velocidade é a informada pelo GPS (Doppler), que responde logo ao começar
+ * a andar e não sente a deriva nem os saltos da posição. Sem ela, é o
+ * deslocamento entre o ponto mais antigo e o mais novo de uma janela de
+ * {@link #WINDOW_MILLIS}: a deriva do GPS parado quase não acumula
+ * deslocamento, e um salto isolado só entra na estimativa quando está numa das
+ * pontas da janela. Para não oscilar entre os modos há histerese: limites de
+ * entrada maiores que os de saída, subir exige {@link #CONFIRMATIONS} estimativas
+ * seguidas acima do limite e descer exige ficar abaixo por {@link #DOWNGRADE_MILLIS}
+ * (uma estimativa isolada acima não recomeça a contagem).
+ *
+ * Não depende do Android: quem usa traduz o {@link Mode} no pedido de localização.
+ */
+public final class SamplingController {
+
+    /**
+     * Intervalo e agrupamento dos pontos de cada estado
+     */
+    public enum Mode {
+        // Parado: poucos pontos, entregues em lote (o processador dorme entre eles)
+        STATIONARY(10000, 5000, 30000),
+        // Caminhando: um ponto a cada ~6 m, onde estão as curvas fechadas (esquinas, trilhas)
+        WALKING(4000, 2000, 8000),
+        // Correndo: um ponto a cada ~15 m; o trajeto é mais reto e o Doppler já segue a velocidade
+        RUNNING(5000, 2500, 10000);
+
+        public final long intervalMillis;
+        public final long minIntervalMillis;
+        // Atraso máximo da entrega em lote (setMaxUpdateDelayMillis)
+        public final long maxDelayMillis;
+
+        Mode(long intervalMillis, long minIntervalMillis, long maxDelayMillis) {
+            this.intervalMillis = intervalMillis;
+            this.minIntervalMillis = minIntervalMillis;
+            this.maxDelayMillis = maxDelayMillis;
+        }
+    }
+
+    // Maior que o intervalo parado, para sempre ter ao menos dois pontos na janela
+    public static final long WINDOW_MILLIS = 30000;
+    // Janela mínima para estimar a velocidade
+    static final long MIN_SPAN_MILLIS = 5000;
+    // Pontos piores que isso não entram na estimativa (mesmo limite da cadeia de filtros)
+    static final float MAX_ACCURACY = 25f;
+    public static final int CONFIRMATIONS = 2;
+    public static final long DOWNGRADE_MILLIS = 30000;
+
+    // Limites em m/s: entrar num modo exige mais velocidade do que continuar nele
+    static final double WALKING_ENTER = 0.7;
+    static final double WALKING_EXIT = 0.35;
+    static final double RUNNING_ENTER = 2.7;
+    static final double RUNNING_EXIT = 2.2;
+
+    private static final int CAPACITY = 64;
+    private static final int MASK = CAPACITY - 1;
+    private final double[] latitudes = new double[CAPACITY];
+    private final double[] longitudes = new double[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private int count;
+    private int next;
+
+    private Mode mode = Mode.WALKING;
+    private double speed = Double.NaN;
+    // Estimativas seguidas acima do modo atual
+    private int aboveCount;
+    // Início do período abaixo do modo atual (-1 fora dele)
+    private long belowSince = -1;
+    // Estimativas seguidas fora do período abaixo; uma só (um salto) não o interrompe
+    private int notBelowCount;
+
+    /**
+     * Considera um ponto recebido do GPS (antes dos filtros)
+     * @param fix Ponto; não é alterado
+     * @return true se o modo mudou e o pedido de localização deve ser refeito
+     */
+    public boolean onFix(Fix fix) {
+        if (fix.accuracy > MAX_ACCURACY) {
+            return false;
+        }
+        if (count > 0 && fix.time <= times[(next - 1) & MASK]) {
+            // Fora de ordem ou repetido (lotes podem se sobrepor)
+            return false;
+        }
+        latitudes[next] = fix.latitude;
+        longitudes[next] = fix.longitude;
+        times[next] = fix.time;
+        next = (next + 1) & MASK;
+        if (count < CAPACITY) {
+            count++;
+        }
+
+        speed = Float.isNaN(fix.speed) ? estimateSpeed(fix.time) : fix.speed;
+        if (Double.isNaN(speed)) {
+            return false;
+        }
+        Mode target = classify(speed);
+        if (target.ordinal() < mode.ordinal()) {
+            aboveCount = 0;
+            notBelowCount = 0;
+            if (belowSince < 0) {
+                belowSince = fix.time;
+            } else if (fix.time - belowSince >= DOWNGRADE_MILLIS) {
+                return change(target);
+            }
+            return false;
+        }
+
+        if (++notBelowCount >= CONFIRMATIONS) {
+            belowSince = -1;
+        }
+        if (target.ordinal() > mode.ordinal()) {
+            if (++aboveCount >= CONFIRMATIONS) {
+                return change(target);
+            }
+        } else {
+            aboveCount = 0;
+        }
+        return false;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    // Última velocidade estimada em m/s; NaN sem pontos suficientes
+    public double getSpeed() {
+        return speed;
+    }
+
+    // Nova sessão: volta a caminhando (quem inicia costuma estar saindo) e esquece os pontos
+    public void reset() {
+        mode = Mode.WALKING;
+        count = 0;
+        next = 0;
+        speed = Double.NaN;
+        aboveCount = 0;
+        belowSince = -1;
+        notBelowCount = 0;
+    }
+
+    private boolean change(Mode target) {
+        mode = target;
+        aboveCount = 0;
+        belowSince = -1;
+        notBelowCount = 0;
+        return true;
+    }
+
+    // Estado para a velocidade, a partir do atual (os limites dependem de onde se está)
+    private Mode classify(double speed) {
+        switch (mode) {
+            case STATIONARY:
+                return speed >= RUNNING_ENTER ? Mode.RUNNING
+                        : speed >= WALKING_ENTER ? Mode.WALKING : Mode.STATIONARY;
+            case WALKING:
+                return speed >= RUNNING_ENTER ? Mode.RUNNING
+                        : speed < WALKING_EXIT ? Mode.STATIONARY : Mode.WALKING;
+            default:
+                return speed < WALKING_EXIT ? Mode.STATIONARY
+                        : speed < RUNNING_EXIT ? Mode.WALKING : Mode.RUNNING;
+        }
+    }
+
+    private double estimateSpeed(long now) {
+        int newest = (next - 1) & MASK;
+        int oldest = newest;
+        for (int i = 1; i < count; i++) {
+            int index = (newest - i) & MASK;
+            if (now - times[index] > WINDOW_MILLIS) {
+                break;
+            }
+            oldest = index;
+        }
+        long span = times[newest] - times[oldest];
+        if (span < MIN_SPAN_MILLIS) {
+            return Double.NaN;
+        }
+        double meters = DistanceKernel.tangentPlane(latitudes[oldest], longitudes[oldest],
+                latitudes[newest], longitudes[newest]);
+        return meters * 1000.0 / span;
+    }
+}
@@ -0,0 +1,299 @@
+package com.msystem.walking.route;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Diário em disco da sessão de rastreamento em andamento, para recuperar a rota
+ * se o sistema encerrar o processo no meio de uma atividade.
+ *
+ * O arquivo é mapeado em memória ({@link MappedByteBuffer}): acrescentar um ponto
+ * é só escrever 32 bytes no mapa, sem chamada ao sistema, e as páginas escritas
+ * continuam no cache do kernel mesmo que o processo morra. {@link #sync()} força a
+ * ida para o disco (para sobreviver também a um desligamento); chame ao pausar.
+ *
+ * Depois de um cabeçalho, os registros têm tamanho fixo e número de sequência,
+ * escrito por último: ao reabrir, a leitura para no primeiro registro fora de
+ * sequência. A cada {@link #CHECKPOINT_INTERVAL} pontos vem um registro de controle
+ * com o CRC32 do bloco anterior; um bloco que não confere é descartado junto com
+ * tudo depois dele. O mapa cresce dobrando, então o custo por ponto é O(1).
+ *
+ * Não é thread-safe: use de uma só thread.
+ */
+public final class SessionJournal implements Closeable {
+    public static final int STATE_TRACKING = 1;
+    public static final int STATE_PAUSED = 2;
+
+    public static final int CHECKPOINT_INTERVAL = 64;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 32;
+    private static final int MAGIC = 0x574B4A31; // "WKJ1"
+    private static final int INITIAL_RECORDS = 4096;
+
+    // Cabeçalho
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_STARTED_AT = 4;
+    private static final int HEADER_STATE = 12;
+    private static final int HEADER_MOVING_TIME = 16;
+
+    // Campos de um registro
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 4;
+    private static final int TIME = 8;
+    private static final int ALTITUDE = 16;
+    private static final int ACCURACY = 20;
+    private static final int TYPE = 24;
+    private static final int SEQUENCE = 28;
+    // Registro de controle: o CRC vai no lugar da latitude
+    private static final int CHECKSUM = 0;
+
+    private static final int TYPE_FIX = 1;
+    private static final int TYPE_CHECKPOINT = 2;
+    // Ponto que começa um trecho novo (retomada depois de uma pausa)
+    private static final int TYPE_SEGMENT_START = 3;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    // Registros gravados (pontos e controles) e só pontos
+    private int records;
+    private int fixes;
+    private final CRC32 crc = new CRC32();
+    private final byte[] block = new byte[CHECKPOINT_INTERVAL * RECORD_BYTES];
+
+    private SessionJournal(RandomAccessFile file, int capacityRecords) throws IOException {
+        this.file = file;
+        this.channel = file.getChannel();
+        map(capacityRecords);
+    }
+
+    /**
+     * Começa um diário novo, apagando o anterior
+     * @param path Arquivo do diário
+     * @param startedAt Início da sessão (epoch em milissegundos)
+     */
+    public static SessionJournal create(File path, long startedAt) throws IOException {
+        File parent = path.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Não foi possível criar " + parent);
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        SessionJournal journal = new SessionJournal(file, INITIAL_RECORDS);
+        journal.buffer.putLong(HEADER_STARTED_AT, startedAt);
+        journal.buffer.putInt(HEADER_STATE, STATE_TRACKING);
+        // A marca vai por último: um cabeçalho incompleto não é reconhecido
+        journal.buffer.putInt(HEADER_MAGIC, MAGIC);
+        return journal;
+    }
+
+    /**
+     * Reabre um diário existente, recuperando os pontos íntegros
+     * @param path Arquivo do diário
+     * @return Diário pronto para continuar, ou null se não existir ou não for válido
+     */
+    public static SessionJournal open(File path) throws IOException {
+        if (!path.isFile() || path.length() < HEADER_BYTES) {
+            return null;
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        long available = (file.length() - HEADER_BYTES) / RECORD_BYTES;
+        SessionJournal journal = new SessionJournal(file,
+                (int) Math.min(Integer.MAX_VALUE / RECORD_BYTES, Math.max(INITIAL_RECORDS, available)));
+        if (journal.buffer.getInt(HEADER_MAGIC) != MAGIC) {
+            journal.close();
+            return null;
+        }
+        journal.recover(available);
+        // O processo morreu entre o último ponto de um bloco e o seu controle
+        if (journal.fixes > 0 && journal.fixes % CHECKPOINT_INTERVAL == 0
+                && journal.records % (CHECKPOINT_INTERVAL + 1) != 0) {
+            journal.appendCheckpoint();
+        }
+        return journal;
+    }
+
+    /**
+     * Acrescenta um ponto aceito
+     * @param latitude Latitude em graus
+     * @param longitude Longitude em graus
+     * @param time Horário em milissegundos (epoch)
+     * @param altitude Altitude em metros
+     * @param accuracy Precisão em metros
+     */
+    public void append(double latitude, double longitude, long time, double altitude, float accuracy)
+            throws IOException {
+        append(latitude, longitude, time, altitude, accuracy, false);
+    }
+
+    /**
+     * Acrescenta um ponto aceito
+     * @param segmentStart Se o ponto começa um trecho novo, sem ligação com o anterior
+     */
+    public void append(double latitude, double longitude, long time, double altitude, float accuracy,
+                       boolean segmentStart) throws IOException {
+        int offset = reserve();
+        buffer.putInt(offset + LATITUDE, (int) Math.round(latitude * PackedRoute.E7));
+        buffer.putInt(offset + LONGITUDE, (int) Math.round(longitude * PackedRoute.E7));
+        buffer.putLong(offset + TIME, time);
+        buffer.putFloat(offset + ALTITUDE, (float) altitude);
+        buffer.putFloat(offset + ACCURACY, accuracy);
+        buffer.putInt(offset + TYPE, segmentStart ? TYPE_SEGMENT_START : TYPE_FIX);
+        buffer.putInt(offset + SEQUENCE, records + 1);
+        records++;
+        fixes++;
+
+        if (fixes % CHECKPOINT_INTERVAL == 0) {
+            appendCheckpoint();
+        }
+    }
+
+    // Quantidade de pontos no diário
+    public int size() {
+        return fixes;
+    }
+
+    public double getLatitude(int index) {
+        return buffer.getInt(fixOffset(index) + LATITUDE) / PackedRoute.E7;
+    }
+
+    public double getLongitude(int index) {
+        return buffer.getInt(fixOffset(index) + LONGITUDE) / PackedRoute.E7;
+    }
+
+    public long getTime(int index) {
+        return buffer.getLong(fixOffset(index) + TIME);
+    }
+
+    public float getAltitude(int index) {
+        return buffer.getFloat(fixOffset(index) + ALTITUDE);
+    }
+
+    public float getAccuracy(int index) {
+        return buffer.getFloat(fixOffset(index) + ACCURACY);
+    }
+
+    // O ponto começa um trecho novo (não se liga ao anterior)
+    public boolean isSegmentStart(int index) {
+        return buffer.getInt(fixOffset(index) + TYPE) == TYPE_SEGMENT_START;
+    }
+
+    // Início da sessão (epoch em milissegundos)
+    public long getStartedAt() {
+        return buffer.getLong(HEADER_STARTED_AT);
+    }
+
+    // STATE_TRACKING ou STATE_PAUSED
+    public int getState() {
+        return buffer.getInt(HEADER_STATE);
+    }
+
+    public void setState(int state) {
+        buffer.putInt(HEADER_STATE, state);
+    }
+
+    // Tempo em movimento até o último ponto gravado, em milissegundos
+    public long getMovingTime() {
+        return buffer.getLong(HEADER_MOVING_TIME);
+    }
+
+    public void setMovingTime(long millis) {
+        buffer.putLong(HEADER_MOVING_TIME, millis);
+    }
+
+    // Força as páginas alteradas para o disco
+    public void sync() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+
+    private void recover(long available) {
+        // Cada bloco tem CHECKPOINT_INTERVAL pontos seguidos do seu registro de controle
+        int blockRecords = CHECKPOINT_INTERVAL + 1;
+        int record = 0;
+        while (record < available) {
+            int offset = HEADER_BYTES + record * RECORD_BYTES;
+            if (buffer.getInt(offset + SEQUENCE) != record + 1) {
+                break;
+            }
+            int type = buffer.getInt(offset + TYPE);
+            if (record % blockRecords == CHECKPOINT_INTERVAL) {
+                if (type != TYPE_CHECKPOINT
+                        || buffer.getInt(offset + CHECKSUM) != blockChecksum(record - CHECKPOINT_INTERVAL)) {
+                    // Bloco corrompido: descartar a partir do começo dele
+                    record -= CHECKPOINT_INTERVAL;
+                    break;
+                }
+            } else if (type != TYPE_FIX && type != TYPE_SEGMENT_START) {
+                break;
+            }
+            // Pontos depois do último controle não têm CRC: valem pela sequência
+            record++;
+        }
+        records = record;
+        fixes = record - record / blockRecords;
+
+        // Apagar restos depois do fim, para não serem lidos como continuação numa próxima recuperação
+        for (int stale = records; stale < available; stale++) {
+            int offset = HEADER_BYTES + stale * RECORD_BYTES;
+            if (buffer.getInt(offset + SEQUENCE) == 0) {
+                break;
+            }
+            buffer.putInt(offset + SEQUENCE, 0);
+        }
+    }
+
+    // Posição do registro de um ponto, pulando um controle a cada CHECKPOINT_INTERVAL pontos
+    private int fixOffset(int index) {
+        if (index < 0 || index >= fixes) {
+            throw new IndexOutOfBoundsException("Índice " + index + ", pontos: " + fixes);
+        }
+        int record = index + index / CHECKPOINT_INTERVAL;
+        return HEADER_BYTES + record * RECORD_BYTES;
+    }
+
+    private void appendCheckpoint() throws IOException {
+        int offset = reserve();
+        buffer.putInt(offset + CHECKSUM, blockChecksum(records - CHECKPOINT_INTERVAL));
+        buffer.putInt(offset + TYPE, TYPE_CHECKPOINT);
+        buffer.putInt(offset + SEQUENCE, records + 1);
+        records++;
+    }
+
+    private int blockChecksum(int firstRecord) {
+        buffer.position(HEADER_BYTES + firstRecord * RECORD_BYTES);
+        buffer.get(block, 0, block.length);
+        crc.reset();
+        crc.update(block, 0, block.length);
+        return (int) crc.getValue();
+    }
+
+    // Posição do próximo registro, crescendo o mapa se preciso
+    private int reserve() throws IOException {
+        long end = HEADER_BYTES + (long) (records + 1) * RECORD_BYTES;
+        if (end > buffer.capacity()) {
+            map(Math.max(records + 1, (buffer.capacity() - HEADER_BYTES) / RECORD_BYTES * 2));
+        }
+        return HEADER_BYTES + records * RECORD_BYTES;
+    }
+
+    private void map(int capacityRecords) throws IOException {
+        long bytes = HEADER_BYTES + (long) capacityRecords * RECORD_BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Diário cheio");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
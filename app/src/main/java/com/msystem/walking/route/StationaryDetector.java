@@ -0,0 +1,151 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.geo.DistanceKernel;
+import com.msystem.walking.route.filter.Fix;
+
+/**
+ * Detecta, ponto a ponto, quando a pessoa parou e quando voltou a andar, para
+ * pausar e retomar a sessão sozinha.
+ *
+ * Guarda só uma âncora (parado, a média dos pontos recentes) e poucos
+ * contadores: o custo e a memória por ponto são constantes. Andando, todo ponto
+ * fora do raio da âncora a recomeça ali; ficar dentro do raio por
+ * {@link #DEFAULT_STOP_AFTER_MILLIS} é parada, e a parada começou no horário da
+ * âncora. Parado, o raio é maior (a deriva do GPS não retoma a sessão) e só
+ * {@link #RESUME_CONFIRMATIONS} pontos seguidos fora dele contam como movimento:
+ * um salto isolado não retoma. Pontos imprecisos alargam o raio, mas só até
+ * {@link #MAX_ACCURACY_RADIUS}: com o raio igual a uma precisão de 25 m, quem
+ * anda devagar seria pausado.
+ *
+ * Os tempos vêm de {@link Fix#elapsed}: um ajuste no relógio do aparelho não
+ * encurta nem alonga a parada.
+ *
+ * Não é thread-safe.
+ */
+public final class StationaryDetector {
+    // Raio da âncora em metros, acima do ruído típico do GPS parado
+    public static final double DEFAULT_RADIUS = 12.0;
+    public static final long DEFAULT_STOP_AFTER_MILLIS = 30000;
+    public static final int RESUME_CONFIRMATIONS = 2;
+    // Parado, o raio cresce nessa proporção (histerese)
+    static final double STOPPED_RADIUS_FACTOR = 1.5;
+    // Pontos piores que isso são ignorados (mesmo limite da cadeia de filtros)
+    static final float MAX_ACCURACY = 25f;
+    // Maior raio que a precisão do ponto pode impor: quem anda a mais de 0,5 m/s nunca fica 30 s dentro dele
+    static final double MAX_ACCURACY_RADIUS = 15.0;
+    // Peso máximo da média da âncora: depois disso ela acompanha uma deriva lenta
+    private static final int MAX_ANCHOR_WEIGHT = 20;
+
+    private final double radius;
+    private final long stopAfterMillis;
+
+    private boolean stopped;
+    private boolean hasAnchor;
+    private double anchorLatitude;
+    private double anchorLongitude;
+    private long anchorTime;
+    private int anchorWeight;
+    private int outside;
+    private long firstOutsideTime;
+    private long stoppedSince;
+    private long movingSince;
+
+    public StationaryDetector() {
+        this(DEFAULT_RADIUS, DEFAULT_STOP_AFTER_MILLIS);
+    }
+
+    /**
+     * @param radius Raio em metros dentro do qual a pessoa é considerada parada
+     * @param stopAfterMillis Tempo dentro do raio até a parada ser detectada
+     */
+    public StationaryDetector(double radius, long stopAfterMillis) {
+        this.radius = radius;
+        this.stopAfterMillis = stopAfterMillis;
+    }
+
+    /**
+     * Considera um ponto recebido do GPS (antes dos filtros)
+     * @param fix Ponto; não é alterado
+     * @return true se o estado mudou (parou ou voltou a andar)
+     */
+    public boolean onFix(Fix fix) {
+        if (fix.accuracy > MAX_ACCURACY) {
+            return false;
+        }
+        if (!hasAnchor) {
+            anchor(fix);
+            return false;
+        }
+
+        double distance = DistanceKernel.tangentPlane(anchorLatitude, anchorLongitude, fix.latitude, fix.longitude);
+        double limit = Math.max(radius, Math.min(fix.accuracy, MAX_ACCURACY_RADIUS));
+        if (!stopped) {
+            if (distance > limit) {
+                anchor(fix);
+                return false;
+            }
+            // A âncora fica fixa: seguir os pontos deixaria uma caminhada lenta parecer parada
+            if (fix.elapsed - anchorTime >= stopAfterMillis) {
+                stopped = true;
+                stoppedSince = anchorTime;
+                outside = 0;
+                return true;
+            }
+            return false;
+        }
+
+        if (distance <= limit * STOPPED_RADIUS_FACTOR) {
+            outside = 0;
+            follow(fix);
+            return false;
+        }
+        if (outside++ == 0) {
+            firstOutsideTime = fix.elapsed;
+        }
+        if (outside >= RESUME_CONFIRMATIONS) {
+            stopped = false;
+            movingSince = firstOutsideTime;
+            anchor(fix);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    // Início da parada atual (Fix.elapsed do ponto da âncora)
+    public long getStoppedSince() {
+        return stoppedSince;
+    }
+
+    // Início do movimento depois da última parada (Fix.elapsed do primeiro ponto fora do raio)
+    public long getMovingSince() {
+        return movingSince;
+    }
+
+    // Esquece a âncora e volta a "andando" (nova sessão ou retomada manual)
+    public void reset() {
+        stopped = false;
+        hasAnchor = false;
+        outside = 0;
+    }
+
+    private void anchor(Fix fix) {
+        hasAnchor = true;
+        anchorLatitude = fix.latitude;
+        anchorLongitude = fix.longitude;
+        anchorTime = fix.elapsed;
+        anchorWeight = 1;
+    }
+
+    // Aproxima a âncora da média dos pontos dentro do raio
+    private void follow(Fix fix) {
+        if (anchorWeight < MAX_ANCHOR_WEIGHT) {
+            anchorWeight++;
+        }
+        anchorLatitude += (fix.latitude - anchorLatitude) / anchorWeight;
+        anchorLongitude += (fix.longitude - anchorLongitude) / anchorWeight;
+    }
+}
@@ -0,0 +1,162 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.geo.DouglasPeucker;
+import com.msystem.walking.geo.LocalProjection;
+
+/**
+ * Simplifica a rota enquanto os pontos chegam (janela que se abre a partir do
+ * último ponto mantido).
+ *
+ * Os pontos depois do último ponto mantido ficam numa janela; cada ponto novo
+ * é aceito como fim provisório do trecho se todos os pontos da janela estiverem
+ * a até {@code tolerance} metros do segmento. Quando isso deixa de valer, o fim
+ * anterior é mantido e vira a nova âncora. A janela tem tamanho limitado, então
+ * o custo por ponto é constante e a memória não cresce com a duração da sessão:
+ * a rota simplificada cresce com a complexidade do trajeto.
+ *
+ * Todo ponto descartado fica a até {@code tolerance} metros da rota simplificada.
+ * Os trechos de {@link #breakSegment()} são simplificados separadamente.
+ */
+public class StreamingSimplifier {
+    public static final int DEFAULT_MAX_WINDOW = 128;
+
+    private final double tolerance;
+    private final int maxWindow;
+    private final PackedRoute output = new PackedRoute(256);
+
+    private LocalProjection projection;
+    private boolean hasAnchor;
+    private double anchorX;
+    private double anchorY;
+
+    // Janela de pontos depois da âncora, ainda não decididos
+    private final double[] windowX;
+    private final double[] windowY;
+    private final double[] windowLatitude;
+    private final double[] windowLongitude;
+    private final long[] windowTime;
+    private final double[] windowAltitude;
+    private final float[] windowAccuracy;
+    private int windowSize;
+
+    /**
+     * @param tolerance Distância máxima em metros entre um ponto descartado e a rota simplificada
+     */
+    public StreamingSimplifier(double tolerance) {
+        this(tolerance, DEFAULT_MAX_WINDOW);
+    }
+
+    /**
+     * @param tolerance Distância máxima em metros entre um ponto descartado e a rota simplificada
+     * @param maxWindow Quantos pontos podem ficar pendentes antes de forçar um ponto mantido
+     */
+    public StreamingSimplifier(double tolerance, int maxWindow) {
+        this.tolerance = tolerance;
+        this.maxWindow = Math.max(2, maxWindow);
+        windowX = new double[this.maxWindow];
+        windowY = new double[this.maxWindow];
+        windowLatitude = new double[this.maxWindow];
+        windowLongitude = new double[this.maxWindow];
+        windowTime = new long[this.maxWindow];
+        windowAltitude = new double[this.maxWindow];
+        windowAccuracy = new float[this.maxWindow];
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Recebe o próximo ponto da rota bruta
+     */
+    public void add(double latitude, double longitude, long time, double altitude, float accuracy) {
+        if (projection == null) {
+            projection = new LocalProjection(latitude, longitude);
+        }
+        double x = projection.toX(longitude);
+        double y = projection.toY(latitude);
+
+        if (!hasAnchor) {
+            output.add(latitude, longitude, time, altitude, accuracy);
+            anchorX = x;
+            anchorY = y;
+            hasAnchor = true;
+            return;
+        }
+
+        if (windowSize == maxWindow || (windowSize > 0 && !fitsWindow(x, y))) {
+            keepLast();
+        }
+        windowX[windowSize] = x;
+        windowY[windowSize] = y;
+        windowLatitude[windowSize] = latitude;
+        windowLongitude[windowSize] = longitude;
+        windowTime[windowSize] = time;
+        windowAltitude[windowSize] = altitude;
+        windowAccuracy[windowSize] = accuracy;
+        windowSize++;
+    }
+
+    /**
+     * Mantém o último ponto pendente (ex: ao pausar ou finalizar a atividade)
+     */
+    public void flush() {
+        if (windowSize > 0) {
+            keepLast();
+        }
+    }
+
+    /**
+     * O próximo ponto começa um trecho novo (ex: retomada de uma pausa manual):
+     * o fim do trecho atual é mantido e os dois não são ligados
+     */
+    public void breakSegment() {
+        flush();
+        hasAnchor = false;
+        output.breakSegment();
+    }
+
+    /**
+     * Recomeça do zero, sem apagar visões já entregues
+     */
+    public void reset() {
+        output.clear();
+        projection = null;
+        hasAnchor = false;
+        windowSize = 0;
+    }
+
+    // Quantidade de pontos recebidos que ainda não foram decididos
+    public int getPendingCount() {
+        return windowSize;
+    }
+
+    /**
+     * Pontos mantidos até agora (os pendentes entram depois de {@link #flush()})
+     */
+    public PackedRoute.View snapshot() {
+        return output.snapshot();
+    }
+
+    /**
+     * Com o ponto novo como fim do trecho, todos os pontos da janela passam a ser
+     * intermediários e precisam ficar perto do segmento entre a âncora e ele
+     */
+    private boolean fitsWindow(double x, double y) {
+        double toleranceSquared = tolerance * tolerance;
+        for (int i = 0; i < windowSize; i++) {
+            if (DouglasPeucker.segmentDistanceSquared(windowX[i], windowY[i], anchorX, anchorY, x, y) > toleranceSquared) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void keepLast() {
+        int last = windowSize - 1;
+        output.add(windowLatitude[last], windowLongitude[last], windowTime[last], windowAltitude[last], windowAccuracy[last]);
+        anchorX = windowX[last];
+        anchorY = windowY[last];
+        windowSize = 0;
+    }
+}
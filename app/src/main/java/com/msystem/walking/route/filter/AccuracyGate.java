@@ -0,0 +1,25 @@
+package com.msystem.walking.route.filter;
+
+/**
+ * Descarta pontos com precisão pior que o limite
+ */
+public class AccuracyGate implements FixFilter {
+    private final float maxAccuracy;
+
+    /**
+     * @param maxAccuracy Raio de precisão máximo aceito, em metros
+     */
+    public AccuracyGate(float maxAccuracy) {
+        this.maxAccuracy = maxAccuracy;
+    }
+
+    @Override
+    public boolean accept(Fix fix) {
+        // Precisão 0 significa desconhecida; o filtro de saltos cuida desses pontos
+        return fix.accuracy <= maxAccuracy;
+    }
+
+    @Override
+    public void reset() {
+    }
+}
@@ -0,0 +1,33 @@
+package com.msystem.walking.route.filter;
+
+/**
+ * Um ponto de GPS em trânsito pela cadeia de filtros. É reaproveitado a cada
+ * leitura (sem alocação) e os filtros podem corrigir os valores no lugar.
+ */
+public final class Fix {
+    public double latitude;
+    public double longitude;
+    public long time; // ms (epoch)
+    // ms num relógio monotônico (ex: Location.getElapsedRealtimeNanos); set() usa o próprio time
+    public long elapsed;
+    public double altitude;
+    public float accuracy; // metros; 0 quando desconhecida
+    public float speed = Float.NaN; // m/s informada pelo GPS; NaN quando desconhecida
+
+    public Fix set(double latitude, double longitude, long time, double altitude, float accuracy, float speed) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.time = time;
+        this.elapsed = time;
+        this.altitude = altitude;
+        this.accuracy = accuracy;
+        this.speed = speed;
+        return this;
+    }
+
+    public Fix copyFrom(Fix other) {
+        set(other.latitude, other.longitude, other.time, other.altitude, other.accuracy, other.speed);
+        elapsed = other.elapsed;
+        return this;
+    }
+}
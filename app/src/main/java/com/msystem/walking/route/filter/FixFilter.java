@@ -0,0 +1,18 @@
+package com.msystem.walking.route.filter;
+
+/**
+ * Etapa da cadeia de filtros de GPS
+ */
+public interface FixFilter {
+    /**
+     * Processa o próximo ponto
+     * @param fix Ponto atual; pode ser corrigido no lugar
+     * @return false para descartar o ponto
+     */
+    boolean accept(Fix fix);
+
+    /**
+     * Esquece o estado acumulado (ex: nova sessão)
+     */
+    void reset();
+}
@@ -0,0 +1,55 @@
+package com.msystem.walking.route.filter;
+
+/**
+ * Aplica os filtros em ordem; o primeiro que descarta interrompe a cadeia
+ */
+public class FixFilterChain implements FixFilter {
+    // Pior precisão aceita, em metros
+    public static final float DEFAULT_MAX_ACCURACY = 25f;
+    // Bem acima de uma corrida (~43 km/h); acima disso o ponto é um salto do GPS
+    public static final double DEFAULT_MAX_SPEED = 12.0;
+    // Incerteza da aceleração de quem caminha ou corre, em m/s²
+    public static final double DEFAULT_ACCELERATION_NOISE = 0.5;
+    // Deslocamento mínimo entre pontos aceitos, em metros
+    public static final double DEFAULT_MIN_MOVEMENT = 5.0;
+    // Distância acima da qual um ponto sempre conta como deslocamento, em metros
+    public static final double DEFAULT_MAX_MOVEMENT = 12.0;
+
+    private final FixFilter[] filters;
+
+    public FixFilterChain(FixFilter... filters) {
+        this.filters = filters.clone();
+    }
+
+    /**
+     * Cadeia padrão: precisão, saltos, suavização e deslocamento mínimo.
+     * O filtro de deslocamento vem depois do suavizador e compara a incerteza
+     * estimada por ele, menor que a precisão informada pelo GPS; com a
+     * precisão bruta (ex: 15 m a cada 5 s) ele só aceitaria um ponto a cada
+     * 30 m e cortaria as curvas.
+     */
+    public static FixFilterChain createDefault() {
+        return new FixFilterChain(
+                new AccuracyGate(DEFAULT_MAX_ACCURACY),
+                new OutlierFilter(DEFAULT_MAX_SPEED),
+                new KalmanSmoother(DEFAULT_ACCELERATION_NOISE),
+                new MovementGate(DEFAULT_MIN_MOVEMENT, DEFAULT_MAX_MOVEMENT));
+    }
+
+    @Override
+    public boolean accept(Fix fix) {
+        for (FixFilter filter : filters) {
+            if (!filter.accept(fix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        for (FixFilter filter : filters) {
+            filter.reset();
+        }
+    }
+}
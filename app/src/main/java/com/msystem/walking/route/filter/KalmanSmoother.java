@@ -0,0 +1,107 @@
+package com.msystem.walking.route.filter;
+
+import com.msystem.walking.geo.LocalProjection;
+
+/**
+ * Filtro de Kalman de velocidade constante, independente em leste e norte,
+ * num plano local em metros. A medição usa a precisão informada pelo GPS
+ * como desvio padrão; a aceleração desconhecida entra como ruído de processo.
+ * Suaviza o tremor do GPS (principalmente parado) sem atrasar as curvas.
+ */
+public class KalmanSmoother implements FixFilter {
+    // Intervalo sem pontos a partir do qual o estado é reiniciado
+    private static final long MAX_GAP_MS = 30_000;
+    // Precisão assumida quando o GPS não informa
+    private static final float DEFAULT_ACCURACY = 10f;
+
+    private final double accelerationVariance;
+    private final Axis east = new Axis();
+    private final Axis north = new Axis();
+
+    private LocalProjection projection;
+    private boolean initialized;
+    private long lastTime;
+
+    /**
+     * Estado de um eixo: posição, velocidade e covariância 2x2 simétrica
+     */
+    private static final class Axis {
+        double position;
+        double velocity;
+        double p00;
+        double p01;
+        double p11;
+
+        void init(double position, double variance) {
+            this.position = position;
+            velocity = 0;
+            p00 = variance;
+            p01 = 0;
+            // Velocidade inicial desconhecida (até alguns m/s)
+            p11 = 4;
+        }
+
+        void predict(double dt, double q) {
+            position += velocity * dt;
+            double dt2 = dt * dt;
+            p00 += dt * (2 * p01 + dt * p11) + q * dt2 * dt2 / 4;
+            p01 += dt * p11 + q * dt2 * dt / 2;
+            p11 += q * dt2;
+        }
+
+        void update(double measurement, double variance) {
+            double innovation = measurement - position;
+            double s = p00 + variance;
+            double k0 = p00 / s;
+            double k1 = p01 / s;
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+            p11 -= k1 * p01;
+            p01 -= k0 * p01;
+            p00 -= k0 * p00;
+        }
+    }
+
+    /**
+     * @param accelerationNoise Desvio padrão da aceleração esperada, em m/s²
+     */
+    public KalmanSmoother(double accelerationNoise) {
+        this.accelerationVariance = accelerationNoise * accelerationNoise;
+    }
+
+    @Override
+    public boolean accept(Fix fix) {
+        if (projection == null) {
+            projection = new LocalProjection(fix.latitude, fix.longitude);
+        }
+        double x = projection.toX(fix.longitude);
+        double y = projection.toY(fix.latitude);
+        float accuracy = fix.accuracy > 0 ? fix.accuracy : DEFAULT_ACCURACY;
+        double variance = accuracy * accuracy;
+
+        long elapsed = fix.time - lastTime;
+        if (!initialized || elapsed > MAX_GAP_MS || elapsed < 0) {
+            east.init(x, variance);
+            north.init(y, variance);
+            initialized = true;
+        } else {
+            double dt = elapsed / 1000.0;
+            east.predict(dt, accelerationVariance);
+            north.predict(dt, accelerationVariance);
+            east.update(x, variance);
+            north.update(y, variance);
+        }
+        lastTime = fix.time;
+
+        fix.latitude = projection.toLatitude(north.position);
+        fix.longitude = projection.toLongitude(east.position);
+        fix.accuracy = (float) Math.sqrt(Math.max(east.p00, north.p00));
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        projection = null;
+        initialized = false;
+    }
+}
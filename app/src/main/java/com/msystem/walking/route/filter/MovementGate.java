@@ -0,0 +1,52 @@
+package com.msystem.walking.route.filter;
+
+import com.msystem.walking.geo.DistanceKernel;
+
+/**
+ * Só deixa passar pontos que se afastaram o suficiente do último aceito.
+ *
+ * Parado, o GPS (mesmo suavizado) deriva alguns metros de um lado para o
+ * outro; sem este filtro essa deriva vira distância e pontos. Um ponto só
+ * conta como deslocamento quando o seu círculo de precisão não toca mais o do
+ * último ponto aceito (ou, com precisões pequenas, depois do mínimo fixo).
+ * Com precisões ruins a exigência para no máximo fixo, para que pontos
+ * esparsos numa caminhada com curvas não sejam pulados.
+ */
+public class MovementGate implements FixFilter {
+    private final double minDistance;
+    private final double maxDistance;
+
+    private boolean hasLast;
+    private double lastLatitude;
+    private double lastLongitude;
+    private float lastAccuracy;
+
+    /**
+     * @param minDistance Deslocamento mínimo em metros
+     * @param maxDistance Deslocamento que sempre é aceito, em metros, qualquer que seja a precisão
+     */
+    public MovementGate(double minDistance, double maxDistance) {
+        this.minDistance = minDistance;
+        this.maxDistance = Math.max(minDistance, maxDistance);
+    }
+
+    @Override
+    public boolean accept(Fix fix) {
+        if (hasLast) {
+            double distance = DistanceKernel.tangentPlane(lastLatitude, lastLongitude, fix.latitude, fix.longitude);
+            if (distance < Math.max(minDistance, Math.min(maxDistance, lastAccuracy + fix.accuracy))) {
+                return false;
+            }
+        }
+        hasLast = true;
+        lastLatitude = fix.latitude;
+        lastLongitude = fix.longitude;
+        lastAccuracy = fix.accuracy;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        hasLast = false;
+    }
+}
@@ -0,0 +1,61 @@
+package com.msystem.walking.route.filter;
+
+import com.msystem.walking.geo.DistanceKernel;
+
+/**
+ * Descarta pontos fora de ordem e saltos impossíveis para quem está a pé.
+ *
+ * A velocidade é calculada em relação ao último ponto aceito, descontando a
+ * precisão dos dois pontos. Depois de {@link #MAX_CONSECUTIVE_REJECTIONS}
+ * descartes seguidos o ponto é aceito mesmo assim, para que um deslocamento
+ * real (ex: depois de um túnel) não trave a rota.
+ */
+public class OutlierFilter implements FixFilter {
+    public static final int MAX_CONSECUTIVE_REJECTIONS = 5;
+
+    private final double maxSpeed;
+
+    private boolean hasLast;
+    private double lastLatitude;
+    private double lastLongitude;
+    private long lastTime;
+    private float lastAccuracy;
+    private int rejections;
+
+    /**
+     * @param maxSpeed Velocidade máxima plausível em m/s
+     */
+    public OutlierFilter(double maxSpeed) {
+        this.maxSpeed = maxSpeed;
+    }
+
+    @Override
+    public boolean accept(Fix fix) {
+        if (hasLast) {
+            long elapsed = fix.time - lastTime;
+            if (elapsed <= 0) {
+                // Repetido ou fora de ordem
+                return false;
+            }
+            double distance = DistanceKernel.tangentPlane(lastLatitude, lastLongitude, fix.latitude, fix.longitude);
+            double allowed = maxSpeed * elapsed / 1000.0 + lastAccuracy + fix.accuracy;
+            if (distance > allowed && rejections < MAX_CONSECUTIVE_REJECTIONS) {
+                rejections++;
+                return false;
+            }
+        }
+        hasLast = true;
+        lastLatitude = fix.latitude;
+        lastLongitude = fix.longitude;
+        lastTime = fix.time;
+        lastAccuracy = fix.accuracy;
+        rejections = 0;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        hasLast = false;
+        rejections = 0;
+    }
+}
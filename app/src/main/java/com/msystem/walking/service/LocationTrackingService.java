@@ -1,21 +1,18 @@
 package com.msystem.walking.service;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
-
-import androidx.core.app.ActivityCompat;
-import androidx.core.app.NotificationCompat;
-import androidx.core.app.NotificationManagerCompat;
+import android.os.Process;
+import android.os.SystemClock;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationCallback;
@@ -24,33 +21,120 @@ import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.Priority;
 
-import com.msystem.walking.MainActivity;
-import com.msystem.walking.R;
+import com.msystem.walking.geo.CorridorBuilder;
+import com.msystem.walking.geo.DistanceKernel;
 import com.msystem.walking.model.LocationPoint;
-
-import java.util.ArrayList;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.route.FixQueue;
+import com.msystem.walking.route.PackedRoute;
+import com.msystem.walking.route.RouteBuffer;
+import com.msystem.walking.route.SamplingController;
+import com.msystem.walking.route.SessionJournal;
+import com.msystem.walking.route.StationaryDetector;
+import com.msystem.walking.route.StreamingSimplifier;
+import com.msystem.walking.route.filter.Fix;
+import com.msystem.walking.route.filter.FixFilterChain;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
 import java.util.List;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rastreamento da atividade em primeiro plano.
+ *
+ * Os pontos chegam numa thread própria (HandlerThread) e passam por etapas em
+ * sequência: ajustar a amostragem e detectar paradas (pausa automática), filtrar,
+ * acumular (rota, distância, corredor), gravar no diário e publicar. A publicação
+ * põe o ponto numa fila de um produtor e um consumidor ({@link FixQueue}) e
+ * agenda uma só mensagem na thread principal, que esvazia a fila e chama o
+ * listener; a thread principal não faz nenhum cálculo da rota.
+ * O estado da sessão só muda na thread do processamento: os métodos chamados
+ * pela tela repassam a mudança para lá sem esperar (a thread principal nunca
+ * fica parada atrás de uma thread de prioridade menor). O que depende desse
+ * estado, como a rota simplificada, chega por callback na thread principal,
+ * depois de todas as mudanças pedidas antes.
+ */
 public class LocationTrackingService extends Service {
     private static final String CHANNEL_ID = "LocationTrackingChannel";
     private static final int NOTIFICATION_ID = 1;
+    // A distância na notificação muda a cada 10 m: mais que isso é tráfego sem efeito visível
+    public static final long DEFAULT_NOTIFICATION_INTERVAL = 5000;
+    // Próximo do erro típico do GPS: abaixo disso os desvios são só ruído
+    public static final double DEFAULT_SIMPLIFY_TOLERANCE = 5.0;
 
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
-    private LocationRequest locationRequest;
-
-    private List<LocationPoint> routePoints = new ArrayList<>();
-    private double totalDistance = 0.0;
-    private Location lastLocation;
-    private boolean isTracking = false;
+    // Intervalo dos pontos pelo estado de movimento (só na thread do processamento)
+    private final SamplingController sampling = new SamplingController();
+    // Pausa e retomada automáticas quando a pessoa para (só na thread do processamento)
+    private final StationaryDetector stationary = new StationaryDetector();
+    private volatile boolean autoPaused;
+    // Tempo em movimento: trechos já fechados e início do atual (SystemClock.elapsedRealtime,
+    // a mesma base de Fix.elapsed); só a duração vai para o diário
+    private volatile long movingMillis;
+    private volatile long movingSince;
+    // O próximo ponto gravado começa um trecho novo (retomada depois de pausar)
+    private boolean segmentStart;
+
+    // Pontos da sessão em segmentos primitivos: escritos pela thread do processamento,
+    // lidos pela tela sem lock nem cópia (a sessão pode ter horas de pontos)
+    private final RouteBuffer route = new RouteBuffer();
+    // Rota simplificada, usada para salvar e desenhar
+    private double simplifyTolerance = DEFAULT_SIMPLIFY_TOLERANCE;
+    private StreamingSimplifier simplifier = new StreamingSimplifier(simplifyTolerance);
+    // Descarta pontos imprecisos, saltos e a deriva parado antes de qualquer cálculo
+    private final FixFilterChain filters = FixFilterChain.createDefault();
+    private final Fix fix = new Fix();
+    private volatile double totalDistance = 0.0;
+    private boolean hasLastFix;
+    private double lastLatitude;
+    private double lastLongitude;
+    private volatile boolean isTracking = false;
+    // Corredor de conquista atualizado a cada ponto, para não calcular tudo ao finalizar
+    private CorridorBuilder conquest = TerritoryUtils.createCorridorBuilder();
+    // Cópia em disco dos pontos aceitos, para recuperar a sessão se o processo morrer
+    private static final String JOURNAL_FILE = "tracking/session.journal";
+    private volatile SessionJournal journal;
+    private volatile long sessionStartedAt;
+
+    // Thread do processamento dos pontos
+    private HandlerThread pipelineThread;
+    private Handler pipelineHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Pontos publicados para a tela: produtor é a thread do processamento, consumidor a principal
+    private static final int UPDATE_QUEUE_CAPACITY = 1024;
+    private final FixQueue updates = new FixQueue(UPDATE_QUEUE_CAPACITY);
+    private final FixQueue.Update update = new FixQueue.Update();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Runnable drainUpdates = this::drainUpdates;
+
+    // Notificação reaproveitada, enviada só quando o texto muda e no máximo no intervalo
+    private NotificationUpdater notifications;
 
     private final IBinder binder = new LocationBinder();
 
+    // Chamado na thread principal
     public interface LocationUpdateListener {
         void onLocationUpdate(LocationPoint point, double totalDistance);
+
+        // A sessão foi pausada ou retomada automaticamente
+        void onAutoPauseChanged(boolean paused);
+    }
+
+    private volatile LocationUpdateListener locationUpdateListener;
+
+    // Resultado de uma consulta ao estado da sessão, entregue na thread principal
+    public interface ResultCallback<T> {
+        void onResult(T result);
     }
 
-    private LocationUpdateListener locationUpdateListener;
+    // Consulta feita na thread do processamento
+    private interface Query<T> {
+        T run();
+    }
 
     public class LocationBinder extends Binder {
         public LocationTrackingService getService() {
@@ -62,16 +146,36 @@ public class LocationTrackingService extends Service {
     public void onCreate() {
         super.onCreate();
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
-        createLocationRequest();
         createLocationCallback();
         createNotificationChannel();
+
+        pipelineThread = new HandlerThread("location-pipeline", Process.THREAD_PRIORITY_BACKGROUND);
+        pipelineThread.start();
+        pipelineHandler = new Handler(pipelineThread.getLooper());
+        notifications = new NotificationUpdater(this, CHANNEL_ID, NOTIFICATION_ID,
+                DEFAULT_NOTIFICATION_INTERVAL, pipelineHandler);
+        // Ler o diário pode demorar: a tela pergunta por checkSession quando precisar
+        runOnPipeline(this::recoverSession);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Recriado pelo sistema depois de encerrar o processo: a sessão volta pelo diário (em onCreate)
+        return START_STICKY;
     }
 
-    private void createLocationRequest() {
-        locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 5000)
+    /**
+     * Pedido de localização para um estado de movimento. A prioridade fica alta em
+     * todos: com a precisão de rede (dezenas de metros) os filtros descartam os pontos
+     * e não daria para perceber quando a pessoa volta a andar.
+     * @param mode Estado atual do {@link SamplingController}
+     * @return Pedido com o intervalo e o atraso de entrega em lote do estado
+     */
+    public static LocationRequest createLocationRequest(SamplingController.Mode mode) {
+        return new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, mode.intervalMillis)
                 .setWaitForAccurateLocation(false)
-                .setMinUpdateIntervalMillis(2000)
-                .setMaxUpdateDelayMillis(10000)
+                .setMinUpdateIntervalMillis(mode.minIntervalMillis)
+                .setMaxUpdateDelayMillis(mode.maxDelayMillis)
                 .build();
     }
 
@@ -84,76 +188,449 @@ public class LocationTrackingService extends Service {
                     return;
                 }
 
+                // Já na thread do processamento
                 for (Location location : locationResult.getLocations()) {
                     if (isTracking) {
-                        LocationPoint point = new LocationPoint(
-                                location.getLatitude(),
-                                location.getLongitude(),
-                                location.getAltitude(),
-                                location.getAccuracy()
-                        );
-
-                        routePoints.add(point);
-
-                        // Calcular distância
-                        if (lastLocation != null) {
-                            double distance = calculateDistance(lastLocation, location);
-                            totalDistance += distance;
-                        }
-
-                        lastLocation = location;
-
-                        // Notificar listener
-                        if (locationUpdateListener != null) {
-                            locationUpdateListener.onLocationUpdate(point, totalDistance);
-                        }
-
-                        // Atualizar notificação
-                        updateNotification();
+                        processFix(location);
                     }
                 }
             }
         };
     }
 
-    private double calculateDistance(Location start, Location end) {
-        float[] results = new float[1];
-        Location.distanceBetween(
-                start.getLatitude(), start.getLongitude(),
-                end.getLatitude(), end.getLongitude(),
-                results
-        );
-        return results[0] / 1000.0; // Converter para km
+    private void processFix(Location location) {
+        fix.set(location.getLatitude(), location.getLongitude(), location.getTime(),
+                location.getAltitude(), location.getAccuracy(),
+                location.hasSpeed() ? location.getSpeed() : Float.NaN);
+        // Relógio monotônico do ponto: o horário do GPS e o do aparelho podem ser ajustados
+        long nanos = location.getElapsedRealtimeNanos();
+        fix.elapsed = nanos > 0 ? nanos / 1000000 : SystemClock.elapsedRealtime();
+        // Antes dos filtros: os controladores precisam ver também os pontos parados
+        boolean resample = sampling.onFix(fix);
+        if (stationary.onFix(fix)) {
+            onStationaryChanged();
+            resample = true;
+        }
+        if (resample) {
+            try {
+                requestLocationUpdates();
+            } catch (SecurityException e) {
+                // Permissão revogada: sem ela não há como seguir, e o pedido anterior não fica ativo
+                android.util.Log.e("LocationTrackingService", "Permissão de localização revogada: " + e.getMessage());
+                stopTracking();
+                return;
+            }
+        }
+        if (autoPaused) {
+            // Parado: a deriva do GPS não entra na rota, na distância nem no corredor
+            return;
+        }
+        if (!filters.accept(fix)) {
+            return;
+        }
+        accumulate(fix.latitude, fix.longitude, fix.time, fix.altitude, fix.accuracy);
+        writeJournal();
+        publish();
+    }
+
+    // Entrega o ponto à tela pela fila, com no máximo uma mensagem pendente na thread principal
+    private void publish() {
+        if (locationUpdateListener != null) {
+            // Fila cheia (tela travada por muito tempo): o ponto fica só na rota, que a tela pode reler
+            updates.offer(fix, totalDistance);
+            if (drainScheduled.compareAndSet(false, true)) {
+                mainHandler.post(drainUpdates);
+            }
+        }
+
+        // Atualizar notificação (só se o texto mudou e o intervalo permite)
+        notifications.update(totalDistance, false);
+    }
+
+    // A pessoa parou ou voltou a andar: fecha ou abre um período em movimento
+    private void onStationaryChanged() {
+        autoPaused = stationary.isStopped();
+        if (autoPaused) {
+            // A parada começou antes de ser detectada: esse tempo não conta como movimento
+            movingMillis += Math.max(0, stationary.getStoppedSince() - movingSince);
+            if (journal != null) {
+                journal.setMovingTime(movingMillis);
+                journal.sync();
+            }
+        } else {
+            movingSince = stationary.getMovingSince();
+            // A estimativa de velocidade e o estado dos filtros são de antes da parada
+            sampling.reset();
+            filters.reset();
+        }
+
+        notifications.update(totalDistance, autoPaused);
+
+        boolean paused = autoPaused;
+        mainHandler.post(() -> {
+            LocationUpdateListener listener = locationUpdateListener;
+            if (listener != null) {
+                listener.onAutoPauseChanged(paused);
+            }
+        });
+    }
+
+    // Thread principal: o LocationPoint só é criado para quem vai usá-lo
+    private void drainUpdates() {
+        // Liberar antes de ler: um ponto publicado durante a leitura agenda outra mensagem
+        drainScheduled.set(false);
+        while (updates.poll(update)) {
+            LocationUpdateListener listener = locationUpdateListener;
+            if (listener != null) {
+                LocationPoint point = new LocationPoint(
+                        update.fix.latitude,
+                        update.fix.longitude,
+                        update.fix.altitude,
+                        update.fix.accuracy
+                );
+                point.setTimestamp(new Date(update.fix.time));
+                listener.onLocationUpdate(point, update.totalDistance);
+            }
+        }
+    }
+
+    /**
+     * Executa na thread do processamento, na ordem em que foi pedido, sem esperar.
+     * As mudanças de estado da sessão passam por aqui, então nunca concorrem com
+     * um ponto sendo processado.
+     */
+    private void runOnPipeline(Runnable task) {
+        if (Looper.myLooper() == pipelineThread.getLooper()) {
+            task.run();
+        } else {
+            pipelineHandler.post(task);
+        }
+    }
+
+    // Calcula o resultado na thread do processamento e o entrega na principal
+    private <T> void queryPipeline(final Query<T> query, final ResultCallback<T> callback) {
+        runOnPipeline(() -> {
+            T result = query.run();
+            mainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    // Soma um ponto aceito à rota, à distância e ao corredor (também usado ao recuperar a sessão)
+    private void accumulate(double latitude, double longitude, long time, double altitude, float accuracy) {
+        route.add(latitude, longitude, time, altitude, accuracy);
+        simplifier.add(latitude, longitude, time, altitude, accuracy);
+        conquest.addPoint(latitude, longitude);
+
+        // Calcular distância
+        if (hasLastFix) {
+            totalDistance += calculateDistance(lastLatitude, lastLongitude, latitude, longitude);
+        }
+
+        hasLastFix = true;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+    }
+
+    // O próximo ponto não se liga ao anterior na distância, no corredor nem na rota salva
+    private void breakSegment() {
+        conquest.breakSegment();
+        simplifier.breakSegment();
+        hasLastFix = false;
+    }
+
+    private void writeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(fix.latitude, fix.longitude, fix.time, fix.altitude, fix.accuracy, segmentStart);
+            segmentStart = false;
+            journal.setMovingTime(movingMillis + Math.max(0, fix.elapsed - movingSince));
+        } catch (IOException e) {
+            // Sem espaço ou arquivo inacessível: o rastreamento continua só em memória
+            android.util.Log.e("LocationTrackingService", "Erro ao gravar o diário: " + e.getMessage());
+            closeJournal(false);
+        }
+    }
+
+    private double calculateDistance(double startLatitude, double startLongitude,
+                                     double endLatitude, double endLongitude) {
+        // Plano tangente ao elipsoide: sem alocação e próximo de Location.distanceBetween
+        double meters = DistanceKernel.tangentPlane(startLatitude, startLongitude, endLatitude, endLongitude);
+        return meters / 1000.0; // Converter para km
     }
 
     public void startTracking() {
-        isTracking = true;
-        routePoints.clear();
-        totalDistance = 0.0;
-        lastLocation = null;
+        runOnPipeline(() -> {
+            route.clear();
+            simplifier = new StreamingSimplifier(simplifyTolerance);
+            conquest = TerritoryUtils.createCorridorBuilder();
+            filters.reset();
+            sampling.reset();
+            stationary.reset();
+            autoPaused = false;
+            totalDistance = 0.0;
+            hasLastFix = false;
+            segmentStart = false;
+
+            sessionStartedAt = System.currentTimeMillis();
+            movingMillis = 0;
+            movingSince = SystemClock.elapsedRealtime();
+            closeJournal(true);
+            try {
+                journal = SessionJournal.create(new File(getFilesDir(), JOURNAL_FILE), sessionStartedAt);
+            } catch (IOException e) {
+                android.util.Log.e("LocationTrackingService", "Erro ao criar o diário: " + e.getMessage());
+            }
+            isTracking = true;
+            requestUpdates();
+        });
+    }
 
+    private void requestUpdates() {
+        // Iniciado (não só vinculado), para o sistema recriar o serviço se encerrar o processo
+        startService(new Intent(this, LocationTrackingService.class));
         try {
-            fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
-            startForeground(NOTIFICATION_ID, createNotification());
+            requestLocationUpdates();
+            startForeground(NOTIFICATION_ID, notifications.build(totalDistance, autoPaused));
         } catch (SecurityException e) {
-            e.printStackTrace();
+            // Sem permissão: desfazer o que já foi registrado e deixar a sessão pausada
+            android.util.Log.e("LocationTrackingService", "Sem permissão de localização: " + e.getMessage());
+            stopTracking();
+        }
+    }
+
+    /**
+     * Retoma uma sessão pausada: os pontos novos continuam na mesma rota, num trecho
+     * novo (a distância e o corredor não ligam o ponto da pausa ao da retomada)
+     */
+    public void resumeTracking() {
+        runOnPipeline(() -> {
+            breakSegment();
+            segmentStart = true;
+            filters.reset();
+            sampling.reset();
+            stationary.reset();
+            autoPaused = false;
+            movingSince = SystemClock.elapsedRealtime();
+            if (journal != null) {
+                journal.setState(SessionJournal.STATE_TRACKING);
+            }
+            isTracking = true;
+            requestUpdates();
+        });
+    }
+
+    // Pede os pontos no intervalo do estado atual; substitui o pedido anterior do mesmo callback
+    private void requestLocationUpdates() {
+        if (!isTracking) {
+            // Parado no meio do lote de pontos: não registrar o GPS de novo
+            return;
         }
+        // Em pausa automática o GPS fica no intervalo mais longo, qualquer que seja a estimativa
+        SamplingController.Mode mode = autoPaused ? SamplingController.Mode.STATIONARY : sampling.getMode();
+        fusedLocationClient.requestLocationUpdates(createLocationRequest(mode),
+                locationCallback, pipelineThread.getLooper());
     }
 
+    /**
+     * Pausa a sessão. Roda na thread do processamento, depois de um início ou retomada
+     * pedidos antes, que então não voltam a registrar o GPS nem a notificação.
+     */
     public void stopTracking() {
-        isTracking = false;
-        fusedLocationClient.removeLocationUpdates(locationCallback);
-        stopForeground(true);
+        runOnPipeline(() -> {
+            if (!isTracking) {
+                return;
+            }
+            isTracking = false;
+            fusedLocationClient.removeLocationUpdates(locationCallback);
+            // Antes de retirar a notificação: um envio adiado não a recria depois disso
+            notifications.cancel();
+            stopForeground(true);
+            if (!autoPaused) {
+                movingMillis += Math.max(0, SystemClock.elapsedRealtime() - movingSince);
+            }
+            autoPaused = false;
+            simplifier.flush();
+            if (journal != null) {
+                journal.setMovingTime(movingMillis);
+                journal.setState(SessionJournal.STATE_PAUSED);
+                journal.sync();
+            }
+        });
+    }
+
+    /**
+     * Encerra a sessão depois de a atividade ser salva: apaga o diário e deixa o
+     * serviço parar quando não houver mais ninguém vinculado
+     */
+    public void endSession() {
+        stopTracking();
+        runOnPipeline(() -> closeJournal(true));
+        stopSelf();
+    }
+
+    // Há uma sessão (rastreando ou pausada) ainda não finalizada
+    public boolean hasSession() {
+        return isTracking || journal != null;
+    }
+
+    /**
+     * Informa se há uma sessão depois de terminarem as mudanças já pedidas,
+     * inclusive a recuperação do diário ao criar o serviço
+     * @param callback Chamado na thread principal
+     */
+    public void checkSession(ResultCallback<Boolean> callback) {
+        queryPipeline(this::hasSession, callback);
+    }
+
+    public boolean isTracking() {
+        return isTracking;
+    }
+
+    // Parado há algum tempo: os pontos não entram na rota até a pessoa voltar a andar
+    public boolean isAutoPaused() {
+        return autoPaused;
+    }
+
+    // Início da sessão atual (epoch em milissegundos)
+    public long getSessionStartedAt() {
+        return sessionStartedAt;
+    }
+
+    // Tempo em movimento da sessão, sem as pausas manuais e automáticas, em milissegundos
+    public long getMovingTime() {
+        long total = movingMillis;
+        if (isTracking && !autoPaused) {
+            total += Math.max(0, SystemClock.elapsedRealtime() - movingSince);
+        }
+        return total;
+    }
+
+    /**
+     * Refaz a sessão a partir do diário deixado por um processo encerrado: os pontos
+     * voltam para a rota, a distância e o corredor, e o rastreamento continua do
+     * último ponto se não estava pausado
+     */
+    private void recoverSession() {
+        File file = new File(getFilesDir(), JOURNAL_FILE);
+        try {
+            journal = SessionJournal.open(file);
+        } catch (IOException e) {
+            android.util.Log.e("LocationTrackingService", "Erro ao abrir o diário: " + e.getMessage());
+            journal = null;
+        }
+        if (journal == null) {
+            file.delete();
+            return;
+        }
+
+        sessionStartedAt = journal.getStartedAt();
+        // O tempo entre o último ponto gravado e agora (processo encerrado) não conta
+        movingMillis = journal.getMovingTime();
+        movingSince = SystemClock.elapsedRealtime();
+        for (int i = 0; i < journal.size(); i++) {
+            if (journal.isSegmentStart(i)) {
+                breakSegment();
+            }
+            accumulate(journal.getLatitude(i), journal.getLongitude(i), journal.getTime(i),
+                    journal.getAltitude(i), journal.getAccuracy(i));
+        }
+        if (journal.getState() == SessionJournal.STATE_TRACKING) {
+            isTracking = true;
+            try {
+                requestUpdates();
+            } catch (IllegalStateException e) {
+                // Android 8+ pode recusar iniciar o serviço vindo do fundo: fica pausada
+                isTracking = false;
+                journal.setState(SessionJournal.STATE_PAUSED);
+            }
+        } else {
+            simplifier.flush();
+        }
+    }
+
+    private void closeJournal(boolean delete) {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                // Nada a fazer: o arquivo é apagado ou recriado na próxima sessão
+            }
+            journal = null;
+        }
+        if (delete) {
+            new File(getFilesDir(), JOURNAL_FILE).delete();
+        }
+    }
+
+    // Visão dos pontos atuais, sem cópia nem lock; não muda com os pontos que chegarem depois
+    public RouteBuffer.Snapshot getRoute() {
+        return route.snapshot();
     }
 
+    // Pontos como LocationPoint, criados sob demanda
     public List<LocationPoint> getRoutePoints() {
-        return new ArrayList<>(routePoints);
+        return getRoute().asLocationPoints();
+    }
+
+    /**
+     * Rota simplificada (os últimos pontos só entram ao pausar ou finalizar). Depois
+     * de {@link #stopTracking}, o callback vem depois do último ponto processado:
+     * a rota, a distância e o corredor já não mudam.
+     * @param callback Chamado na thread principal
+     */
+    public void getSimplifiedRoute(ResultCallback<PackedRoute.View> callback) {
+        queryPipeline(() -> simplifier.snapshot(), callback);
+    }
+
+    /**
+     * Define a tolerância da rota simplificada; vale a partir da próxima sessão
+     * @param meters Distância máxima entre um ponto descartado e a rota simplificada
+     */
+    public void setSimplifyTolerance(double meters) {
+        this.simplifyTolerance = meters;
     }
 
     public double getTotalDistance() {
         return totalDistance;
     }
 
+    /**
+     * Territórios do corredor conquistado na sessão, montados na thread do processamento
+     * (podem ser centenas de células); depois de {@link #stopTracking}, incluem todos os
+     * pontos processados
+     * @param userId Dono dos territórios
+     * @param userName Nome exibido do dono
+     * @param callback Chamado na thread principal
+     */
+    public void getConqueredTerritories(String userId, String userName, ResultCallback<List<Territory>> callback) {
+        queryPipeline(() -> TerritoryUtils.createTerritoriesFromCorridor(conquest, userId, userName), callback);
+    }
+
+    // Área conquistada até agora em metros quadrados (callback na thread principal)
+    public void getConqueredArea(ResultCallback<Double> callback) {
+        queryPipeline(() -> conquest.getCellArea(), callback);
+    }
+
+    /**
+     * Define o intervalo mínimo entre duas atualizações da notificação
+     * @param millis Intervalo em milissegundos
+     */
+    public void setNotificationInterval(long millis) {
+        notifications.setMinInterval(millis);
+    }
+
+    // Atualizações da notificação enviadas desde a criação do serviço
+    public long getNotificationPostCount() {
+        return notifications.getPostedCount();
+    }
+
+    // Atualizações evitadas: texto igual ao exibido ou substituído dentro do intervalo
+    public long getNotificationSuppressedCount() {
+        return notifications.getSuppressedCount();
+    }
+
     public void setLocationUpdateListener(LocationUpdateListener listener) {
         this.locationUpdateListener = listener;
     }
@@ -170,32 +647,6 @@ public class LocationTrackingService extends Service {
         }
     }
 
-    private Notification createNotification() {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
-
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("Rastreando atividade")
-                .setContentText(String.format("Distância: %.2f km", totalDistance))
-                .setSmallIcon(R.drawable.ic_launcher_foreground)
-                .setContentIntent(pendingIntent)
-                .build();
-    }
-
-    private void updateNotification() {
-        // Verificar se temos permissão para postar notificações (Android 13+)
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-            if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
-                // Sem permissão, não mostrar notificação
-                return;
-            }
-        }
-
-        Notification notification = createNotification();
-        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(this);
-        notificationManager.notify(NOTIFICATION_ID, notification);
-    }
-
     @Override
     public IBinder onBind(Intent intent) {
         return binder;
@@ -204,8 +655,10 @@ public class LocationTrackingService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (isTracking) {
-            stopTracking();
-        }
+        stopTracking();
+        // O diário fica no disco: a sessão pausada volta na próxima vez que o serviço for criado
+        runOnPipeline(() -> closeJournal(false));
+        mainHandler.removeCallbacks(drainUpdates);
+        pipelineThread.quitSafely();
     }
 }
@@ -0,0 +1,114 @@
+package com.msystem.walking.service;
+
+/**
+ * Decide quando a notificação do rastreamento precisa ser reenviada.
+ *
+ * O valor exibido chega como uma chave inteira (ex: a distância arredondada
+ * como aparece na tela): uma chave igual à exibida não é enviada, e entre dois
+ * envios há pelo menos {@code minIntervalMillis}. Um valor novo que chega cedo
+ * demais fica pendente e sai quando o intervalo termina ({@link #flush}); só o
+ * mais recente é enviado. Os contadores mostram quanto foi evitado.
+ *
+ * Sem dependências do Android; não é thread-safe.
+ */
+public final class NotificationThrottle {
+    // offer(): nada a enviar agora nem depois
+    public static final long NOTHING = -1;
+
+    private long minIntervalMillis;
+    private boolean hasShown;
+    private long shown;
+    private long lastPostAt;
+    private boolean hasPending;
+    private long pending;
+
+    private long posted;
+    private long suppressedUnchanged;
+    private long suppressedRate;
+
+    /**
+     * @param minIntervalMillis Intervalo mínimo entre dois envios
+     */
+    public NotificationThrottle(long minIntervalMillis) {
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    public void setMinInterval(long millis) {
+        this.minIntervalMillis = millis;
+    }
+
+    /**
+     * Recebe o valor atual
+     * @param key Valor exibido (chaves iguais mostram o mesmo texto)
+     * @param now Horário atual em milissegundos (relógio monotônico)
+     * @return 0 para enviar agora; {@link #NOTHING} se não há o que enviar; senão,
+     *         daqui a quantos ms chamar {@link #flush}
+     */
+    public long offer(long key, long now) {
+        if (hasShown && key == shown) {
+            // Voltou ao valor exibido: o pendente não precisa mais sair
+            hasPending = false;
+            suppressedUnchanged++;
+            return NOTHING;
+        }
+        long wait = hasShown ? lastPostAt + minIntervalMillis - now : 0;
+        if (wait <= 0) {
+            // Um flush já agendado não tem mais o que enviar
+            hasPending = false;
+            markPosted(key, now);
+            return 0;
+        }
+        suppressedRate++;
+        // Só o primeiro adiamento agenda o flush; os seguintes só trocam o valor
+        boolean scheduled = hasPending;
+        hasPending = true;
+        pending = key;
+        return scheduled ? NOTHING : wait;
+    }
+
+    /**
+     * Fim do intervalo: entrega o valor pendente, se ainda houver
+     * @param now Horário atual em milissegundos
+     * @return true se a chave de {@link #getPending()} deve ser enviada agora
+     */
+    public boolean flush(long now) {
+        if (!hasPending) {
+            return false;
+        }
+        hasPending = false;
+        markPosted(pending, now);
+        return true;
+    }
+
+    // Valor a enviar depois de flush() retornar true
+    public long getPending() {
+        return pending;
+    }
+
+    // Esquece o valor exibido: o próximo offer() envia (ex: a notificação foi recriada)
+    public void reset() {
+        hasShown = false;
+        hasPending = false;
+    }
+
+    public long getPostedCount() {
+        return posted;
+    }
+
+    // Valores iguais ao exibido, descartados sem montar a notificação
+    public long getSuppressedUnchangedCount() {
+        return suppressedUnchanged;
+    }
+
+    // Valores adiados pelo intervalo mínimo (só o último de cada intervalo é enviado)
+    public long getSuppressedRateCount() {
+        return suppressedRate;
+    }
+
+    private void markPosted(long key, long now) {
+        hasShown = true;
+        shown = key;
+        lastPostAt = now;
+        posted++;
+    }
+}
@@ -0,0 +1,145 @@
+package com.msystem.walking.service;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.msystem.walking.MainActivity;
+import com.msystem.walking.R;
+
+/**
+ * Mantém a notificação do rastreamento em dia sem reenviá-la a cada ponto.
+ *
+ * Um só {@link NotificationCompat.Builder} (com o PendingIntent criado uma vez) é
+ * reaproveitado; a cada ponto só se calcula a chave do texto exibido, e o texto
+ * só é montado e enviado quando a chave muda e o {@link NotificationThrottle}
+ * libera. O valor adiado sai no fim do intervalo pelo {@code handler}.
+ * Depois de {@link #cancel()} nada é enviado até o próximo {@link #build}: um
+ * ponto ainda em processamento não traz de volta a notificação retirada.
+ */
+final class NotificationUpdater {
+    private final Context context;
+    private final int notificationId;
+    private final NotificationCompat.Builder builder;
+    private final NotificationManagerCompat manager;
+    private final Handler handler;
+    private final NotificationThrottle throttle;
+    private final Runnable flush = this::flush;
+    // Sem rastreamento (antes do primeiro build ou depois de cancel)
+    private boolean stopped = true;
+
+    /**
+     * @param channelId Canal da notificação (já criado)
+     * @param notificationId Id usado também no startForeground
+     * @param minIntervalMillis Intervalo mínimo entre dois envios
+     * @param handler Thread onde os envios adiados acontecem
+     */
+    NotificationUpdater(Context context, String channelId, int notificationId, long minIntervalMillis,
+                        Handler handler) {
+        this.context = context;
+        this.notificationId = notificationId;
+        this.handler = handler;
+        this.manager = NotificationManagerCompat.from(context);
+        this.throttle = new NotificationThrottle(minIntervalMillis);
+
+        Intent intent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent, PendingIntent.FLAG_IMMUTABLE);
+        builder = new NotificationCompat.Builder(context, channelId)
+                .setContentTitle("Rastreando atividade")
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setContentIntent(pendingIntent)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true);
+    }
+
+    /**
+     * Notificação completa com o valor atual (para o startForeground)
+     * @param distance Distância em km
+     * @param paused Em pausa automática
+     */
+    synchronized Notification build(double distance, boolean paused) {
+        long key = key(distance, paused);
+        stopped = false;
+        throttle.reset();
+        throttle.offer(key, SystemClock.elapsedRealtime());
+        return render(key);
+    }
+
+    /**
+     * Valor novo; envia agora, depois ou nunca, conforme o limite
+     * @param distance Distância em km
+     * @param paused Em pausa automática
+     */
+    synchronized void update(double distance, boolean paused) {
+        if (stopped) {
+            return;
+        }
+        long key = key(distance, paused);
+        long result = throttle.offer(key, SystemClock.elapsedRealtime());
+        if (result == 0) {
+            post(key);
+        } else if (result > 0) {
+            handler.removeCallbacks(flush);
+            handler.postDelayed(flush, result);
+        }
+    }
+
+    synchronized void setMinInterval(long millis) {
+        throttle.setMinInterval(millis);
+    }
+
+    // O rastreamento parou: descarta o envio adiado e ignora os valores até o próximo build
+    synchronized void cancel() {
+        stopped = true;
+        handler.removeCallbacks(flush);
+        throttle.reset();
+    }
+
+    synchronized long getPostedCount() {
+        return throttle.getPostedCount();
+    }
+
+    // Valores não enviados: iguais ao exibido ou substituídos dentro do intervalo
+    synchronized long getSuppressedCount() {
+        return throttle.getSuppressedUnchangedCount() + throttle.getSuppressedRateCount();
+    }
+
+    private synchronized void flush() {
+        if (!stopped && throttle.flush(SystemClock.elapsedRealtime())) {
+            post(throttle.getPending());
+        }
+    }
+
+    private void post(long key) {
+        // Verificar se temos permissão para postar notificações (Android 13+)
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ActivityCompat.checkSelfPermission(context, android.Manifest.permission.POST_NOTIFICATIONS)
+                        != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        manager.notify(notificationId, render(key));
+    }
+
+    private Notification render(long key) {
+        if ((key & 1) != 0) {
+            builder.setContentText("Pausa automática");
+        } else {
+            builder.setContentText(String.format("Distância: %.2f km", (key >> 1) / 100.0));
+        }
+        return builder.build();
+    }
+
+    // Distância como exibida (centésimos de km) e a pausa no bit mais baixo
+    private static long key(double distance, boolean paused) {
+        return (Math.round(distance * 100) << 1) | (paused ? 1 : 0);
+    }
+}
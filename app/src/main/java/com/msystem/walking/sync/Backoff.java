@@ -0,0 +1,47 @@
+package com.msystem.walking.sync;
+
+import java.util.Random;
+
+/**
+ * Espera exponencial entre tentativas: base, 2 × base, 4 × base... até o máximo.
+ *
+ * Com sorteio, cada espera cai entre metade e o valor cheio, para vários
+ * aparelhos que perderam a rede juntos não tentarem todos no mesmo instante.
+ */
+public class Backoff {
+    private final long baseMillis;
+    private final long maxMillis;
+    private final Random random;
+
+    /**
+     * @param baseMillis Espera depois da primeira falha
+     * @param maxMillis Espera máxima
+     * @param random Sorteio da espera, ou null para esperas exatas
+     */
+    public Backoff(long baseMillis, long maxMillis, Random random) {
+        if (baseMillis <= 0 || maxMillis < baseMillis) {
+            throw new IllegalArgumentException("Esperas inválidas: " + baseMillis + ", " + maxMillis);
+        }
+        this.baseMillis = baseMillis;
+        this.maxMillis = maxMillis;
+        this.random = random;
+    }
+
+    /**
+     * Espera antes da próxima tentativa
+     * @param failures Falhas seguidas até agora (1 ou mais)
+     * @return Espera em milissegundos
+     */
+    public long delayMillis(int failures) {
+        long delay = baseMillis;
+        for (int i = 1; i < failures && delay < maxMillis; i++) {
+            delay <<= 1;
+        }
+        delay = Math.min(delay, maxMillis);
+        if (random == null) {
+            return delay;
+        }
+        long half = delay / 2;
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+}
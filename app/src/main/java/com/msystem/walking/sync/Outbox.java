@@ -0,0 +1,567 @@
+package com.msystem.walking.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Fila persistente de escritas ainda não confirmadas pelo servidor.
+ *
+ * Cada entrada (por exemplo, tudo o que uma atividade finalizada grava) vai para o
+ * fim de um arquivo antes de qualquer envio, e só sai da fila quando o servidor
+ * confirma; um registro de confirmação é então acrescentado ao arquivo. Ao abrir,
+ * o arquivo é relido e as entradas sem confirmação voltam para a fila; um registro
+ * cortado no meio (o processo morreu durante a escrita) é descartado pelo CRC.
+ * Quando as confirmações passam a ocupar a maior parte do arquivo, ele é reescrito
+ * só com as entradas pendentes.
+ *
+ * O envio junta várias entradas num lote, somando os incrementos do mesmo documento
+ * (as estatísticas de dez atividades feitas sem rede viram uma só escrita). Depois de
+ * uma falha, a próxima tentativa espera de forma exponencial ({@link Backoff});
+ * {@link #retryNow()} cancela a espera, por exemplo quando a rede volta. Uma entrada
+ * que o servidor recusa de vez (sem permissão, valor inválido, escritas demais) não
+ * segura a fila: um registro de descarte a tira das pendentes e ela fica guardada à
+ * parte ({@link #getDeadLetterCount()}), só as {@link #MAX_DEAD_LETTERS} mais recentes;
+ * se o lote recusado tinha várias entradas, elas são reenviadas uma a uma até achar a
+ * culpada. As recusadas não contam como ocupação útil do arquivo: quando a fila esvazia,
+ * ele é reescrito só com elas.
+ * Os métodos são thread-safe; o envio em si roda fora do lock.
+ */
+public class Outbox {
+    // Tipos de registro no arquivo
+    private static final byte ENTRY = 1;
+    private static final byte ACK = 2;
+    private static final byte DEAD = 3;
+    private static final int HEADER_BYTES = 8;
+
+    // Um lote do Firestore aceita 500 escritas: sobra espaço para um recibo por entrada
+    static final int MAX_BATCH_OPERATIONS = 400;
+    static final int MAX_BATCH_ENTRIES = 50;
+    // Só reescrever o arquivo a partir deste tamanho
+    static final long COMPACT_MIN_BYTES = 64 * 1024;
+    // Entradas recusadas guardadas; passando disso, as mais antigas são esquecidas
+    static final int MAX_DEAD_LETTERS = 20;
+
+    public static final long DEFAULT_BACKOFF_BASE_MILLIS = 2000;
+    public static final long DEFAULT_BACKOFF_MAX_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Relógio usado para as esperas (substituível nos testes)
+     */
+    public interface Clock {
+        long currentTimeMillis();
+
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+        };
+    }
+
+    /**
+     * Avisado quando um envio falha e a próxima tentativa fica agendada
+     */
+    public interface Listener {
+        void onRetryScheduled(long delayMillis);
+    }
+
+    private static final class Entry {
+        final String id;
+        final List<OutboxOperation> operations;
+        final int recordBytes;
+
+        Entry(String id, List<OutboxOperation> operations, int recordBytes) {
+            this.id = id;
+            this.operations = operations;
+            this.recordBytes = recordBytes;
+        }
+    }
+
+    private final File file;
+    private final OutboxBackend backend;
+    private final Backoff backoff;
+    private final Clock clock;
+    private Listener listener;
+
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    // Entradas recusadas de vez pelo servidor, fora da fila (da mais antiga para a mais nova)
+    private final Map<String, Entry> deadLetters = new LinkedHashMap<>();
+    private long fileBytes;
+    // Bytes do arquivo ocupados por entradas ainda pendentes (as recusadas não contam)
+    private long liveBytes;
+
+    private boolean inFlight;
+    private int failures;
+    private long nextAttemptAt;
+    // Lotes que ainda vão com uma só entrada, para isolar a que o servidor recusou
+    private int isolating;
+
+    public Outbox(File file, OutboxBackend backend) throws IOException {
+        this(file, backend, new Backoff(DEFAULT_BACKOFF_BASE_MILLIS, DEFAULT_BACKOFF_MAX_MILLIS, new Random()),
+                Clock.SYSTEM);
+    }
+
+    /**
+     * Abre a fila, recuperando as entradas pendentes do arquivo
+     * @param file Arquivo da fila (criado na primeira entrada)
+     * @param backend Destino das escritas
+     * @param backoff Esperas entre tentativas
+     * @param clock Relógio das esperas
+     * @throws IOException Se o arquivo existir e não puder ser lido
+     */
+    public Outbox(File file, OutboxBackend backend, Backoff backoff, Clock clock) throws IOException {
+        this.file = file;
+        this.backend = backend;
+        this.backoff = backoff;
+        this.clock = clock;
+        load();
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Grava uma entrada no fim do arquivo; ao retornar, ela sobrevive a um reinício
+     * @param operations Operações aplicadas juntas no servidor
+     * @return ID da entrada
+     * @throws IOException Se não for possível gravar (a entrada não entra na fila)
+     */
+    public synchronized String enqueue(List<OutboxOperation> operations) throws IOException {
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("Entrada sem operações");
+        }
+        String id = UUID.randomUUID().toString();
+        List<OutboxOperation> copy = Collections.unmodifiableList(new ArrayList<>(operations));
+        int recordBytes = append(encodeEntry(id, copy));
+        pending.put(id, new Entry(id, copy, recordBytes));
+        liveBytes += recordBytes;
+        return id;
+    }
+
+    /**
+     * Envia o próximo lote, se houver entradas, nenhum envio em andamento e a espera
+     * depois da última falha já tiver passado. Depois de um envio bem-sucedido, os
+     * lotes seguintes são enviados em sequência.
+     * @return true se um lote foi enviado
+     */
+    public boolean flush() {
+        List<String> entryIds = new ArrayList<>();
+        List<OutboxOperation> operations = new ArrayList<>();
+        synchronized (this) {
+            if (inFlight || pending.isEmpty() || clock.currentTimeMillis() < nextAttemptAt) {
+                return false;
+            }
+            buildBatch(entryIds, operations);
+            inFlight = true;
+        }
+        backend.write(entryIds, operations, new BatchCallback(entryIds));
+        return true;
+    }
+
+    /**
+     * Cancela a espera da próxima tentativa e envia já (ex: a rede voltou)
+     * @return true se um lote foi enviado
+     */
+    public boolean retryNow() {
+        synchronized (this) {
+            failures = 0;
+            nextAttemptAt = 0;
+        }
+        return flush();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    // Operações de uma entrada pendente, ou null se ela já saiu da fila
+    public synchronized List<OutboxOperation> getOperations(String entryId) {
+        Entry entry = pending.get(entryId);
+        return entry == null ? null : entry.operations;
+    }
+
+    // Entradas recusadas de vez pelo servidor (continuam no arquivo, mas não são reenviadas)
+    public synchronized int getDeadLetterCount() {
+        return deadLetters.size();
+    }
+
+    // Operações de uma entrada recusada, ou null se não houver
+    public synchronized List<OutboxOperation> getDeadLetterOperations(String entryId) {
+        Entry entry = deadLetters.get(entryId);
+        return entry == null ? null : entry.operations;
+    }
+
+    // Momento a partir do qual a próxima tentativa é permitida (0 se não há espera)
+    public synchronized long getNextAttemptTime() {
+        return nextAttemptAt;
+    }
+
+    public synchronized boolean isInFlight() {
+        return inFlight;
+    }
+
+    // Tamanho atual do arquivo da fila
+    public synchronized long getFileBytes() {
+        return fileBytes;
+    }
+
+    /**
+     * Monta um lote com as entradas mais antigas. Incrementos do mesmo documento viram
+     * um só, na posição do primeiro; uma escrita comum no documento encerra a soma,
+     * para um incremento nunca passar à frente de um SET ou DELETE do mesmo documento.
+     */
+    private void buildBatch(List<String> entryIds, List<OutboxOperation> operations) {
+        Map<String, Integer> incrementSlots = new HashMap<>();
+        for (Entry entry : pending.values()) {
+            // A primeira entrada vai sempre, mesmo se for maior que o limite
+            if (!entryIds.isEmpty() && (entryIds.size() == (isolating > 0 ? 1 : MAX_BATCH_ENTRIES)
+                    || operations.size() + entry.operations.size() > MAX_BATCH_OPERATIONS)) {
+                break;
+            }
+            entryIds.add(entry.id);
+            for (OutboxOperation operation : entry.operations) {
+                String path = operation.getPath();
+                if (operation.getKind() != OutboxOperation.Kind.INCREMENT) {
+                    incrementSlots.remove(path);
+                    operations.add(operation);
+                    continue;
+                }
+                Integer slot = incrementSlots.get(path);
+                if (slot == null) {
+                    incrementSlots.put(path, operations.size());
+                    operations.add(operation);
+                } else {
+                    operations.set(slot, operations.get(slot).plus(operation));
+                }
+            }
+        }
+    }
+
+    private final class BatchCallback implements OutboxBackend.Callback {
+        private final List<String> entryIds;
+
+        BatchCallback(List<String> entryIds) {
+            this.entryIds = entryIds;
+        }
+
+        @Override
+        public void onSuccess() {
+            synchronized (Outbox.this) {
+                acknowledge(entryIds);
+                isolated();
+                failures = 0;
+                nextAttemptAt = 0;
+                inFlight = false;
+            }
+            flush();
+        }
+
+        @Override
+        public void onAlreadyApplied(Set<String> applied) {
+            List<String> acknowledged = new ArrayList<>();
+            for (String id : entryIds) {
+                if (applied.contains(id)) {
+                    acknowledged.add(id);
+                }
+            }
+            synchronized (Outbox.this) {
+                acknowledge(acknowledged);
+                inFlight = false;
+            }
+            // As outras entradas do lote ainda não foram gravadas: enviar sem elas
+            if (!acknowledged.isEmpty()) {
+                flush();
+            } else {
+                onFailure(OutboxBackend.Failure.RETRYABLE);
+            }
+        }
+
+        @Override
+        public void onFailure(OutboxBackend.Failure failure) {
+            if (failure == OutboxBackend.Failure.PERMANENT && discard()) {
+                flush();
+                return;
+            }
+            Listener notify;
+            long delay;
+            synchronized (Outbox.this) {
+                failures++;
+                delay = backoff.delayMillis(failures);
+                nextAttemptAt = clock.currentTimeMillis() + delay;
+                inFlight = false;
+                notify = listener;
+            }
+            if (notify != null) {
+                notify.onRetryScheduled(delay);
+            }
+        }
+
+        // Tira da fila a entrada recusada; false se não deu para registrar o descarte
+        private boolean discard() {
+            synchronized (Outbox.this) {
+                if (entryIds.size() > 1) {
+                    // Não dá para saber qual entrada foi recusada: enviar uma a uma
+                    isolating = entryIds.size();
+                } else {
+                    String id = entryIds.get(0);
+                    Entry entry = pending.get(id);
+                    if (entry != null) {
+                        try {
+                            append(encodeIds(DEAD, entryIds));
+                        } catch (IOException e) {
+                            return false;
+                        }
+                        pending.remove(id);
+                        liveBytes -= entry.recordBytes;
+                        addDeadLetter(entry);
+                    }
+                    isolated();
+                }
+                inFlight = false;
+                return true;
+            }
+        }
+    }
+
+    // Um lote de uma só entrada saiu da fila durante a busca pela entrada recusada
+    private void isolated() {
+        if (isolating > 0) {
+            isolating--;
+        }
+    }
+
+    // Guarda a entrada recusada, esquecendo a mais antiga se passar do limite
+    private void addDeadLetter(Entry entry) {
+        deadLetters.put(entry.id, entry);
+        if (deadLetters.size() > MAX_DEAD_LETTERS) {
+            deadLetters.remove(deadLetters.keySet().iterator().next());
+        }
+    }
+
+    private void acknowledge(List<String> entryIds) {
+        List<String> removed = new ArrayList<>(entryIds.size());
+        for (String id : entryIds) {
+            Entry entry = pending.remove(id);
+            if (entry != null) {
+                liveBytes -= entry.recordBytes;
+                removed.add(id);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        try {
+            if (pending.isEmpty() && deadLetters.isEmpty()) {
+                truncate(0);
+            } else if (pending.isEmpty()) {
+                // Fila vazia: sobram só as recusadas, no máximo MAX_DEAD_LETTERS
+                compact();
+            } else if (fileBytes >= COMPACT_MIN_BYTES && liveBytes * 2 < fileBytes) {
+                compact();
+            } else {
+                append(encodeIds(ACK, removed));
+            }
+        } catch (IOException e) {
+            // Sem a confirmação no arquivo, a entrada é reenviada depois de um reinício;
+            // o recibo guardado no servidor evita aplicá-la duas vezes
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.isFile()) {
+            return;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+
+        int offset = 0;
+        CRC32 crc = new CRC32();
+        while (data.length - offset >= HEADER_BYTES) {
+            int length = readInt(data, offset);
+            int checksum = readInt(data, offset + 4);
+            if (length <= 0 || length > data.length - offset - HEADER_BYTES) {
+                break;
+            }
+            crc.reset();
+            crc.update(data, offset + HEADER_BYTES, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            try {
+                apply(new DataInputStream(new ByteArrayInputStream(data, offset + HEADER_BYTES, length)),
+                        HEADER_BYTES + length);
+            } catch (IOException e) {
+                break;
+            }
+            offset += HEADER_BYTES + length;
+        }
+        fileBytes = data.length;
+
+        // Registro incompleto no fim: o processo morreu no meio da escrita
+        if (offset < data.length) {
+            truncate(offset);
+        }
+    }
+
+    private void apply(DataInputStream in, int recordBytes) throws IOException {
+        byte type = in.readByte();
+        if (type == ENTRY) {
+            String id = in.readUTF();
+            int count = in.readInt();
+            List<OutboxOperation> operations = new ArrayList<>(Math.max(0, count));
+            for (int i = 0; i < count; i++) {
+                operations.add(OutboxOperation.readFrom(in));
+            }
+            pending.put(id, new Entry(id, Collections.unmodifiableList(operations), recordBytes));
+            liveBytes += recordBytes;
+        } else if (type == ACK) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = pending.remove(in.readUTF());
+                if (entry != null) {
+                    liveBytes -= entry.recordBytes;
+                }
+            }
+        } else if (type == DEAD) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = pending.remove(in.readUTF());
+                if (entry != null) {
+                    liveBytes -= entry.recordBytes;
+                    addDeadLetter(entry);
+                }
+            }
+        } else {
+            throw new IOException("Registro desconhecido: " + type);
+        }
+    }
+
+    private static byte[] encodeEntry(String id, List<OutboxOperation> operations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ENTRY);
+        out.writeUTF(id);
+        out.writeInt(operations.size());
+        for (OutboxOperation operation : operations) {
+            operation.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Registro de confirmação (ACK) ou de descarte (DEAD) das entradas
+    private static byte[] encodeIds(byte type, List<String> entryIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeInt(entryIds.size());
+        for (String id : entryIds) {
+            out.writeUTF(id);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Grava o registro no fim do arquivo e força a ida para o disco; retorna o tamanho gravado
+    private int append(byte[] payload) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Não foi possível criar " + parent);
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(record(payload));
+            out.getFD().sync();
+        } catch (IOException e) {
+            // Não deixar um registro pela metade antes dos próximos
+            truncate(fileBytes);
+            throw e;
+        }
+        int recordBytes = HEADER_BYTES + payload.length;
+        fileBytes += recordBytes;
+        return recordBytes;
+    }
+
+    // Reescreve o arquivo só com as entradas pendentes e as recusadas
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        long bytes = 0;
+        long live = 0;
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            for (Entry entry : deadLetters.values()) {
+                byte[] record = record(encodeEntry(entry.id, entry.operations));
+                out.write(record);
+                bytes += record.length;
+            }
+            if (!deadLetters.isEmpty()) {
+                byte[] record = record(encodeIds(DEAD, new ArrayList<>(deadLetters.keySet())));
+                out.write(record);
+                bytes += record.length;
+            }
+            for (Entry entry : pending.values()) {
+                byte[] record = record(encodeEntry(entry.id, entry.operations));
+                out.write(record);
+                bytes += record.length;
+                live += record.length;
+            }
+            out.getFD().sync();
+        }
+        // Renomear por último: um reinício vê o arquivo antigo ou o novo, nunca um pela metade
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Não foi possível substituir " + file);
+        }
+        fileBytes = bytes;
+        liveBytes = live;
+    }
+
+    private void truncate(long length) throws IOException {
+        if (!file.exists()) {
+            fileBytes = 0;
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        }
+        fileBytes = length;
+    }
+
+    private static byte[] record(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        byte[] record = new byte[HEADER_BYTES + payload.length];
+        writeInt(record, 0, payload.length);
+        writeInt(record, 4, (int) crc.getValue());
+        System.arraycopy(payload, 0, record, HEADER_BYTES, payload.length);
+        return record;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,45 @@
+package com.msystem.walking.sync;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Destino das escritas da {@link Outbox} (o Firestore no app, um falso nos testes).
+ *
+ * Cada lote deve ser gravado de uma vez: ou todas as operações valem, ou nenhuma.
+ * Para uma entrada nunca ser aplicada duas vezes (a confirmação pode se perder se
+ * o processo morrer logo depois da gravação), o destino pode guardar um recibo
+ * por entrada e recusar o lote em que alguma já tenha recibo, informando quais.
+ */
+public interface OutboxBackend {
+
+    /**
+     * Tipo de falha de um lote
+     */
+    enum Failure {
+        // Sem rede, servidor indisponível, conflito...: o mesmo lote pode dar certo depois
+        RETRYABLE,
+        // O servidor recusou o lote (sem permissão, valor inválido, escritas demais):
+        // reenviar não adianta
+        PERMANENT
+    }
+
+    interface Callback {
+        // Lote gravado: todas as entradas saem da fila
+        void onSuccess();
+
+        // Nada foi gravado porque estas entradas já tinham sido aplicadas antes
+        void onAlreadyApplied(Set<String> entryIds);
+
+        // Nada foi gravado; RETRYABLE tenta de novo mais tarde, PERMANENT tira a entrada da fila
+        void onFailure(Failure failure);
+    }
+
+    /**
+     * Grava um lote
+     * @param entryIds Entradas da fila cobertas pelo lote
+     * @param operations Operações do lote, na ordem, com incrementos já somados
+     * @param callback Resultado; pode ser chamado em qualquer thread
+     */
+    void write(List<String> entryIds, List<OutboxOperation> operations, Callback callback);
+}
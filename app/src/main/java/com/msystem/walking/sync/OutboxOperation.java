@@ -0,0 +1,296 @@
+package com.msystem.walking.sync;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uma escrita pendente num documento, guardada na {@link Outbox} até o servidor confirmar.
+ *
+ * Os valores aceitos são os que o Firestore guarda: null, Boolean, números (gravados
+ * como Long ou Double), String, byte[], Date, List e Map com chaves String. As
+ * operações são imutáveis.
+ */
+public final class OutboxOperation {
+    public enum Kind {
+        // Substitui o documento inteiro
+        SET,
+        // Grava só os campos informados, mantendo os outros
+        MERGE,
+        DELETE,
+        // Soma cada valor ao campo (cria o documento e o campo se não existirem)
+        INCREMENT,
+        // Recorta áreas do território do documento; o recorte é calculado no envio,
+        // sobre a versão do documento que está no servidor
+        CLIP
+    }
+
+    // Marcadores de tipo na serialização
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte BYTES = 6;
+    private static final byte DATE = 7;
+    private static final byte LIST = 8;
+    private static final byte MAP = 9;
+
+    private final Kind kind;
+    private final String collection;
+    private final String documentId;
+    private final Map<String, Object> fields;
+
+    private OutboxOperation(Kind kind, String collection, String documentId, Map<String, Object> fields) {
+        if (collection == null || documentId == null) {
+            throw new IllegalArgumentException("Coleção e documento são obrigatórios");
+        }
+        this.kind = kind;
+        this.collection = collection;
+        this.documentId = documentId;
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    public static OutboxOperation set(String collection, String documentId, Map<String, Object> fields) {
+        return new OutboxOperation(Kind.SET, collection, documentId, copyOf(fields));
+    }
+
+    public static OutboxOperation merge(String collection, String documentId, Map<String, Object> fields) {
+        return new OutboxOperation(Kind.MERGE, collection, documentId, copyOf(fields));
+    }
+
+    public static OutboxOperation delete(String collection, String documentId) {
+        return new OutboxOperation(Kind.DELETE, collection, documentId, new LinkedHashMap<String, Object>());
+    }
+
+    /**
+     * Recorte de um território, refeito no envio sobre a versão atual do documento
+     * @param fields Áreas recortadas e IDs já reservados para as partes que sobrarem
+     */
+    public static OutboxOperation clip(String collection, String documentId, Map<String, Object> fields) {
+        return new OutboxOperation(Kind.CLIP, collection, documentId, copyOf(fields));
+    }
+
+    /**
+     * Soma a um campo numérico
+     * @param field Campo do documento
+     * @param delta Valor somado; inteiros continuam inteiros no servidor
+     */
+    public static OutboxOperation increment(String collection, String documentId, String field, Number delta) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put(field, normalizeNumber(delta));
+        return new OutboxOperation(Kind.INCREMENT, collection, documentId, fields);
+    }
+
+    public Kind getKind() { return kind; }
+
+    public String getCollection() { return collection; }
+
+    public String getDocumentId() { return documentId; }
+
+    // Campos gravados (para INCREMENT, o valor somado a cada campo)
+    public Map<String, Object> getFields() { return fields; }
+
+    // Caminho do documento, no formato "coleção/id"
+    public String getPath() {
+        return collection + "/" + documentId;
+    }
+
+    /**
+     * Junta dois incrementos do mesmo documento num só, somando campo a campo
+     * @param other Incremento aplicado depois deste
+     * @return Incremento equivalente aos dois
+     */
+    public OutboxOperation plus(OutboxOperation other) {
+        if (kind != Kind.INCREMENT || other.kind != Kind.INCREMENT || !getPath().equals(other.getPath())) {
+            throw new IllegalArgumentException("Só incrementos do mesmo documento podem ser somados");
+        }
+        Map<String, Object> sum = new LinkedHashMap<>(fields);
+        for (Map.Entry<String, Object> field : other.fields.entrySet()) {
+            Object current = sum.get(field.getKey());
+            sum.put(field.getKey(), current == null ? field.getValue() : add((Number) current, (Number) field.getValue()));
+        }
+        return new OutboxOperation(Kind.INCREMENT, collection, documentId, sum);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(kind.ordinal());
+        out.writeUTF(collection);
+        out.writeUTF(documentId);
+        writeMap(out, fields);
+    }
+
+    static OutboxOperation readFrom(DataInputStream in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        Kind[] kinds = Kind.values();
+        if (ordinal >= kinds.length) {
+            throw new IOException("Tipo de operação desconhecido: " + ordinal);
+        }
+        String collection = in.readUTF();
+        String documentId = in.readUTF();
+        return new OutboxOperation(kinds[ordinal], collection, documentId, readMap(in));
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + getPath() + " " + fields;
+    }
+
+    private static Number add(Number a, Number b) {
+        if (a instanceof Long && b instanceof Long) {
+            return a.longValue() + b.longValue();
+        }
+        return a.doubleValue() + b.doubleValue();
+    }
+
+    private static Object normalizeNumber(Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            return value.doubleValue();
+        }
+        return value.longValue();
+    }
+
+    // Cópia profunda com os tipos já normalizados, para a operação não mudar depois de criada
+    private static Map<String, Object> copyOf(Map<String, Object> fields) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            copy.put(field.getKey(), copyValue(field.getValue()));
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyValue(Object value) {
+        if (value == null || value instanceof Boolean || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Number) {
+            return normalizeNumber((Number) value);
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<Object>) value) {
+                list.add(copyValue(item));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        if (value instanceof Map) {
+            return Collections.unmodifiableMap(copyOf((Map<String, Object>) value));
+        }
+        throw new IllegalArgumentException("Tipo não suportado na fila: " + value.getClass().getName());
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, Object> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else {
+            out.writeByte(MAP);
+            writeMap(out, (Map<String, Object>) value);
+        }
+    }
+
+    private static Map<String, Object> readMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Tamanho inválido: " + size);
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = in.readUTF();
+            map.put(key, readValue(in));
+        }
+        return map;
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return in.readUTF();
+            case BYTES: {
+                int length = in.readInt();
+                if (length < 0) {
+                    throw new IOException("Tamanho inválido: " + length);
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case DATE:
+                return new Date(in.readLong());
+            case LIST: {
+                int size = in.readInt();
+                if (size < 0) {
+                    throw new IOException("Tamanho inválido: " + size);
+                }
+                List<Object> list = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case MAP:
+                return readMap(in);
+            default:
+                throw new IOException("Tipo de valor desconhecido: " + type);
+        }
+    }
+}
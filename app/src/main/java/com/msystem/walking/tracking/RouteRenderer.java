@@ -0,0 +1,160 @@
+package com.msystem.walking.tracking;
+
+import android.view.Choreographer;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+
+import com.msystem.walking.geo.WebMercator;
+import com.msystem.walking.route.RouteSegments;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Desenha a rota da sessão no mapa com uma polyline por trecho da rota.
+ *
+ * Os pontos que chegam só entram em {@link RouteSegments}; o desenho acontece
+ * no máximo uma vez por quadro (Choreographer), atualizando apenas o trecho
+ * aberto e os trechos que fecharam desde o último quadro. Trechos fechados são
+ * desenhados simplificados para o zoom atual e só são refeitos quando o nível
+ * de zoom muda. Deve ser usado na thread principal.
+ */
+public class RouteRenderer implements Choreographer.FrameCallback {
+    private static final float LINE_WIDTH = 8f;
+    private static final int LINE_COLOR = 0xFF00FF00; // Verde
+    // Desvio tolerado nos trechos antigos; abaixo de um pixel e meio não se nota
+    private static final double SIMPLIFY_PIXELS = 1.5;
+
+    private final GoogleMap map;
+    private final RouteSegments segments = new RouteSegments();
+    private final List<Polyline> polylines = new ArrayList<>();
+    // Pontos do trecho aberto; crescem no lugar e são trocados ao fechar o trecho
+    private final List<LatLng> openPoints = new ArrayList<>(RouteSegments.DEFAULT_SEGMENT_SIZE);
+
+    private boolean frameScheduled;
+    private boolean followCamera = true;
+    private int renderedZoom;
+    // Primeiro trecho que ainda precisa ser redesenhado
+    private int dirtyFrom;
+    // Trecho cujos pontos estão em openPoints
+    private int openSegment = -1;
+    private LatLng lastPoint;
+
+    public RouteRenderer(GoogleMap map) {
+        this.map = map;
+        this.renderedZoom = (int) map.getCameraPosition().zoom;
+    }
+
+    /**
+     * Acrescenta um ponto à rota; o desenho fica para o próximo quadro
+     */
+    public void addPoint(double latitude, double longitude) {
+        int before = segments.getSegmentCount();
+        int segment = segments.add(latitude, longitude);
+        // Se o ponto abriu um trecho novo, o anterior fechou e passa a ser desenhado simplificado
+        dirtyFrom = Math.min(dirtyFrom, segment > 0 && segment == before ? segment - 1 : segment);
+        lastPoint = new LatLng(latitude, longitude);
+        scheduleFrame();
+    }
+
+    // Se a câmera acompanha o último ponto (animada uma vez por quadro)
+    public void setFollowCamera(boolean followCamera) {
+        this.followCamera = followCamera;
+    }
+
+    /**
+     * Deve ser chamado quando a câmera para (OnCameraIdleListener); redesenha
+     * os trechos fechados se o nível de zoom mudou
+     */
+    public void onCameraIdle() {
+        int zoom = (int) map.getCameraPosition().zoom;
+        if (zoom != renderedZoom) {
+            renderedZoom = zoom;
+            dirtyFrom = 0;
+            scheduleFrame();
+        }
+    }
+
+    // Remove as linhas do mapa e descarta os pontos
+    public void clear() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        frameScheduled = false;
+        for (Polyline polyline : polylines) {
+            polyline.remove();
+        }
+        polylines.clear();
+        openPoints.clear();
+        segments.clear();
+        dirtyFrom = 0;
+        openSegment = -1;
+        lastPoint = null;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        int count = segments.getSegmentCount();
+        if (count == 0) {
+            return;
+        }
+
+        double tolerance = SIMPLIFY_PIXELS
+                * WebMercator.metersPerPixel(lastPoint.latitude, renderedZoom);
+        for (int s = dirtyFrom; s < count; s++) {
+            if (segments.isClosed(s)) {
+                polylineFor(s).setPoints(simplifiedPoints(s, tolerance));
+            } else {
+                appendOpenPoints(s);
+                if (segments.getPointCount(s) > 1) {
+                    polylineFor(s).setPoints(openPoints);
+                }
+            }
+        }
+        dirtyFrom = count - 1;
+
+        if (followCamera) {
+            map.animateCamera(CameraUpdateFactory.newLatLng(lastPoint));
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    // Completa a lista do trecho aberto só com os pontos que ainda não estão nela
+    private void appendOpenPoints(int segment) {
+        if (segment != openSegment) {
+            openPoints.clear();
+            openSegment = segment;
+        }
+        int count = segments.getPointCount(segment);
+        for (int i = openPoints.size(); i < count; i++) {
+            openPoints.add(new LatLng(segments.getLatitude(segment, i), segments.getLongitude(segment, i)));
+        }
+    }
+
+    private List<LatLng> simplifiedPoints(int segment, double tolerance) {
+        int[] indices = segments.simplified(segment, tolerance);
+        List<LatLng> points = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            points.add(new LatLng(segments.getLatitude(segment, index), segments.getLongitude(segment, index)));
+        }
+        return points;
+    }
+
+    private Polyline polylineFor(int segment) {
+        while (polylines.size() <= segment) {
+            polylines.add(map.addPolyline(new PolylineOptions()
+                    .width(LINE_WIDTH)
+                    .color(LINE_COLOR)));
+        }
+        return polylines.get(segment);
+    }
+}
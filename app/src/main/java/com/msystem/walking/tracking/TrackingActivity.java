@@ -19,22 +19,21 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
-import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.firebase.auth.FirebaseAuth;
 
 import com.msystem.walking.R;
 import com.msystem.walking.databinding.ActivityTrackingBinding;
+import com.msystem.walking.geo.BoundingBox;
 import com.msystem.walking.model.Activity;
 import com.msystem.walking.model.LocationPoint;
 import com.msystem.walking.model.Territory;
 import com.msystem.walking.repository.DataRepository;
+import com.msystem.walking.route.PackedRoute;
+import com.msystem.walking.route.RouteBuffer;
 import com.msystem.walking.service.LocationTrackingService;
-import com.msystem.walking.utils.TerritoryUtils;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -51,7 +50,10 @@ public class TrackingActivity extends AppCompatActivity implements OnMapReadyCal
     private DataRepository dataRepository;
     private Activity currentActivity;
     private long startTime;
-    private List<LatLng> routePoints = new ArrayList<>();
+    private RouteRenderer routeRenderer;
+    // Até onde a rota do serviço já foi desenhada
+    private int drawnGeneration = -1;
+    private int drawnPoints;
 
     private ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
@@ -60,13 +62,27 @@ public class TrackingActivity extends AppCompatActivity implements OnMapReadyCal
             locationService = binder.getService();
             isServiceBound = true;
 
-            // Configurar listener de atualizações de localização
+            // Configurar listener de atualizações de localização (já chega na thread principal)
             locationService.setLocationUpdateListener(new LocationTrackingService.LocationUpdateListener() {
                 @Override
                 public void onLocationUpdate(LocationPoint point, double totalDistance) {
-                    runOnUiThread(() -> {
-                        updateUI(point, totalDistance);
-                    });
+                    updateUI(point, totalDistance);
+                }
+
+                @Override
+                public void onAutoPauseChanged(boolean paused) {
+                    updateMovingTime();
+                    Toast.makeText(TrackingActivity.this,
+                            paused ? "Pausa automática: você está parado" : "Atividade retomada",
+                            Toast.LENGTH_SHORT).show();
+                }
+            });
+
+            // Sessão recuperada pelo serviço (o processo foi encerrado no meio da atividade);
+            // a resposta vem depois de o serviço terminar de ler o diário
+            locationService.checkSession(hasSession -> {
+                if (hasSession && isServiceBound && currentActivity == null) {
+                    restoreSession();
                 }
             });
         }
@@ -91,6 +107,7 @@ public class TrackingActivity extends AppCompatActivity implements OnMapReadyCal
         });
 
         dataRepository = DataRepository.getInstance();
+        dataRepository.startSync(this);
 
         // Configurar callback para o botão voltar
         getOnBackPressedDispatcher().addCallback(this, new OnBackPressedCallback(true) {
@@ -120,13 +137,19 @@ public class TrackingActivity extends AppCompatActivity implements OnMapReadyCal
 
     private void setupClickListeners() {
         binding.btnStartStop.setOnClickListener(v -> {
-            if (!isTracking) {
-                startTracking();
-            } else {
+            if (isTracking) {
                 stopTracking();
+            } else if (currentActivity != null && isServiceBound && locationService.hasSession()) {
+                // "Continuar": a mesma atividade, com os trechos anteriores
+                resumeTracking();
+            } else {
+                startTracking();
             }
         });
 
+        // O cronômetro mostra o tempo total; o tempo em movimento acompanha o mesmo ritmo
+        binding.chronometer.setOnChronometerTickListener(chronometer -> updateMovingTime());
+
         binding.btnFinish.setOnClickListener(v -> {
             finishActivity();
         });
@@ -156,6 +179,59 @@ public class TrackingActivity extends AppCompatActivity implements OnMapReadyCal
         }
     }
 
+    private void resumeTracking() {
+        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            Toast.makeText(this, "Permissão de localização necessária", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        isTracking = true;
+        locationService.resumeTracking();
+        binding.btnStartStop.setText("Pausar");
+        binding.btnStartStop.setIcon(getDrawable(android.R.drawable.ic_media_pause));
+        // Mesma base: o cronômetro continua contando o tempo total, com a pausa
+        binding.chronometer.start();
+    }
+
+    private void updateMovingTime() {
+        if (!isServiceBound) {
+            return;
+        }
+        if (locationService.isAutoPaused()) {
+            binding.tvMovingTime.setText("Pausa automática");
+            return;
+        }
+        long seconds = locationService.getMovingTime() / 1000;
+        binding.tvMovingTime.setText(String.format("Em movimento %02d:%02d", seconds / 60, seconds % 60));
+    }
+
+    private void restoreSession() {
+        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        String userName = FirebaseAuth.getInstance().getCurrentUser().getDisplayName();
+        currentActivity = new Activity(userId, userName, "walking");
+        long startedAt = locationService.getSessionStartedAt();
+        currentActivity.setStartTime(new Date(startedAt));
+        startTime = SystemClock.elapsedRealtime() - (System.currentTimeMillis() - startedAt);
+        binding.chronometer.setBase(startTime);
+
+        isTracking = locationService.isTracking();
+        if (isTracking) {
+            binding.btnStartStop.setText("Pausar");
+            binding.btnStartStop.setIcon(getDrawable(android.R.drawable.ic_media_pause));
+            binding.chronometer.start();
+        } else {
+            binding.btnStartStop.setText("Continuar");
+            binding.btnStartStop.setIcon(getDrawable(android.R.drawable.ic_media_play));
+        }
+
+        double totalDistance = locationService.getTotalDistance();
+        binding.tvDistance.setText(String.format("%.2f km", totalDistance));
+        binding.tvPoints.setText(String.format("%d pontos", (int)(totalDistance * 10)));
+        updateMovingTime();
+        drawNewPoints();
+    }
+
     private void stopTracking() {
         if (isServiceBound) {
             isTracking = false;
@@ -171,40 +247,80 @@ public class TrackingActivity extends AppCompatActivity implements OnMapReadyCal
             locationService.stopTracking();
 
             if (currentActivity != null) {
-                // Finalizar atividade
+                // A rota chega depois do último ponto processado: a sessão já está parada
+                binding.btnFinish.setEnabled(false);
                 currentActivity.setEndTime(new Date());
                 currentActivity.setDuration(SystemClock.elapsedRealtime() - startTime);
-                currentActivity.setDistance(locationService.getTotalDistance());
-                currentActivity.setRoute(locationService.getRoutePoints());
-
-                // Calcular pontos (10 pontos por km)
-                int points = (int) (currentActivity.getDistance() * 10);
-                currentActivity.setPointsEarned(points);
-
-                // Criar territórios baseados na rota
-                List<Territory> newTerritories = TerritoryUtils.createTerritoriesFromRoute(
-                    currentActivity.getRoute(),
-                    currentActivity.getUserId(),
-                    currentActivity.getUserName()
-                );
-
-                // Salvar territórios
-                List<String> territoryIds = new ArrayList<>();
-                for (Territory territory : newTerritories) {
-                    dataRepository.saveTerritory(territory);
-                    territoryIds.add(territory.getTerritoryId());
-                }
-                currentActivity.setConqueredTerritoryIds(territoryIds);
+                locationService.getSimplifiedRoute(this::finishActivity);
+                return;
+            }
 
-                // Salvar no Firebase
-                dataRepository.saveActivity(currentActivity);
+            locationService.endSession();
+            finish();
+        }
+    }
 
-                Toast.makeText(this, String.format("Atividade salva! %d pontos ganhos e %d territórios conquistados!",
-                              points, newTerritories.size()), Toast.LENGTH_LONG).show();
+    private void finishActivity(PackedRoute.View simplifiedRoute) {
+        if (!isServiceBound || isFinishing()) {
+            return;
+        }
+        currentActivity.setMovingTime(locationService.getMovingTime());
+        currentActivity.setDistance(locationService.getTotalDistance());
+        // Salvar a rota simplificada e codificada: o tamanho depende do trajeto, não da duração
+        currentActivity.setEncodedRoute(simplifiedRoute);
+
+        // Calcular pontos (10 pontos por km)
+        int points = (int) (currentActivity.getDistance() * 10);
+        currentActivity.setPointsEarned(points);
+
+        // Criar territórios a partir do corredor acumulado durante o rastreamento (fora da thread principal)
+        locationService.getConqueredTerritories(currentActivity.getUserId(), currentActivity.getUserName(),
+                newTerritories -> saveConquestInArea(newTerritories, points));
+    }
+
+    private void saveConquestInArea(List<Territory> newTerritories, int points) {
+        if (!isServiceBound || isFinishing()) {
+            return;
+        }
+        List<LocationPoint> outline = new ArrayList<>();
+        for (Territory territory : newTerritories) {
+            outline.addAll(territory.getPolygon());
+        }
+        BoundingBox conqueredArea = BoundingBox.fromPoints(outline);
+        if (conqueredArea != null) {
+            // Carregar os territórios rivais da área antes de recortá-los
+            dataRepository.loadTerritoriesInArea(conqueredArea,
+                () -> saveConquest(newTerritories, points));
+            return;
+        }
+        saveConquest(newTerritories, points);
+    }
+
+    private void saveConquest(List<Territory> newTerritories, int points) {
+        binding.btnFinish.setEnabled(false);
+        // Atividade, territórios, recorte dos rivais e estatísticas numa só entrada da fila de envio
+        int[] captured = new int[1];
+        captured[0] = dataRepository.commitActivity(currentActivity, newTerritories, success -> {
+            if (!success) {
+                // O diário da sessão continua: a pessoa pode tentar finalizar de novo
+                binding.btnFinish.setEnabled(true);
+                Toast.makeText(getApplicationContext(), "Falha ao salvar a atividade no aparelho. Tente finalizar de novo.",
+                        Toast.LENGTH_LONG).show();
+                return;
             }
 
+            String message = String.format("Atividade salva! %d pontos ganhos e %d territórios conquistados!",
+                    points, newTerritories.size());
+            if (captured[0] > 0) {
+                message += String.format(" %d territórios rivais recortados.", captured[0]);
+            }
+            // A atividade já está na fila do repositório: o diário da sessão não é mais necessário
+            if (isServiceBound) {
+                locationService.endSession();
+            }
+            Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show();
             finish();
-        }
+        });
     }
 
     private void updateUI(LocationPoint point, double totalDistance) {
@@ -212,24 +328,28 @@ public class TrackingActivity extends AppCompatActivity implements OnMapReadyCal
         binding.tvDistance.setText(String.format("%.2f km", totalDistance));
         binding.tvPoints.setText(String.format("%d pontos", (int)(totalDistance * 10)));
 
-        // Adicionar ponto ao mapa
-        LatLng latLng = new LatLng(point.getLatitude(), point.getLongitude());
-        routePoints.add(latLng);
-
-        if (googleMap != null) {
-            // Desenhar linha da rota
-            if (routePoints.size() > 1) {
-                PolylineOptions polylineOptions = new PolylineOptions()
-                        .addAll(routePoints)
-                        .width(8)
-                        .color(0xFF00FF00); // Verde
-
-                googleMap.addPolyline(polylineOptions);
-            }
+        // Adicionar ao mapa os pontos novos (desenhados no próximo quadro)
+        drawNewPoints();
+    }
 
-            // Mover câmera para localização atual
-            googleMap.animateCamera(CameraUpdateFactory.newLatLng(latLng));
+    /**
+     * Passa ao mapa os pontos da rota do serviço que ainda não foram desenhados,
+     * continuando do último índice lido; se a rota foi recomeçada, redesenha do início
+     */
+    private void drawNewPoints() {
+        if (routeRenderer == null || !isServiceBound) {
+            return;
+        }
+        RouteBuffer.Snapshot route = locationService.getRoute();
+        int from = route.resumeFrom(drawnGeneration, drawnPoints);
+        if (from == 0 && drawnPoints > 0) {
+            routeRenderer.clear();
         }
+        for (int i = from; i < route.size(); i++) {
+            routeRenderer.addPoint(route.getLatitude(i), route.getLongitude(i));
+        }
+        drawnGeneration = route.getGeneration();
+        drawnPoints = route.size();
     }
 
     @Override
@@ -243,12 +363,22 @@ public class TrackingActivity extends AppCompatActivity implements OnMapReadyCal
                 == PackageManager.PERMISSION_GRANTED) {
             googleMap.setMyLocationEnabled(true);
         }
+
+        routeRenderer = new RouteRenderer(googleMap);
+        googleMap.setOnCameraIdleListener(routeRenderer::onCameraIdle);
+
+        // Desenhar os pontos que chegaram antes do mapa ficar pronto
+        drawNewPoints();
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (routeRenderer != null) {
+            routeRenderer.clear();
+        }
         if (isServiceBound) {
+            locationService.setLocationUpdateListener(null);
             unbindService(serviceConnection);
         }
     }
@@ -1,5 +1,12 @@
 package com.msystem.walking.utils;
 
+import com.msystem.walking.geo.BoundingBox;
+import com.msystem.walking.geo.CorridorBuilder;
+import com.msystem.walking.geo.DistanceKernel;
+import com.msystem.walking.geo.GeoQueryPlanner;
+import com.msystem.walking.geo.LocalProjection;
+import com.msystem.walking.geo.PolygonClipper;
+import com.msystem.walking.geo.RTree;
 import com.msystem.walking.model.LocationPoint;
 import com.msystem.walking.model.Territory;
 
@@ -10,13 +17,15 @@ public class TerritoryUtils {
 
     // Raio em metros para criar território ao redor da rota
     private static final double TERRITORY_RADIUS = 50.0;
+    // Resolução do contorno do corredor em metros
+    private static final double CORRIDOR_CELL_SIZE = TERRITORY_RADIUS / 4;
 
     /**
      * Cria territórios baseados na rota percorrida pelo usuário
      * @param route Lista de pontos da rota
      * @param userId ID do usuário
      * @param userName Nome do usuário
-     * @return Lista de territórios conquistados
+     * @return Lista de territórios conquistados (um por região contínua do corredor)
      */
     public static List<Territory> createTerritoriesFromRoute(List<LocationPoint> route, String userId, String userName) {
         List<Territory> territories = new ArrayList<>();
@@ -25,19 +34,40 @@ public class TerritoryUtils {
             return territories;
         }
 
-        // Criar território a cada 100 metros aproximadamente
-        int pointInterval = Math.max(1, route.size() / 10);
+        // Corredor contínuo de TERRITORY_RADIUS metros ao redor de toda a rota
+        CorridorBuilder corridor = createCorridorBuilder();
+        for (int i = 0; i < route.size(); i++) {
+            corridor.addPoint(route.get(i).getLatitude(), route.get(i).getLongitude());
+        }
+        territories.addAll(createTerritoriesFromCorridor(corridor, userId, userName));
 
-        for (int i = 0; i < route.size(); i += pointInterval) {
-            LocationPoint center = route.get(i);
-            List<LocationPoint> polygon = createCircularPolygon(center, TERRITORY_RADIUS);
+        return territories;
+    }
 
-            Territory territory = new Territory(userId, userName, polygon);
-            territory.setArea(Math.PI * TERRITORY_RADIUS * TERRITORY_RADIUS); // Área do círculo
+    /**
+     * Cria o acumulador de corredor com o raio e a resolução dos territórios,
+     * para ser alimentado ponto a ponto durante o rastreamento
+     * @return Corredor vazio
+     */
+    public static CorridorBuilder createCorridorBuilder() {
+        return new CorridorBuilder(TERRITORY_RADIUS, CORRIDOR_CELL_SIZE);
+    }
+
+    /**
+     * Cria territórios a partir de um corredor já acumulado
+     * @param corridor Corredor alimentado com os pontos da rota
+     * @param userId ID do usuário
+     * @param userName Nome do usuário
+     * @return Lista de territórios conquistados (um por região contínua do corredor)
+     */
+    public static List<Territory> createTerritoriesFromCorridor(CorridorBuilder corridor, String userId, String userName) {
+        List<Territory> territories = new ArrayList<>();
+        for (CorridorBuilder.CorridorPolygon polygon : corridor.buildPolygons()) {
+            Territory territory = new Territory(userId, userName, polygon.getPoints());
+            territory.setArea(polygon.getArea());
             territory.setColor(generateColorForUser(userId));
             territories.add(territory);
         }
-
         return territories;
     }
 
@@ -47,7 +77,7 @@ public class TerritoryUtils {
      * @param radius Raio em metros
      * @return Lista de pontos formando um círculo
      */
-    private static List<LocationPoint> createCircularPolygon(LocationPoint center, double radius) {
+    public static List<LocationPoint> createCircularPolygon(LocationPoint center, double radius) {
         List<LocationPoint> polygon = new ArrayList<>();
         int numberOfPoints = 12; // 12 pontos para formar um círculo aproximado
 
@@ -70,7 +100,7 @@ public class TerritoryUtils {
      * @param userId ID do usuário
      * @return Cor em formato hexadecimal
      */
-    private static String generateColorForUser(String userId) {
+    public static String generateColorForUser(String userId) {
         int hash = userId.hashCode();
         int r = (hash & 0xFF0000) >> 16;
         int g = (hash & 0x00FF00) >> 8;
@@ -91,18 +121,322 @@ public class TerritoryUtils {
      * @return Distância em metros
      */
     public static double calculateDistance(LocationPoint point1, LocationPoint point2) {
-        final int R = 6371; // Raio da Terra em km
+        return DistanceKernel.haversine(point1.getLatitude(), point1.getLongitude(),
+                point2.getLatitude(), point2.getLongitude());
+    }
+
+    /**
+     * Verifica se um ponto está dentro de um polígono (regra par-ímpar)
+     * @param polygon Vértices do polígono
+     * @param latitude Latitude do ponto
+     * @param longitude Longitude do ponto
+     * @return true se o ponto estiver dentro do polígono
+     */
+    public static boolean isPointInPolygon(List<LocationPoint> polygon, double latitude, double longitude) {
+        if (polygon == null || polygon.size() < 3) {
+            return false;
+        }
+
+        boolean inside = false;
+        int n = polygon.size();
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double yi = polygon.get(i).getLatitude();
+            double xi = polygon.get(i).getLongitude();
+            double yj = polygon.get(j).getLatitude();
+            double xj = polygon.get(j).getLongitude();
+
+            if ((yi > latitude) != (yj > latitude)
+                    && longitude < (xj - xi) * (latitude - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
 
-        double latDistance = Math.toRadians(point2.getLatitude() - point1.getLatitude());
-        double lonDistance = Math.toRadians(point2.getLongitude() - point1.getLongitude());
+    /**
+     * Calcula a distância de um ponto até a borda de um polígono
+     * @param polygon Vértices do polígono
+     * @param latitude Latitude do ponto
+     * @param longitude Longitude do ponto
+     * @return Distância em metros (0 se o ponto estiver dentro do polígono)
+     */
+    public static double distanceToPolygon(List<LocationPoint> polygon, double latitude, double longitude) {
+        if (polygon == null || polygon.isEmpty()) {
+            return Double.MAX_VALUE;
+        }
+        if (isPointInPolygon(polygon, latitude, longitude)) {
+            return 0;
+        }
+
+        // Projeção equiretangular local: suficiente para as distâncias do jogo
+        double metersPerDegreeLat = 111320.0;
+        double metersPerDegreeLon = 111320.0 * Math.cos(Math.toRadians(latitude));
+
+        double best = Double.MAX_VALUE;
+        int n = polygon.size();
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double ax = (polygon.get(j).getLongitude() - longitude) * metersPerDegreeLon;
+            double ay = (polygon.get(j).getLatitude() - latitude) * metersPerDegreeLat;
+            double bx = (polygon.get(i).getLongitude() - longitude) * metersPerDegreeLon;
+            double by = (polygon.get(i).getLatitude() - latitude) * metersPerDegreeLat;
+
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared)) : 0;
+            double px = ax + t * dx;
+            double py = ay + t * dy;
+            best = Math.min(best, px * px + py * py);
+        }
+        return Math.sqrt(best);
+    }
+
+    /**
+     * Busca territórios de outros usuários que se sobrepõem a um novo território.
+     * A R-tree reduz os candidatos pelos retângulos envolventes; o teste exato
+     * de polígonos só é feito nesses candidatos.
+     * @param territory Território recém-criado
+     * @param index Árvore com os territórios existentes
+     * @return Territórios rivais que se sobrepõem ao novo
+     */
+    public static List<Territory> findRivalOverlaps(Territory territory, RTree<Territory> index) {
+        List<Territory> overlaps = new ArrayList<>();
+        BoundingBox bounds = BoundingBox.fromPoints(territory.getPolygon());
+        if (bounds == null) {
+            return overlaps;
+        }
 
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(point1.getLatitude())) * Math.cos(Math.toRadians(point2.getLatitude()))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+        for (Territory candidate : index.search(bounds)) {
+            if (candidate == territory || territory.getOwnerId() == null
+                    || territory.getOwnerId().equals(candidate.getOwnerId())) {
+                continue;
+            }
+            if (polygonsOverlap(territory.getPolygon(), candidate.getPolygon())
+                    && !insideHole(territory.getPolygon(), candidate)) {
+                overlaps.add(candidate);
+            }
+        }
+        return overlaps;
+    }
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double distance = R * c * 1000; // converter para metros
+    /**
+     * Verifica se dois polígonos têm área em comum
+     * @param a Primeiro polígono
+     * @param b Segundo polígono
+     * @return true se as bordas se cruzam ou um polígono contém o outro
+     */
+    public static boolean polygonsOverlap(List<LocationPoint> a, List<LocationPoint> b) {
+        BoundingBox boundsA = BoundingBox.fromPoints(a);
+        BoundingBox boundsB = BoundingBox.fromPoints(b);
+        if (boundsA == null || boundsB == null || !boundsA.intersects(boundsB)) {
+            return false;
+        }
+
+        // Um contém o outro (ou começa dentro dele)
+        if (isPointInPolygon(b, a.get(0).getLatitude(), a.get(0).getLongitude())
+                || isPointInPolygon(a, b.get(0).getLatitude(), b.get(0).getLongitude())) {
+            return true;
+        }
+
+        return edgesCross(a, b, boundsB);
+    }
+
+    /**
+     * Verifica se um ponto está no território: dentro do polígono e fora dos buracos
+     * @param territory Território
+     * @param latitude Latitude do ponto
+     * @param longitude Longitude do ponto
+     * @return true se o ponto pertence ao território
+     */
+    public static boolean containsPoint(Territory territory, double latitude, double longitude) {
+        if (!isPointInPolygon(territory.getPolygon(), latitude, longitude)) {
+            return false;
+        }
+        if (territory.getHoles() != null) {
+            for (Territory.Hole hole : territory.getHoles()) {
+                if (hole.getPoints() != null && isPointInPolygon(hole.getPoints(), latitude, longitude)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // O polígono cabe inteiro num dos buracos do território (não tem área em comum com ele)
+    private static boolean insideHole(List<LocationPoint> polygon, Territory territory) {
+        if (territory.getHoles() == null) {
+            return false;
+        }
+        for (Territory.Hole hole : territory.getHoles()) {
+            List<LocationPoint> points = hole.getPoints();
+            BoundingBox bounds = BoundingBox.fromPoints(points);
+            if (bounds != null
+                    && isPointInPolygon(points, polygon.get(0).getLatitude(), polygon.get(0).getLongitude())
+                    && !edgesCross(polygon, points, bounds)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Bordas que se cruzam; só as arestas de a dentro do retângulo de b
+    private static boolean edgesCross(List<LocationPoint> a, List<LocationPoint> b, BoundingBox boundsB) {
+        for (int i = 0, j = a.size() - 1; i < a.size(); j = i++) {
+            LocationPoint a1 = a.get(j);
+            LocationPoint a2 = a.get(i);
+            if (Math.max(a1.getLatitude(), a2.getLatitude()) < boundsB.getMinLatitude()
+                    || Math.min(a1.getLatitude(), a2.getLatitude()) > boundsB.getMaxLatitude()
+                    || Math.max(a1.getLongitude(), a2.getLongitude()) < boundsB.getMinLongitude()
+                    || Math.min(a1.getLongitude(), a2.getLongitude()) > boundsB.getMaxLongitude()) {
+                continue;
+            }
+            for (int k = 0, l = b.size() - 1; k < b.size(); l = k++) {
+                if (segmentsIntersect(a1, a2, b.get(l), b.get(k))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Recorta de um território rival a parte conquistada pelo novo território.
+     * A parte conquistada já está coberta pelo polígono do novo dono, então só
+     * o rival precisa mudar.
+     * @param rival Território de outro usuário
+     * @param conquered Território recém-conquistado
+     * @return Partes que continuam com o dono anterior (vazia se foi todo conquistado).
+     *         A primeira parte mantém o ID do rival; as demais são territórios novos.
+     *         Um recorte no meio do rival vira um buraco da parte que sobra. Null se
+     *         a geometria não pôde ser recortada: o rival deve ficar como está.
+     */
+    public static List<Territory> subtractTerritory(Territory rival, Territory conquered) {
+        List<Territory> remaining = new ArrayList<>();
+        if (rival.getPolygon() == null || rival.getPolygon().size() < 3) {
+            return remaining;
+        }
+
+        LocationPoint origin = rival.getPolygon().get(0);
+        LocalProjection projection = new LocalProjection(origin.getLatitude(), origin.getLongitude());
+        List<PolygonClipper.Polygon> pieces;
+        try {
+            pieces = PolygonClipper.difference(toPolygon(rival, projection), toPolygon(conquered, projection));
+        } catch (IllegalStateException e) {
+            // Geometria degenerada (ex: polígono que se cruza): um rival assim não impede a conquista
+            return null;
+        }
+
+        for (PolygonClipper.Polygon piece : pieces) {
+            double area = piece.area();
+            // Sobras menores que uma célula do corredor são só ruído do contorno
+            if (area < CORRIDOR_CELL_SIZE * CORRIDOR_CELL_SIZE) {
+                continue;
+            }
+            Territory part = new Territory(rival.getOwnerId(), rival.getOwnerName(), fromRing(piece.getOuter(), projection));
+            if (!piece.getHoles().isEmpty()) {
+                List<Territory.Hole> holes = new ArrayList<>(piece.getHoles().size());
+                for (double[] hole : piece.getHoles()) {
+                    holes.add(new Territory.Hole(fromRing(hole, projection)));
+                }
+                part.setHoles(holes);
+            }
+            part.setArea(area);
+            part.setColor(rival.getColor());
+            part.setRegion(rival.getRegion());
+            part.setConqueredAt(rival.getConqueredAt());
+            part.setGeohash(GeoQueryPlanner.cellFor(part.getPolygon()));
+            remaining.add(part);
+        }
+
+        // A maior parte continua sendo o território original
+        if (!remaining.isEmpty()) {
+            int largest = 0;
+            for (int i = 1; i < remaining.size(); i++) {
+                if (remaining.get(i).getArea() > remaining.get(largest).getArea()) {
+                    largest = i;
+                }
+            }
+            remaining.add(0, remaining.remove(largest));
+            remaining.get(0).setTerritoryId(rival.getTerritoryId());
+        }
+        return remaining;
+    }
+
+    /**
+     * Recorta de um território rival a parte coberta por vários territórios novos,
+     * um depois do outro (cada recorte vale para todas as partes que sobraram)
+     * @param rival Território de outro usuário
+     * @param conquered Territórios que cobrem o rival
+     * @return Partes que continuam com o dono anterior, como em {@link #subtractTerritory}:
+     *         a primeira mantém o ID do rival. Null se nenhum recorte pôde ser feito.
+     */
+    public static List<Territory> subtractTerritories(Territory rival, List<Territory> conquered) {
+        List<Territory> parts = new ArrayList<>();
+        parts.add(rival);
+        boolean clipped = false;
+        for (Territory territory : conquered) {
+            List<Territory> next = new ArrayList<>();
+            for (Territory part : parts) {
+                List<Territory> remaining = subtractTerritory(part, territory);
+                if (remaining == null) {
+                    // Só esta parte fica como está
+                    next.add(part);
+                } else {
+                    next.addAll(remaining);
+                    clipped = true;
+                }
+            }
+            parts = next;
+        }
+        if (!clipped) {
+            return null;
+        }
+        // A parte que continuava o rival pode ter sido toda coberta: a próxima herda o ID
+        if (!parts.isEmpty()) {
+            parts.get(0).setTerritoryId(rival.getTerritoryId());
+        }
+        return parts;
+    }
+
+    private static PolygonClipper.Polygon toPolygon(Territory territory, LocalProjection projection) {
+        List<double[]> holes = new ArrayList<>();
+        if (territory.getHoles() != null) {
+            for (Territory.Hole hole : territory.getHoles()) {
+                if (hole.getPoints() != null) {
+                    holes.add(toRing(hole.getPoints(), projection));
+                }
+            }
+        }
+        return new PolygonClipper.Polygon(toRing(territory.getPolygon(), projection), holes);
+    }
+
+    private static double[] toRing(List<LocationPoint> polygon, LocalProjection projection) {
+        double[] ring = new double[polygon.size() * 2];
+        for (int i = 0; i < polygon.size(); i++) {
+            ring[i * 2] = projection.toX(polygon.get(i).getLongitude());
+            ring[i * 2 + 1] = projection.toY(polygon.get(i).getLatitude());
+        }
+        return ring;
+    }
+
+    private static List<LocationPoint> fromRing(double[] ring, LocalProjection projection) {
+        List<LocationPoint> polygon = new ArrayList<>(ring.length / 2);
+        for (int i = 0; i < ring.length; i += 2) {
+            polygon.add(new LocationPoint(projection.toLatitude(ring[i + 1]), projection.toLongitude(ring[i])));
+        }
+        return polygon;
+    }
+
+    private static boolean segmentsIntersect(LocationPoint p1, LocationPoint p2, LocationPoint q1, LocationPoint q2) {
+        double d1 = cross(q1, q2, p1);
+        double d2 = cross(q1, q2, p2);
+        double d3 = cross(p1, p2, q1);
+        double d4 = cross(p1, p2, q2);
+        return ((d1 > 0) != (d2 > 0)) && ((d3 > 0) != (d4 > 0));
+    }
 
-        return distance;
+    private static double cross(LocationPoint origin, LocationPoint a, LocationPoint b) {
+        return (a.getLongitude() - origin.getLongitude()) * (b.getLatitude() - origin.getLatitude())
+                - (a.getLatitude() - origin.getLatitude()) * (b.getLongitude() - origin.getLongitude());
     }
 }
@@ -0,0 +1,117 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CorridorBuilderTest {
+    private static final double RADIUS = 50.0;
+    private static final double CELL = 12.5;
+    private static final LocalProjection LISBON = new LocalProjection(38.7223, -9.1393);
+
+    @Test
+    public void straightRoute_hasCapsuleArea() {
+        List<LocationPoint> route = new ArrayList<>();
+        for (int i = 0; i <= 1000; i++) {
+            route.add(point(i, 0));
+        }
+
+        List<CorridorBuilder.CorridorPolygon> polygons = CorridorBuilder.build(route, RADIUS, CELL);
+        assertEquals(1, polygons.size());
+
+        double expected = 2 * RADIUS * 1000 + Math.PI * RADIUS * RADIUS;
+        assertEquals(expected, polygons.get(0).getArea(), expected * 0.03);
+    }
+
+    @Test
+    public void backAndForth_doesNotDoubleCountArea() {
+        List<LocationPoint> route = new ArrayList<>();
+        for (int lap = 0; lap < 5; lap++) {
+            for (int i = 0; i <= 500; i += 2) {
+                route.add(point(lap % 2 == 0 ? i : 500 - i, 0));
+            }
+        }
+
+        double area = CorridorBuilder.build(route, RADIUS, CELL).get(0).getArea();
+        double expected = 2 * RADIUS * 500 + Math.PI * RADIUS * RADIUS;
+        assertEquals(expected, area, expected * 0.03);
+    }
+
+    @Test
+    public void closedLoop_conquersEnclosedArea() {
+        List<LocationPoint> route = new ArrayList<>();
+        for (int i = 0; i < 400; i += 5) route.add(point(i, 0));
+        for (int i = 0; i < 400; i += 5) route.add(point(400, i));
+        for (int i = 400; i > 0; i -= 5) route.add(point(i, 400));
+        for (int i = 400; i >= 0; i -= 5) route.add(point(0, i));
+
+        List<CorridorBuilder.CorridorPolygon> polygons = CorridorBuilder.build(route, RADIUS, CELL);
+        assertEquals(1, polygons.size());
+        // Quadrado de 500 m (400 + 2 raios) com cantos arredondados
+        assertEquals(500 * 500 - (4 - Math.PI) * RADIUS * RADIUS, polygons.get(0).getArea(), 500 * 500 * 0.03);
+    }
+
+    @Test
+    public void brokenSegments_produceSeparatePolygons() {
+        CorridorBuilder builder = new CorridorBuilder(RADIUS, CELL);
+        for (int i = 0; i <= 200; i += 5) builder.addPoint(point(i, 0).getLatitude(), point(i, 0).getLongitude());
+        builder.breakSegment();
+        for (int i = 0; i <= 200; i += 5) builder.addPoint(point(i, 1000).getLatitude(), point(i, 1000).getLongitude());
+
+        assertEquals(2, builder.buildPolygons().size());
+    }
+
+    @Test
+    public void longRoute_coversEveryPointAndMatchesOneShotBuild() {
+        CorridorBuilder builder = new CorridorBuilder(RADIUS, CELL);
+        List<LocationPoint> route = new ArrayList<>();
+        double x = 0, y = 0, heading = 0;
+        java.util.Random random = new java.util.Random(1);
+        for (int i = 0; i < 20000; i++) {
+            heading += (random.nextDouble() - 0.5) * 0.3;
+            x += Math.cos(heading) * 1.4;
+            y += Math.sin(heading) * 1.4;
+            LocationPoint point = point(x, y);
+            route.add(point);
+            builder.addPoint(point.getLatitude(), point.getLongitude());
+        }
+
+        List<CorridorBuilder.CorridorPolygon> polygons = builder.buildPolygons();
+        assertFalse(polygons.isEmpty());
+        double area = 0;
+        for (CorridorBuilder.CorridorPolygon polygon : polygons) {
+            area += polygon.getArea();
+        }
+        // As células varridas cabem na cápsula em volta do caminho (28 km); os polígonos
+        // somam a elas as áreas fechadas pelas voltas
+        assertTrue(builder.getCellArea() <= 2 * RADIUS * 20000 * 1.4 + Math.PI * RADIUS * RADIUS);
+        assertTrue(area >= builder.getCellArea() * 0.97);
+        // Incremental e de uma vez dão o mesmo corredor
+        double built = 0;
+        for (CorridorBuilder.CorridorPolygon polygon : CorridorBuilder.build(route, RADIUS, CELL)) {
+            built += polygon.getArea();
+        }
+        assertEquals(area, built, 1e-6 * area);
+        for (int i = 0; i < route.size(); i += 97) {
+            LocationPoint point = route.get(i);
+            boolean covered = false;
+            for (CorridorBuilder.CorridorPolygon polygon : polygons) {
+                if (TerritoryUtils.isPointInPolygon(polygon.getPoints(), point.getLatitude(), point.getLongitude())) {
+                    covered = true;
+                    break;
+                }
+            }
+            assertTrue("ponto " + i + " fora do corredor", covered);
+        }
+    }
+
+    private static LocationPoint point(double x, double y) {
+        return new LocationPoint(LISBON.toLatitude(y), LISBON.toLongitude(x));
+    }
+}
@@ -0,0 +1,113 @@
+package com.msystem.walking.geo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DistanceKernelTest {
+
+    @Test
+    public void haversine_matchesKnownDistance() {
+        // Praça da Sé -> Avenida Paulista (MASP), ~2,5 km
+        double d = DistanceKernel.haversine(-23.5503, -46.6339, -23.5614, -46.6559);
+        assertEquals(2555, d, 10);
+        assertEquals(0, DistanceKernel.haversine(10, 20, 10, 20), 0);
+    }
+
+    @Test
+    public void approximations_stayWithinDocumentedBounds() {
+        Random random = new Random(9);
+        for (int n = 0; n < 5000; n++) {
+            double lat1 = random.nextDouble() * 140 - 70;
+            double lon1 = random.nextDouble() * 360 - 180;
+            double bearing = random.nextDouble() * 2 * Math.PI;
+            double meters = 1 + random.nextDouble() * 999;
+            double lat2 = lat1 + Math.cos(bearing) * meters / 111320.0;
+            double lon2 = lon1 + Math.sin(bearing) * meters / (111320.0 * Math.cos(Math.toRadians(lat1)));
+
+            double haversine = DistanceKernel.haversine(lat1, lon1, lat2, lon2);
+            double equirectangular = DistanceKernel.distance(DistanceKernel.Mode.EQUIRECTANGULAR, lat1, lon1, lat2, lon2);
+            double tangent = DistanceKernel.tangentPlane(lat1, lon1, lat2, lon2);
+            double ellipsoid = vincenty(lat1, lon1, lat2, lon2);
+
+            assertEquals(haversine, equirectangular, haversine * 1e-5);
+            assertEquals(ellipsoid, haversine, ellipsoid * 6e-3);
+            assertEquals(ellipsoid, tangent, ellipsoid * 5e-4);
+        }
+    }
+
+    @Test
+    public void routeLength_cachedScalesMatchPairwiseSum() {
+        // Caminhada de ~20 km para o norte a partir de 60°, passando por vários refresh do cos
+        int count = 20_000;
+        int[] lat = new int[count];
+        int[] lon = new int[count];
+        for (int i = 0; i < count; i++) {
+            lat[i] = (int) Math.round((60.0 + i * 1e-5) * 1e7);
+            lon[i] = (int) Math.round((10.0 + (i % 2) * 1e-5) * 1e7);
+        }
+
+        double exact = 0;
+        for (int i = 1; i < count; i++) {
+            exact += DistanceKernel.haversine(lat[i - 1] / 1e7, lon[i - 1] / 1e7, lat[i] / 1e7, lon[i] / 1e7);
+        }
+
+        double equirectangular = DistanceKernel.routeLength(lat, lon, 0, count, DistanceKernel.Mode.EQUIRECTANGULAR);
+        assertEquals(exact, DistanceKernel.routeLength(lat, lon, 0, count, DistanceKernel.Mode.HAVERSINE), 1e-6);
+        assertEquals(exact, equirectangular, exact * 5e-4);
+
+        double[] segments = new double[count - 1];
+        assertEquals(equirectangular,
+                DistanceKernel.segmentLengths(lat, lon, count, DistanceKernel.Mode.EQUIRECTANGULAR, segments), 1e-6);
+        double sum = 0;
+        for (double segment : segments) {
+            sum += segment;
+        }
+        assertEquals(equirectangular, sum, 1e-6);
+    }
+
+    // Referência no elipsoide WGS84 (fórmula inversa de Vincenty)
+    private static double vincenty(double lat1, double lon1, double lat2, double lon2) {
+        double a = 6378137.0;
+        double f = 1 / 298.257223563;
+        double b = a * (1 - f);
+        double l = Math.toRadians(lon2 - lon1);
+        double u1 = Math.atan((1 - f) * Math.tan(Math.toRadians(lat1)));
+        double u2 = Math.atan((1 - f) * Math.tan(Math.toRadians(lat2)));
+        double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+
+        double lambda = l;
+        double sinSigma, cosSigma, sigma, cosSqAlpha, cos2SigmaM;
+        int iterations = 0;
+        do {
+            double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+            sinSigma = Math.sqrt((cosU2 * sinLambda) * (cosU2 * sinLambda)
+                    + (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda) * (cosU1 * sinU2 - sinU1 * cosU2 * cosLambda));
+            if (sinSigma == 0) {
+                return 0;
+            }
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1 - sinAlpha * sinAlpha;
+            cos2SigmaM = cosSqAlpha != 0 ? cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha : 0;
+            double c = f / 16 * cosSqAlpha * (4 + f * (4 - 3 * cosSqAlpha));
+            double previous = lambda;
+            lambda = l + (1 - c) * f * sinAlpha
+                    * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+            if (Math.abs(lambda - previous) < 1e-12) {
+                break;
+            }
+        } while (++iterations < 200);
+
+        double uSq = cosSqAlpha * (a * a - b * b) / (b * b);
+        double bigA = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        double bigB = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        double deltaSigma = bigB * sinSigma * (cos2SigmaM + bigB / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)
+                - bigB / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return b * bigA * (sigma - deltaSigma);
+    }
+}
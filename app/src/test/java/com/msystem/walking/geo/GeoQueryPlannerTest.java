@@ -0,0 +1,67 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GeoQueryPlannerTest {
+
+    @Test
+    public void plan_findsEveryTerritoryIntersectingTheViewport() {
+        Random random = new Random(7);
+        List<String> keys = new ArrayList<>();
+        List<BoundingBox> bounds = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            double lat = 38.6 + random.nextDouble() * 0.2;
+            double lon = -9.3 + random.nextDouble() * 0.2;
+            double size = 0.0005 + random.nextDouble() * 0.005;
+            List<LocationPoint> polygon = new ArrayList<>();
+            polygon.add(new LocationPoint(lat, lon));
+            polygon.add(new LocationPoint(lat + size, lon + size));
+            keys.add(GeoQueryPlanner.cellFor(polygon));
+            bounds.add(BoundingBox.fromPoints(polygon));
+        }
+
+        for (int q = 0; q < 100; q++) {
+            double lat = 38.6 + random.nextDouble() * 0.2;
+            double lon = -9.3 + random.nextDouble() * 0.2;
+            BoundingBox viewport = new BoundingBox(lat, lon, lat + 0.01, lon + 0.015);
+            GeoQueryPlanner.Plan plan = GeoQueryPlanner.plan(viewport);
+            assertTrue(plan.getRanges().size() <= 4);
+
+            for (int i = 0; i < keys.size(); i++) {
+                if (!bounds.get(i).intersects(viewport)) {
+                    continue;
+                }
+                // Simula as consultas do Firestore: intervalo de prefixo ou igualdade exata
+                String key = keys.get(i);
+                boolean found = plan.getAncestors().contains(key);
+                for (GeoQueryPlanner.Range range : plan.getRanges()) {
+                    found |= key.compareTo(range.getStart()) >= 0 && key.compareTo(range.getEnd()) <= 0;
+                }
+                assertTrue("território " + key + " não encontrado", found);
+            }
+        }
+    }
+
+    @Test
+    public void plan_mergesConsecutiveCells() {
+        List<String> cells = new ArrayList<>();
+        cells.add("eyckq0");
+        cells.add("eyckq1");
+        cells.add("eyckq3");
+        GeoQueryPlanner.Plan plan = GeoQueryPlanner.plan(cells);
+
+        assertEquals(2, plan.getRanges().size());
+        assertEquals("eyckq0", plan.getRanges().get(0).getStart());
+        assertEquals("eyckq1" + GeoQueryPlanner.RANGE_END_SUFFIX, plan.getRanges().get(0).getEnd());
+        assertEquals("eyckq", GeoQueryPlanner.increment("eyckp"));
+        assertEquals(6, plan.getAncestors().size());
+    }
+}
@@ -0,0 +1,148 @@
+package com.msystem.walking.geo;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PolygonClipperTest {
+
+    @Test
+    public void overlappingSquares_haveExpectedAreas() {
+        double[] a = square(0, 0, 100);
+        double[] b = square(50, 50, 100);
+
+        assertEquals(2500, PolygonClipper.area(PolygonClipper.intersection(a, b)), 1e-6);
+        assertEquals(17500, PolygonClipper.area(PolygonClipper.union(a, b)), 1e-6);
+        assertEquals(7500, PolygonClipper.area(PolygonClipper.difference(a, b)), 1e-6);
+    }
+
+    @Test
+    public void crossShape_splitsSubjectInTwo() {
+        double[] wide = rectangle(0, 40, 300, 60);
+        double[] tall = rectangle(100, 0, 200, 100);
+
+        List<PolygonClipper.Polygon> pieces = PolygonClipper.difference(wide, tall);
+        assertEquals(2, pieces.size());
+        assertEquals(2 * 100 * 20, PolygonClipper.area(pieces), 1e-6);
+    }
+
+    @Test
+    public void clipInsideSubject_leavesExplicitHole() {
+        List<PolygonClipper.Polygon> result = PolygonClipper.difference(square(0, 0, 100), square(25, 25, 50));
+        assertEquals(1, result.size());
+        assertEquals(1, result.get(0).getHoles().size());
+        assertEquals(10000, PolygonClipper.area(result.get(0).getOuter()), 1e-6);
+        assertEquals(10000 - 2500, result.get(0).area(), 1e-6);
+    }
+
+    @Test
+    public void secondDifference_onRivalWithHole_keepsCorrectArea() {
+        // Primeiro recorte no meio (buraco), depois um que atravessa o buraco e a borda
+        List<PolygonClipper.Polygon> first = PolygonClipper.difference(square(0, 0, 100), square(25, 25, 25));
+        List<PolygonClipper.Polygon> second = PolygonClipper.difference(first.get(0),
+                new PolygonClipper.Polygon(rectangle(40, 40, 120, 60)));
+
+        assertEquals(10000 - 625 - (60 * 20 - 10 * 10), PolygonClipper.area(second), 1e-6);
+        for (PolygonClipper.Polygon piece : second) {
+            assertTrue(piece.getHoles().isEmpty());
+        }
+        // Bordas em comum com o polígono com buraco
+        assertEquals(10000 - 625, PolygonClipper.area(PolygonClipper.intersection(first.get(0),
+                new PolygonClipper.Polygon(square(0, 0, 100)))), 0.01);
+    }
+
+    @Test
+    public void repeatedDifferences_matchPointSampling() {
+        Random random = new Random(21);
+        for (int n = 0; n < 60; n++) {
+            PolygonClipper.Polygon rival = new PolygonClipper.Polygon(randomStar(random, 0, 0, 8 + random.nextInt(12)));
+            for (int step = 0; step < 3; step++) {
+                double[] cut = randomStar(random, random.nextDouble() * 80 - 40, random.nextDouble() * 80 - 40, 6, 5, 30);
+                List<PolygonClipper.Polygon> pieces = PolygonClipper.difference(rival, new PolygonClipper.Polygon(cut));
+
+                int wrong = 0;
+                for (int k = 0; k < 2000; k++) {
+                    double x = random.nextDouble() * 200 - 100;
+                    double y = random.nextDouble() * 200 - 100;
+                    boolean expected = PolygonClipper.contains(rival, x, y) && !PolygonClipper.contains(cut, x, y);
+                    int inside = 0;
+                    for (PolygonClipper.Polygon piece : pieces) {
+                        if (PolygonClipper.contains(piece, x, y)) {
+                            inside++;
+                        }
+                    }
+                    assertTrue("peças sobrepostas", inside <= 1);
+                    if (expected != (inside == 1)) {
+                        wrong++;
+                    }
+                }
+                // Só pontos na borda (arredondamento) podem divergir
+                assertTrue("caso " + n + ", recorte " + step + ": " + wrong + " pontos errados", wrong <= 1);
+                if (pieces.isEmpty()) {
+                    break;
+                }
+                rival = pieces.get(0);
+            }
+        }
+    }
+
+    @Test
+    public void sharedEdgesAndVertices_areResolved() {
+        double[] a = square(0, 0, 100);
+        double[] b = square(100, 0, 100);
+        double[] c = square(50, 0, 100);
+
+        assertEquals(20000, PolygonClipper.area(PolygonClipper.union(a, b)), 0.01);
+        assertEquals(5000, PolygonClipper.area(PolygonClipper.intersection(a, c)), 0.01);
+        assertEquals(5000, PolygonClipper.area(PolygonClipper.difference(a, c)), 0.01);
+    }
+
+    @Test
+    public void randomPolygons_satisfyAreaIdentities() {
+        Random random = new Random(11);
+        for (int n = 0; n < 200; n++) {
+            double[] a = randomStar(random, 0, 0);
+            double[] b = randomStar(random, random.nextDouble() * 80 - 40, random.nextDouble() * 80 - 40);
+
+            double areaA = PolygonClipper.area(a);
+            double areaB = PolygonClipper.area(b);
+            double inter = PolygonClipper.area(PolygonClipper.intersection(a, b));
+            double diff = PolygonClipper.area(PolygonClipper.difference(a, b));
+            double union = PolygonClipper.area(PolygonClipper.union(a, b));
+
+            assertEquals(areaA, inter + diff, areaA * 1e-6);
+            assertEquals(areaA + areaB - inter, union, areaA * 1e-6);
+        }
+    }
+
+    private static double[] square(double x, double y, double size) {
+        return rectangle(x, y, x + size, y + size);
+    }
+
+    private static double[] rectangle(double x1, double y1, double x2, double y2) {
+        return new double[]{x1, y1, x2, y1, x2, y2, x1, y2};
+    }
+
+    private static double[] randomStar(Random random, double cx, double cy) {
+        return randomStar(random, cx, cy, 3 + random.nextInt(20));
+    }
+
+    private static double[] randomStar(Random random, double cx, double cy, int vertices) {
+        return randomStar(random, cx, cy, vertices, 20, 80);
+    }
+
+    // Polígono estrelado (simples) com raios aleatórios
+    private static double[] randomStar(Random random, double cx, double cy, int vertices, double minRadius, double maxRadius) {
+        double[] ring = new double[vertices * 2];
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double radius = minRadius + random.nextDouble() * (maxRadius - minRadius);
+            ring[i * 2] = cx + radius * Math.cos(angle);
+            ring[i * 2 + 1] = cy + radius * Math.sin(angle);
+        }
+        return ring;
+    }
+}
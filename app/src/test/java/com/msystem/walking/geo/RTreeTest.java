@@ -0,0 +1,129 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RTreeTest {
+
+    @Test
+    public void search_matchesBruteForceAfterBulkLoadInsertAndRemove() {
+        Random random = new Random(3);
+        List<Integer> items = new ArrayList<>();
+        List<BoundingBox> bounds = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            items.add(i);
+            bounds.add(randomBox(random));
+        }
+        RTree<Integer> tree = RTree.bulkLoad(new ArrayList<>(items.subList(0, 4000)), new ArrayList<>(bounds.subList(0, 4000)));
+        for (int i = 4000; i < 5000; i++) {
+            tree.insert(items.get(i), bounds.get(i));
+        }
+        for (int i = 0; i < 5000; i += 7) {
+            assertTrue(tree.remove(items.get(i), bounds.get(i)));
+        }
+        assertEquals(5000 - 715, tree.size());
+
+        for (int q = 0; q < 300; q++) {
+            BoundingBox query = randomBox(random);
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < 5000; i++) {
+                if (i % 7 != 0 && bounds.get(i).intersects(query)) {
+                    expected.add(i);
+                }
+            }
+            assertEquals(expected, new HashSet<>(tree.search(query)));
+        }
+    }
+
+    @Test
+    public void snapshot_isUnchangedByLaterInsertsAndRemoves() {
+        Random random = new Random(5);
+        // A remoção compara por identidade: os mesmos objetos nas duas chamadas
+        Integer[] items = new Integer[3000];
+        List<BoundingBox> bounds = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            items[i] = i;
+            bounds.add(randomBox(random));
+        }
+        RTree<Integer> tree = new RTree<>();
+        for (int i = 0; i < 2000; i++) {
+            tree.insert(items[i], bounds.get(i));
+        }
+        RTree<Integer> snapshot = tree.snapshot();
+
+        // Alterações depois da cópia: metade sai, mil entram
+        for (int i = 0; i < 2000; i += 2) {
+            assertTrue(tree.remove(items[i], bounds.get(i)));
+        }
+        for (int i = 2000; i < 3000; i++) {
+            tree.insert(items[i], bounds.get(i));
+        }
+        assertEquals(2000, snapshot.size());
+        assertEquals(2000, tree.size());
+
+        for (int q = 0; q < 200; q++) {
+            BoundingBox query = randomBox(random);
+            Set<Integer> inSnapshot = new HashSet<>();
+            Set<Integer> inTree = new HashSet<>();
+            for (int i = 0; i < 3000; i++) {
+                if (bounds.get(i).intersects(query)) {
+                    if (i < 2000) {
+                        inSnapshot.add(i);
+                    }
+                    if (i >= 2000 || i % 2 != 0) {
+                        inTree.add(i);
+                    }
+                }
+            }
+            assertEquals(inSnapshot, new HashSet<>(snapshot.search(query)));
+            assertEquals(inTree, new HashSet<>(tree.search(query)));
+        }
+    }
+
+    @Test
+    public void findRivalOverlaps_ignoresOwnAndDisjointTerritories() {
+        Territory mine = square("me", 38.700, -9.150, 0.002);
+        Territory rivalOverlapping = square("rival", 38.701, -9.149, 0.002);
+        Territory rivalNearby = square("rival", 38.7025, -9.1525, 0.001);
+        Territory ownOverlapping = square("me", 38.701, -9.151, 0.002);
+
+        List<Territory> existing = new ArrayList<>();
+        existing.add(rivalOverlapping);
+        existing.add(rivalNearby);
+        existing.add(ownOverlapping);
+        List<BoundingBox> bounds = new ArrayList<>();
+        for (Territory t : existing) {
+            bounds.add(BoundingBox.fromPoints(t.getPolygon()));
+        }
+
+        List<Territory> overlaps = TerritoryUtils.findRivalOverlaps(mine, RTree.bulkLoad(existing, bounds));
+        assertEquals(1, overlaps.size());
+        assertSame(rivalOverlapping, overlaps.get(0));
+    }
+
+    private static BoundingBox randomBox(Random random) {
+        double lat = 38.6 + random.nextDouble() * 0.2;
+        double lon = -9.3 + random.nextDouble() * 0.2;
+        return new BoundingBox(lat, lon, lat + random.nextDouble() * 0.01, lon + random.nextDouble() * 0.01);
+    }
+
+    private static Territory square(String owner, double lat, double lon, double size) {
+        List<LocationPoint> polygon = new ArrayList<>();
+        polygon.add(new LocationPoint(lat, lon));
+        polygon.add(new LocationPoint(lat, lon + size));
+        polygon.add(new LocationPoint(lat + size, lon + size));
+        polygon.add(new LocationPoint(lat + size, lon));
+        return new Territory(owner, owner, polygon);
+    }
+}
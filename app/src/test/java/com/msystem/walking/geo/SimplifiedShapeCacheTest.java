@@ -0,0 +1,59 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SimplifiedShapeCacheTest {
+
+    @Test
+    public void get_simplifiesOncePerTolerance() {
+        Territory territory = circle(-23.55, -46.63);
+        int vertices = territory.getPolygon().size();
+        SimplifiedShapeCache cache = new SimplifiedShapeCache();
+
+        SimplifiedShapeCache.Shape fine = cache.get(territory, 0.01);
+        assertEquals(vertices, fine.count);
+        assertSame(fine, cache.get(territory, 0.01));
+
+        // Com ~20 m de tolerância o círculo de 50 m vira poucos vértices, ainda perto do centro
+        SimplifiedShapeCache.Shape coarse = cache.get(territory, 20.0);
+        assertTrue(coarse.count >= 3 && coarse.count < vertices);
+        for (int i = 0; i < coarse.count; i++) {
+            double meters = DistanceKernel.haversine(-23.55, -46.63, coarse.latitudes[i], coarse.longitudes[i]);
+            assertEquals(50.0, meters, 1.0);
+        }
+    }
+
+    @Test
+    public void get_simplifiesHolesWithTheSameTolerance() {
+        Territory territory = circle(-23.55, -46.63);
+        List<LocationPoint> hole = TerritoryUtils.createCircularPolygon(new LocationPoint(-23.55, -46.63), 20.0);
+        territory.setHoles(Collections.singletonList(new Territory.Hole(hole)));
+        SimplifiedShapeCache cache = new SimplifiedShapeCache();
+
+        SimplifiedShapeCache.Shape fine = cache.get(territory, 0.01);
+        assertEquals(1, fine.holes.length);
+        assertEquals(hole.size(), fine.holes[0].count);
+
+        SimplifiedShapeCache.Shape coarse = cache.get(territory, 5.0);
+        assertTrue(coarse.holes[0].count >= 3 && coarse.holes[0].count < hole.size());
+        for (int i = 0; i < coarse.holes[0].count; i++) {
+            double meters = DistanceKernel.haversine(-23.55, -46.63,
+                    coarse.holes[0].latitudes[i], coarse.holes[0].longitudes[i]);
+            assertEquals(20.0, meters, 1.0);
+        }
+    }
+
+    private static Territory circle(double latitude, double longitude) {
+        return new Territory("ana", "ana",
+                TerritoryUtils.createCircularPolygon(new LocationPoint(latitude, longitude), 50.0));
+    }
+}
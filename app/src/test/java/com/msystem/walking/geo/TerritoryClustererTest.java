@@ -0,0 +1,67 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TerritoryClustererTest {
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    @Test
+    public void cluster_groupsNearbyTerritoriesPerOwner() {
+        List<Territory> territories = new ArrayList<>();
+        // Dois donos com três territórios cada, todos a menos de 300 m uns dos outros
+        for (int i = 0; i < 6; i++) {
+            territories.add(territory(i % 2 == 0 ? "ana" : "bia", -23.55, -46.63 + i * 50 / METERS_PER_DEGREE));
+        }
+        // Um território de "ana" a ~20 km
+        territories.add(territory("ana", -23.55 + 0.18, -46.63));
+
+        TerritoryClusterer clusterer = new TerritoryClusterer();
+        // Zoom 12: ~30 m por pixel, células de 64 px ≈ 2 km
+        assertEquals(3, clusterer.cluster(territories, 12, 64));
+
+        int total = 0;
+        for (int i = 0; i < clusterer.size(); i++) {
+            TerritoryClusterer.Cluster cluster = clusterer.get(i);
+            total += cluster.count;
+            if (cluster.count == 1) {
+                assertEquals("ana", cluster.ownerId);
+                assertEquals(-23.55 + 0.18, cluster.latitude, 1e-4);
+            } else {
+                assertEquals(3, cluster.count);
+            }
+        }
+        assertEquals(7, total);
+    }
+
+    @Test
+    public void cluster_reusesGroupsBetweenCalls() {
+        List<Territory> territories = new ArrayList<>();
+        territories.add(territory("ana", -23.55, -46.63));
+        territories.add(territory("bia", -23.55, -46.63));
+
+        TerritoryClusterer clusterer = new TerritoryClusterer();
+        clusterer.cluster(territories, 12, 64);
+        TerritoryClusterer.Cluster first = clusterer.get(0);
+
+        assertEquals(1, clusterer.cluster(territories.subList(1, 2), 12, 64));
+        assertSame(first, clusterer.get(0));
+        assertEquals("bia", first.ownerId);
+        assertEquals(1, first.count);
+    }
+
+    private static Territory territory(String owner, double latitude, double longitude) {
+        Territory territory = new Territory(owner, owner,
+                TerritoryUtils.createCircularPolygon(new LocationPoint(latitude, longitude), 50.0));
+        territory.setColor("#64C8FF");
+        return territory;
+    }
+}
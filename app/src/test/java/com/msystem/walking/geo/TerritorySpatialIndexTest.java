@@ -0,0 +1,148 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TerritorySpatialIndexTest {
+
+    @Test
+    public void geoHash_matchesReferenceValues() {
+        assertEquals("ezs42", GeoHash.encode(42.605, -5.603, 5));
+
+        BoundingBox cell = GeoHash.bounds("ezs42");
+        assertTrue(cell.contains(42.605, -5.603));
+        assertEquals("ezs42", GeoHash.encode(cell.getCenterLatitude(), cell.getCenterLongitude(), 5));
+    }
+
+    @Test
+    public void queries_matchBruteForce() {
+        Random random = new Random(42);
+        List<Territory> all = new ArrayList<>();
+        TerritorySpatialIndex index = new TerritorySpatialIndex();
+
+        for (int i = 0; i < 2000; i++) {
+            double lat = 38.70 + random.nextDouble() * 0.05;
+            double lon = -9.16 + random.nextDouble() * 0.05;
+            double size = 0.0002 + random.nextDouble() * (i % 50 == 0 ? 0.01 : 0.001);
+            Territory territory = square("t" + i, lat, lon, size);
+            all.add(territory);
+            index.insert(territory);
+        }
+        assertEquals(all.size(), index.size());
+
+        for (int q = 0; q < 200; q++) {
+            double lat = 38.70 + random.nextDouble() * 0.05;
+            double lon = -9.16 + random.nextDouble() * 0.05;
+
+            Set<Territory> expectedPoint = new HashSet<>();
+            for (Territory t : all) {
+                if (TerritoryUtils.isPointInPolygon(t.getPolygon(), lat, lon)) {
+                    expectedPoint.add(t);
+                }
+            }
+            assertEquals(expectedPoint, new HashSet<>(index.queryPoint(lat, lon)));
+
+            BoundingBox box = new BoundingBox(lat, lon, lat + random.nextDouble() * 0.01, lon + random.nextDouble() * 0.01);
+            Set<Territory> expectedBox = new HashSet<>();
+            for (Territory t : all) {
+                if (BoundingBox.fromPoints(t.getPolygon()).intersects(box)) {
+                    expectedBox.add(t);
+                }
+            }
+            assertEquals(expectedBox, new HashSet<>(index.queryBoundingBox(box)));
+        }
+    }
+
+    @Test
+    public void nearest_returnsClosestFirst() {
+        TerritorySpatialIndex index = new TerritorySpatialIndex();
+        index.insert(square("far", 38.80, -9.10, 0.001));
+        index.insert(square("near", 38.7010, -9.1500, 0.001));
+        index.insert(square("inside", 38.6995, -9.1505, 0.001));
+
+        List<Territory> nearest = index.nearest(38.7, -9.15, 2);
+        assertEquals(2, nearest.size());
+        assertEquals("inside", nearest.get(0).getTerritoryId());
+        assertEquals("near", nearest.get(1).getTerritoryId());
+    }
+
+    @Test
+    public void remove_dropsTerritoryFromQueries() {
+        TerritorySpatialIndex index = new TerritorySpatialIndex();
+        index.insert(square("a", 38.7, -9.15, 0.001));
+        assertEquals(1, index.queryPoint(38.7005, -9.1495).size());
+
+        assertTrue(index.remove("a"));
+        assertEquals(0, index.size());
+        assertTrue(index.queryPoint(38.7005, -9.1495).isEmpty());
+    }
+
+    @Test
+    public void insert_withoutPolygon_removesPreviousVersion() {
+        TerritorySpatialIndex index = new TerritorySpatialIndex();
+        index.insert(square("a", 38.7, -9.15, 0.001));
+        Territory updated = square("a", 38.7, -9.15, 0.001);
+        updated.setPolygon(null);
+
+        index.insert(updated);
+
+        assertEquals(0, index.size());
+        assertNull(index.get("a"));
+        assertTrue(index.queryPoint(38.7005, -9.1495).isEmpty());
+        assertEquals(0, index.getTree().size());
+    }
+
+    @Test
+    public void get_returnsIndexedVersion() {
+        TerritorySpatialIndex index = new TerritorySpatialIndex();
+        Territory first = square("a", 38.7, -9.15, 0.001);
+        Territory second = square("a", 38.7, -9.15, 0.002);
+        index.insert(first);
+        index.insert(second);
+
+        assertSame(second, index.get("a"));
+        index.remove("a");
+        assertNull(index.get("a"));
+    }
+
+    @Test
+    public void tree_followsInsertReplaceAndRemove() {
+        TerritorySpatialIndex index = new TerritorySpatialIndex();
+        index.insert(square("a", 38.7, -9.15, 0.001));
+        index.insert(square("b", 38.8, -9.15, 0.001));
+        RTree<Territory> before = index.snapshotTree();
+
+        // Mesmo ID em outro lugar: a versão anterior sai da árvore
+        Territory moved = square("a", 38.9, -9.15, 0.001);
+        index.insert(moved);
+        index.remove("b");
+
+        assertEquals(1, index.getTree().size());
+        assertTrue(index.getTree().search(new BoundingBox(38.69, -9.16, 38.81, -9.14)).isEmpty());
+        assertSame(moved, index.getTree().search(new BoundingBox(38.89, -9.16, 38.91, -9.14)).get(0));
+        // A cópia anterior não muda
+        assertEquals(2, before.search(new BoundingBox(38.69, -9.16, 38.81, -9.14)).size());
+    }
+
+    private static Territory square(String id, double lat, double lon, double size) {
+        List<LocationPoint> polygon = new ArrayList<>();
+        polygon.add(new LocationPoint(lat, lon));
+        polygon.add(new LocationPoint(lat, lon + size));
+        polygon.add(new LocationPoint(lat + size, lon + size));
+        polygon.add(new LocationPoint(lat + size, lon));
+        Territory territory = new Territory("owner", "Owner", polygon);
+        territory.setTerritoryId(id);
+        return territory;
+    }
+}
@@ -0,0 +1,139 @@
+package com.msystem.walking.geo;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TileRasterizerTest {
+    private static final int SIZE = TileRasterizer.TILE_SIZE;
+
+    @Test
+    public void webMercator_metersPerPixelHalvesPerZoomLevel() {
+        assertEquals(156543.03, WebMercator.metersPerPixel(0, 0), 0.01);
+        double zoom15 = WebMercator.metersPerPixel(-23.5, 15);
+        assertEquals(zoom15 / 2, WebMercator.metersPerPixel(-23.5, 16), 1e-9);
+        assertEquals(4.38, zoom15, 0.01);
+    }
+
+    @Test
+    public void webMercator_tileBoundsContainTheirPoints() {
+        int zoom = 13;
+        int x = WebMercator.tileX(-46.63, zoom);
+        int y = WebMercator.tileY(-23.55, zoom);
+        BoundingBox bounds = WebMercator.tileBounds(zoom, x, y);
+        assertTrue(bounds.contains(-23.55, -46.63));
+        assertEquals(-23.55, WebMercator.latitude(WebMercator.worldY(-23.55)), 1e-9);
+        // Zoom 13: tile de ~4,9 km de lado no equador
+        assertEquals(360.0 / 8192, bounds.getMaxLongitude() - bounds.getMinLongitude(), 1e-12);
+    }
+
+    @Test
+    public void rasterize_fillsTerritoryWithItsColor() {
+        int zoom = 13;
+        Territory territory = territory(-23.55, -46.63, 500.0, "#FF0000");
+        int[] pixels = new int[SIZE * SIZE];
+        int x = WebMercator.tileX(-46.63, zoom);
+        int y = WebMercator.tileY(-23.55, zoom);
+
+        new TileRasterizer().rasterize(Collections.singletonList(territory), zoom, x, y, pixels);
+
+        double worldPixels = SIZE * 8192.0;
+        int px = (int) (WebMercator.worldX(-46.63) * worldPixels) - x * SIZE;
+        int py = (int) (WebMercator.worldY(-23.55) * worldPixels) - y * SIZE;
+        int expected = (TileRasterizer.FILL_ALPHA << 24) | 0xFF0000;
+        assertEquals(expected, pixels[py * SIZE + px]);
+
+        // Área pintada próxima da área do círculo: π·500² m² com ~15 m por pixel
+        int painted = 0;
+        for (int pixel : pixels) {
+            if (pixel != 0) {
+                painted++;
+            }
+        }
+        double metersPerPixel = WebMercator.metersPerPixel(-23.55, 13);
+        double expectedPixels = Math.PI * 500 * 500 / (metersPerPixel * metersPerPixel);
+        assertEquals(expectedPixels, painted, expectedPixels * 0.1);
+    }
+
+    @Test
+    public void rasterize_leavesHolesUnpainted() {
+        int zoom = 13;
+        Territory territory = territory(-23.55, -46.63, 500.0, "#FF0000");
+        territory.setHoles(Collections.singletonList(new Territory.Hole(
+                TerritoryUtils.createCircularPolygon(new LocationPoint(-23.55, -46.63), 200.0))));
+        int[] pixels = new int[SIZE * SIZE];
+        int x = WebMercator.tileX(-46.63, zoom);
+        int y = WebMercator.tileY(-23.55, zoom);
+
+        new TileRasterizer().rasterize(Collections.singletonList(territory), zoom, x, y, pixels);
+
+        double worldPixels = SIZE * 8192.0;
+        int px = (int) (WebMercator.worldX(-46.63) * worldPixels) - x * SIZE;
+        int py = (int) (WebMercator.worldY(-23.55) * worldPixels) - y * SIZE;
+        assertEquals(0, pixels[py * SIZE + px]);
+
+        int painted = 0;
+        for (int pixel : pixels) {
+            if (pixel != 0) {
+                painted++;
+            }
+        }
+        double metersPerPixel = WebMercator.metersPerPixel(-23.55, 13);
+        double expectedPixels = Math.PI * (500 * 500 - 200 * 200) / (metersPerPixel * metersPerPixel);
+        assertEquals(expectedPixels, painted, expectedPixels * 0.1);
+    }
+
+    @Test
+    public void rasterize_keepsTinyTerritoriesVisible() {
+        int zoom = 6;
+        Territory territory = territory(-23.55, -46.63, 50.0, null);
+        int[] pixels = new int[SIZE * SIZE];
+        pixels[0] = 123;
+
+        new TileRasterizer().rasterize(Collections.singletonList(territory), zoom,
+                WebMercator.tileX(-46.63, zoom), WebMercator.tileY(-23.55, zoom), pixels);
+
+        int painted = 0;
+        for (int pixel : pixels) {
+            if (pixel != 0) {
+                painted++;
+                // Sem cor no documento: a cor gerada para o dono
+                String hex = TerritoryUtils.generateColorForUser("owner");
+                assertEquals(Integer.parseInt(hex.substring(1), 16), pixel & 0xFFFFFF);
+            }
+        }
+        assertEquals(1, painted);
+    }
+
+    @Test
+    public void signature_ignoresOrderButSeesChanges() {
+        Territory a = territory(-23.55, -46.63, 50.0, "#FF0000");
+        Territory b = territory(-23.56, -46.63, 50.0, "#00FF00");
+        List<Territory> ab = new ArrayList<>();
+        ab.add(a);
+        ab.add(b);
+        List<Territory> ba = new ArrayList<>();
+        ba.add(b);
+        ba.add(a);
+
+        assertEquals(TileRasterizer.signature(ab), TileRasterizer.signature(ba));
+        long before = TileRasterizer.signature(ab);
+        b.setColor("#0000FF");
+        assertNotEquals(before, TileRasterizer.signature(ab));
+    }
+
+    private static Territory territory(double latitude, double longitude, double radius, String color) {
+        Territory territory = new Territory("owner", "Dono",
+                TerritoryUtils.createCircularPolygon(new LocationPoint(latitude, longitude), radius));
+        territory.setColor(color);
+        return territory;
+    }
+}
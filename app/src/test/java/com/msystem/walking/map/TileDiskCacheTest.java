@@ -0,0 +1,71 @@
+package com.msystem.walking.map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class TileDiskCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tiles").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void get_onlyReturnsTileWithMatchingSignature() {
+        TileDiskCache cache = new TileDiskCache(directory, 1024 * 1024);
+        byte[] data = {1, 2, 3, 4};
+        cache.put(13, 3037, 4647, 42L, data);
+
+        assertArrayEquals(data, cache.get(13, 3037, 4647, 42L));
+        assertNull(cache.get(13, 3037, 4647, 43L));
+        assertNull(cache.get(13, 3037, 4648, 42L));
+    }
+
+    @Test
+    public void put_trimsLeastRecentlyUsedTilesOverLimit() {
+        TileDiskCache cache = new TileDiskCache(directory, 3 * 1008);
+        byte[] data = new byte[1000];
+        long now = System.currentTimeMillis();
+        for (int x = 0; x < 3; x++) {
+            cache.put(10, x, 0, 1L, data);
+            new File(directory, "10_" + x + "_0.tile").setLastModified(now - (10 - x) * 60_000L);
+        }
+        // Ler o mais antigo o torna o mais recente
+        assertNotNull(cache.get(10, 0, 0, 1L));
+
+        cache.put(10, 3, 0, 1L, data);
+
+        assertNotNull(cache.get(10, 0, 0, 1L));
+        assertNull(cache.get(10, 1, 0, 1L));
+        assertNotNull(cache.get(10, 3, 0, 1L));
+        assertTrue(cache.getTotalBytes() <= 3 * 1008);
+    }
+
+    @Test
+    public void totalBytes_countsFilesFromPreviousSessions() {
+        new TileDiskCache(directory, 1024 * 1024).put(8, 1, 1, 7L, new byte[100]);
+
+        TileDiskCache reopened = new TileDiskCache(directory, 1024 * 1024);
+        assertEquals(108, reopened.getTotalBytes());
+        assertArrayEquals(new byte[100], reopened.get(8, 1, 1, 7L));
+    }
+}
@@ -0,0 +1,67 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.route.filter.Fix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FixQueueTest {
+
+    @Test
+    public void offer_rejectsWhenFullAndKeepsOrder() {
+        FixQueue queue = new FixQueue(4);
+        Fix fix = new Fix();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(fix.set(i, -i, 1000L + i, 10, 5f, Float.NaN), i * 0.5));
+        }
+        assertFalse(queue.offer(fix.set(99, 99, 0, 0, 0, Float.NaN), 0));
+
+        FixQueue.Update update = new FixQueue.Update();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.poll(update));
+            assertEquals(i, update.fix.latitude, 0);
+            assertEquals(-i, update.fix.longitude, 0);
+            assertEquals(1000L + i, update.fix.time);
+            assertEquals(i * 0.5, update.totalDistance, 0);
+        }
+        assertFalse(queue.poll(update));
+        assertTrue(queue.offer(fix, 0));
+    }
+
+    @Test
+    public void capacity_roundsUpToPowerOfTwo() {
+        assertEquals(1024, new FixQueue(1024).capacity());
+        assertEquals(1024, new FixQueue(1000).capacity());
+        assertEquals(2, new FixQueue(1).capacity());
+    }
+
+    @Test
+    public void producerAndConsumerThreads_seeEveryFixInOrder() throws InterruptedException {
+        final int count = 200_000;
+        final FixQueue queue = new FixQueue(64);
+        Thread producer = new Thread(() -> {
+            Fix fix = new Fix();
+            for (int i = 0; i < count; i++) {
+                fix.set(i, i * 2.0, i, 0, 0, Float.NaN);
+                while (!queue.offer(fix, i * 3.0)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        FixQueue.Update update = new FixQueue.Update();
+        for (int i = 0; i < count; i++) {
+            while (!queue.poll(update)) {
+                Thread.yield();
+            }
+            assertEquals(i, update.fix.latitude, 0);
+            assertEquals(i * 2.0, update.fix.longitude, 0);
+            assertEquals(i, update.fix.time);
+            assertEquals(i * 3.0, update.totalDistance, 0);
+        }
+        producer.join();
+        assertEquals(0, queue.size());
+    }
+}
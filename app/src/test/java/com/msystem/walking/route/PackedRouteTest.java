@@ -0,0 +1,78 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.model.LocationPoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PackedRouteTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    public void add_keepsValuesWithinFixedPointResolution() {
+        PackedRoute route = new PackedRoute(2);
+        for (int i = 0; i < 1000; i++) {
+            route.add(-23.5505 + i * 1e-5, -46.6333 - i * 1e-5, START + i * 1000L, 760 + i * 0.1, 4.5f);
+        }
+
+        PackedRoute.View view = route.snapshot();
+        assertEquals(1000, view.size());
+        assertEquals(-23.5505 + 999e-5, view.getLatitude(999), 1e-7);
+        assertEquals(-46.6333 - 999e-5, view.getLongitude(999), 1e-7);
+        assertEquals(START + 999_000L, view.getTime(999));
+        assertEquals(859.9, view.getAltitude(999), 1e-3);
+        assertEquals(4.5f, view.getAccuracy(999), 0f);
+    }
+
+    @Test
+    public void snapshot_isNotAffectedByLaterAddsOrClear() {
+        PackedRoute route = new PackedRoute(4);
+        route.add(1.0, 2.0, START, 0, 0);
+        route.add(1.1, 2.1, START + 1000, 0, 0);
+        PackedRoute.View view = route.snapshot();
+
+        for (int i = 0; i < 100; i++) {
+            route.add(9.0, 9.0, START + 2000 + i, 0, 0);
+        }
+        route.clear();
+        route.add(5.0, 5.0, START, 0, 0);
+
+        assertEquals(2, view.size());
+        assertEquals(1.1, view.getLatitude(1), 1e-7);
+        assertEquals(1, route.snapshot().size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void view_rejectsIndexBeyondSnapshot() {
+        PackedRoute route = new PackedRoute();
+        route.add(1.0, 2.0, START, 0, 0);
+        PackedRoute.View view = route.snapshot();
+        route.add(1.1, 2.1, START, 0, 0);
+        view.getLatitude(1);
+    }
+
+    @Test
+    public void locationPoints_roundTrip() {
+        List<LocationPoint> points = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            LocationPoint point = new LocationPoint(-23.5 + i * 1e-4, -46.6, 750, 3f);
+            point.setTimestamp(new Date(START + i * 1000L));
+            points.add(point);
+        }
+
+        List<LocationPoint> copy = PackedRoute.fromLocationPoints(points).snapshot().asLocationPoints();
+
+        assertEquals(points.size(), copy.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.get(i).getLatitude(), copy.get(i).getLatitude(), 1e-7);
+            assertEquals(points.get(i).getLongitude(), copy.get(i).getLongitude(), 1e-7);
+            assertEquals(points.get(i).getTimestamp(), copy.get(i).getTimestamp());
+            assertEquals(750, copy.get(i).getAltitude(), 0);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.model.LocationPoint;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class RouteBufferTest {
+
+    @Test
+    public void add_spansSegmentsAndKeepsValues() {
+        RouteBuffer buffer = new RouteBuffer();
+        int count = RouteBuffer.SEGMENT_SIZE * 20 + 7;
+        for (int i = 0; i < count; i++) {
+            buffer.add(latitude(i), longitude(i), 1000L * i, i % 100, 3f);
+        }
+
+        RouteBuffer.Snapshot snapshot = buffer.snapshot();
+        assertEquals(count, snapshot.size());
+        for (int i = 0; i < count; i += 97) {
+            assertEquals(latitude(i), snapshot.getLatitude(i), 1e-7);
+            assertEquals(longitude(i), snapshot.getLongitude(i), 1e-7);
+            assertEquals(1000L * i, snapshot.getTime(i));
+            assertEquals(i % 100, snapshot.getAltitude(i), 0);
+        }
+        List<LocationPoint> points = snapshot.asLocationPoints();
+        assertEquals(count, points.size());
+        assertEquals(latitude(count - 1), points.get(count - 1).getLatitude(), 1e-7);
+    }
+
+    @Test
+    public void snapshot_doesNotChangeWithLaterAddsOrClear() {
+        RouteBuffer buffer = new RouteBuffer();
+        for (int i = 0; i < 10; i++) {
+            buffer.add(latitude(i), longitude(i), i, 0, 0);
+        }
+        RouteBuffer.Snapshot before = buffer.snapshot();
+
+        buffer.add(latitude(10), longitude(10), 10, 0, 0);
+        buffer.clear();
+        buffer.add(1, 1, 0, 0, 0);
+
+        assertEquals(10, before.size());
+        assertEquals(latitude(9), before.getLatitude(9), 1e-7);
+        try {
+            before.getLatitude(10);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // Só os pontos publicados na hora da visão
+        }
+
+        RouteBuffer.Snapshot after = buffer.snapshot();
+        assertEquals(1, after.size());
+        assertNotEquals(before.getGeneration(), after.getGeneration());
+        assertEquals(1.0, after.getLatitude(0), 1e-7);
+    }
+
+    @Test
+    public void resumeFrom_continuesOnlyInSameGeneration() {
+        RouteBuffer buffer = new RouteBuffer();
+        for (int i = 0; i < 5; i++) {
+            buffer.add(latitude(i), longitude(i), i, 0, 0);
+        }
+        RouteBuffer.Snapshot first = buffer.snapshot();
+        buffer.add(latitude(5), longitude(5), 5, 0, 0);
+
+        RouteBuffer.Snapshot second = buffer.snapshot();
+        assertEquals(5, second.resumeFrom(first.getGeneration(), first.size()));
+
+        buffer.clear();
+        buffer.add(latitude(0), longitude(0), 0, 0, 0);
+        assertEquals(0, buffer.snapshot().resumeFrom(second.getGeneration(), second.size()));
+    }
+
+    @Test
+    public void readers_seeConsistentPrefixWhileWriterAppends() throws InterruptedException {
+        final RouteBuffer buffer = new RouteBuffer();
+        final int count = 300_000;
+        final AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[3];
+        final boolean[] done = new boolean[1];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                int checked = 0;
+                while (failure.get() == null) {
+                    RouteBuffer.Snapshot snapshot = buffer.snapshot();
+                    int size = snapshot.size();
+                    // Confere o último ponto e uma amostra de cada visão
+                    for (int i = Math.max(0, size - 3); i < size; i++) {
+                        if (snapshot.getTime(i) != i || Math.abs(snapshot.getLatitude(i) - latitude(i)) > 1e-7) {
+                            failure.compareAndSet(null, "Ponto " + i + " inconsistente");
+                        }
+                    }
+                    if (size > 0 && snapshot.getTime(checked % size) != checked % size) {
+                        failure.compareAndSet(null, "Ponto " + (checked % size) + " inconsistente");
+                    }
+                    checked++;
+                    synchronized (done) {
+                        if (done[0] && size == count) {
+                            return;
+                        }
+                    }
+                }
+            });
+            readers[r].start();
+        }
+
+        for (int i = 0; i < count; i++) {
+            buffer.add(latitude(i), longitude(i), i, 0, 0);
+        }
+        synchronized (done) {
+            done[0] = true;
+        }
+        for (Thread reader : readers) {
+            reader.join(10_000);
+        }
+        assertNull(failure.get());
+        assertEquals(count, buffer.size());
+    }
+
+    private static double latitude(int i) {
+        return -23.5505 + (i % 10000) * 1e-5;
+    }
+
+    private static double longitude(int i) {
+        return -46.6333 - (i % 10000) * 1e-5;
+    }
+}
@@ -0,0 +1,148 @@
+package com.msystem.walking.route;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RouteCodecTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    public void roundTrip_allChannels() {
+        PackedRoute.View route = walk(3600);
+
+        PackedRoute.View decoded = RouteCodec.decode(RouteCodec.encode(route, RouteCodec.ALL_CHANNELS)).snapshot();
+
+        assertEquals(route.size(), decoded.size());
+        for (int i = 0; i < route.size(); i++) {
+            assertEquals(route.getLatitudeE7(i), decoded.getLatitudeE7(i));
+            assertEquals(route.getLongitudeE7(i), decoded.getLongitudeE7(i));
+            assertEquals(route.getTime(i), decoded.getTime(i));
+            assertEquals(route.getAltitude(i), decoded.getAltitude(i), 0.05);
+            assertEquals(route.getAccuracy(i), decoded.getAccuracy(i), 0.05);
+        }
+    }
+
+    @Test
+    public void roundTrip_positionsOnly() {
+        PackedRoute.View route = walk(100);
+
+        byte[] data = RouteCodec.encode(route, 0);
+        PackedRoute.View decoded = RouteCodec.decode(data).snapshot();
+
+        assertEquals(100, RouteCodec.pointCount(data));
+        assertEquals(route.getLatitudeE7(99), decoded.getLatitudeE7(99));
+        assertEquals(0, decoded.getAltitude(99), 0);
+        assertTrue(data.length < 100 * 5);
+    }
+
+    @Test
+    public void roundTrip_keepsSegmentStarts() {
+        PackedRoute route = new PackedRoute();
+        for (int i = 0; i < 30; i++) {
+            if (i == 10 || i == 25) {
+                route.breakSegment();
+            }
+            route.add(-23.55 + i * 1e-5, -46.63, START + i * 1000L, 760, 5f);
+        }
+
+        PackedRoute.View decoded = RouteCodec.decode(RouteCodec.encode(route.snapshot(), RouteCodec.ALL_CHANNELS)).snapshot();
+
+        assertEquals(30, decoded.size());
+        assertEquals(2, decoded.getSegmentStartCount());
+        assertEquals(10, decoded.getSegmentStart(0));
+        assertEquals(25, decoded.getSegmentStart(1));
+        assertTrue(decoded.isSegmentStart(25));
+        assertFalse(decoded.isSegmentStart(24));
+        // Sem o canal, a rota volta como um trecho só
+        assertEquals(0, RouteCodec.decode(RouteCodec.encode(route.snapshot(), RouteCodec.CHANNEL_TIME))
+                .snapshot().getSegmentStartCount());
+    }
+
+    @Test
+    public void walkAtOneHertz_takesFewBytesPerPoint() {
+        PackedRoute.View route = walk(4 * 3600);
+        byte[] data = RouteCodec.encode(route, RouteCodec.ALL_CHANNELS);
+        // lat + lon + horário + altitude + precisão, ~2 bytes cada no pior caso
+        assertTrue("bytes por ponto: " + data.length / (double) route.size(), data.length < route.size() * 9);
+    }
+
+    @Test
+    public void emptyRoute_roundTrips() {
+        byte[] data = RouteCodec.encode(new PackedRoute().snapshot(), RouteCodec.ALL_CHANNELS);
+        assertEquals(0, RouteCodec.decode(data).size());
+    }
+
+    @Test
+    public void zigzag_handlesExtremes() {
+        long[] values = {0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            assertEquals(value, RouteCodec.unzigzag(RouteCodec.zigzag(value)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedData_isRejected() {
+        byte[] data = RouteCodec.encode(walk(50), RouteCodec.ALL_CHANNELS);
+        RouteCodec.decode(Arrays.copyOf(data, data.length - 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hugePointCount_isRejectedBeforeAllocating() {
+        // Cabeçalho dizendo Integer.MAX_VALUE pontos, seguido de poucos bytes
+        byte[] data = RouteCodec.encode(walk(5), RouteCodec.ALL_CHANNELS);
+        byte[] forged = Arrays.copyOf(new byte[]{data[0], data[1], (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07}, 7 + 20);
+        RouteCodec.decode(forged);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativePointCount_isRejectedBeforeAllocating() {
+        // Varint de 10 bytes com o bit de sinal ligado
+        byte[] data = RouteCodec.encode(walk(5), RouteCodec.ALL_CHANNELS);
+        byte[] forged = new byte[2 + 10 + 20];
+        forged[0] = data[0];
+        forged[1] = data[1];
+        for (int i = 2; i < 11; i++) {
+            forged[i] = (byte) 0xFF;
+        }
+        forged[11] = 0x01;
+        RouteCodec.decode(forged);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentStartPastTheEnd_isRejected() {
+        PackedRoute route = new PackedRoute();
+        route.add(-23.55, -46.63, START, 760, 5f);
+        route.breakSegment();
+        route.add(-23.56, -46.63, START + 1000L, 760, 5f);
+        byte[] data = RouteCodec.encode(route.snapshot(), RouteCodec.ALL_CHANNELS);
+        // Último byte: diferença de índice do único início de trecho
+        data[data.length - 1] = 5;
+        RouteCodec.decode(data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownVersion_isRejected() {
+        byte[] data = RouteCodec.encode(walk(5), RouteCodec.ALL_CHANNELS);
+        data[0] = 99;
+        RouteCodec.decode(data);
+    }
+
+    private static PackedRoute.View walk(int count) {
+        Random random = new Random(4);
+        PackedRoute route = new PackedRoute(count);
+        double latitude = -23.55;
+        double longitude = -46.63;
+        double altitude = 760;
+        for (int i = 0; i < count; i++) {
+            latitude += random.nextGaussian() * 1e-5;
+            longitude += random.nextGaussian() * 1e-5;
+            altitude += random.nextGaussian() * 0.3;
+            route.add(latitude, longitude, START + i * 1000L + random.nextInt(50), altitude, 3 + random.nextInt(20) / 2f);
+        }
+        return route.snapshot();
+    }
+}
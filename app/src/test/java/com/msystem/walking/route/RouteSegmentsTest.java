@@ -0,0 +1,52 @@
+package com.msystem.walking.route;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RouteSegmentsTest {
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    @Test
+    public void add_closesFullSegmentAndRepeatsItsLastPoint() {
+        RouteSegments segments = new RouteSegments(4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, segments.add(-23.5 + i * 1e-4, -46.6));
+        }
+        assertFalse(segments.isClosed(0));
+
+        assertEquals(1, segments.add(-23.5 + 4e-4, -46.6));
+        assertTrue(segments.isClosed(0));
+        assertFalse(segments.isClosed(1));
+        assertEquals(2, segments.getPointCount(1));
+        assertEquals(segments.getLatitude(0, 3), segments.getLatitude(1, 0), 0);
+    }
+
+    @Test
+    public void simplified_dropsPointsOfStraightSectionKeepingEnds() {
+        RouteSegments segments = new RouteSegments(100);
+        // Linha reta com ruído de ±1 m
+        for (int i = 0; i <= 100; i++) {
+            double noise = (i % 2 == 0 ? 1 : -1) / METERS_PER_DEGREE;
+            segments.add(-23.5 + i * 5 / METERS_PER_DEGREE, -46.6 + noise);
+        }
+
+        int[] coarse = segments.simplified(0, 10.0);
+        assertEquals(2, coarse.length);
+        assertEquals(0, coarse[0]);
+        assertEquals(99, coarse[1]);
+
+        int[] fine = segments.simplified(0, 0.5);
+        assertEquals(100, fine.length);
+        // Mesma tolerância: resultado reaproveitado
+        assertSame(fine, segments.simplified(0, 0.5));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void simplified_rejectsOpenSegment() {
+        RouteSegments segments = new RouteSegments(8);
+        segments.add(-23.5, -46.6);
+        segments.add(-23.6, -46.6);
+        segments.simplified(0, 1.0);
+    }
+}
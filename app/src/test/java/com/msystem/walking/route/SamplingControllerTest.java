@@ -0,0 +1,197 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.geo.DistanceKernel;
+import com.msystem.walking.route.filter.AccuracyGate;
+import com.msystem.walking.route.filter.Fix;
+import com.msystem.walking.route.filter.FixFilter;
+import com.msystem.walking.route.filter.FixFilterChain;
+import com.msystem.walking.route.filter.OutlierFilter;
+import com.msystem.walking.route.filter.Traces;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SamplingControllerTest {
+
+    @Test
+    public void replay_savesFixesWithSmallRouteError() throws IOException {
+        List<Fix> trace = Traces.load("walk_stop_run.csv");
+
+        // Referência: o intervalo fixo de 5 s usado antes; não pode perder para ele em nenhuma das medidas
+        Replay fixed = replay(trace, null, 5000);
+        Replay adaptive = replay(trace, new SamplingController(), 0);
+        String message = "fixo 5 s: " + fixed + " | adaptativo: " + adaptive;
+
+        assertTrue(message, adaptive.fixes <= fixed.fixes);
+        assertTrue(message, adaptive.p95Error <= fixed.p95Error);
+    }
+
+    @Test
+    public void replay_standingStill_savesMostFixes() throws IOException {
+        List<Fix> trace = Traces.load("standing_still.csv");
+        Replay fixed = replay(trace, null, 5000);
+        Replay adaptive = replay(trace, new SamplingController(), 0);
+
+        assertTrue("fixo 5 s: " + fixed + " | adaptativo: " + adaptive, adaptive.fixes < fixed.fixes * 0.65);
+    }
+
+    @Test
+    public void replay_followsMotionStates() throws IOException {
+        List<Fix> trace = Traces.load("walk_stop_run.csv");
+        Replay adaptive = replay(trace, new SamplingController(), 0);
+
+        // Fases: 0-120 s caminhando, 120-300 s parado, 300-420 s correndo, 420-540 s caminhando
+        assertEquals(SamplingController.Mode.WALKING, adaptive.modeAt(100));
+        assertEquals(SamplingController.Mode.STATIONARY, adaptive.modeAt(280));
+        assertEquals(SamplingController.Mode.RUNNING, adaptive.modeAt(400));
+        assertEquals(SamplingController.Mode.WALKING, adaptive.modeAt(530));
+    }
+
+    @Test
+    public void standingStill_settlesAndIgnoresJumps() throws IOException {
+        SamplingController controller = new SamplingController();
+        int changes = 0;
+        for (Fix fix : Traces.load("standing_still.csv")) {
+            if (controller.onFix(fix)) {
+                changes++;
+            }
+        }
+        assertEquals(SamplingController.Mode.STATIONARY, controller.getMode());
+        assertEquals(1, changes);
+    }
+
+    @Test
+    public void walk_neverDropsToStationary() throws IOException {
+        SamplingController controller = new SamplingController();
+        for (Fix fix : Traces.load("walk_with_outliers.csv")) {
+            controller.onFix(fix);
+            assertTrue(controller.getMode() != SamplingController.Mode.STATIONARY);
+        }
+    }
+
+    @Test
+    public void singleFastEstimate_doesNotUpgrade() {
+        SamplingController controller = new SamplingController();
+        double metersPerDegree = 111320.0;
+        long time = 0;
+        // Parado por um minuto
+        for (int i = 0; i < 60; i++, time += 1000) {
+            controller.onFix(new Fix().set(-23.5, -46.6, time, 0, 5f, Float.NaN));
+        }
+        assertEquals(SamplingController.Mode.STATIONARY, controller.getMode());
+
+        // Um salto de 100 m só desloca a ponta mais nova da janela uma vez
+        assertFalse(controller.onFix(new Fix().set(-23.5 + 100 / metersPerDegree, -46.6, time, 0, 5f, Float.NaN)));
+        time += 1000;
+        assertFalse(controller.onFix(new Fix().set(-23.5, -46.6, time, 0, 5f, Float.NaN)));
+        assertEquals(SamplingController.Mode.STATIONARY, controller.getMode());
+
+        controller.reset();
+        assertEquals(SamplingController.Mode.WALKING, controller.getMode());
+    }
+
+    // Velocidade informada pelo GPS a partir da qual o ponto conta como movimento, em m/s
+    private static final float MOVING_SPEED = 0.5f;
+
+    private static final class Replay {
+        int fixes;
+        double meanError;
+        double p95Error;
+        final List<long[]> modeChanges = new ArrayList<>();
+        long start;
+
+        SamplingController.Mode modeAt(int second) {
+            SamplingController.Mode mode = SamplingController.Mode.WALKING;
+            for (long[] change : modeChanges) {
+                if (change[0] - start <= second * 1000L) {
+                    mode = SamplingController.Mode.values()[(int) change[1]];
+                }
+            }
+            return mode;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d pontos, erro médio %.1f m, p95 %.1f m", fixes, meanError, p95Error);
+        }
+    }
+
+    /**
+     * Reproduz um trajeto de 1 ponto/s como o GPS entregaria com o intervalo do modo
+     * atual, e mede a distância entre cada ponto original e a rota recebida
+     * (interpolada no mesmo instante). Os dois lados passam pelos filtros de precisão
+     * e de saltos, como no serviço: o erro é só o que a amostragem acrescenta.
+     * O erro só é medido em movimento (velocidade do GPS de ao menos
+     * {@link #MOVING_SPEED}): parado, a rota salva não segue o ruído do GPS, e
+     * a economia de pontos desse trecho é medida à parte.
+     * @param controller Controlador, ou null para intervalo fixo
+     * @param fixedInterval Intervalo sem controlador, em ms
+     */
+    private static Replay replay(List<Fix> trace, SamplingController controller, long fixedInterval) {
+        Replay result = new Replay();
+        result.start = trace.get(0).time;
+        List<Fix> delivered = new ArrayList<>();
+        FixFilter filter = jumpFilter();
+        long last = Long.MIN_VALUE / 2;
+        for (Fix fix : trace) {
+            long interval = controller != null ? controller.getMode().intervalMillis : fixedInterval;
+            if (fix.time - last < interval) {
+                continue;
+            }
+            last = fix.time;
+            result.fixes++;
+            if (controller != null && controller.onFix(fix)) {
+                result.modeChanges.add(new long[]{fix.time, controller.getMode().ordinal()});
+            }
+            if (filter.accept(new Fix().copyFrom(fix))) {
+                delivered.add(fix);
+            }
+        }
+
+        List<Fix> reference = new ArrayList<>();
+        filter = jumpFilter();
+        for (Fix fix : trace) {
+            if (filter.accept(new Fix().copyFrom(fix))) {
+                reference.add(fix);
+            }
+        }
+
+        double[] errors = new double[reference.size()];
+        int measured = 0;
+        int segment = 0;
+        double sum = 0;
+        for (int i = 0; i < reference.size(); i++) {
+            Fix fix = reference.get(i);
+            if (fix.speed < MOVING_SPEED) {
+                continue;
+            }
+            while (segment + 2 < delivered.size() && delivered.get(segment + 1).time <= fix.time) {
+                segment++;
+            }
+            Fix a = delivered.get(segment);
+            Fix b = delivered.get(Math.min(segment + 1, delivered.size() - 1));
+            double t = b.time == a.time ? 0 : (double) (fix.time - a.time) / (b.time - a.time);
+            t = Math.max(0, Math.min(1, t));
+            errors[measured] = DistanceKernel.tangentPlane(fix.latitude, fix.longitude,
+                    a.latitude + (b.latitude - a.latitude) * t, a.longitude + (b.longitude - a.longitude) * t);
+            sum += errors[measured++];
+        }
+        if (measured > 0) {
+            Arrays.sort(errors, 0, measured);
+            result.meanError = sum / measured;
+            result.p95Error = errors[(int) (measured * 0.95)];
+        }
+        return result;
+    }
+
+    private static FixFilter jumpFilter() {
+        return new FixFilterChain(new AccuracyGate(FixFilterChain.DEFAULT_MAX_ACCURACY),
+                new OutlierFilter(FixFilterChain.DEFAULT_MAX_SPEED));
+    }
+}
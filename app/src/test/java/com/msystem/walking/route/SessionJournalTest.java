@@ -0,0 +1,163 @@
+package com.msystem.walking.route;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class SessionJournalTest {
+    private static final long START = 1700000000000L;
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal").toFile();
+        file = new File(directory, "session.journal");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void open_recoversAllFixesAndHeader() throws IOException {
+        SessionJournal journal = SessionJournal.create(file, START);
+        append(journal, 0, 200);
+        journal.setState(SessionJournal.STATE_PAUSED);
+        journal.close();
+
+        SessionJournal reopened = SessionJournal.open(file);
+        assertEquals(200, reopened.size());
+        assertEquals(START, reopened.getStartedAt());
+        assertEquals(SessionJournal.STATE_PAUSED, reopened.getState());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(latitude(i), reopened.getLatitude(i), 1e-7);
+            assertEquals(longitude(i), reopened.getLongitude(i), 1e-7);
+            assertEquals(START + i * 100L, reopened.getTime(i));
+            assertEquals(i % 50, reopened.getAltitude(i), 1e-3);
+            assertEquals(3.5f, reopened.getAccuracy(i), 0);
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void append_growsPastInitialMapping() throws IOException {
+        SessionJournal journal = SessionJournal.create(file, START);
+        append(journal, 0, 10000);
+        journal.close();
+
+        SessionJournal reopened = SessionJournal.open(file);
+        assertEquals(10000, reopened.size());
+        assertEquals(latitude(9999), reopened.getLatitude(9999), 1e-7);
+        reopened.close();
+    }
+
+    @Test
+    public void open_dropsBlockWithBadChecksum() throws IOException {
+        SessionJournal journal = SessionJournal.create(file, START);
+        append(journal, 0, 150);
+        journal.close();
+
+        // Estraga um ponto do segundo bloco (pontos 64 a 127)
+        corrupt(recordOffset(70) + 2);
+
+        SessionJournal reopened = SessionJournal.open(file);
+        assertEquals(SessionJournal.CHECKPOINT_INTERVAL, reopened.size());
+        append(reopened, 64, 10);
+        reopened.close();
+
+        SessionJournal again = SessionJournal.open(file);
+        assertEquals(74, again.size());
+        assertEquals(latitude(73), again.getLatitude(73), 1e-7);
+        again.close();
+    }
+
+    @Test
+    public void open_afterCrashBeforeCheckpoint_keepsLayout() throws IOException {
+        SessionJournal journal = SessionJournal.create(file, START);
+        append(journal, 0, SessionJournal.CHECKPOINT_INTERVAL);
+        journal.close();
+
+        // Registro de controle nunca escrito: sequência zerada
+        long checkpoint = SessionJournal.HEADER_BYTES
+                + (long) SessionJournal.CHECKPOINT_INTERVAL * SessionJournal.RECORD_BYTES;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(checkpoint + 28);
+            raf.writeInt(0);
+        }
+
+        SessionJournal reopened = SessionJournal.open(file);
+        assertEquals(SessionJournal.CHECKPOINT_INTERVAL, reopened.size());
+        append(reopened, SessionJournal.CHECKPOINT_INTERVAL, 100);
+        reopened.close();
+
+        SessionJournal again = SessionJournal.open(file);
+        assertEquals(164, again.size());
+        assertEquals(latitude(163), again.getLatitude(163), 1e-7);
+        again.close();
+    }
+
+    @Test
+    public void open_keepsSegmentStartsAndMovingTime() throws IOException {
+        SessionJournal journal = SessionJournal.create(file, START);
+        append(journal, 0, 100);
+        journal.append(latitude(100), longitude(100), START + 100 * 100L, 0, 3.5f, true);
+        append(journal, 101, 20);
+        journal.setMovingTime(42000);
+        journal.close();
+
+        SessionJournal reopened = SessionJournal.open(file);
+        assertEquals(121, reopened.size());
+        assertEquals(42000, reopened.getMovingTime());
+        for (int i = 0; i < reopened.size(); i++) {
+            assertEquals(i == 100, reopened.isSegmentStart(i));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void open_rejectsMissingOrForeignFile() throws IOException {
+        assertNull(SessionJournal.open(file));
+
+        Files.write(file.toPath(), new byte[64]);
+        assertNull(SessionJournal.open(file));
+    }
+
+    private static void append(SessionJournal journal, int from, int count) throws IOException {
+        for (int i = from; i < from + count; i++) {
+            journal.append(latitude(i), longitude(i), START + i * 100L, i % 50, 3.5f);
+        }
+    }
+
+    private static double latitude(int i) {
+        return 38.7223 + i * 1e-5;
+    }
+
+    private static double longitude(int i) {
+        return -9.1393 - i * 1e-5;
+    }
+
+    private static long recordOffset(int fix) {
+        int record = fix + fix / SessionJournal.CHECKPOINT_INTERVAL;
+        return SessionJournal.HEADER_BYTES + (long) record * SessionJournal.RECORD_BYTES;
+    }
+
+    private void corrupt(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            int value = raf.read();
+            raf.seek(offset);
+            raf.write(value ^ 0xFF);
+        }
+    }
+}
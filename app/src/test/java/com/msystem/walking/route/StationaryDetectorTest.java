@@ -0,0 +1,99 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.route.filter.Fix;
+import com.msystem.walking.route.filter.Traces;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StationaryDetectorTest {
+
+    @Test
+    public void walkStopRun_pausesAndResumesAtPhaseBoundaries() throws IOException {
+        List<Fix> trace = Traces.load("walk_stop_run.csv");
+        long start = trace.get(0).time;
+        StationaryDetector detector = new StationaryDetector();
+        int changes = 0;
+        for (Fix fix : trace) {
+            if (detector.onFix(fix)) {
+                changes++;
+                if (detector.isStopped()) {
+                    // Parada de 120 s a 300 s; detectada depois de 30 s, mas datada do começo
+                    assertEquals(120, (detector.getStoppedSince() - start) / 1000.0, 10);
+                    assertEquals(150, (fix.time - start) / 1000.0, 12);
+                } else {
+                    assertEquals(300, (detector.getMovingSince() - start) / 1000.0, 10);
+                }
+            }
+        }
+        assertEquals(2, changes);
+        assertFalse(detector.isStopped());
+    }
+
+    @Test
+    public void walk_neverPauses() throws IOException {
+        StationaryDetector detector = new StationaryDetector();
+        for (Fix fix : Traces.load("walk_with_outliers.csv")) {
+            detector.onFix(fix);
+            assertFalse(detector.isStopped());
+        }
+    }
+
+    @Test
+    public void standingStill_staysPausedThroughJumps() throws IOException {
+        StationaryDetector detector = new StationaryDetector();
+        int changes = 0;
+        for (Fix fix : Traces.load("standing_still.csv")) {
+            if (detector.onFix(fix)) {
+                changes++;
+            }
+        }
+        assertTrue(detector.isStopped());
+        assertEquals(1, changes);
+    }
+
+    @Test
+    public void sparseSlowWalk_isNotAStop() {
+        // Caminhada lenta (0,6 m/s) com um ponto a cada 5 s
+        StationaryDetector detector = new StationaryDetector();
+        double metersPerDegree = 111320.0;
+        for (int i = 0; i < 60; i++) {
+            detector.onFix(new Fix().set(-23.5 + i * 3.0 / metersPerDegree, -46.6, i * 5000L, 0, 5f, Float.NaN));
+            assertFalse(detector.isStopped());
+        }
+
+        detector.reset();
+        assertFalse(detector.onFix(new Fix().set(-23.5, -46.6, 400000L, 0, 5f, Float.NaN)));
+    }
+
+    @Test
+    public void clockAdjustment_doesNotChangeStopTiming() {
+        // O relógio do aparelho volta uma hora no meio da parada; o monotônico segue
+        StationaryDetector detector = new StationaryDetector();
+        long epoch = 1700000000000L;
+        long boot = 5000000L;
+        boolean stopped = false;
+        for (int i = 0; i <= 10 && !stopped; i++) {
+            Fix fix = new Fix().set(-23.5, -46.6, epoch + i * 5000L - (i >= 3 ? 3600000L : 0), 0, 5f, Float.NaN);
+            fix.elapsed = boot + i * 5000L;
+            stopped = detector.onFix(fix);
+            assertEquals(i == 6, stopped);
+        }
+        assertEquals(boot, detector.getStoppedSince());
+    }
+
+    @Test
+    public void slowWalkWithPoorAccuracy_isNotAStop() {
+        // 0,6 m/s com precisão de 25 m: em 30 s anda 18 m, menos que a precisão
+        StationaryDetector detector = new StationaryDetector();
+        double metersPerDegree = 111320.0;
+        for (int i = 0; i < 60; i++) {
+            detector.onFix(new Fix().set(-23.5 + i * 3.0 / metersPerDegree, -46.6, i * 5000L, 0, 25f, Float.NaN));
+            assertFalse(detector.isStopped());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.msystem.walking.route;
+
+import com.msystem.walking.geo.DistanceKernel;
+import com.msystem.walking.geo.DouglasPeucker;
+import com.msystem.walking.geo.LocalProjection;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamingSimplifierTest {
+    private static final double LAT = -23.55;
+    private static final double LON = -46.63;
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    @Test
+    public void noisyStraightLine_collapsesToFewPoints() {
+        StreamingSimplifier simplifier = new StreamingSimplifier(5.0);
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            add(simplifier, i * 1.4, random.nextGaussian(), i);
+        }
+        simplifier.flush();
+
+        assertTrue(simplifier.snapshot().size() <= 5);
+        assertEquals(0, simplifier.getPendingCount());
+    }
+
+    @Test
+    public void corner_isKept() {
+        StreamingSimplifier simplifier = new StreamingSimplifier(1.0);
+        for (int i = 0; i <= 50; i++) {
+            add(simplifier, i * 2, 0, i);
+        }
+        for (int i = 1; i <= 50; i++) {
+            add(simplifier, 100, i * 2, 50 + i);
+        }
+        simplifier.flush();
+
+        PackedRoute.View view = simplifier.snapshot();
+        assertEquals(3, view.size());
+        assertEquals(LON + 100 / metersPerDegreeLon(), view.getLongitude(1), 1e-6);
+        assertEquals(LAT, view.getLatitude(1), 1e-6);
+        assertEquals(START + 50_000L, view.getTime(1));
+    }
+
+    @Test
+    public void everyRawPoint_staysWithinTolerance() {
+        double tolerance = 4.0;
+        StreamingSimplifier simplifier = new StreamingSimplifier(tolerance, 32);
+        Random random = new Random(3);
+        int count = 5000;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        for (int i = 0; i < count; i++) {
+            heading += random.nextGaussian() * 0.1;
+            x += Math.cos(heading) * 1.4;
+            y += Math.sin(heading) * 1.4;
+            xs[i] = x + random.nextGaussian();
+            ys[i] = y + random.nextGaussian();
+            add(simplifier, xs[i], ys[i], i);
+        }
+        simplifier.flush();
+
+        PackedRoute.View view = simplifier.snapshot();
+        assertTrue("mantidos: " + view.size(), view.size() < count / 4);
+        // A janela limitada força ao menos um ponto mantido a cada 32
+        assertTrue("mantidos: " + view.size(), view.size() >= count / 32);
+
+        LocalProjection projection = new LocalProjection(view.getLatitude(0), view.getLongitude(0));
+        double originX = xs[0];
+        double originY = ys[0];
+        for (int i = 0; i < count; i++) {
+            double best = Double.MAX_VALUE;
+            for (int k = 1; k < view.size(); k++) {
+                double ax = projection.toX(view.getLongitude(k - 1)) + originX;
+                double ay = projection.toY(view.getLatitude(k - 1)) + originY;
+                double bx = projection.toX(view.getLongitude(k)) + originX;
+                double by = projection.toY(view.getLatitude(k)) + originY;
+                best = Math.min(best, DouglasPeucker.segmentDistanceSquared(xs[i], ys[i], ax, ay, bx, by));
+            }
+            assertTrue("ponto " + i + ": " + Math.sqrt(best), Math.sqrt(best) <= tolerance + 0.01);
+        }
+    }
+
+    @Test
+    public void breakSegment_keepsBothEndsAndDoesNotJoinThem() {
+        StreamingSimplifier simplifier = new StreamingSimplifier(5.0);
+        for (int i = 0; i <= 20; i++) {
+            add(simplifier, i * 2, 0, i);
+        }
+        // Pausa manual: a retomada é 200 m ao norte, na mesma direção
+        simplifier.breakSegment();
+        for (int i = 0; i <= 20; i++) {
+            add(simplifier, i * 2, 200, 100 + i);
+        }
+        simplifier.flush();
+
+        PackedRoute.View view = simplifier.snapshot();
+        assertEquals(4, view.size());
+        assertEquals(1, view.getSegmentStartCount());
+        assertEquals(2, view.getSegmentStart(0));
+        assertEquals(START + 20_000L, view.getTime(1));
+        assertEquals(START + 100_000L, view.getTime(2));
+        // Dois trechos de 40 m; os 200 m da pausa não entram
+        assertEquals(80, view.getLength(DistanceKernel.Mode.TANGENT_PLANE), 0.5);
+    }
+
+    private static final long START = 1_700_000_000_000L;
+
+    private static void add(StreamingSimplifier simplifier, double x, double y, int second) {
+        simplifier.add(LAT + y / METERS_PER_DEGREE, LON + x / metersPerDegreeLon(), START + second * 1000L, 0, 5f);
+    }
+
+    private static double metersPerDegreeLon() {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT));
+    }
+}
@@ -0,0 +1,136 @@
+package com.msystem.walking.route.filter;
+
+import com.msystem.walking.geo.DistanceKernel;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FixFilterChainTest {
+
+    @Test
+    public void standingStill_addsAlmostNoDistance() throws IOException {
+        List<Fix> trace = Traces.load("standing_still.csv");
+
+        Replay raw = replay(trace, new FixFilterChain());
+        Replay filtered = replay(trace, FixFilterChain.createDefault());
+
+        assertTrue("bruto: " + raw.distance, raw.distance > 500);
+        assertTrue("filtrado: " + filtered.distance, filtered.distance < 60);
+    }
+
+    @Test
+    public void walk_keepsPathLengthAndDropsJumps() throws IOException {
+        List<Fix> trace = Traces.load("walk_with_outliers.csv");
+
+        Replay raw = replay(trace, new FixFilterChain());
+        Replay filtered = replay(trace, FixFilterChain.createDefault());
+
+        // 600 s a 1,4 m/s; os saltos do trajeto bruto somam centenas de metros
+        assertTrue("bruto: " + raw.distance, raw.distance > 840 * 1.5);
+        assertEquals(840, filtered.distance, 840 * 0.1);
+        assertTrue(filtered.accepted > 0);
+    }
+
+    @Test
+    public void curvyWalk_withSparseImpreciseFixes_keepsCorners() throws IOException {
+        List<Fix> trace = Traces.load("curvy_walk.csv");
+
+        Replay filtered = replay(trace, FixFilterChain.createDefault());
+
+        // Serpentina de 840 m com um ponto a cada 5 s e precisão de ~15 m
+        assertEquals(840, filtered.distance, 840 * 0.1);
+        assertTrue("aceitos: " + filtered.accepted, filtered.accepted > trace.size() / 3);
+    }
+
+    @Test
+    public void movementGate_waitsUntilAccuracyCirclesSeparate() {
+        MovementGate gate = new MovementGate(5.0, 12.0);
+        double metersPerDegree = 111320.0;
+        assertTrue(gate.accept(fix(-23.5, -46.6, 0, 4f)));
+        assertFalse(gate.accept(fix(-23.5 + 6 / metersPerDegree, -46.6, 1000L, 4f)));
+        assertTrue(gate.accept(fix(-23.5 + 9 / metersPerDegree, -46.6, 2000L, 4f)));
+
+        gate.reset();
+        assertTrue(gate.accept(fix(-23.5, -46.6, 3000L, 4f)));
+    }
+
+    @Test
+    public void movementGate_capsSeparationForImpreciseFixes() {
+        MovementGate gate = new MovementGate(5.0, 12.0);
+        double metersPerDegree = 111320.0;
+        assertTrue(gate.accept(fix(-23.5, -46.6, 0, 15f)));
+        assertFalse(gate.accept(fix(-23.5 + 10 / metersPerDegree, -46.6, 5000L, 15f)));
+        // Os círculos de 15 m ainda se tocam, mas 13 m já passam do máximo
+        assertTrue(gate.accept(fix(-23.5 + 13 / metersPerDegree, -46.6, 10_000L, 15f)));
+    }
+
+    @Test
+    public void accuracyGate_dropsImpreciseFixes() {
+        AccuracyGate gate = new AccuracyGate(20f);
+        assertTrue(gate.accept(fix(0, 0, 0, 5f)));
+        assertTrue(gate.accept(fix(0, 0, 0, 0f)));
+        assertFalse(gate.accept(fix(0, 0, 0, 35f)));
+    }
+
+    @Test
+    public void outlierFilter_rejectsJumpsButRecoversFromRealMoves() {
+        OutlierFilter filter = new OutlierFilter(12.0);
+        assertTrue(filter.accept(fix(-23.5, -46.6, 0, 5f)));
+        assertFalse(filter.accept(fix(-23.5, -46.6, 0, 5f)));
+
+        // ~1,1 km em 1 s
+        for (int i = 1; i <= OutlierFilter.MAX_CONSECUTIVE_REJECTIONS; i++) {
+            assertFalse(filter.accept(fix(-23.49, -46.6, i * 1000L, 5f)));
+        }
+        assertTrue(filter.accept(fix(-23.49, -46.6, 10_000L, 5f)));
+    }
+
+    @Test
+    public void kalman_followsSteadyMotion() {
+        KalmanSmoother smoother = new KalmanSmoother(0.5);
+        Fix fix = new Fix();
+        double metersPerDegree = 111320.0;
+        for (int i = 0; i < 120; i++) {
+            fix.set(-23.5 + i * 1.4 / metersPerDegree, -46.6, i * 1000L, 0, 5f, Float.NaN);
+            smoother.accept(fix);
+        }
+        // Em movimento uniforme o filtro converge para a posição medida
+        assertEquals(-23.5 + 119 * 1.4 / metersPerDegree, fix.latitude, 1.0 / metersPerDegree);
+    }
+
+    private static final class Replay {
+        double distance;
+        int accepted;
+    }
+
+    // Passa o trajeto gravado pela cadeia e soma a distância entre os pontos aceitos
+    private static Replay replay(List<Fix> trace, FixFilter filter) {
+        Replay result = new Replay();
+        Fix fix = new Fix();
+        boolean hasLast = false;
+        double lastLatitude = 0;
+        double lastLongitude = 0;
+        for (Fix recorded : trace) {
+            fix.copyFrom(recorded);
+            if (!filter.accept(fix)) {
+                continue;
+            }
+            if (hasLast) {
+                result.distance += DistanceKernel.tangentPlane(lastLatitude, lastLongitude, fix.latitude, fix.longitude);
+            }
+            hasLast = true;
+            lastLatitude = fix.latitude;
+            lastLongitude = fix.longitude;
+            result.accepted++;
+        }
+        return result;
+    }
+
+    private static Fix fix(double latitude, double longitude, long time, float accuracy) {
+        return new Fix().set(latitude, longitude, time, 0, accuracy, Float.NaN);
+    }
+}
@@ -0,0 +1,38 @@
+package com.msystem.walking.route.filter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Trajetos gravados em test/resources/traces, para reproduzir nos testes
+ */
+public final class Traces {
+    private Traces() {
+    }
+
+    // Linhas: time_ms,latitude,longitude,accuracy_m,altitude_m,speed_mps
+    public static List<Fix> load(String name) throws IOException {
+        List<Fix> trace = new ArrayList<>();
+        InputStream stream = Traces.class.getClassLoader().getResourceAsStream("traces/" + name);
+        assertNotNull(name, stream);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] f = line.split(",");
+                trace.add(new Fix().set(Double.parseDouble(f[1]), Double.parseDouble(f[2]), Long.parseLong(f[0]),
+                        Double.parseDouble(f[4]), Float.parseFloat(f[3]), Float.parseFloat(f[5])));
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,74 @@
+package com.msystem.walking.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NotificationThrottleTest {
+
+    @Test
+    public void unchangedValue_isNeverPosted() {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        assertEquals(0, throttle.offer(12, 0));
+        for (long t = 1000; t <= 60000; t += 1000) {
+            assertEquals(NotificationThrottle.NOTHING, throttle.offer(12, t));
+        }
+        assertEquals(1, throttle.getPostedCount());
+        assertEquals(60, throttle.getSuppressedUnchangedCount());
+    }
+
+    @Test
+    public void changesWithinInterval_postOnlyLatestAtTheEnd() {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        assertEquals(0, throttle.offer(1, 0));
+
+        // Primeiro adiamento agenda o flush; os outros só trocam o valor
+        assertEquals(4000, throttle.offer(2, 1000));
+        assertEquals(NotificationThrottle.NOTHING, throttle.offer(3, 2000));
+        assertEquals(NotificationThrottle.NOTHING, throttle.offer(4, 3000));
+
+        assertTrue(throttle.flush(5000));
+        assertEquals(4, throttle.getPending());
+        assertFalse(throttle.flush(5001));
+
+        assertEquals(2, throttle.getPostedCount());
+        assertEquals(3, throttle.getSuppressedRateCount());
+    }
+
+    @Test
+    public void returnToShownValue_cancelsPending() {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        throttle.offer(1, 0);
+        assertTrue(throttle.offer(2, 1000) > 0);
+        assertEquals(NotificationThrottle.NOTHING, throttle.offer(1, 2000));
+        assertFalse(throttle.flush(5000));
+        assertEquals(1, throttle.getPostedCount());
+    }
+
+    @Test
+    public void oneFixPerSecond_postsAtConfiguredCadence() {
+        NotificationThrottle throttle = new NotificationThrottle(5000);
+        long flushAt = -1;
+        int sent = 0;
+        // Cada segundo mostra um valor novo
+        for (long t = 0; t < 60000; t += 1000) {
+            if (flushAt >= 0 && t >= flushAt) {
+                flushAt = -1;
+                if (throttle.flush(t)) {
+                    sent++;
+                }
+            }
+            long result = throttle.offer(t / 1000, t);
+            if (result == 0) {
+                sent++;
+            } else if (result > 0) {
+                flushAt = t + result;
+            }
+        }
+        assertEquals(throttle.getPostedCount(), sent);
+        assertEquals(12, sent);
+
+        throttle.reset();
+        assertEquals(0, throttle.offer(59, 60000));
+    }
+}
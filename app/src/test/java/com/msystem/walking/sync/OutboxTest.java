@@ -0,0 +1,413 @@
+package com.msystem.walking.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+    private File directory;
+    private File file;
+    private FakeBackend backend;
+    private FakeClock clock;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("outbox").toFile();
+        file = new File(directory, "pending.log");
+        backend = new FakeBackend();
+        clock = new FakeClock();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void enqueue_survivesRestartWithAllValueTypes() throws IOException {
+        Map<String, Object> point = new LinkedHashMap<>();
+        point.put("latitude", 38.7223);
+        point.put("accuracy", 4.5f);
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("userId", "u1");
+        fields.put("distance", 1.25);
+        fields.put("pointsEarned", 12);
+        fields.put("startTime", new Date(1700000000000L));
+        fields.put("routeData", new byte[]{1, 2, 3});
+        fields.put("route", Collections.singletonList(point));
+        fields.put("endTime", null);
+        fields.put("finished", true);
+
+        String id = open().enqueue(Collections.singletonList(OutboxOperation.set("activities", "a1", fields)));
+
+        Outbox reopened = open();
+        assertEquals(1, reopened.getPendingCount());
+        OutboxOperation restored = reopened.getOperations(id).get(0);
+        assertEquals(OutboxOperation.Kind.SET, restored.getKind());
+        assertEquals("activities/a1", restored.getPath());
+        Map<String, Object> values = restored.getFields();
+        assertEquals("u1", values.get("userId"));
+        assertEquals(1.25, (Double) values.get("distance"), 0);
+        assertEquals(12L, values.get("pointsEarned"));
+        assertEquals(new Date(1700000000000L), values.get("startTime"));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) values.get("routeData"));
+        assertTrue(values.containsKey("endTime"));
+        assertNull(values.get("endTime"));
+        assertEquals(Boolean.TRUE, values.get("finished"));
+        Map<?, ?> restoredPoint = (Map<?, ?>) ((List<?>) values.get("route")).get(0);
+        assertEquals(38.7223, (Double) restoredPoint.get("latitude"), 0);
+        assertEquals(4.5, (Double) restoredPoint.get("accuracy"), 0);
+    }
+
+    @Test
+    public void flush_coalescesIncrementsAcrossEntries() throws IOException {
+        Outbox outbox = open();
+        for (int i = 0; i < 3; i++) {
+            outbox.enqueue(activityEntry("a" + i, 1.5, 10));
+        }
+
+        assertTrue(outbox.flush());
+
+        assertEquals(1, backend.batches.size());
+        List<OutboxOperation> batch = backend.batches.get(0);
+        int increments = 0;
+        for (OutboxOperation operation : batch) {
+            if (operation.getKind() == OutboxOperation.Kind.INCREMENT) {
+                increments++;
+            }
+        }
+        assertEquals(1, increments);
+        assertEquals(4, batch.size());
+        assertEquals(4.5, ((Number) backend.field("users/u1", "totalDistance")).doubleValue(), 1e-9);
+        assertEquals(30L, backend.field("users/u1", "totalPoints"));
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void flush_neverMovesIncrementPastWriteOfSameDocument() throws IOException {
+        Outbox outbox = open();
+        outbox.enqueue(Collections.singletonList(OutboxOperation.increment("users", "u1", "totalPoints", 5)));
+        outbox.enqueue(Collections.singletonList(OutboxOperation.delete("users", "u1")));
+        outbox.enqueue(Collections.singletonList(OutboxOperation.increment("users", "u1", "totalPoints", 7)));
+
+        outbox.flush();
+
+        List<OutboxOperation> batch = backend.batches.get(0);
+        assertEquals(3, batch.size());
+        assertEquals(OutboxOperation.Kind.DELETE, batch.get(1).getKind());
+        assertEquals(7L, backend.field("users/u1", "totalPoints"));
+    }
+
+    @Test
+    public void failure_backsOffExponentiallyUntilRetryNow() throws IOException {
+        Outbox outbox = open();
+        outbox.enqueue(activityEntry("a1", 1.0, 10));
+        backend.online = false;
+
+        assertTrue(outbox.flush());
+        assertEquals(clock.now + 1000, outbox.getNextAttemptTime());
+        assertFalse(outbox.flush());
+
+        clock.now += 1000;
+        assertTrue(outbox.flush());
+        assertEquals(clock.now + 2000, outbox.getNextAttemptTime());
+
+        clock.now += 2000;
+        outbox.flush();
+        clock.now += 4000;
+        outbox.flush();
+        // Espera limitada ao máximo
+        assertEquals(clock.now + 5000, outbox.getNextAttemptTime());
+
+        backend.online = true;
+        assertTrue(outbox.retryNow());
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(0, outbox.getNextAttemptTime());
+    }
+
+    @Test
+    public void permanentFailure_isolatesRejectedEntryAndKeepsGoing() throws IOException {
+        Outbox outbox = open();
+        outbox.enqueue(activityEntry("a1", 1.0, 10));
+        String rejected = outbox.enqueue(activityEntry("bad", 2.0, 20));
+        outbox.enqueue(activityEntry("a3", 4.0, 40));
+        backend.rejected.add("activities/bad");
+
+        outbox.flush();
+
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(1, outbox.getDeadLetterCount());
+        assertNotNull(outbox.getDeadLetterOperations(rejected));
+        assertEquals(0, outbox.getNextAttemptTime());
+        assertNotNull(backend.documents.get("activities/a1"));
+        assertNotNull(backend.documents.get("activities/a3"));
+        assertNull(backend.documents.get("activities/bad"));
+        assertEquals(5.0, ((Number) backend.field("users/u1", "totalDistance")).doubleValue(), 1e-9);
+        // Depois de achar a culpada, os lotes voltam a juntar entradas
+        outbox.enqueue(activityEntry("a4", 1.0, 10));
+        outbox.enqueue(activityEntry("a5", 1.0, 10));
+        int batches = backend.batches.size();
+        outbox.flush();
+        assertEquals(batches + 1, backend.batches.size());
+    }
+
+    @Test
+    public void deadLetter_survivesRestartAndIsNotResent() throws IOException {
+        Outbox outbox = open();
+        String rejected = outbox.enqueue(activityEntry("bad", 2.0, 20));
+        backend.rejected.add("activities/bad");
+        outbox.flush();
+        assertEquals(1, outbox.getDeadLetterCount());
+
+        Outbox reopened = open();
+        assertEquals(0, reopened.getPendingCount());
+        assertEquals(1, reopened.getDeadLetterCount());
+        assertNotNull(reopened.getDeadLetterOperations(rejected));
+        assertFalse(reopened.flush());
+
+        // A confirmação de outra entrada não apaga o arquivo com a recusada
+        reopened.enqueue(activityEntry("a2", 1.0, 10));
+        reopened.flush();
+        assertEquals(1, open().getDeadLetterCount());
+    }
+
+    @Test
+    public void deadLetters_keepOnlyTheMostRecentAndShrinkTheFile() throws IOException {
+        Outbox outbox = open();
+        List<String> rejected = new ArrayList<>();
+        for (int i = 0; i < Outbox.MAX_DEAD_LETTERS + 5; i++) {
+            backend.rejected.add("activities/bad" + i);
+            rejected.add(outbox.enqueue(activityEntry("bad" + i, 1.0, 10)));
+            outbox.flush();
+        }
+        assertEquals(Outbox.MAX_DEAD_LETTERS, outbox.getDeadLetterCount());
+        assertNull(outbox.getDeadLetterOperations(rejected.get(4)));
+        assertNotNull(outbox.getDeadLetterOperations(rejected.get(5)));
+
+        // Esvaziar a fila reescreve o arquivo só com as recusadas que sobraram
+        outbox.enqueue(activityEntry("a1", 1.0, 10));
+        outbox.flush();
+        long compacted = file.length();
+        Outbox reopened = open();
+        assertEquals(0, reopened.getPendingCount());
+        assertEquals(Outbox.MAX_DEAD_LETTERS, reopened.getDeadLetterCount());
+        assertNull(reopened.getDeadLetterOperations(rejected.get(0)));
+
+        // Novas recusas e confirmações não fazem o arquivo crescer sem limite
+        for (int i = 0; i < 10; i++) {
+            backend.rejected.add("activities/late" + i);
+            reopened.enqueue(activityEntry("late" + i, 1.0, 10));
+            reopened.flush();
+            reopened.enqueue(activityEntry("b" + i, 1.0, 10));
+            reopened.flush();
+        }
+        assertEquals(Outbox.MAX_DEAD_LETTERS, reopened.getDeadLetterCount());
+        assertTrue(file.length() <= compacted + 100);
+    }
+
+    @Test
+    public void restart_afterUnacknowledgedWrite_doesNotApplyTwice() throws IOException {
+        Outbox outbox = open();
+        outbox.enqueue(activityEntry("a1", 2.0, 20));
+        // O servidor grava, mas o processo morre antes da confirmação
+        backend.dropCallbacks = true;
+        outbox.flush();
+        backend.dropCallbacks = false;
+
+        Outbox reopened = open();
+        assertEquals(1, reopened.getPendingCount());
+        reopened.enqueue(activityEntry("a2", 3.0, 30));
+        reopened.flush();
+
+        assertEquals(0, reopened.getPendingCount());
+        assertEquals(5.0, ((Number) backend.field("users/u1", "totalDistance")).doubleValue(), 1e-9);
+        assertEquals(50L, backend.field("users/u1", "totalPoints"));
+        assertNotNull(backend.documents.get("activities/a2"));
+    }
+
+    @Test
+    public void load_discardsTornRecordAtEnd() throws IOException {
+        Outbox outbox = open();
+        String first = outbox.enqueue(activityEntry("a1", 1.0, 10));
+        long intact = file.length();
+        outbox.enqueue(activityEntry("a2", 1.0, 10));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        Outbox reopened = open();
+        assertEquals(1, reopened.getPendingCount());
+        assertNotNull(reopened.getOperations(first));
+        assertEquals(intact, file.length());
+
+        // Novas entradas continuam legíveis depois do corte
+        reopened.enqueue(activityEntry("a3", 1.0, 10));
+        assertEquals(2, open().getPendingCount());
+    }
+
+    @Test
+    public void acknowledge_compactsFileWhileEntriesArePending() throws IOException {
+        Outbox outbox = open();
+        backend.holdCallbacks = true;
+        byte[] route = new byte[500];
+        // Sempre uma entrada em envio enquanto as anteriores são confirmadas
+        for (int i = 0; i < 300; i++) {
+            Map<String, Object> activity = new HashMap<>();
+            activity.put("routeData", route);
+            outbox.enqueue(Collections.singletonList(OutboxOperation.set("activities", "a" + i, activity)));
+            if (!backend.held.isEmpty()) {
+                backend.held.remove(0).onSuccess();
+            } else {
+                outbox.flush();
+            }
+        }
+        assertEquals(1, outbox.getPendingCount());
+        assertTrue(file.length() < Outbox.COMPACT_MIN_BYTES);
+        assertEquals(1, open().getPendingCount());
+
+        backend.held.remove(0).onSuccess();
+        assertEquals(0, outbox.getPendingCount());
+        assertEquals(0, file.length());
+    }
+
+    private Outbox open() throws IOException {
+        return new Outbox(file, backend, new Backoff(1000, 5000, null), clock);
+    }
+
+    private static List<OutboxOperation> activityEntry(String activityId, double distance, int points) {
+        Map<String, Object> activity = new HashMap<>();
+        activity.put("userId", "u1");
+        activity.put("distance", distance);
+        activity.put("route", Arrays.asList(1.0, 2.0, 3.0));
+        return Arrays.asList(
+                OutboxOperation.set("activities", activityId, activity),
+                OutboxOperation.increment("users", "u1", "totalDistance", distance),
+                OutboxOperation.increment("users", "u1", "totalPoints", points));
+    }
+
+    private static final class FakeClock implements Outbox.Clock {
+        long now = 1_000_000;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    /**
+     * Servidor em memória: aplica os lotes de uma vez e guarda um recibo por entrada
+     */
+    private static final class FakeBackend implements OutboxBackend {
+        final Map<String, Map<String, Object>> documents = new HashMap<>();
+        final Set<String> receipts = new HashSet<>();
+        final List<List<OutboxOperation>> batches = new ArrayList<>();
+        // Resultados guardados para o teste entregar quando quiser
+        final List<Callback> held = new ArrayList<>();
+        // Documentos que o servidor recusa gravar (ex: sem permissão)
+        final Set<String> rejected = new HashSet<>();
+        boolean online = true;
+        boolean dropCallbacks;
+        boolean holdCallbacks;
+
+        Object field(String path, String field) {
+            Map<String, Object> document = documents.get(path);
+            return document == null ? null : document.get(field);
+        }
+
+        @Override
+        public void write(List<String> entryIds, List<OutboxOperation> operations, Callback callback) {
+            if (!online) {
+                callback.onFailure(Failure.RETRYABLE);
+                return;
+            }
+            for (OutboxOperation operation : operations) {
+                if (rejected.contains(operation.getPath())) {
+                    callback.onFailure(Failure.PERMANENT);
+                    return;
+                }
+            }
+            Set<String> applied = new HashSet<>();
+            for (String id : entryIds) {
+                if (receipts.contains(id)) {
+                    applied.add(id);
+                }
+            }
+            if (!applied.isEmpty()) {
+                callback.onAlreadyApplied(applied);
+                return;
+            }
+
+            batches.add(operations);
+            for (OutboxOperation operation : operations) {
+                apply(operation);
+            }
+            receipts.addAll(entryIds);
+            if (holdCallbacks) {
+                held.add(callback);
+            } else if (!dropCallbacks) {
+                callback.onSuccess();
+            }
+        }
+
+        private void apply(OutboxOperation operation) {
+            String path = operation.getPath();
+            switch (operation.getKind()) {
+                case SET:
+                    documents.put(path, new HashMap<>(operation.getFields()));
+                    break;
+                case MERGE:
+                    document(path).putAll(operation.getFields());
+                    break;
+                case DELETE:
+                    documents.remove(path);
+                    break;
+                case INCREMENT:
+                    Map<String, Object> document = document(path);
+                    for (Map.Entry<String, Object> field : operation.getFields().entrySet()) {
+                        Number current = (Number) document.get(field.getKey());
+                        Number delta = (Number) field.getValue();
+                        if (current == null) {
+                            document.put(field.getKey(), delta);
+                        } else if (current instanceof Long && delta instanceof Long) {
+                            document.put(field.getKey(), current.longValue() + delta.longValue());
+                        } else {
+                            document.put(field.getKey(), current.doubleValue() + delta.doubleValue());
+                        }
+                    }
+                    break;
+            }
+        }
+
+        private Map<String, Object> document(String path) {
+            Map<String, Object> document = documents.get(path);
+            if (document == null) {
+                document = new HashMap<>();
+                documents.put(path, document);
+            }
+            return document;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.msystem.walking.utils;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TerritoryUtilsTest {
+    private static final double LAT = -23.55;
+    private static final double LON = -46.63;
+    private static final double METERS_PER_DEGREE = 111320.0;
+
+    @Test
+    public void subtractTerritory_keepsUncapturedPartWithRivalId() {
+        Territory rival = square("rival", 0, 0, 200);
+        rival.setTerritoryId("t1");
+        rival.setColor("#AABBCC");
+        Territory conquered = square("me", 100, -50, 300);
+
+        List<Territory> remaining = TerritoryUtils.subtractTerritory(rival, conquered);
+
+        assertEquals(1, remaining.size());
+        Territory part = remaining.get(0);
+        assertEquals("t1", part.getTerritoryId());
+        assertEquals("rival", part.getOwnerId());
+        assertEquals("#AABBCC", part.getColor());
+        assertNotNull(part.getGeohash());
+        assertEquals(100 * 200, part.getArea(), 1.0);
+        assertEquals(200, part.getPointsValue());
+    }
+
+    @Test
+    public void subtractTerritory_splitsRivalCutInTheMiddle() {
+        Territory rival = square("rival", 0, 0, 300);
+        rival.setTerritoryId("t1");
+        Territory conquered = rectangle("me", 100, -50, 150, 400);
+
+        List<Territory> remaining = TerritoryUtils.subtractTerritory(rival, conquered);
+
+        assertEquals(2, remaining.size());
+        assertEquals("t1", remaining.get(0).getTerritoryId());
+        assertNull(remaining.get(1).getTerritoryId());
+        assertEquals(300 * 300 - 50 * 300,
+                remaining.get(0).getArea() + remaining.get(1).getArea(), 2.0);
+    }
+
+    @Test
+    public void subtractTerritory_returnsNothingWhenFullyCovered() {
+        Territory rival = square("rival", 50, 50, 100);
+        Territory conquered = square("me", 0, 0, 300);
+
+        assertTrue(TerritoryUtils.subtractTerritory(rival, conquered).isEmpty());
+    }
+
+    @Test
+    public void subtractTerritory_twiceFromSameRival_keepsHoleAndArea() {
+        Territory rival = square("rival", 0, 0, 300);
+        rival.setTerritoryId("t1");
+
+        // Conquista no meio: o rival fica com um buraco
+        List<Territory> first = TerritoryUtils.subtractTerritory(rival, square("me", 100, 100, 100));
+        assertEquals(1, first.size());
+        assertEquals(1, first.get(0).getHoles().size());
+        assertEquals(300 * 300 - 100 * 100, first.get(0).getArea(), 2.0);
+        assertFalse(TerritoryUtils.containsPoint(first.get(0), point(150, 150).getLatitude(), point(150, 150).getLongitude()));
+
+        // Segunda conquista atravessando o buraco até a borda
+        List<Territory> second = TerritoryUtils.subtractTerritory(first.get(0), rectangle("other", 150, 120, 400, 180));
+        assertEquals(1, second.size());
+        assertEquals("t1", second.get(0).getTerritoryId());
+        assertNull(second.get(0).getHoles());
+        assertEquals(300 * 300 - 100 * 100 - (150 * 60 - 50 * 60), second.get(0).getArea(), 2.0);
+    }
+
+    @Test
+    public void subtractTerritories_clipsEveryPartAndKeepsRivalIdOnWhatRemains() {
+        Territory rival = square("rival", 0, 0, 300);
+        rival.setTerritoryId("t1");
+        List<Territory> conquered = new ArrayList<>();
+        // Faixa no meio: sobram a parte da esquerda (100 m) e a da direita (150 m, que fica com o ID)
+        conquered.add(rectangle("me", 100, -50, 150, 400));
+        // Cobre toda a parte da direita
+        conquered.add(rectangle("me", 140, -50, 400, 400));
+
+        List<Territory> remaining = TerritoryUtils.subtractTerritories(rival, conquered);
+
+        assertEquals(1, remaining.size());
+        assertEquals("t1", remaining.get(0).getTerritoryId());
+        assertEquals(100 * 300, remaining.get(0).getArea(), 2.0);
+    }
+
+    private static Territory square(String owner, double x, double y, double size) {
+        return rectangle(owner, x, y, x + size, y + size);
+    }
+
+    // Retângulo em metros a partir de um ponto de referência
+    private static Territory rectangle(String owner, double x1, double y1, double x2, double y2) {
+        List<LocationPoint> polygon = new ArrayList<>();
+        polygon.add(point(x1, y1));
+        polygon.add(point(x2, y1));
+        polygon.add(point(x2, y2));
+        polygon.add(point(x1, y2));
+        return new Territory(owner, owner, polygon);
+    }
+
+    private static LocationPoint point(double x, double y) {
+        double metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT));
+        return new LocationPoint(LAT + y / METERS_PER_DEGREE, LON + x / metersPerDegreeLon);
+    }
+}
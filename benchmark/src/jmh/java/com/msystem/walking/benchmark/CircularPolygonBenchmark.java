@@ -0,0 +1,41 @@
+package com.msystem.walking.benchmark;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Polígono circular ao redor de cada ponto de uma rota
+ */
+@State(Scope.Benchmark)
+public class CircularPolygonBenchmark {
+    private static final double RADIUS = 50.0;
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int points;
+
+    @Param({"walk"})
+    public String route;
+
+    private List<LocationPoint> path;
+
+    @Setup
+    public void setUp() {
+        path = RouteFixtures.load(route, points);
+    }
+
+    @Benchmark
+    public void createCircularPolygon(Blackhole blackhole) {
+        for (int i = 0; i < path.size(); i++) {
+            blackhole.consume(TerritoryUtils.createCircularPolygon(path.get(i), RADIUS));
+        }
+    }
+}
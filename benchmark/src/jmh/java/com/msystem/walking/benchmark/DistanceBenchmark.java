@@ -0,0 +1,60 @@
+package com.msystem.walking.benchmark;
+
+import com.msystem.walking.geo.DistanceKernel;
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.route.PackedRoute;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Comprimento de uma rota inteira: calculateDistance sobre a lista de objetos
+ * contra o kernel sobre os arrays compactados
+ */
+@State(Scope.Benchmark)
+public class DistanceBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int points;
+
+    @Param({"walk", "loops"})
+    public String route;
+
+    private List<LocationPoint> path;
+    private PackedRoute.View packed;
+
+    @Setup
+    public void setUp() {
+        path = RouteFixtures.load(route, points);
+        packed = PackedRoute.fromLocationPoints(path).snapshot();
+    }
+
+    @Benchmark
+    public double calculateDistance() {
+        double total = 0;
+        for (int i = 1; i < path.size(); i++) {
+            total += TerritoryUtils.calculateDistance(path.get(i - 1), path.get(i));
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double kernelHaversine() {
+        return packed.getLength(DistanceKernel.Mode.HAVERSINE);
+    }
+
+    @Benchmark
+    public double kernelEquirectangular() {
+        return packed.getLength(DistanceKernel.Mode.EQUIRECTANGULAR);
+    }
+
+    @Benchmark
+    public double kernelTangentPlane() {
+        return packed.getLength(DistanceKernel.Mode.TANGENT_PLANE);
+    }
+}
@@ -0,0 +1,63 @@
+package com.msystem.walking.benchmark;
+
+import com.msystem.walking.geo.PolygonClipper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Captura típica: o corredor de uma caminhada recortando dezenas de rivais
+ */
+@State(Scope.Benchmark)
+public class PolygonClipperBenchmark {
+    @Param({"20", "60"})
+    public int rivals;
+
+    @Param({"100", "400"})
+    public int vertices;
+
+    private double[][] rivalRings;
+    private double[] corridor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        rivalRings = new double[rivals][];
+        for (int i = 0; i < rivals; i++) {
+            rivalRings[i] = star(random, random.nextDouble() * 300, random.nextDouble() * 300, vertices / 4, 40, 120);
+        }
+        corridor = star(random, 150, 150, vertices, 60, 240);
+    }
+
+    @Benchmark
+    public void difference(Blackhole blackhole) {
+        for (double[] rival : rivalRings) {
+            blackhole.consume(PolygonClipper.difference(rival, corridor));
+        }
+    }
+
+    @Benchmark
+    public void union(Blackhole blackhole) {
+        for (double[] rival : rivalRings) {
+            blackhole.consume(PolygonClipper.union(rival, corridor));
+        }
+    }
+
+    // Polígono simples em forma de estrela, com raios aleatórios
+    private static double[] star(Random random, double cx, double cy, int count, double minRadius, double maxRadius) {
+        double[] ring = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            double angle = 2 * Math.PI * i / count;
+            double radius = minRadius + random.nextDouble() * (maxRadius - minRadius);
+            ring[i * 2] = cx + radius * Math.cos(angle);
+            ring[i * 2 + 1] = cy + radius * Math.sin(angle);
+        }
+        return ring;
+    }
+}
@@ -0,0 +1,136 @@
+package com.msystem.walking.benchmark;
+
+import com.msystem.walking.model.LocationPoint;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rotas usadas pelos benchmarks: sintéticas (determinísticas, pela semente) ou
+ * gravadas num CSV com linhas "latitude,longitude[,timestamp em ms]".
+ */
+final class RouteFixtures {
+    private static final double START_LATITUDE = -23.5505;
+    private static final double START_LONGITUDE = -46.6333;
+    private static final double METERS_PER_DEGREE = 111320.0;
+    private static final long START_TIME = 1_700_000_000_000L;
+    private static final long SEED = 42;
+
+    private RouteFixtures() {
+    }
+
+    /**
+     * @param route "walk" (caminhada com curvas e ruído de GPS), "loops"
+     *              (voltas repetidas em quarteirões) ou "file:caminho.csv"
+     * @param size Quantidade de pontos (rotas gravadas são repetidas em vai e volta)
+     */
+    static List<LocationPoint> load(String route, int size) {
+        if (route.startsWith("file:")) {
+            return repeat(readCsv(route.substring("file:".length())), size);
+        }
+        switch (route) {
+            case "walk": return walk(size);
+            case "loops": return loops(size);
+            default: throw new IllegalArgumentException("Rota desconhecida: " + route);
+        }
+    }
+
+    // 1 Hz a ~1,4 m/s, mudando de direção aos poucos, com ~3 m de erro de GPS
+    private static List<LocationPoint> walk(int size) {
+        Random random = new Random(SEED);
+        List<LocationPoint> points = new ArrayList<>(size);
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        for (int i = 0; i < size; i++) {
+            heading += random.nextGaussian() * 0.15;
+            x += Math.cos(heading) * 1.4;
+            y += Math.sin(heading) * 1.4;
+            points.add(point(x + random.nextGaussian() * 3, y + random.nextGaussian() * 3, i));
+        }
+        return points;
+    }
+
+    // Voltas num quarteirão de 100 m, deslocando um pouco a cada volta
+    private static List<LocationPoint> loops(int size) {
+        Random random = new Random(SEED);
+        List<LocationPoint> points = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            double along = (i * 1.4) % 400;
+            int lap = (int) (i * 1.4 / 400);
+            double offset = (lap % 5) * 20;
+            double x;
+            double y;
+            if (along < 100) {
+                x = along;
+                y = 0;
+            } else if (along < 200) {
+                x = 100;
+                y = along - 100;
+            } else if (along < 300) {
+                x = 300 - along;
+                y = 100;
+            } else {
+                x = 0;
+                y = 400 - along;
+            }
+            points.add(point(x + offset + random.nextGaussian() * 3, y + offset + random.nextGaussian() * 3, i));
+        }
+        return points;
+    }
+
+    private static LocationPoint point(double x, double y, int second) {
+        double metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(START_LATITUDE));
+        LocationPoint point = new LocationPoint(START_LATITUDE + y / METERS_PER_DEGREE,
+                START_LONGITUDE + x / metersPerDegreeLon, 760, 5f);
+        point.setTimestamp(new Date(START_TIME + second * 1000L));
+        return point;
+    }
+
+    private static List<LocationPoint> readCsv(String path) {
+        List<LocationPoint> points = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split(",");
+                if (fields.length < 2 || fields[0].isEmpty() || !isNumber(fields[0])) {
+                    continue; // cabeçalho ou linha vazia
+                }
+                LocationPoint point = new LocationPoint(Double.parseDouble(fields[0]), Double.parseDouble(fields[1]));
+                if (fields.length > 2) {
+                    point.setTimestamp(new Date(Long.parseLong(fields[2].trim())));
+                }
+                points.add(point);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (points.size() < 2) {
+            throw new IllegalArgumentException("Rota gravada sem pontos suficientes: " + path);
+        }
+        return points;
+    }
+
+    private static boolean isNumber(String value) {
+        char c = value.charAt(0);
+        return c == '-' || c == '.' || Character.isDigit(c);
+    }
+
+    private static List<LocationPoint> repeat(List<LocationPoint> recorded, int size) {
+        List<LocationPoint> points = new ArrayList<>(size);
+        int period = 2 * recorded.size() - 2;
+        for (int i = 0; i < size; i++) {
+            int k = i % period;
+            points.add(recorded.get(k < recorded.size() ? k : period - k));
+        }
+        return points;
+    }
+}
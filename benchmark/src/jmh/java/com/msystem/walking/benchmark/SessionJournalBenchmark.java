@@ -0,0 +1,45 @@
+package com.msystem.walking.benchmark;
+
+import com.msystem.walking.route.SessionJournal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Custo de gravar um ponto no diário da sessão, que roda a cada fix (até 10 por
+ * segundo); a latência por amostragem mostra o pico quando o mapa cresce
+ */
+@State(Scope.Thread)
+public class SessionJournalBenchmark {
+    private File file;
+    private SessionJournal journal;
+    private int index;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        file = File.createTempFile("session", ".journal");
+        journal = SessionJournal.create(file, System.currentTimeMillis());
+        index = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        journal.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int append() throws IOException {
+        int i = index++;
+        journal.append(38.7223 + (i & 1023) * 1e-5, -9.1393 - (i & 1023) * 1e-5, 1700000000000L + i * 100L,
+                50.0, 4.0f);
+        return journal.size();
+    }
+}
@@ -0,0 +1,37 @@
+package com.msystem.walking.benchmark;
+
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Criação de territórios ao finalizar uma atividade (corredor + contorno)
+ */
+@State(Scope.Benchmark)
+public class TerritoryBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    public int points;
+
+    @Param({"walk", "loops"})
+    public String route;
+
+    private List<LocationPoint> path;
+
+    @Setup
+    public void setUp() {
+        path = RouteFixtures.load(route, points);
+    }
+
+    @Benchmark
+    public List<Territory> createTerritoriesFromRoute() {
+        return TerritoryUtils.createTerritoriesFromRoute(path, "benchmark", "Benchmark");
+    }
+}
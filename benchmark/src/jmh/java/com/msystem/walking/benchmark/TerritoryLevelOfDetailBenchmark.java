@@ -0,0 +1,84 @@
+package com.msystem.walking.benchmark;
+
+import com.msystem.walking.geo.SimplifiedShapeCache;
+import com.msystem.walking.geo.TerritoryClusterer;
+import com.msystem.walking.geo.TileRasterizer;
+import com.msystem.walking.geo.WebMercator;
+import com.msystem.walking.model.LocationPoint;
+import com.msystem.walking.model.Territory;
+import com.msystem.walking.utils.TerritoryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trabalho por quadro da camada de territórios do mapa, sem o desenho:
+ * agrupamento em zoom distante, contornos simplificados em zoom próximo e a
+ * pintura de um tile da camada de tiles (feita fora da thread principal)
+ */
+@State(Scope.Benchmark)
+public class TerritoryLevelOfDetailBenchmark {
+    private static final double METERS_PER_DEGREE = 111320.0;
+    private static final int OWNERS = 50;
+
+    @Param({"1000", "10000"})
+    public int territories;
+
+    private final List<Territory> visible = new ArrayList<>();
+    private final TerritoryClusterer clusterer = new TerritoryClusterer();
+    private final SimplifiedShapeCache shapes = new SimplifiedShapeCache();
+    private final TileRasterizer rasterizer = new TileRasterizer();
+    private final int[] pixels = new int[TileRasterizer.TILE_SIZE * TileRasterizer.TILE_SIZE];
+
+    @Setup
+    public void setUp() {
+        // Grade de territórios de 50 m de raio a cada 120 m, donos intercalados
+        int side = (int) Math.ceil(Math.sqrt(territories));
+        for (int i = 0; i < territories; i++) {
+            LocationPoint center = new LocationPoint(
+                    -23.55 + (i / side) * 120 / METERS_PER_DEGREE,
+                    -46.63 + (i % side) * 120 / METERS_PER_DEGREE);
+            Territory territory = new Territory("owner" + (i % OWNERS), "Dono",
+                    TerritoryUtils.createCircularPolygon(center, 50.0));
+            territory.setColor("#64C8FF");
+            visible.add(territory);
+        }
+        clusterer.cluster(visible, 12, 64);
+    }
+
+    @Benchmark
+    public int cluster() {
+        return clusterer.cluster(visible, 12, 64);
+    }
+
+    // Caso comum de um quadro em zoom próximo: todos os contornos já estão no cache
+    @Benchmark
+    public void cachedShapes(Blackhole blackhole) {
+        for (int i = 0; i < visible.size(); i++) {
+            blackhole.consume(shapes.get(visible.get(i), 0.6));
+        }
+    }
+
+    // Primeiro quadro depois de trocar o nível de zoom
+    @Benchmark
+    public void simplifyAllShapes(Blackhole blackhole) {
+        shapes.clear();
+        for (int i = 0; i < visible.size(); i++) {
+            blackhole.consume(shapes.get(visible.get(i), 0.6));
+        }
+    }
+
+    // Tile de zoom 10 (~35 km) onde começa a grade de territórios
+    @Benchmark
+    public int[] rasterizeTile() {
+        rasterizer.rasterize(visible, 10, WebMercator.tileX(-46.63, 10), WebMercator.tileY(-23.55, 10), pixels);
+        return pixels;
+    }
+}